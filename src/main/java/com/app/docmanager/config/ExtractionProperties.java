@@ -0,0 +1,37 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.extraction")
+@Data
+public class ExtractionProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Extraction threads and how many documents may wait for them. Defaults to half the
+     * cores, so uploads and downloads keep the rest.
+     */
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int queueCapacity = 500;
+
+    /**
+     * Documents taking longer are marked as failed.
+     */
+    private Duration timeout = Duration.ofMinutes(2);
+
+    /**
+     * Results written per JDBC batch update.
+     */
+    private int batchSize = 50;
+
+    /**
+     * Characters of text kept per document.
+     */
+    private int maxTextLength = 1_000_000;
+}
@@ -0,0 +1,50 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.hot-folder")
+@Data
+public class HotFolderProperties {
+
+    private boolean enabled = false;
+
+    private List<FolderProperties> folders = new ArrayList<>();
+
+    /**
+     * How long size and modification time of a file must stay unchanged before it is
+     * ingested; scanners write large files over several seconds.
+     */
+    private Duration stabilityWindow = Duration.ofSeconds(5);
+
+    /**
+     * Files ingested at the same time across all folders, and how many stable files may
+     * wait for them.
+     */
+    private int concurrency = 2;
+    private int queueCapacity = 50;
+
+    /**
+     * Subdirectories of each folder that files are moved to once ingested or rejected.
+     */
+    private String processedDirectory = ".processed";
+    private String failedDirectory = ".failed";
+
+    @Data
+    public static class FolderProperties {
+        private String path;
+
+        /**
+         * Username owning the documents created from this folder.
+         */
+        private String owner;
+        private String category;
+        private List<String> tags = new ArrayList<>();
+    }
+}
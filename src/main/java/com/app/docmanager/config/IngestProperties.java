@@ -0,0 +1,42 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.ingest")
+@Data
+public class IngestProperties {
+
+    /**
+     * Threads storing the files of bulk uploads, shared by all requests.
+     */
+    private int threads = 4;
+
+    /**
+     * Most files (parts plus archive entries) accepted in one bulk upload.
+     */
+    private int maxItems = 1000;
+
+    /**
+     * Largest uncompressed size of one archive entry; larger entries are reported as failed.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(512);
+
+    /**
+     * Largest uncompressed size of all archive entries of one bulk upload together.
+     */
+    private DataSize maxTotalSize = DataSize.ofGigabytes(2);
+
+    /**
+     * Largest request body of a streaming upload, which the multipart limits do not cover.
+     */
+    private DataSize maxStreamSize = DataSize.ofGigabytes(1);
+
+    /**
+     * Document rows per JDBC batch insert.
+     */
+    private int batchSize = 100;
+}
@@ -0,0 +1,44 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.ocr")
+@Data
+public class OcrProperties {
+
+    /**
+     * Requires a local Tesseract installation.
+     */
+    private boolean enabled = false;
+
+    private String tesseractPath = "tesseract";
+
+    /**
+     * Tesseract language codes joined with '+', e.g. "deu+eng".
+     */
+    private String languages = "eng";
+
+    /**
+     * Resolution PDF pages are rasterized at for recognition.
+     */
+    private int dpi = 300;
+
+    /**
+     * Pages recognized at the same time, each by a single-threaded Tesseract process.
+     * Pages beyond the queue are recognized by the extraction thread itself.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 100;
+
+    private Duration pageTimeout = Duration.ofMinutes(1);
+
+    /**
+     * Pages whose text layer has fewer characters are treated as image-only.
+     */
+    private int minPageTextLength = 16;
+}
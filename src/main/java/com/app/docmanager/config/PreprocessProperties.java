@@ -0,0 +1,56 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.preprocess")
+@Data
+public class PreprocessProperties {
+
+    public enum ColorMode {
+        /**
+         * Black and white, stored as CCITT G4 TIFF or 1-bit PNG. Smallest, best for OCR.
+         */
+        BINARY,
+        GREY
+    }
+
+    public enum OriginalPolicy {
+        KEEP, DROP
+    }
+
+    /**
+     * Clean up uploaded TIFF, JPEG, PNG and BMP scans before they are stored.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Scans with a higher resolution are downsampled to this; others keep theirs.
+     */
+    private int targetDpi = 300;
+
+    private ColorMode colorMode = ColorMode.BINARY;
+
+    private boolean deskew = true;
+    private double maxSkewDegrees = 5.0;
+
+    /**
+     * KEEP copies the received file to the originals directory, named by the content hash
+     * of the stored result.
+     */
+    private OriginalPolicy originalPolicy = OriginalPolicy.KEEP;
+
+    /**
+     * Defaults to .originals below file.upload-dir.
+     */
+    private String originalsDir;
+
+    /**
+     * Threads processing pages, shared by all uploads.
+     */
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private float jpegQuality = 0.85f;
+}
@@ -0,0 +1,37 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.preview")
+@Data
+public class PreviewProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Where rendered images are cached; defaults to .previews below file.upload-dir.
+     */
+    private String cacheDir;
+
+    private int thumbnailWidth = 256;
+    private int previewWidth = 1024;
+    private float jpegQuality = 0.8f;
+
+    /**
+     * Rendering threads and how many documents may wait for them.
+     */
+    private int threads = 2;
+    private int queueCapacity = 200;
+
+    /**
+     * How long a request waits for a preview that is not cached yet.
+     */
+    private Duration renderTimeout = Duration.ofSeconds(30);
+
+    private Duration maxAge = Duration.ofDays(7);
+}
@@ -0,0 +1,53 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.search")
+@Data
+public class SearchProperties {
+
+    public enum Mode {
+        /**
+         * Embedded Lucene index on local disk.
+         */
+        INDEX,
+        /**
+         * The database's own full-text search: a GIN-indexed tsvector on PostgreSQL.
+         */
+        DATABASE
+    }
+
+    private boolean enabled = true;
+
+    private Mode mode = Mode.INDEX;
+
+    /**
+     * PostgreSQL text search configuration (language) of the DATABASE mode. Must match the
+     * one the search_vector column was created with (db/migration/postgresql).
+     */
+    private String textSearchConfig = "english";
+
+    /**
+     * Where the full-text index is kept; defaults to .index below file.upload-dir.
+     */
+    private String indexDir;
+
+    /**
+     * Documents loaded from the database per indexing batch. Each carries its extracted
+     * text, so this bounds the memory an indexing run needs.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Indexing buffer before segments are flushed to disk.
+     */
+    private double ramBufferMb = 64;
+
+    /**
+     * Deepest hit a search may page to.
+     */
+    private int maxResultWindow = 10_000;
+}
@@ -0,0 +1,66 @@
+package com.app.docmanager.config;
+
+import com.app.docmanager.storage.LocalStorageBackend;
+import com.app.docmanager.storage.PackedStorageBackend;
+import com.app.docmanager.storage.S3StorageBackend;
+import com.app.docmanager.storage.StorageBackend;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Configuration
+@RequiredArgsConstructor
+public class StorageConfig {
+
+    private final StorageProperties storageProperties;
+
+    @Bean
+    public StorageBackend storageBackend(@Value("${file.upload-dir}") String uploadDir) {
+        StorageBackend backend = switch (storageProperties.getBackend()) {
+            case "local" -> new LocalStorageBackend(Paths.get(uploadDir), storageProperties);
+            case "s3" -> new S3StorageBackend(s3Client(storageProperties.getS3()), storageProperties.getS3());
+            default -> throw new IllegalStateException("Unknown storage backend: " + storageProperties.getBackend());
+        };
+
+        StorageProperties.PackProperties pack = storageProperties.getPack();
+        if (pack.isEnabled()) {
+            Path packDirectory = StringUtils.hasText(pack.getDirectory())
+                    ? Paths.get(pack.getDirectory())
+                    : Paths.get(uploadDir).resolve(".packs");
+            backend = new PackedStorageBackend(backend, packDirectory, pack);
+        }
+        return backend;
+    }
+
+    private static S3Client s3Client(StorageProperties.S3Properties s3) {
+        if (!StringUtils.hasText(s3.getBucket())) {
+            throw new IllegalStateException("file.storage.s3.bucket must be set for the s3 storage backend");
+        }
+
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(s3.getRegion()))
+                .forcePathStyle(s3.isPathStyle());
+        if (StringUtils.hasText(s3.getEndpoint())) {
+            builder.endpointOverride(URI.create(s3.getEndpoint()));
+        }
+        if (StringUtils.hasText(s3.getAccessKey())) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(s3.getAccessKey(), s3.getSecretKey())));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,145 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.storage")
+@Data
+public class StorageProperties {
+
+    /**
+     * Where file bytes are kept: "local" volumes or an "s3"-compatible object store.
+     */
+    private String backend = "local";
+
+    private S3Properties s3 = new S3Properties();
+
+    /**
+     * Number of directory levels below a volume root, e.g. 2 gives ab/cd/abcd...
+     */
+    private int fanOutLevels = 2;
+
+    /**
+     * Characters of the file name used per directory level.
+     */
+    private int fanOutWidth = 2;
+
+    /**
+     * Volumes new files are spread across. When empty, file.upload-dir is the only volume.
+     */
+    private List<VolumeProperties> volumes = new ArrayList<>();
+
+    private MigrationProperties migration = new MigrationProperties();
+
+    private CompressionProperties compression = new CompressionProperties();
+
+    private PackProperties pack = new PackProperties();
+
+    private ReconcilerProperties reconciler = new ReconcilerProperties();
+
+    @Data
+    public static class VolumeProperties {
+        private String path;
+        private int weight = 1;
+        private DataSize minFreeSpace = DataSize.ofMegabytes(512);
+    }
+
+    @Data
+    public static class S3Properties {
+        /**
+         * Endpoint of an S3-compatible service such as MinIO; empty uses AWS.
+         */
+        private String endpoint;
+        private String region = "us-east-1";
+        private String bucket;
+        private String accessKey;
+        private String secretKey;
+        private boolean pathStyle = true;
+        private String prefix = "";
+
+        /**
+         * Size of a multipart upload part; S3 requires at least 5MB.
+         */
+        private DataSize partSize = DataSize.ofMegabytes(8);
+
+        /**
+         * Parts of a single upload sent in parallel.
+         */
+        private int uploadConcurrency = 4;
+
+        /**
+         * Threads shared by all uploads for sending parts.
+         */
+        private int uploadThreads = 16;
+    }
+
+    @Data
+    public static class CompressionProperties {
+        private boolean enabled = true;
+
+        /**
+         * Content types stored gzip-compressed. Already compressed formats such as
+         * PDF and JPEG are not listed and are stored as-is.
+         */
+        private List<String> compressibleTypes = new ArrayList<>(List.of(
+                "text/*", "application/xml", "application/json", "image/tiff", "image/bmp"));
+    }
+
+    @Data
+    public static class PackProperties {
+        /**
+         * Append small files to shared segment files instead of storing one file each.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the segment files; defaults to .packs below file.upload-dir.
+         */
+        private String directory;
+
+        private DataSize maxBlobSize = DataSize.ofKilobytes(32);
+        private DataSize segmentSize = DataSize.ofMegabytes(256);
+
+        /**
+         * Force every append to disk before acknowledging the upload.
+         */
+        private boolean fsync = true;
+
+        /**
+         * Share of deleted bytes at which a sealed segment is rewritten.
+         */
+        private double compactionThreshold = 0.3;
+        private Duration compactionInterval = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class ReconcilerProperties {
+        private boolean enabled = true;
+        private Duration interval = Duration.ofHours(6);
+
+        /**
+         * File paths fetched per database query; the run pauses after each batch.
+         */
+        private int batchSize = 1000;
+        private Duration batchPause = Duration.ofMillis(200);
+
+        /**
+         * Unreferenced files younger than this may belong to an upload still in progress.
+         */
+        private Duration gracePeriod = Duration.ofDays(1);
+    }
+
+    @Data
+    public static class MigrationProperties {
+        private boolean enabled = true;
+        private int batchSize = 500;
+        private Duration interval = Duration.ofMinutes(1);
+    }
+}
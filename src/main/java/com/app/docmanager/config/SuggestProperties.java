@@ -0,0 +1,23 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.suggest")
+@Data
+public class SuggestProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Most suggestions returned per kind; each node of the prefix index keeps this many.
+     */
+    private int maxSuggestions = 10;
+
+    /**
+     * Documents read from the database per query while building the index.
+     */
+    private int batchSize = 10_000;
+}
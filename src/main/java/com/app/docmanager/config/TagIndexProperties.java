@@ -0,0 +1,25 @@
+package com.app.docmanager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.tag-index")
+@Data
+public class TagIndexProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Where the snapshot of the tag index is kept; defaults to .tag-index below
+     * file.upload-dir.
+     */
+    private String indexDir;
+
+    /**
+     * Documents read from the database per query while building or updating the index.
+     * Only ids, owners, categories and tag ids are read.
+     */
+    private int batchSize = 10_000;
+}
@@ -1,38 +1,66 @@
 package com.app.docmanager.controller;
 
+import com.app.docmanager.config.IngestProperties;
+import com.app.docmanager.config.PreviewProperties;
+import com.app.docmanager.config.SuggestProperties;
+import com.app.docmanager.dto.BulkUploadDTO;
 import com.app.docmanager.dto.DocumentDTO;
+import com.app.docmanager.dto.FacetedSearchDTO;
+import com.app.docmanager.dto.SearchDTO;
+import com.app.docmanager.dto.SuggestDTO;
 import com.app.docmanager.entity.Document;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.exception.PayloadTooLargeException;
 import com.app.docmanager.exception.ResourceNotFoundException;
 import com.app.docmanager.mapper.DocumentMapper;
+import com.app.docmanager.repository.DocumentExportRepository;
+import com.app.docmanager.repository.SearchHits;
 import com.app.docmanager.security.CurrentUser;
 import com.app.docmanager.security.CustomUserDetails;
+import com.app.docmanager.service.BulkUploadService;
+import com.app.docmanager.service.DocumentDownloadService;
+import com.app.docmanager.service.DocumentExportService;
+import com.app.docmanager.service.DocumentFacetService;
+import com.app.docmanager.service.DocumentSearchService;
 import com.app.docmanager.service.DocumentService;
 import com.app.docmanager.service.FileStorageService;
+import com.app.docmanager.service.PreviewService;
+import com.app.docmanager.service.ScanPreprocessingService;
+import com.app.docmanager.service.SuggestService;
+import com.app.docmanager.service.TagIndexService;
+import com.app.docmanager.service.TrigramSearchService;
+import com.app.docmanager.storage.SizeLimitedInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import java.util.Arrays;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
@@ -44,6 +72,19 @@ public class DocumentController {
     private final DocumentService documentService;
     private final DocumentMapper documentMapper;
     private final FileStorageService fileStorageService;
+    private final DocumentDownloadService documentDownloadService;
+    private final DocumentExportService documentExportService;
+    private final BulkUploadService bulkUploadService;
+    private final ScanPreprocessingService scanPreprocessingService;
+    private final DocumentSearchService documentSearchService;
+    private final TrigramSearchService trigramSearchService;
+    private final DocumentFacetService documentFacetService;
+    private final TagIndexService tagIndexService;
+    private final SuggestService suggestService;
+    private final SuggestProperties suggestProperties;
+    private final PreviewService previewService;
+    private final PreviewProperties previewProperties;
+    private final IngestProperties ingestProperties;
 
     @GetMapping
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
@@ -58,7 +99,7 @@ public class DocumentController {
             documents = documentService.getDocumentsByUserId(currentUser.getId());
         }
 
-        List<DocumentDTO> documentDTOs = documentMapper.toDtoList(documents);
+        List<DocumentDTO> documentDTOs = documentMapper.toSummaryDtoList(documents);
         return ResponseEntity.ok(documentDTOs);
     }
 
@@ -79,33 +120,188 @@ public class DocumentController {
             documents = documentService.getDocumentsByUserIdPaginated(currentUser.getId(), pageable);
         }
 
-        Page<DocumentDTO> documentDTOs = documents.map(documentMapper::toDto);
+        Page<DocumentDTO> documentDTOs = documents.map(documentMapper::toSummaryDto);
         return ResponseEntity.ok(documentDTOs);
     }
 
-    // NEW: Paginated search endpoint
+    /**
+     * Title search that tolerates fragments and typos, most similar titles first.
+     */
     @GetMapping("/search/paginated")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
     public ResponseEntity<Page<DocumentDTO>> searchDocumentsPaginated(
             @RequestParam String query,
             @CurrentUser CustomUserDetails currentUser,
-            @PageableDefault(size = 10, sort = "createdAt", direction = Sort.Direction.DESC)
-            Pageable pageable) {
-
-        Page<Document> documents;
+            @PageableDefault(size = 10) Pageable pageable) {
 
         // Admin can search all documents, users can only search their own
-        if (currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"))) {
-            documents = documentService.searchDocumentsByTitlePaginated(query, pageable);
-        } else {
-            documents = documentService.searchDocumentsByUserAndTitlePaginated(
-                    currentUser.getId(), query, pageable);
-        }
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        Page<Document> documents = documentService.searchDocumentsByTitlePaginated(
+                query, admin ? null : currentUser.getId(), pageable);
 
-        Page<DocumentDTO> documentDTOs = documents.map(documentMapper::toDto);
+        Page<DocumentDTO> documentDTOs = documents.map(documentMapper::toSummaryDto);
         return ResponseEntity.ok(documentDTOs);
     }
 
+    /**
+     * Full-text search over title, category, tags and extracted text, ranked by relevance.
+     * Admins search all documents, users their own.
+     */
+    @GetMapping("/search/full-text")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<SearchDTO> searchFullText(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        SearchHits result = documentSearchService.search(
+                query, admin ? null : currentUser.getId(), page, size);
+
+        Map<Long, SearchHits.Hit> hitsById = result.hits().stream()
+                .collect(Collectors.toMap(SearchHits.Hit::id, Function.identity()));
+        List<SearchDTO.Hit> hits = documentService.getDocumentsByIdsInOrder(
+                        result.hits().stream().map(SearchHits.Hit::id).toList()).stream()
+                .map(document -> SearchDTO.Hit.builder()
+                        .score(hitsById.get(document.getId()).score())
+                        .highlight(hitsById.get(document.getId()).highlight())
+                        .document(documentMapper.toSummaryDto(document))
+                        .build())
+                .toList();
+
+        return ResponseEntity.ok(SearchDTO.builder()
+                .query(query)
+                .page(page)
+                .size(size)
+                .totalHits(result.totalHits())
+                .totalHitsExact(result.totalHitsExact())
+                .hits(hits)
+                .build());
+    }
+
+    /**
+     * Completions for search-as-you-type, answered from memory.
+     */
+    @GetMapping("/suggest")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<SuggestDTO> suggest(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "5") int limit,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        if (limit < 1) {
+            throw new InvalidRequestException("Invalid limit");
+        }
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        SuggestService.Suggestions suggestions = suggestService.suggest(prefix, admin ? null : currentUser.getId(),
+                Math.min(limit, suggestProperties.getMaxSuggestions()));
+
+        return ResponseEntity.ok(SuggestDTO.builder()
+                .prefix(prefix)
+                .titles(suggestions.titles())
+                .tags(suggestions.tags())
+                .categories(suggestions.categories())
+                .build());
+    }
+
+    /**
+     * Title search that tolerates fragments and typos, scored by trigram similarity, with a
+     * corrected query when words of the query occur in no title.
+     */
+    @GetMapping("/search/titles")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<SearchDTO> searchTitles(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        if (page < 0 || size < 1) {
+            throw new InvalidRequestException("Invalid page or size");
+        }
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        Long userId = admin ? null : currentUser.getId();
+        SearchHits result = trigramSearchService.searchTitles(query, userId, (long) page * size, size);
+
+        Map<Long, Float> scores = result.hits().stream()
+                .collect(Collectors.toMap(SearchHits.Hit::id, SearchHits.Hit::score));
+        List<SearchDTO.Hit> hits = documentService.getDocumentsByIdsInOrder(
+                        result.hits().stream().map(SearchHits.Hit::id).toList()).stream()
+                .map(document -> SearchDTO.Hit.builder()
+                        .score(scores.get(document.getId()))
+                        .document(documentMapper.toSummaryDto(document))
+                        .build())
+                .toList();
+
+        return ResponseEntity.ok(SearchDTO.builder()
+                .query(query)
+                .page(page)
+                .size(size)
+                .totalHits(result.totalHits())
+                .totalHitsExact(result.totalHitsExact())
+                .hits(hits)
+                .didYouMean(trigramSearchService.didYouMean(query, userId))
+                .build());
+    }
+
+    /**
+     * A page of documents matching the filter and the counts per category, tag, file type,
+     * year, month and size of all matching documents. Admins see all documents.
+     */
+    @GetMapping("/facets")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<FacetedSearchDTO> searchFaceted(
+            FacetedSearchDTO.Filter filter,
+            @CurrentUser CustomUserDetails currentUser,
+            @PageableDefault(size = 20, sort = "createdAt", direction = Sort.Direction.DESC)
+            Pageable pageable) {
+
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        DocumentFacetService.Result result = documentFacetService.search(
+                filter, admin ? null : currentUser.getId(), pageable);
+
+        return ResponseEntity.ok(FacetedSearchDTO.builder()
+                .documents(documentMapper.toSummaryDtoList(result.documents().getContent()))
+                .page(result.documents().getNumber())
+                .size(result.documents().getSize())
+                .totalElements(result.documents().getTotalElements())
+                .totalPages(result.documents().getTotalPages())
+                .facets(result.facets())
+                .build());
+    }
+
+    /**
+     * Documents by tags, newest first: every {@code tag}, at least one {@code anyTag}, no
+     * {@code notTag}, in one of the categories. Only the tag and category counts are filled.
+     */
+    @GetMapping("/tagged")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<FacetedSearchDTO> searchTagged(
+            @RequestParam(required = false) Set<String> tag,
+            @RequestParam(required = false) Set<String> anyTag,
+            @RequestParam(required = false) Set<String> notTag,
+            @RequestParam(required = false) Set<String> category,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        if (page < 0 || size < 1) {
+            throw new InvalidRequestException("Invalid page or size");
+        }
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        TagIndexService.Result result = tagIndexService.search(
+                new TagIndexService.Query(tag, anyTag, notTag, category), admin ? null : currentUser.getId(), page, size);
+
+        return ResponseEntity.ok(FacetedSearchDTO.builder()
+                .documents(documentMapper.toSummaryDtoList(result.documents().getContent()))
+                .page(result.documents().getNumber())
+                .size(result.documents().getSize())
+                .totalElements(result.documents().getTotalElements())
+                .totalPages(result.documents().getTotalPages())
+                .facets(result.facets())
+                .build());
+    }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
@@ -146,32 +342,12 @@ public class DocumentController {
             @CurrentUser CustomUserDetails currentUser) {
 
         try {
-            // Store the file
-            String fileName = fileStorageService.storeFile(file);
-
-            // Parse tags from request parameter (if provided)
-            Set<String> tags = null;
-            if (tagsParam != null && !tagsParam.trim().isEmpty()) {
-                tags = Arrays.stream(tagsParam.split(","))
-                        .map(String::trim)
-                        .filter(tag -> !tag.isEmpty())
-                        .collect(Collectors.toSet());
-            }
-
-            // Create document record without user
-            DocumentDTO.CreateDocumentRequest request = new DocumentDTO.CreateDocumentRequest();
-            request.setTitle(title);
-            request.setCategory(category);
-            request.setFilePath(fileName);
-            request.setFileType(file.getContentType());
-            request.setFileSize(file.getSize());
-            request.setTags(tags);
-
-            Document document = documentMapper.toEntityWithoutUser(request);
-            Document savedDocument = documentService.createDocument(document, currentUser.getId(), tags);
-            DocumentDTO documentDTO = documentMapper.toDto(savedDocument);
-
-            log.info("File uploaded successfully: {} by user: {}", fileName, currentUser.getUsername());
+            // Store the file (content-addressed, identical files are stored once); scans are
+            // cleaned up first when pre-processing is enabled
+            FileStorageService.StoredFile storedFile = scanPreprocessingService.storeFile(file);
+
+            DocumentDTO documentDTO = createUploadedDocument(
+                    storedFile, title, category, tagsParam, currentUser);
             return ResponseEntity.status(HttpStatus.CREATED).body(documentDTO);
 
         } catch (Exception e) {
@@ -179,11 +355,117 @@ public class DocumentController {
             throw new RuntimeException("Could not upload file: " + e.getMessage());
         }
     }
+
+    /**
+     * Streaming upload: the raw request body is the file content. Unlike multipart uploads,
+     * the body is not spooled to a servlet temp file first, so each byte is written to disk
+     * once. Metadata travels as query parameters, the Content-Type header is the file type.
+     * Bodies above file.ingest.max-stream-size are rejected with 413.
+     */
+    @PostMapping("/upload/stream")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<DocumentDTO> uploadDocumentStream(
+            HttpServletRequest httpRequest,
+            @RequestParam("title") String title,
+            @RequestParam(value = "category", required = false) String category,
+            @RequestParam(value = "tags", required = false) String tagsParam,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        long maxStreamSize = ingestProperties.getMaxStreamSize().toBytes();
+        if (httpRequest.getContentLengthLong() > maxStreamSize) {
+            throw new PayloadTooLargeException(maxStreamSize);
+        }
+
+        try {
+            // Counted while reading as well, chunked bodies declare no length
+            FileStorageService.StoredFile storedFile = scanPreprocessingService.storeStream(
+                    new SizeLimitedInputStream(httpRequest.getInputStream(), maxStreamSize),
+                    httpRequest.getContentType());
+
+            DocumentDTO documentDTO = createUploadedDocument(
+                    storedFile, title, category, tagsParam, currentUser);
+            return ResponseEntity.status(HttpStatus.CREATED).body(documentDTO);
+
+        } catch (PayloadTooLargeException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error uploading file stream", e);
+            throw new RuntimeException("Could not upload file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bulk upload: many file parts, ZIP archives among them are expanded into their entries.
+     * Every file becomes a document with the same category and tags; the response reports
+     * the outcome of each file.
+     */
+    @PostMapping("/upload/bulk")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<BulkUploadDTO> uploadDocumentsBulk(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "category", required = false) String category,
+            @RequestParam(value = "tags", required = false) String tagsParam,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        BulkUploadDTO report = bulkUploadService.ingest(files, category, parseTags(tagsParam), currentUser.getId());
+        HttpStatus status = report.getCreated() > 0 ? HttpStatus.CREATED : HttpStatus.OK;
+        return ResponseEntity.status(status).body(report);
+    }
+
+    private static Set<String> parseTags(String tagsParam) {
+        if (tagsParam == null || tagsParam.trim().isEmpty()) {
+            return null;
+        }
+        return Arrays.stream(tagsParam.split(","))
+                .map(String::trim)
+                .filter(tag -> !tag.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    private DocumentDTO createUploadedDocument(FileStorageService.StoredFile storedFile,
+                                               String title,
+                                               String category,
+                                               String tagsParam,
+                                               CustomUserDetails currentUser) {
+        String fileName = storedFile.getFileName();
+
+        // Parse tags from request parameter (if provided)
+        Set<String> tags = parseTags(tagsParam);
+
+        // Detected from the content while storing; the declared type only refines containers
+        String fileType = storedFile.getContentType();
+
+        // Create document record without user
+        DocumentDTO.CreateDocumentRequest request = new DocumentDTO.CreateDocumentRequest();
+        request.setTitle(title);
+        request.setCategory(category);
+        request.setTags(tags);
+
+        Document document = documentMapper.toEntityWithoutUser(request);
+        document.setFilePath(fileName);
+        document.setFileType(fileType);
+        document.setFileSize(storedFile.getSize());
+        document.setContentHash(storedFile.getContentHash());
+        document.setStorageCodec(storedFile.getCodec());
+        document.setStoredSize(storedFile.getStoredSize());
+        Document savedDocument;
+        try {
+            savedDocument = documentService.createDocument(document, currentUser.getId(), tags);
+        } catch (RuntimeException ex) {
+            fileStorageService.discardUnsaved(storedFile);
+            throw ex;
+        }
+
+        log.info("File uploaded successfully: {} by user: {}", fileName, currentUser.getUsername());
+        return documentMapper.toDto(savedDocument);
+    }
     @GetMapping("/{id}/download")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
-    public ResponseEntity<Resource> downloadDocument(
+    public void downloadDocument(
             @PathVariable Long id,
-            @CurrentUser CustomUserDetails currentUser) {
+            @CurrentUser CustomUserDetails currentUser,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         Document document = documentService.getDocumentById(id)
                 .filter(doc -> doc.getUser().getId().equals(currentUser.getId())
@@ -194,24 +476,97 @@ public class DocumentController {
             throw new RuntimeException("No file associated with this document");
         }
 
-        try {
-            Path filePath = fileStorageService.getFileStorageLocation().resolve(document.getFilePath()).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (resource.exists()) {
-                String contentType = fileStorageService.getContentType(document.getFilePath());
-
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION,
-                                "attachment; filename=\"" + document.getTitle() + "\"")
-                        .body(resource);
-            } else {
-                throw new RuntimeException("File not found: " + document.getFilePath());
-            }
-        } catch (MalformedURLException e) {
-            throw new RuntimeException("File not found: " + document.getFilePath());
+        // Handles Range, If-None-Match and If-Modified-Since
+        documentDownloadService.download(document, request, response);
+    }
+
+    @PostMapping("/export")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportDocuments(
+            @Valid @RequestBody DocumentDTO.ExportDocumentsRequest request,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        // Resolved before streaming so that bad requests still get an error status
+        List<DocumentExportRepository.Entry> documents =
+                documentExportService.findDocuments(request, currentUser.getId(), admin);
+        log.info("Exporting {} documents for user: {}", documents.size(), currentUser.getUsername());
+
+        StreamingResponseBody body = outputStream -> documentExportService.writeZip(documents, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("documents.zip").build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/{id}/thumbnail")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<Resource> getThumbnail(
+            @PathVariable Long id,
+            @CurrentUser CustomUserDetails currentUser,
+            WebRequest webRequest) {
+        return previewResponse(id, PreviewService.PreviewSize.THUMBNAIL, currentUser, webRequest);
+    }
+
+    @GetMapping("/{id}/preview")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<Resource> getPreview(
+            @PathVariable Long id,
+            @CurrentUser CustomUserDetails currentUser,
+            WebRequest webRequest) {
+        return previewResponse(id, PreviewService.PreviewSize.PREVIEW, currentUser, webRequest);
+    }
+
+    /**
+     * The scan as it was uploaded, before pre-processing. Originals are only kept with
+     * file.preprocess.original-policy=KEEP.
+     */
+    @GetMapping("/{id}/original")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<Resource> getOriginal(
+            @PathVariable Long id,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        Document document = documentService.getDocumentById(id)
+                .filter(doc -> doc.getUser().getId().equals(currentUser.getId())
+                        || currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN")))
+                .orElseThrow(() -> new ResourceNotFoundException("Document", "id", id));
+        ScanPreprocessingService.Original original = scanPreprocessingService.findOriginal(document.getContentHash())
+                .orElseThrow(() -> new ResourceNotFoundException("Original scan", "document id", id));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(original.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(document.getTitle()).build().toString())
+                .body(new FileSystemResource(original.path()));
+    }
+
+    private ResponseEntity<Resource> previewResponse(Long id,
+                                                     PreviewService.PreviewSize size,
+                                                     CustomUserDetails currentUser,
+                                                     WebRequest webRequest) {
+        Document document = documentService.getDocumentById(id)
+                .filter(doc -> doc.getUser().getId().equals(currentUser.getId())
+                        || currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN")))
+                .orElseThrow(() -> new ResourceNotFoundException("Document", "id", id));
+
+        // Previews are derived from the content, so the content hash identifies them
+        CacheControl cacheControl = CacheControl.maxAge(previewProperties.getMaxAge()).cachePrivate();
+        String etag = document.getContentHash() != null
+                ? "\"" + document.getContentHash() + "-" + size.name().toLowerCase() + "\""
+                : null;
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
         }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .cacheControl(cacheControl);
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response.body(new FileSystemResource(previewService.getPreview(document, size)));
     }
 
     @PutMapping("/{id}")
@@ -248,31 +603,35 @@ public class DocumentController {
                         || currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN")))
                 .orElseThrow(() -> new ResourceNotFoundException("Document", "id", id));
 
-        // Delete associated file if exists
-        if (document.getFilePath() != null) {
-            fileStorageService.deleteFile(document.getFilePath());
+        String filePath = document.getFilePath();
+        documentService.deleteDocument(id);
+
+        // Delete associated file once the row is gone, so the reference count no longer includes it
+        if (filePath != null) {
+            fileStorageService.deleteFile(filePath);
         }
 
-        documentService.deleteDocument(id);
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Documents matching a filter expression such as
+     * {@code invoice (tag:tax OR tag:finance) date>=2024 -category:old}; plain words match the
+     * title. Returns one page, 100 documents unless requested otherwise. Admins search all
+     * documents, users their own.
+     */
     @GetMapping("/search")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
     public ResponseEntity<List<DocumentDTO>> searchDocuments(
             @RequestParam String query,
-            @CurrentUser CustomUserDetails currentUser) {
-
-        List<Document> documents = documentService.searchDocumentsByTitle(query);
+            @CurrentUser CustomUserDetails currentUser,
+            @PageableDefault(size = 100, sort = "createdAt", direction = Sort.Direction.DESC)
+            Pageable pageable) {
 
-        // Filter by current user (unless admin)
-        if (!currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"))) {
-            documents = documents.stream()
-                    .filter(doc -> doc.getUser().getId().equals(currentUser.getId()))
-                    .toList();
-        }
+        boolean admin = currentUser.getRoles().stream().anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        Page<Document> documents = documentService.filterDocuments(query, admin ? null : currentUser.getId(), pageable);
 
-        List<DocumentDTO> documentDTOs = documentMapper.toDtoList(documents);
+        List<DocumentDTO> documentDTOs = documentMapper.toSummaryDtoList(documents.getContent());
         return ResponseEntity.ok(documentDTOs);
     }
 
@@ -0,0 +1,85 @@
+package com.app.docmanager.controller;
+
+import com.app.docmanager.dto.DocumentDTO;
+import com.app.docmanager.dto.UploadSessionDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.mapper.DocumentMapper;
+import com.app.docmanager.security.CurrentUser;
+import com.app.docmanager.security.CustomUserDetails;
+import com.app.docmanager.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Resumable uploads for large scans: create a session, PUT chunks by offset
+ * (in any order, also in parallel), query the received ranges and complete it.
+ */
+@RestController
+@RequestMapping("/api/documents/upload-sessions")
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+    private final DocumentMapper documentMapper;
+
+    @PostMapping
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<UploadSessionDTO> createSession(
+            @Valid @RequestBody UploadSessionDTO.CreateUploadSessionRequest request,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        UploadSessionDTO session = uploadSessionService.createSession(currentUser.getId(), request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(session);
+    }
+
+    @GetMapping("/{sessionId}")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<UploadSessionDTO> getSession(
+            @PathVariable String sessionId,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        return ResponseEntity.ok(uploadSessionService.getSession(sessionId, currentUser.getId()));
+    }
+
+    @PutMapping("/{sessionId}/chunks")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<UploadSessionDTO> uploadChunk(
+            @PathVariable String sessionId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest httpRequest,
+            @CurrentUser CustomUserDetails currentUser) throws IOException {
+
+        UploadSessionDTO session = uploadSessionService.writeChunk(
+                sessionId, currentUser.getId(), offset, httpRequest.getInputStream());
+        return ResponseEntity.ok(session);
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<DocumentDTO> completeSession(
+            @PathVariable String sessionId,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        Document document = uploadSessionService.completeSession(sessionId, currentUser.getId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(documentMapper.toDto(document));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<Void> abortSession(
+            @PathVariable String sessionId,
+            @CurrentUser CustomUserDetails currentUser) {
+
+        uploadSessionService.abortSession(sessionId, currentUser.getId());
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.app.docmanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkUploadDTO {
+
+    private int created;
+    private int failed;
+    private List<Item> items;
+
+    public enum Status {
+        CREATED, FAILED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Item {
+        // Part file name, or archive name and entry path for archive entries
+        private String name;
+        private Status status;
+        private Long documentId;
+        private String fileType;
+        private Long fileSize;
+        // Size before scan pre-processing, null if the file was stored as received
+        private Long originalSize;
+        private boolean deduplicated;
+        private String error;
+    }
+}
@@ -1,5 +1,7 @@
 package com.app.docmanager.dto;
 
+import com.app.docmanager.entity.ExtractionStatus;
+import com.app.docmanager.entity.StorageCodec;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -29,7 +31,13 @@ public class DocumentDTO {
     private String filePath;
     private String fileType;
     private Long fileSize;
+    private String contentHash;
+    private StorageCodec storageCodec;
+    private Long storedSize;
     private String extractedText;
+    // Start of the extracted text; result lists carry this instead of extractedText
+    private String snippet;
+    private ExtractionStatus extractionStatus;
     private LocalDate documentDate;
 
     // User information (nested)
@@ -61,9 +69,7 @@ public class DocumentDTO {
         @Size(max = 100, message = "Category cannot exceed 100 characters")
         private String category;
 
-        private String filePath;
-        private String fileType;
-        private Long fileSize;
+        // File fields (path, type, size) are set by the server from the stored upload only
         private String extractedText;
         private LocalDate documentDate;
 
@@ -89,9 +95,7 @@ public class DocumentDTO {
         @Size(max = 100, message = "Category cannot exceed 100 characters")
         private String category;
 
-        private String filePath;
-        private String fileType;
-        private Long fileSize;
+        // File fields (path, type, size) are set by the server from the stored upload only
         private String extractedText;
         private LocalDate documentDate;
 
@@ -100,4 +104,21 @@ public class DocumentDTO {
         // Note: No userId field here as users cannot transfer document ownership
         // through updates for security reasons
     }
-}
\ No newline at end of file
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ExportDocumentsRequest {
+        // Criteria are combined with AND; at least one is required
+        private Set<Long> ids;
+
+        @Size(max = 100, message = "Category cannot exceed 100 characters")
+        private String category;
+
+        // Documents with any of these tags
+        private Set<String> tags;
+
+        private LocalDate documentDateFrom;
+        private LocalDate documentDateTo;
+    }
+}
@@ -0,0 +1,80 @@
+package com.app.docmanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FacetedSearchDTO {
+
+    private List<DocumentDTO> documents;
+    private int page;
+    private int size;
+    private long totalElements;
+    private int totalPages;
+    private Facets facets;
+
+    /**
+     * Query parameters; each may be repeated, values of one parameter are alternatives.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Filter {
+        // Filter expression, e.g. "invoice -tag:draft"; see DocumentFilterParser
+        private String q;
+        private Set<String> category;
+        private Set<String> tag;
+        private Set<String> fileType;
+
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+        private LocalDate documentDateFrom;
+
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+        private LocalDate documentDateTo;
+
+        // Bytes, inclusive
+        private Long minSize;
+        // Bytes, exclusive
+        private Long maxSize;
+    }
+
+    /**
+     * Counts of the documents matching the filter, most frequent first; dates newest first
+     * and sizes smallest first.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Facets {
+        private List<FacetCount> categories;
+        private List<FacetCount> tags;
+        private List<FacetCount> fileTypes;
+        // "2024"
+        private List<FacetCount> years;
+        // "2024-03"
+        private List<FacetCount> months;
+        // "minSize-maxSize" in bytes, maxSize empty for the largest bucket
+        private List<FacetCount> sizes;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class FacetCount {
+        private String value;
+        private long count;
+    }
+}
@@ -0,0 +1,37 @@
+package com.app.docmanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SearchDTO {
+
+    private String query;
+    private int page;
+    private int size;
+    private long totalHits;
+    // False when counting stopped early and totalHits is a lower bound
+    private boolean totalHitsExact;
+    private List<Hit> hits;
+    // Spelling correction of the query from the words of the titles, null if none
+    private String didYouMean;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Hit {
+        private float score;
+        // Passages around the matched words in the text, the words in <mark> tags and the
+        // rest HTML-escaped; null when only other fields matched, then show document.snippet
+        private String highlight;
+        private DocumentDTO document;
+    }
+}
@@ -0,0 +1,21 @@
+package com.app.docmanager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SuggestDTO {
+
+    private String prefix;
+    // Most used first
+    private List<String> titles;
+    private List<String> tags;
+    private List<String> categories;
+}
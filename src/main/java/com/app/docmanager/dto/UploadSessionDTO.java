@@ -0,0 +1,63 @@
+package com.app.docmanager.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionDTO {
+
+    private String id;
+    private String title;
+    private String category;
+    private String contentType;
+    private Set<String> tags;
+    private long totalSize;
+    private long receivedBytes;
+    private List<ByteRange> receivedRanges;
+    private boolean complete;
+    private LocalDateTime expiresAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ByteRange {
+        // Inclusive start, exclusive end
+        private long start;
+        private long end;
+    }
+
+    // Request DTOs
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CreateUploadSessionRequest {
+        @NotBlank(message = "Document title cannot be blank")
+        @Size(max = 255, message = "Title cannot exceed 255 characters")
+        private String title;
+
+        @Size(max = 100, message = "Category cannot exceed 100 characters")
+        private String category;
+
+        @NotNull(message = "Total size is required")
+        @Positive(message = "Total size must be positive")
+        private Long totalSize;
+
+        @Size(max = 255, message = "Content type cannot exceed 255 characters")
+        private String contentType;
+
+        private Set<String> tags;
+    }
+}
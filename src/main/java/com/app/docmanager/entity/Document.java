@@ -12,7 +12,12 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "dm_documents")
+// Serve the owner's filtered lists and facet counts without scanning other users' rows
+@Table(name = "dm_documents", indexes = {
+        @Index(name = "idx_documents_user_category", columnList = "user_id, category"),
+        @Index(name = "idx_documents_user_file_type", columnList = "user_id, file_type"),
+        @Index(name = "idx_documents_user_document_date", columnList = "user_id, document_date")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -22,6 +27,10 @@ import java.util.Set;
 @ToString(exclude = {"tags", "user"})
 public class Document extends BaseEntity {
 
+    static final int SNIPPET_LENGTH = 300;
+    // How much text is read to find the snippet, generous for runs of whitespace
+    private static final int SNIPPET_SCAN_LENGTH = 4 * SNIPPET_LENGTH;
+
     @NotBlank(message = "Document title cannot be blank")
     @Size(max = 255, message = "Title cannot exceed 255 characters")
     @Column(name = "title", nullable = false)
@@ -35,17 +44,38 @@ public class Document extends BaseEntity {
     @Column(name = "file_path", length = 500)
     private String filePath;
 
-    @Size(max = 50, message = "File type cannot exceed 50 characters")
-    @Column(name = "file_type", length = 50)
+    @Size(max = 255, message = "File type cannot exceed 255 characters")
+    @Column(name = "file_type", length = 255)
     private String fileType;
 
     @Column(name = "file_size")
     private Long fileSize;
 
+    @Size(max = 64, message = "Content hash cannot exceed 64 characters")
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // How the file is encoded on disk; fileSize stays the original size
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage_codec", length = 20)
+    private StorageCodec storageCodec;
+
+    @Column(name = "stored_size")
+    private Long storedSize;
+
     @Lob
     @Column(name = "extracted_text", columnDefinition = "TEXT")
     private String extractedText;
 
+    // Start of the extracted text, shown in result lists instead of the whole text
+    @Column(name = "snippet", length = 320)
+    private String snippet;
+
+    // Set while text is extracted in the background; null when the type has no extractor
+    @Enumerated(EnumType.STRING)
+    @Column(name = "extraction_status", length = 20)
+    private ExtractionStatus extractionStatus;
+
     @Column(name = "document_date")
     private LocalDate documentDate;
 
@@ -85,6 +115,35 @@ public class Document extends BaseEntity {
         this.tags = new HashSet<>();
     }
 
+    @PrePersist
+    @PreUpdate
+    void updateSnippet() {
+        this.snippet = leadingSnippet(extractedText);
+    }
+
+    /**
+     * The start of the text with whitespace collapsed, cut after a whole word; null when
+     * there is no text.
+     */
+    public static String leadingSnippet(String text) {
+        if (text == null) {
+            return null;
+        }
+        String start = text.substring(0, Math.min(text.length(), SNIPPET_SCAN_LENGTH)).strip()
+                .replaceAll("\\s+", " ");
+        if (start.isEmpty()) {
+            return null;
+        }
+        if (start.length() <= SNIPPET_LENGTH && text.length() <= SNIPPET_SCAN_LENGTH) {
+            return start;
+        }
+        int end = start.lastIndexOf(' ', SNIPPET_LENGTH);
+        if (end < SNIPPET_LENGTH / 2) {
+            end = Math.min(start.length(), SNIPPET_LENGTH);
+        }
+        return start.substring(0, end) + "…";
+    }
+
     // Utility methods for managing tags
     public void addTag(Tag tag) {
         this.tags.add(tag);
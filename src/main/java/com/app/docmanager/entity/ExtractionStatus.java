@@ -0,0 +1,11 @@
+package com.app.docmanager.entity;
+
+/**
+ * Progress of the background text extraction of a document. Documents whose type has no
+ * extractor have no status.
+ */
+public enum ExtractionStatus {
+    PENDING,
+    DONE,
+    FAILED
+}
@@ -0,0 +1,29 @@
+package com.app.docmanager.entity;
+
+/**
+ * Encoding of a stored file on disk. The codec name doubles as HTTP content-coding.
+ */
+public enum StorageCodec {
+    NONE("", null),
+    GZIP(".gz", "gzip");
+
+    private final String fileSuffix;
+    private final String contentEncoding;
+
+    StorageCodec(String fileSuffix, String contentEncoding) {
+        this.fileSuffix = fileSuffix;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getFileSuffix() {
+        return fileSuffix;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public static StorageCodec orNone(StorageCodec codec) {
+        return codec != null ? codec : NONE;
+    }
+}
@@ -0,0 +1,8 @@
+package com.app.docmanager.event;
+
+/**
+ * Published when a document row has been updated or deleted. Listeners reload the document
+ * by id; if it is gone, it was deleted.
+ */
+public record DocumentChangedEvent(Long documentId) {
+}
@@ -0,0 +1,29 @@
+package com.app.docmanager.event;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.ExtractionStatus;
+import com.app.docmanager.entity.StorageCodec;
+
+/**
+ * Published when a document row has been saved. Listeners that do follow-up work on the
+ * file (previews, text extraction, indexing) should run after the transaction commits.
+ */
+public record DocumentCreatedEvent(Long documentId,
+                                   Long userId,
+                                   String filePath,
+                                   String contentHash,
+                                   String fileType,
+                                   StorageCodec storageCodec,
+                                   ExtractionStatus extractionStatus) {
+
+    public static DocumentCreatedEvent of(Document document) {
+        return new DocumentCreatedEvent(
+                document.getId(),
+                document.getUser() != null ? document.getUser().getId() : null,
+                document.getFilePath(),
+                document.getContentHash(),
+                document.getFileType(),
+                document.getStorageCodec(),
+                document.getExtractionStatus());
+    }
+}
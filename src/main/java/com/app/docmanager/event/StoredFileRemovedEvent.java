@@ -0,0 +1,9 @@
+package com.app.docmanager.event;
+
+/**
+ * Published while a stored file is deleted or quarantined because no document references
+ * it anymore. Listeners run under the stored name's lock, before a new upload of the same
+ * content can commit, and remove whatever they keep alongside the file.
+ */
+public record StoredFileRemovedEvent(String fileName, String contentHash) {
+}
@@ -0,0 +1,14 @@
+package com.app.docmanager.event;
+
+import java.util.Set;
+
+/**
+ * Published when tags have been created, renamed or deleted, with the documents whose tag
+ * names changed as a result.
+ */
+public record TagsChangedEvent(Set<Long> documentIds) {
+
+    public TagsChangedEvent() {
+        this(Set.of());
+    }
+}
@@ -0,0 +1,8 @@
+// InvalidRequestException.java
+package com.app.docmanager.exception;
+
+public class InvalidRequestException extends RuntimeException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
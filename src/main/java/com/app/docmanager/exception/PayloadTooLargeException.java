@@ -0,0 +1,12 @@
+// PayloadTooLargeException.java
+package com.app.docmanager.exception;
+
+public class PayloadTooLargeException extends RuntimeException {
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+
+    public PayloadTooLargeException(long limit) {
+        super(String.format("Upload exceeds the limit of %d bytes", limit));
+    }
+}
@@ -32,7 +32,12 @@ public class DocumentMapper {
                 .filePath(document.getFilePath())
                 .fileType(document.getFileType())
                 .fileSize(document.getFileSize())
+                .contentHash(document.getContentHash())
+                .storageCodec(document.getStorageCodec())
+                .storedSize(document.getStoredSize())
                 .extractedText(document.getExtractedText())
+                .snippet(document.getSnippet())
+                .extractionStatus(document.getExtractionStatus())
                 .documentDate(document.getDocumentDate())
                 .user(userMapper.toUserInfo(document.getUser()))
                 .tags(mapTagsToStrings(document.getTags()))
@@ -53,9 +58,6 @@ public class DocumentMapper {
         return Document.builder()
                 .title(request.getTitle())
                 .category(request.getCategory())
-                .filePath(request.getFilePath())
-                .fileType(request.getFileType())
-                .fileSize(request.getFileSize())
                 .extractedText(request.getExtractedText())
                 .documentDate(request.getDocumentDate())
                 .build();
@@ -78,15 +80,6 @@ public class DocumentMapper {
         if (request.getCategory() != null) {
             existingDocument.setCategory(request.getCategory());
         }
-        if (request.getFilePath() != null) {
-            existingDocument.setFilePath(request.getFilePath());
-        }
-        if (request.getFileType() != null) {
-            existingDocument.setFileType(request.getFileType());
-        }
-        if (request.getFileSize() != null) {
-            existingDocument.setFileSize(request.getFileSize());
-        }
         if (request.getExtractedText() != null) {
             existingDocument.setExtractedText(request.getExtractedText());
         }
@@ -110,6 +103,28 @@ public class DocumentMapper {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Convert Document entity to DocumentDTO for result lists, with the snippet but
+     * without the extracted text
+     */
+    public DocumentDTO toSummaryDto(Document document) {
+        DocumentDTO documentDTO = toDto(document);
+        if (documentDTO != null) {
+            documentDTO.setExtractedText(null);
+        }
+        return documentDTO;
+    }
+
+    public List<DocumentDTO> toSummaryDtoList(List<Document> documents) {
+        if (documents == null) {
+            return null;
+        }
+
+        return documents.stream()
+                .map(this::toSummaryDto)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Helper method to convert Set<Tag> to Set<String>
      */
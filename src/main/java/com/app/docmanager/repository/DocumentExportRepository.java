@@ -0,0 +1,60 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The columns an export archive needs of the documents matching a {@link Specification}.
+ * Only these are selected, so the extracted text of a large selection is never loaded.
+ */
+@Repository
+public class DocumentExportRepository {
+
+    public record Entry(Long id,
+                        String title,
+                        String filePath,
+                        String fileType,
+                        StorageCodec storageCodec,
+                        LocalDateTime createdAt) {
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The matching documents in id order.
+     */
+    public List<Entry> findEntries(Specification<Document> specification) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Document> root = query.from(Document.class);
+
+        query.multiselect(root.get("id"), root.get("title"), root.get("filePath"), root.get("fileType"),
+                        root.get("storageCodec"), root.get("createdAt"))
+                .orderBy(cb.asc(root.get("id")));
+        if (specification != null) {
+            query.where(specification.toPredicate(root, query, cb));
+        }
+
+        return entityManager.createQuery(query).getResultList().stream()
+                .map(tuple -> new Entry(
+                        tuple.get(0, Long.class),
+                        tuple.get(1, String.class),
+                        tuple.get(2, String.class),
+                        tuple.get(3, String.class),
+                        tuple.get(4, StorageCodec.class),
+                        tuple.get(5, LocalDateTime.class)))
+                .toList();
+    }
+}
@@ -0,0 +1,108 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Facet counts over the documents matching a {@link Specification}, each computed with one
+ * GROUP BY query that returns only values and counts. Counts are of distinct documents, as
+ * tag filters and the tag facet join a document once per tag.
+ */
+@Repository
+public class DocumentFacetRepository {
+
+    public record Count<T>(T value, long count) {
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The most frequent values of a document attribute, e.g. category or fileType.
+     */
+    public List<Count<String>> countByAttribute(Specification<Document> specification, String attribute, int limit) {
+        return countBy(specification, (root, cb) -> root.get(attribute), String.class, limit);
+    }
+
+    public List<Count<String>> countByTag(Specification<Document> specification, int limit) {
+        return countBy(specification, (root, cb) -> {
+            Join<Document, Tag> tags = root.join("tags");
+            return tags.get("name");
+        }, String.class, limit);
+    }
+
+    /**
+     * Counts per document date; there are at most a few hundred distinct dates a year, so
+     * callers fold them into months and years.
+     */
+    public List<Count<LocalDate>> countByDocumentDate(Specification<Document> specification) {
+        return countBy(specification, (root, cb) -> root.get("documentDate"), LocalDate.class, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Counts per file size bucket. Bucket i holds sizes from bounds[i - 1] (0 for the
+     * first) up to, but excluding, bounds[i]; the last bucket, index bounds.length, holds
+     * everything larger.
+     */
+    public List<Count<Integer>> countByFileSize(Specification<Document> specification, long[] bounds) {
+        return countBy(specification, (root, cb) -> {
+            Expression<Long> fileSize = root.get("fileSize");
+            // Documents without a size fall out as null
+            CriteriaBuilder.Case<Integer> bucket = cb.<Integer>selectCase()
+                    .when(cb.isNull(fileSize), cb.nullLiteral(Integer.class));
+            for (int i = 0; i < bounds.length; i++) {
+                bucket = bucket.when(cb.lessThan(fileSize, bounds[i]), i);
+            }
+            return bucket.otherwise(bounds.length);
+        }, Integer.class, Integer.MAX_VALUE);
+    }
+
+    private <T> List<Count<T>> countBy(Specification<Document> specification,
+                                       BiFunction<Root<Document>, CriteriaBuilder, Expression<?>> group,
+                                       Class<T> type,
+                                       int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Document> root = query.from(Document.class);
+        Expression<?> value = group.apply(root, cb);
+        Expression<Long> count = cb.countDistinct(root.get("id"));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        predicates.add(cb.isNotNull(value));
+
+        query.multiselect(value, count)
+                .where(predicates.toArray(Predicate[]::new))
+                .groupBy(value)
+                .orderBy(cb.desc(count))
+                // Grouping makes the rows distinct already
+                .distinct(false);
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList().stream()
+                .map(tuple -> new Count<>(type.cast(tuple.get(0)), tuple.get(1, Long.class)))
+                .toList();
+    }
+}
@@ -0,0 +1,189 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.ExtractionStatus;
+import com.app.docmanager.entity.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch writes that would otherwise cost a statement per row: inserts for bulk ingest and
+ * results of background processing. Document ids are IDENTITY columns, which keeps
+ * Hibernate from batching inserts, so rows are written with JDBC batches and the generated
+ * keys read back.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DocumentJdbcRepository {
+
+    private static final String INSERT_DOCUMENT = "INSERT INTO dm_documents "
+            + "(title, category, file_path, file_type, file_size, content_hash, storage_codec, stored_size, "
+            + "extraction_status, document_date, user_id, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DOCUMENT_TAG = "INSERT INTO document_tags (document_id, tag_id) VALUES (?, ?)";
+    // Text a user has set meanwhile is not overwritten: setting it ends the PENDING state
+    private static final String UPDATE_EXTRACTION = "UPDATE dm_documents "
+            + "SET extracted_text = ?, snippet = ?, extraction_status = ?, updated_at = ? "
+            + "WHERE id = ? AND extraction_status = 'PENDING'";
+    private static final String SELECT_MISSING_SNIPPETS = "SELECT id, extracted_text FROM dm_documents "
+            + "WHERE id > ? AND snippet IS NULL AND extracted_text IS NOT NULL ORDER BY id LIMIT ?";
+    private static final String UPDATE_SNIPPET = "UPDATE dm_documents SET snippet = ? WHERE id = ?";
+    // Byte order on PostgreSQL, whose default collation (e.g. en_US) sorts unlike Java Strings
+    private static final String SELECT_FILE_PATHS_POSTGRES = "SELECT DISTINCT file_path COLLATE \"C\" AS path "
+            + "FROM dm_documents WHERE file_path COLLATE \"C\" > ? ORDER BY path LIMIT ?";
+    private static final String SELECT_FILE_PATHS = "SELECT DISTINCT file_path AS path "
+            + "FROM dm_documents WHERE file_path > ? ORDER BY path LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    /**
+     * Insert the documents, all owned by {@code userId} and tagged with {@code tags}, in
+     * batches of {@code batchSize}. Ids and timestamps are set on the given instances.
+     */
+    public void insertAll(List<Document> documents, Long userId, Collection<Tag> tags, int batchSize) {
+        LocalDateTime now = LocalDateTime.now();
+        for (int start = 0; start < documents.size(); start += batchSize) {
+            List<Document> batch = documents.subList(start, Math.min(start + batchSize, documents.size()));
+            insertBatch(batch, userId, now);
+            if (!tags.isEmpty()) {
+                insertTags(batch, tags);
+            }
+        }
+    }
+
+    private void insertBatch(List<Document> batch, Long userId, LocalDateTime now) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_DOCUMENT, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Document document = batch.get(i);
+                        ps.setString(1, document.getTitle());
+                        ps.setString(2, document.getCategory());
+                        ps.setString(3, document.getFilePath());
+                        ps.setString(4, document.getFileType());
+                        setLong(ps, 5, document.getFileSize());
+                        ps.setString(6, document.getContentHash());
+                        ps.setString(7, document.getStorageCodec() != null ? document.getStorageCodec().name() : null);
+                        setLong(ps, 8, document.getStoredSize());
+                        ps.setString(9, document.getExtractionStatus() != null
+                                ? document.getExtractionStatus().name() : null);
+                        if (document.getDocumentDate() != null) {
+                            ps.setDate(10, Date.valueOf(document.getDocumentDate()));
+                        } else {
+                            ps.setNull(10, Types.DATE);
+                        }
+                        ps.setLong(11, userId);
+                        ps.setTimestamp(12, Timestamp.valueOf(now));
+                        ps.setTimestamp(13, Timestamp.valueOf(now));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != batch.size()) {
+            throw new IllegalStateException("Expected " + batch.size() + " generated ids, got " + keys.size());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            // Only the id column was requested, whatever case the driver reports it in
+            Number id = (Number) keys.get(i).values().iterator().next();
+            batch.get(i).setId(id.longValue());
+            batch.get(i).setCreatedAt(now);
+            batch.get(i).setUpdatedAt(now);
+        }
+    }
+
+    private void insertTags(List<Document> batch, Collection<Tag> tags) {
+        List<Object[]> rows = new ArrayList<>(batch.size() * tags.size());
+        for (Document document : batch) {
+            for (Tag tag : tags) {
+                rows.add(new Object[]{document.getId(), tag.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_DOCUMENT_TAG, rows);
+    }
+
+    /**
+     * Write extraction results of documents that are still pending.
+     */
+    public void updateExtractionResults(List<ExtractionResult> results) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPDATE_EXTRACTION, results, results.size(), (ps, result) -> {
+            ps.setString(1, result.text());
+            ps.setString(2, Document.leadingSnippet(result.text()));
+            ps.setString(3, result.status().name());
+            ps.setTimestamp(4, now);
+            ps.setLong(5, result.documentId());
+        });
+    }
+
+    /**
+     * Store the leading snippet of up to {@code limit} documents after the given id that
+     * have text but no snippet yet, such as those extracted before snippets were kept.
+     *
+     * @return the last id read, or -1 when there were none
+     */
+    public long fillMissingSnippets(long after, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        jdbcTemplate.query(SELECT_MISSING_SNIPPETS, rs -> {
+            rows.add(new Object[]{Document.leadingSnippet(rs.getString("extracted_text")), rs.getLong("id")});
+        }, after, limit);
+        if (rows.isEmpty()) {
+            return -1;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SNIPPET, rows);
+        return (Long) rows.get(rows.size() - 1)[1];
+    }
+
+    /**
+     * Keyset page of referenced files after {@code after}, in the order of
+     * {@link String#compareTo}, for reconciling with the sorted storage listing.
+     */
+    public List<String> findFilePathsAfter(String after, int limit) {
+        return jdbcTemplate.queryForList(isPostgres() ? SELECT_FILE_PATHS_POSTGRES : SELECT_FILE_PATHS,
+                String.class, after, limit);
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            postgres = "PostgreSQL".equalsIgnoreCase(product);
+        }
+        return postgres;
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+
+    public record ExtractionResult(Long documentId, ExtractionStatus status, String text) {
+    }
+}
@@ -1,21 +1,58 @@
 package com.app.docmanager.repository;
 
 import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.ExtractionStatus;
 import com.app.docmanager.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface DocumentRepository extends JpaRepository<Document, Long> {
+public interface DocumentRepository extends JpaRepository<Document, Long>, JpaSpecificationExecutor<Document> {
     List<Document> findByUser(User user);
     List<Document> findByUserIdAndCategory(Long userId, String category);
     List<Document> findByUserIdOrderByCreatedAtDesc(Long userId);
 
+    long countByUserId(Long userId);
+
+    // Reference count for content-addressed files
+    long countByFilePath(String filePath);
+
+    // Whether a file was ingested before, e.g. by a hot folder run that was interrupted
+    boolean existsByUserIdAndContentHashAndTitle(Long userId, String contentHash, String title);
+
+    // Keyset page of documents waiting for text extraction
+    List<Document> findByExtractionStatusAndIdGreaterThanOrderByIdAsc(ExtractionStatus extractionStatus,
+                                                                      Long id,
+                                                                      Pageable pageable);
+
+    // Documents with their tags, for the search index, which reads them outside a transaction
+    @EntityGraph(attributePaths = "tags")
+    List<Document> findWithTagsByIdIn(Collection<Long> ids);
+
+    // Keyset page of document ids, for rebuilding the search index
+    @Query("SELECT d.id FROM Document d WHERE d.id > :after ORDER BY d.id")
+    List<Long> findIdsAfter(@Param("after") Long after, Pageable pageable);
+
+    @Query("SELECT d.id FROM Document d WHERE d.updatedAt >= :since")
+    List<Long> findIdsUpdatedSince(@Param("since") LocalDateTime since);
+
+    // Which of the ids still exist, for removing deleted documents from the search index
+    @Query("SELECT d.id FROM Document d WHERE d.id IN :ids")
+    List<Long> findIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT d.id FROM Document d WHERE d.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+
     // New paginated methods
     Page<Document> findByUserId(Long userId, Pageable pageable);
 
@@ -23,14 +60,4 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
 
     @Query("SELECT d FROM Document d WHERE d.user.id = :userId ORDER BY d.createdAt DESC")
     Page<Document> findByUserIdOrderByCreatedAtDesc(@Param("userId") Long userId, Pageable pageable);
-
-    @Query("SELECT d FROM Document d WHERE d.user.id = :userId AND " +
-            "LOWER(d.title) LIKE LOWER(CONCAT('%', :query, '%'))")
-    Page<Document> searchByUserIdAndTitle(@Param("userId") Long userId,
-                                          @Param("query") String query,
-                                          Pageable pageable);
-
-    // Global search (for admins)
-    @Query("SELECT d FROM Document d WHERE LOWER(d.title) LIKE LOWER(CONCAT('%', :query, '%'))")
-    Page<Document> searchByTitle(@Param("query") String query, Pageable pageable);
 }
\ No newline at end of file
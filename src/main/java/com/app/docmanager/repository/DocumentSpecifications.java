@@ -0,0 +1,157 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Composable filters for {@link DocumentRepository#findAll(Specification)}. Each returns null
+ * when its argument is empty, which Specification.allOf treats as "no restriction".
+ */
+public final class DocumentSpecifications {
+
+    private DocumentSpecifications() {
+    }
+
+    public static Specification<Document> ownedBy(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("user").get("id"), userId);
+    }
+
+    public static Specification<Document> idIn(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
+    public static Specification<Document> hasCategory(String category) {
+        if (category == null || category.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("category"), category);
+    }
+
+    /**
+     * Case-insensitive substring of the title. On PostgreSQL the trigram index on
+     * lower(title) serves this without scanning the table.
+     */
+    public static Specification<Document> titleContains(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String pattern = "%" + escapeLike(text.toLowerCase()) + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("title")), pattern, '\\');
+    }
+
+    public static Specification<Document> ownedByUsername(String username) {
+        if (username == null || username.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("user").get("username"), username);
+    }
+
+    /**
+     * Documents carrying the tag, as a subquery so that several of these can be combined
+     * with AND and NOT.
+     */
+    public static Specification<Document> hasTag(String tagName) {
+        if (tagName == null || tagName.isBlank()) {
+            return null;
+        }
+        String normalized = tagName.toLowerCase().trim();
+        return (root, query, cb) -> {
+            Subquery<Long> tagged = query.subquery(Long.class);
+            Root<Document> document = tagged.from(Document.class);
+            Join<Document, Tag> tags = document.join("tags");
+            tagged.select(document.get("id"))
+                    .where(cb.equal(document.get("id"), root.get("id")), cb.equal(tags.get("name"), normalized));
+            return cb.exists(tagged);
+        };
+    }
+
+    public static Specification<Document> fileTypeStartsWith(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        String pattern = escapeLike(prefix) + "%";
+        return (root, query, cb) -> cb.like(root.get("fileType"), pattern, '\\');
+    }
+
+    public static Specification<Document> hasAnyCategory(Collection<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> root.get("category").in(categories);
+    }
+
+    public static Specification<Document> hasAnyFileType(Collection<String> fileTypes) {
+        if (fileTypes == null || fileTypes.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> root.get("fileType").in(fileTypes);
+    }
+
+    /**
+     * Documents of at least {@code min} and less than {@code max} bytes.
+     */
+    public static Specification<Document> fileSizeBetween(Long min, Long max) {
+        if (min == null && max == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            if (min == null) {
+                return cb.lessThan(root.get("fileSize"), max);
+            }
+            if (max == null) {
+                return cb.greaterThanOrEqualTo(root.get("fileSize"), min);
+            }
+            return cb.and(cb.greaterThanOrEqualTo(root.get("fileSize"), min), cb.lessThan(root.get("fileSize"), max));
+        };
+    }
+
+    /**
+     * Documents carrying at least one of the tags. Names are normalized like TagService does.
+     */
+    public static Specification<Document> hasAnyTag(Collection<String> tagNames) {
+        if (tagNames == null || tagNames.isEmpty()) {
+            return null;
+        }
+        Collection<String> normalized = tagNames.stream()
+                .map(name -> name.toLowerCase().trim())
+                .toList();
+        return (root, query, cb) -> {
+            // The join repeats a document once per matching tag
+            query.distinct(true);
+            Join<Document, Tag> tags = root.join("tags");
+            return tags.get("name").in(normalized);
+        };
+    }
+
+    public static Specification<Document> documentDateBetween(LocalDate from, LocalDate to) {
+        if (from == null && to == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            if (from == null) {
+                return cb.lessThanOrEqualTo(root.get("documentDate"), to);
+            }
+            if (to == null) {
+                return cb.greaterThanOrEqualTo(root.get("documentDate"), from);
+            }
+            return cb.between(root.get("documentDate"), from, to);
+        };
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
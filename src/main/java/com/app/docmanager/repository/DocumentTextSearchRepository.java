@@ -0,0 +1,187 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.config.SearchProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search in the database, for deployments without the embedded index. On
+ * PostgreSQL documents carry a generated, weighted tsvector over title (A), category (B)
+ * and extracted text (C) with a GIN index; queries use websearch_to_tsquery and are ranked
+ * with ts_rank. The column and its index are created by the scripts in
+ * db/migration/postgresql, not at startup: adding the column rewrites the table and the
+ * index is built concurrently. Other databases (H2 in development and tests), and
+ * PostgreSQL before the scripts ran, fall back to LIKE matching of every word, which scans
+ * the table.
+ */
+@Repository
+@Slf4j
+public class DocumentTextSearchRepository {
+
+    private static final Pattern TEXT_SEARCH_CONFIG = Pattern.compile("[a-z_]+");
+    private static final Pattern REGCONFIG_LITERAL = Pattern.compile("'([^']*)'::regconfig");
+    private static final String SEARCH_COLUMN = " FROM information_schema.columns "
+            + "WHERE table_schema = current_schema() AND table_name = 'dm_documents' "
+            + "AND column_name = 'search_vector'";
+    private static final int MAX_FALLBACK_WORDS = 8;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchProperties searchProperties;
+    private volatile Boolean postgres;
+    private volatile Boolean searchColumn;
+
+    public DocumentTextSearchRepository(JdbcTemplate jdbcTemplate, SearchProperties searchProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchProperties = searchProperties;
+        if (!TEXT_SEARCH_CONFIG.matcher(searchProperties.getTextSearchConfig()).matches()) {
+            throw new IllegalStateException("Invalid text search configuration: "
+                    + searchProperties.getTextSearchConfig());
+        }
+    }
+
+    /**
+     * Report whether the migration scripts have been applied, and refuse to start when the
+     * column was generated with another text search configuration than queries use, which
+     * would stem documents and queries differently.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkSearchColumn() {
+        if (searchProperties.getMode() != SearchProperties.Mode.DATABASE || !isPostgres()) {
+            return;
+        }
+        if (hasSearchColumn()) {
+            String expression = jdbcTemplate.queryForObject("SELECT generation_expression" + SEARCH_COLUMN,
+                    String.class);
+            if (!usesTextSearchConfig(expression, searchProperties.getTextSearchConfig())) {
+                throw new IllegalStateException("dm_documents.search_vector is not generated with the text search "
+                        + "configuration '" + searchProperties.getTextSearchConfig()
+                        + "' of file.search.text-search-config: " + expression);
+            }
+            log.info("Full-text search column ready ({})", searchProperties.getTextSearchConfig());
+        } else {
+            log.error("dm_documents.search_vector is missing, searches scan the table until the scripts "
+                    + "in db/migration/postgresql are applied and the application is restarted");
+        }
+    }
+
+    /**
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public SearchHits search(String query, Long userId, int offset, int limit) {
+        return isPostgres() && hasSearchColumn()
+                ? searchPostgres(query, userId, offset, limit)
+                : searchFallback(query, userId, offset, limit);
+    }
+
+    private SearchHits searchPostgres(String query, Long userId, int offset, int limit) {
+        String ownerClause = userId != null ? " AND d.user_id = ?" : "";
+        List<Object> parameters = new ArrayList<>(List.of(searchProperties.getTextSearchConfig(), query));
+        if (userId != null) {
+            parameters.add(userId);
+        }
+
+        Long total = jdbcTemplate.queryForObject("SELECT count(*) FROM dm_documents d "
+                        + "WHERE d.search_vector @@ websearch_to_tsquery(CAST(? AS regconfig), ?)" + ownerClause,
+                Long.class, parameters.toArray());
+
+        parameters.add(limit);
+        parameters.add(offset);
+        List<SearchHits.Hit> hits = jdbcTemplate.query("SELECT d.id, ts_rank(d.search_vector, q.query) AS score "
+                        + "FROM dm_documents d CROSS JOIN websearch_to_tsquery(CAST(? AS regconfig), ?) AS q(query) "
+                        + "WHERE d.search_vector @@ q.query" + ownerClause + " "
+                        + "ORDER BY score DESC, d.id DESC LIMIT ? OFFSET ?",
+                (rs, rowNum) -> new SearchHits.Hit(rs.getLong("id"), rs.getFloat("score")),
+                parameters.toArray());
+        return new SearchHits(total != null ? total : 0, true, hits);
+    }
+
+    /**
+     * Every word must occur in the title, category or text; words in the title rank higher.
+     */
+    private SearchHits searchFallback(String query, Long userId, int offset, int limit) {
+        List<String> patterns = Arrays.stream(query.toLowerCase(Locale.ROOT).split("\\s+"))
+                .filter(word -> !word.isEmpty())
+                .limit(MAX_FALLBACK_WORDS)
+                .map(word -> "%" + word.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%")
+                .toList();
+        if (patterns.isEmpty()) {
+            return new SearchHits(0, true, List.of());
+        }
+
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        StringBuilder score = new StringBuilder("0");
+        List<Object> whereParameters = new ArrayList<>();
+        List<Object> scoreParameters = new ArrayList<>();
+        for (String pattern : patterns) {
+            where.append(" AND (LOWER(d.title) LIKE ? ESCAPE '\\' OR LOWER(d.category) LIKE ? ESCAPE '\\'"
+                    + " OR LOWER(d.extracted_text) LIKE ? ESCAPE '\\')");
+            whereParameters.addAll(List.of(pattern, pattern, pattern));
+            score.append(" + CASE WHEN LOWER(d.title) LIKE ? ESCAPE '\\' THEN 1 ELSE 0 END");
+            scoreParameters.add(pattern);
+        }
+        if (userId != null) {
+            where.append(" AND d.user_id = ?");
+            whereParameters.add(userId);
+        }
+
+        Long total = jdbcTemplate.queryForObject("SELECT count(*) FROM dm_documents d" + where,
+                Long.class, whereParameters.toArray());
+
+        List<Object> parameters = new ArrayList<>(scoreParameters);
+        parameters.addAll(whereParameters);
+        parameters.add(limit);
+        parameters.add(offset);
+        List<SearchHits.Hit> hits = jdbcTemplate.query("SELECT d.id, (" + score + ") AS score FROM dm_documents d"
+                        + where + " ORDER BY score DESC, d.id DESC LIMIT ? OFFSET ?",
+                (rs, rowNum) -> new SearchHits.Hit(rs.getLong("id"), rs.getFloat("score")),
+                parameters.toArray());
+        return new SearchHits(total != null ? total : 0, true, hits);
+    }
+
+    private boolean hasSearchColumn() {
+        if (searchColumn == null) {
+            Integer columns = jdbcTemplate.queryForObject("SELECT count(*)" + SEARCH_COLUMN, Integer.class);
+            searchColumn = columns != null && columns > 0;
+        }
+        return searchColumn;
+    }
+
+    /**
+     * Whether every text search configuration named in the column's generation expression
+     * is {@code config}.
+     */
+    static boolean usesTextSearchConfig(String generationExpression, String config) {
+        if (generationExpression == null) {
+            return false;
+        }
+        Matcher literal = REGCONFIG_LITERAL.matcher(generationExpression);
+        boolean found = false;
+        while (literal.find()) {
+            if (!literal.group(1).equals(config)) {
+                return false;
+            }
+            found = true;
+        }
+        return found;
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            postgres = "PostgreSQL".equalsIgnoreCase(product);
+        }
+        return postgres;
+    }
+}
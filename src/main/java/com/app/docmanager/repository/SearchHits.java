@@ -0,0 +1,22 @@
+package com.app.docmanager.repository;
+
+import java.util.List;
+
+/**
+ * A ranked page of matching document or tag ids, best first.
+ *
+ * @param totalHitsExact false when counting stopped early and totalHits is a lower bound
+ */
+public record SearchHits(long totalHits, boolean totalHitsExact, List<Hit> hits) {
+
+    /**
+     * @param highlight passages of the text around the matched words, with the words in
+     *                  &lt;mark&gt; tags and the rest HTML-escaped; null when the text did not match
+     */
+    public record Hit(long id, float score, String highlight) {
+
+        public Hit(long id, float score) {
+            this(id, score, null);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.app.docmanager.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads what the in-memory tag and suggestion indexes keep per document: owner, title,
+ * category and tag ids. Only narrow columns and the join table are read, never the document
+ * entities.
+ */
+@Repository
+public class TagIndexRepository {
+
+    public record Entry(long id, long userId, String title, String category, List<Long> tagIds) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TagIndexRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Keyset page of documents in ascending id order.
+     */
+    public List<Entry> findAfter(long after, int limit) {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT id, user_id, title, category FROM dm_documents WHERE id > ? ORDER BY id LIMIT ?",
+                rs -> {
+                    entries.put(rs.getLong("id"), new Entry(rs.getLong("id"), rs.getLong("user_id"),
+                            rs.getString("title"), rs.getString("category"), new ArrayList<>()));
+                }, after, limit);
+        List<Entry> page = List.copyOf(entries.values());
+        if (!page.isEmpty()) {
+            long last = page.get(page.size() - 1).id();
+            // A range instead of an IN list, served by the join table's primary key
+            jdbcTemplate.query("SELECT document_id, tag_id FROM document_tags WHERE document_id > ? AND document_id <= ?",
+                    rs -> {
+                        Entry entry = entries.get(rs.getLong("document_id"));
+                        if (entry != null) {
+                            entry.tagIds().add(rs.getLong("tag_id"));
+                        }
+                    }, after, last);
+        }
+        return page;
+    }
+
+    /**
+     * The documents that still exist among the given ids.
+     */
+    public List<Entry> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        Map<Long, Entry> entries = new HashMap<>();
+        jdbcTemplate.query("SELECT id, user_id, title, category FROM dm_documents WHERE id IN (" + placeholders + ")",
+                rs -> {
+                    entries.put(rs.getLong("id"), new Entry(rs.getLong("id"), rs.getLong("user_id"),
+                            rs.getString("title"), rs.getString("category"), new ArrayList<>()));
+                }, ids.toArray());
+        jdbcTemplate.query("SELECT document_id, tag_id FROM document_tags WHERE document_id IN (" + placeholders + ")",
+                rs -> {
+                    Entry entry = entries.get(rs.getLong("document_id"));
+                    if (entry != null) {
+                        entry.tagIds().add(rs.getLong("tag_id"));
+                    }
+                }, ids.toArray());
+        return List.copyOf(entries.values());
+    }
+
+    /**
+     * Keyset page of document ids in ascending order.
+     */
+    public List<Long> findIdsAfter(long after, int limit) {
+        return jdbcTemplate.queryForList("SELECT id FROM dm_documents WHERE id > ? ORDER BY id LIMIT ?",
+                Long.class, after, limit);
+    }
+
+    public Map<String, Long> findTagIds() {
+        Map<String, Long> tagIds = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM dm_tags",
+                rs -> {
+                    tagIds.put(rs.getString("name"), rs.getLong("id"));
+                });
+        return tagIds;
+    }
+}
@@ -22,21 +22,18 @@ public interface TagRepository extends JpaRepository<Tag, Long> {
     List<Tag> findByNameIn(Set<String> names);
 
     // New paginated methods
-    @Query("SELECT t FROM Tag t WHERE t.name LIKE %:name%")
-    Page<Tag> findByNameContainingIgnoreCase(@Param("name") String name, Pageable pageable);
-
     @Query("SELECT t FROM Tag t JOIN t.documents d WHERE d.user.id = :userId")
     Page<Tag> findTagsByUserId(@Param("userId") Long userId, Pageable pageable);
 
     @Query("SELECT t FROM Tag t WHERE SIZE(t.documents) = 0")
     Page<Tag> findUnusedTags(Pageable pageable);
 
-    @Query("SELECT t FROM Tag t WHERE t.name LIKE %:name%")
-    List<Tag> findByNameContainingIgnoreCase(@Param("name") String name);
-
     @Query("SELECT t FROM Tag t JOIN t.documents d WHERE d.user.id = :userId")
     List<Tag> findTagsByUserId(@Param("userId") Long userId);
 
     @Query("SELECT t FROM Tag t WHERE SIZE(t.documents) = 0")
     List<Tag> findUnusedTags();
+
+    @Query("SELECT d.id FROM Tag t JOIN t.documents d WHERE t.id = :tagId")
+    List<Long> findDocumentIdsByTagId(@Param("tagId") Long tagId);
 }
\ No newline at end of file
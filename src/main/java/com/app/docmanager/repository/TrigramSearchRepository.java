@@ -0,0 +1,162 @@
+package com.app.docmanager.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Substring and fuzzy matching of document titles and tag names with PostgreSQL's pg_trgm.
+ * Titles and tag names get GIN trigram indexes, which serve both LIKE '%fragment%' and the
+ * word similarity operator &lt;%, and the words of all titles are kept in a materialized
+ * view with its own trigram index for spelling suggestions. Also reads the titles and tag
+ * names for the in-memory index used on other databases.
+ */
+@Repository
+@Slf4j
+public class TrigramSearchRepository {
+
+    public record Title(long id, Long userId, String title) {
+    }
+
+    public record TagName(long id, String name) {
+    }
+
+    private static final List<String> INDEXES = List.of(
+            "idx_documents_title_trgm", "idx_tags_name_trgm", "idx_title_words_key", "idx_title_words_trgm");
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile boolean available;
+
+    public TrigramSearchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Check for the extension, word view and indexes created by the scripts in
+     * db/migration/postgresql. Missing indexes only make searches slower and are logged.
+     *
+     * @return false when the database is not PostgreSQL or pg_trgm and the word view are
+     * missing, and matching has to happen in memory
+     */
+    public boolean checkIndexes() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equalsIgnoreCase(product)) {
+            return false;
+        }
+        Boolean ready = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_extension "
+                + "WHERE extname = 'pg_trgm') AND to_regclass('dm_title_words') IS NOT NULL", Boolean.class);
+        if (!Boolean.TRUE.equals(ready)) {
+            log.warn("pg_trgm or dm_title_words is missing, titles are matched in memory until the scripts "
+                    + "in db/migration/postgresql are applied and the application is restarted");
+            return false;
+        }
+        List<String> missing = INDEXES.stream()
+                .filter(index -> !Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT coalesce((SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)), false)",
+                        Boolean.class, index)))
+                .toList();
+        if (!missing.isEmpty()) {
+            log.warn("Trigram indexes {} are missing or invalid, title and tag searches scan the tables", missing);
+        }
+        available = true;
+        return true;
+    }
+
+    public void refreshWords() {
+        if (available) {
+            jdbcTemplate.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY dm_title_words");
+        }
+    }
+
+    /**
+     * Titles containing the query, then titles with a word similar to it. The query is
+     * lower case.
+     *
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public SearchHits searchTitles(String query, Long userId, int offset, int limit) {
+        return search("dm_documents", "lower(d.title)", query, userId, offset, limit);
+    }
+
+    /**
+     * Tag names containing the query, then names with a word similar to it. The query is
+     * lower case, like the names.
+     */
+    public SearchHits searchTags(String query, int offset, int limit) {
+        return search("dm_tags", "d.name", query, null, offset, limit);
+    }
+
+    private SearchHits search(String table, String column, String query, Long userId, int offset, int limit) {
+        String pattern = "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        String where = " WHERE (" + column + " LIKE ? ESCAPE '\\' OR ? <% " + column + ")"
+                + (userId != null ? " AND d.user_id = ?" : "");
+        List<Object> parameters = new ArrayList<>(List.of(pattern, query));
+        if (userId != null) {
+            parameters.add(userId);
+        }
+
+        Long total = jdbcTemplate.queryForObject("SELECT count(*) FROM " + table + " d" + where,
+                Long.class, parameters.toArray());
+
+        List<Object> pageParameters = new ArrayList<>(List.of(pattern, query));
+        pageParameters.addAll(parameters);
+        pageParameters.add(limit);
+        pageParameters.add(offset);
+        List<SearchHits.Hit> hits = jdbcTemplate.query("SELECT d.id, "
+                        + "CASE WHEN " + column + " LIKE ? ESCAPE '\\' THEN 1 ELSE 0 END "
+                        + "+ word_similarity(?, " + column + ") AS score FROM " + table + " d" + where
+                        + " ORDER BY score DESC, d.id DESC LIMIT ? OFFSET ?",
+                (rs, rowNum) -> new SearchHits.Hit(rs.getLong("id"), rs.getFloat("score")),
+                pageParameters.toArray());
+        return new SearchHits(total != null ? total : 0, true, hits);
+    }
+
+    /**
+     * The title word most similar to the given word, preferring words in more titles; the
+     * word itself when it occurs in a title.
+     */
+    public Optional<String> findClosestWord(String word, Long userId) {
+        List<Object> parameters = new ArrayList<>(List.of(word));
+        if (userId != null) {
+            parameters.add(userId);
+        }
+        parameters.add(word);
+        List<String> words = jdbcTemplate.queryForList("SELECT w.word FROM dm_title_words w WHERE w.word % ?"
+                        + (userId != null ? " AND w.user_id = ?" : "")
+                        + " ORDER BY similarity(w.word, ?) DESC, w.ndoc DESC LIMIT 1",
+                String.class, parameters.toArray());
+        return words.stream().findFirst();
+    }
+
+    /**
+     * Keyset page of titles in ascending id order.
+     */
+    public List<Title> findTitlesAfter(long after, int limit) {
+        return jdbcTemplate.query("SELECT id, user_id, title FROM dm_documents WHERE id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new Title(rs.getLong("id"), rs.getLong("user_id"), rs.getString("title")),
+                after, limit);
+    }
+
+    public List<Title> findTitles(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return jdbcTemplate.query("SELECT id, user_id, title FROM dm_documents WHERE id IN (" + placeholders + ")",
+                (rs, rowNum) -> new Title(rs.getLong("id"), rs.getLong("user_id"), rs.getString("title")),
+                ids.toArray());
+    }
+
+    public List<TagName> findTagNames() {
+        return jdbcTemplate.query("SELECT id, name FROM dm_tags",
+                (rs, rowNum) -> new TagName(rs.getLong("id"), rs.getString("name")));
+    }
+}
@@ -0,0 +1,365 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.IngestProperties;
+import com.app.docmanager.dto.BulkUploadDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.repository.DocumentJdbcRepository;
+import com.app.docmanager.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Ingests many files in one request: multipart parts and the entries of ZIP archives among
+ * them. Files are stored in parallel on a shared pool, the batch's tags are resolved once
+ * and the document rows are written with JDBC batch inserts in a single transaction.
+ *
+ * <p>A file that cannot be stored is reported as failed and the others go on. If the
+ * insert fails, no document is created and the stored files are discarded. Archive entries
+ * are counted while they are inflated, so an entry above file.ingest.max-entry-size, or
+ * any entry once the request has inflated file.ingest.max-total-size, fails.
+ */
+@Service
+@Slf4j
+public class BulkUploadService {
+
+    private static final String ZIP_TYPE = "application/zip";
+
+    private final FileStorageService fileStorageService;
+    private final ScanPreprocessingService scanPreprocessingService;
+    private final TagService tagService;
+    private final TextExtractionService textExtractionService;
+    private final UserRepository userRepository;
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IngestProperties ingestProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final Path workDirectory;
+    private final ThreadPoolTaskExecutor ingestExecutor;
+
+    public BulkUploadService(FileStorageService fileStorageService,
+                             ScanPreprocessingService scanPreprocessingService,
+                             TagService tagService,
+                             TextExtractionService textExtractionService,
+                             UserRepository userRepository,
+                             DocumentJdbcRepository documentJdbcRepository,
+                             ApplicationEventPublisher eventPublisher,
+                             IngestProperties ingestProperties,
+                             PlatformTransactionManager transactionManager) {
+        this.fileStorageService = fileStorageService;
+        this.scanPreprocessingService = scanPreprocessingService;
+        this.tagService = tagService;
+        this.textExtractionService = textExtractionService;
+        this.userRepository = userRepository;
+        this.documentJdbcRepository = documentJdbcRepository;
+        this.eventPublisher = eventPublisher;
+        this.ingestProperties = ingestProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Archives are read with random access, so several entries can be stored at once
+        this.workDirectory = fileStorageService.getFileStorageLocation().resolve(".bulk");
+
+        // Requests queue behind each other instead of multiplying the threads hitting storage
+        this.ingestExecutor = new ThreadPoolTaskExecutor();
+        this.ingestExecutor.setCorePoolSize(ingestProperties.getThreads());
+        this.ingestExecutor.setMaxPoolSize(ingestProperties.getThreads());
+        this.ingestExecutor.setThreadNamePrefix("ingest-");
+        this.ingestExecutor.initialize();
+
+        try {
+            Files.createDirectories(this.workDirectory);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory for bulk uploads.", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestExecutor.shutdown();
+    }
+
+    public BulkUploadDTO ingest(List<MultipartFile> files, String category, Set<String> tagNames, Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User", "id", userId);
+        }
+        if (files == null || files.isEmpty()) {
+            throw new InvalidRequestException("No files to upload");
+        }
+
+        List<ZipFile> archives = new ArrayList<>();
+        List<Path> archiveFiles = new ArrayList<>();
+        try {
+            List<IngestSource> sources = collectSources(files, archives, archiveFiles);
+
+            List<CompletableFuture<FileStorageService.StoredFile>> stores = sources.stream()
+                    .map(source -> CompletableFuture.supplyAsync(() -> store(source), ingestExecutor))
+                    .toList();
+
+            List<BulkUploadDTO.Item> items = new ArrayList<>(sources.size());
+            List<Document> documents = new ArrayList<>();
+            List<BulkUploadDTO.Item> createdItems = new ArrayList<>();
+            List<FileStorageService.StoredFile> storedFiles = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i++) {
+                IngestSource source = sources.get(i);
+                try {
+                    FileStorageService.StoredFile storedFile = stores.get(i).join();
+                    BulkUploadDTO.Item item = BulkUploadDTO.Item.builder()
+                            .name(source.name())
+                            .status(BulkUploadDTO.Status.CREATED)
+                            .fileType(storedFile.getContentType())
+                            .fileSize(storedFile.getSize())
+                            .originalSize(storedFile.getOriginalSize())
+                            .deduplicated(storedFile.isDeduplicated())
+                            .build();
+                    items.add(item);
+                    createdItems.add(item);
+                    storedFiles.add(storedFile);
+                    documents.add(toDocument(source, storedFile, category));
+                } catch (CompletionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    log.warn("Bulk upload item {} failed: {}", source.name(), cause.getMessage());
+                    items.add(BulkUploadDTO.Item.builder()
+                            .name(source.name())
+                            .status(BulkUploadDTO.Status.FAILED)
+                            .error(cause.getMessage())
+                            .build());
+                }
+            }
+
+            if (!documents.isEmpty()) {
+                insertDocuments(documents, storedFiles, userId, tagNames);
+                for (int i = 0; i < documents.size(); i++) {
+                    createdItems.get(i).setDocumentId(documents.get(i).getId());
+                }
+            }
+
+            log.info("Bulk upload by user {}: {} created, {} failed",
+                    userId, documents.size(), items.size() - documents.size());
+            return BulkUploadDTO.builder()
+                    .created(documents.size())
+                    .failed(items.size() - documents.size())
+                    .items(items)
+                    .build();
+        } finally {
+            closeArchives(archives, archiveFiles);
+        }
+    }
+
+    private void insertDocuments(List<Document> documents, List<FileStorageService.StoredFile> storedFiles,
+                                 Long userId, Set<String> tagNames) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Set<Tag> tags = tagService.createOrGetTags(tagNames);
+                documentJdbcRepository.insertAll(documents, userId, tags, ingestProperties.getBatchSize());
+                // Delivered to after-commit listeners once the whole batch is committed
+                for (Document document : documents) {
+                    eventPublisher.publishEvent(new DocumentCreatedEvent(document.getId(), userId,
+                            document.getFilePath(), document.getContentHash(), document.getFileType(),
+                            document.getStorageCodec(), document.getExtractionStatus()));
+                }
+            });
+        } catch (RuntimeException ex) {
+            storedFiles.forEach(fileStorageService::discardUnsaved);
+            throw ex;
+        }
+    }
+
+    private FileStorageService.StoredFile store(IngestSource source) {
+        try (InputStream inputStream = source.open()) {
+            return scanPreprocessingService.storeStream(inputStream, source.declaredContentType());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read " + source.name() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Expand archives into their entries. Archives are copied to the work directory and
+     * opened as ZipFile, whose entries can be read independently of each other.
+     */
+    private List<IngestSource> collectSources(List<MultipartFile> files, List<ZipFile> archives,
+                                              List<Path> archiveFiles) {
+        List<IngestSource> sources = new ArrayList<>();
+        // Uncompressed bytes read from all archive entries of this request
+        AtomicLong inflated = new AtomicLong();
+        for (MultipartFile file : files) {
+            String fileName = StringUtils.hasText(file.getOriginalFilename())
+                    ? StringUtils.cleanPath(file.getOriginalFilename())
+                    : "file-" + (sources.size() + 1);
+            if (!isArchive(file, fileName)) {
+                sources.add(new IngestSource(fileName, baseName(fileName), file.getContentType(),
+                        file::getInputStream));
+            } else {
+                Path archiveFile = workDirectory.resolve(UUID.randomUUID() + ".zip");
+                archiveFiles.add(archiveFile);
+                ZipFile archive;
+                try {
+                    file.transferTo(archiveFile);
+                    archive = new ZipFile(archiveFile.toFile());
+                } catch (ZipException ex) {
+                    throw new InvalidRequestException("Not a valid ZIP archive: " + fileName);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Could not read archive " + fileName, ex);
+                }
+                archives.add(archive);
+
+                Enumeration<? extends ZipEntry> entries = archive.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || isHidden(entry.getName())) {
+                        continue;
+                    }
+                    sources.add(new IngestSource(fileName + "/" + entry.getName(), baseName(entry.getName()),
+                            null, () -> openEntry(archive, entry, inflated)));
+                }
+            }
+
+            if (sources.size() > ingestProperties.getMaxItems()) {
+                throw new InvalidRequestException("A bulk upload may contain at most "
+                        + ingestProperties.getMaxItems() + " files");
+            }
+        }
+        return sources;
+    }
+
+    private InputStream openEntry(ZipFile archive, ZipEntry entry, AtomicLong inflated) throws IOException {
+        long maxEntrySize = ingestProperties.getMaxEntrySize().toBytes();
+        // The declared size may be missing or wrong, the stream checks what is actually inflated
+        if (entry.getSize() > maxEntrySize) {
+            throw new IOException("Entry exceeds the limit of " + maxEntrySize + " bytes");
+        }
+        return new InflationLimitStream(archive.getInputStream(entry), maxEntrySize,
+                inflated, ingestProperties.getMaxTotalSize().toBytes());
+    }
+
+    private Document toDocument(IngestSource source, FileStorageService.StoredFile storedFile, String category) {
+        Document document = Document.builder()
+                .title(source.title())
+                .category(category)
+                .filePath(storedFile.getFileName())
+                .fileType(storedFile.getContentType())
+                .fileSize(storedFile.getSize())
+                .contentHash(storedFile.getContentHash())
+                .storageCodec(storedFile.getCodec())
+                .storedSize(storedFile.getStoredSize())
+                .build();
+        document.setExtractionStatus(textExtractionService.initialStatus(document));
+        return document;
+    }
+
+    private static boolean isArchive(MultipartFile file, String fileName) {
+        return ZIP_TYPE.equalsIgnoreCase(file.getContentType())
+                || "application/x-zip-compressed".equalsIgnoreCase(file.getContentType())
+                || fileName.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    private static boolean isHidden(String entryName) {
+        // Resource forks and dot files added by archivers, not documents
+        return entryName.startsWith("__MACOSX/") || baseName(entryName).startsWith(".");
+    }
+
+    private static String baseName(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return name.length() > 255 ? name.substring(0, 255) : name;
+    }
+
+    private static void closeArchives(List<ZipFile> archives, List<Path> archiveFiles) {
+        for (ZipFile archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException ex) {
+                log.warn("Could not close archive {}", archive.getName(), ex);
+            }
+        }
+        for (Path archiveFile : archiveFiles) {
+            try {
+                Files.deleteIfExists(archiveFile);
+            } catch (IOException ex) {
+                log.warn("Could not delete archive copy {}", archiveFile, ex);
+            }
+        }
+    }
+
+    private record IngestSource(String name, String title, String declaredContentType, StreamOpener opener) {
+        InputStream open() throws IOException {
+            return opener.open();
+        }
+    }
+
+    @FunctionalInterface
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Fails reading once the entry, or all entries of the request together, exceed their limit.
+     */
+    private static class InflationLimitStream extends FilterInputStream {
+        private final long maxEntrySize;
+        private final AtomicLong inflated;
+        private final long maxTotalSize;
+        private long read;
+
+        InflationLimitStream(InputStream inputStream, long maxEntrySize, AtomicLong inflated, long maxTotalSize) {
+            super(inputStream);
+            this.maxEntrySize = maxEntrySize;
+            this.inflated = inflated;
+            this.maxTotalSize = maxTotalSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                count(count);
+            }
+            return count;
+        }
+
+        private void count(int count) throws IOException {
+            read += count;
+            if (read > maxEntrySize) {
+                throw new IOException("Entry exceeds the limit of " + maxEntrySize + " bytes");
+            }
+            if (inflated.addAndGet(count) > maxTotalSize) {
+                throw new IOException("Archive entries of the upload exceed the limit of " + maxTotalSize + " bytes");
+            }
+        }
+    }
+}
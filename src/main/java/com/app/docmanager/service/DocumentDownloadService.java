@@ -0,0 +1,321 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.storage.StoredObject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves stored files with HTTP caching and range support: strong ETags from the content hash,
+ * Last-Modified, 304 responses, single and multi-range (multipart/byteranges) requests.
+ * Single regions are handed to Tomcat's sendfile when the connector supports it, otherwise
+ * they are copied with FileChannel.transferTo. Backends without local files are read with
+ * ranged reads, so only the requested bytes are fetched. Compressed files are passed through with
+ * Content-Encoding when the client accepts it and decoded while streaming otherwise.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentDownloadService {
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+
+    public void download(Document document, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+        String fileName = document.getFilePath();
+        StoredObject stored = fileStorageService.stat(fileName)
+                .orElseThrow(() -> new ResourceNotFoundException("File", "path", fileName));
+        // Null for remote backends, which are streamed instead of using zero-copy transfers
+        Path file = fileStorageService.localPath(fileName).orElse(null);
+
+        // Compressed files are sent as stored when the client accepts the encoding, else decoded
+        StorageCodec codec = StorageCodec.orNone(document.getStorageCodec());
+        boolean encoded = codec != StorageCodec.NONE;
+        boolean sendEncoded = encoded && request.getHeader(HttpHeaders.RANGE) == null
+                && acceptsEncoding(request, codec.getContentEncoding());
+
+        long length = encoded ? decodedLength(fileName, stored.size(), document.getFileSize()) : stored.size();
+        String etag = null;
+        if (document.getContentHash() != null) {
+            // Each representation needs its own strong validator
+            etag = "\"" + document.getContentHash() + (sendEncoded ? "-" + codec.getContentEncoding() : "") + "\"";
+        }
+        long lastModified = lastModified(document);
+        if (encoded) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        // Answers If-None-Match / If-Modified-Since with 304 and sets ETag and Last-Modified
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        boolean notModified = etag != null
+                ? webRequest.checkNotModified(etag, lastModified)
+                : webRequest.checkNotModified(lastModified);
+        if (notModified) {
+            return;
+        }
+
+        // Detected at ingest and persisted, so serving needs no probe of the file
+        String contentType = document.getFileType() != null
+                ? document.getFileType()
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(document.getTitle()).build().toString());
+
+        if (sendEncoded) {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, codec.getContentEncoding());
+            sendRegion(fileName, file, 0, stored.size(), request, response);
+            return;
+        }
+
+        List<HttpRange> ranges = List.of();
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, etag, lastModified)) {
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+                for (HttpRange range : ranges) {
+                    // Throws for ranges starting beyond the end of the file
+                    range.getRangeStart(length);
+                }
+            } catch (IllegalArgumentException ex) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+        }
+        if (encoded && ranges.size() > 1) {
+            // Decoding is sequential, so several ranges of a compressed file get the whole file
+            ranges = List.of();
+        }
+        if (ranges.size() > 1 && !disjointAndShorterThanFile(ranges, length)) {
+            // Overlapping or repeated ranges would send the file many times over; send it once
+            ranges = List.of();
+        }
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType);
+            if (encoded) {
+                sendDecoded(document, codec, 0, length, response);
+            } else {
+                sendRegion(fileName, file, 0, length, request, response);
+            }
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(length);
+            long end = ranges.get(0).getRangeEnd(length);
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            if (encoded) {
+                sendDecoded(document, codec, start, end - start + 1, response);
+            } else {
+                sendRegion(fileName, file, start, end - start + 1, request, response);
+            }
+        } else {
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            sendMultipleRegions(fileName, file, length, ranges, contentType, response);
+        }
+    }
+
+    /**
+     * Decoded length of a gzip file, from the ISIZE field of its trailer: the original length
+     * modulo 2^32. The recorded file size is only used to tell files of 4 GiB and more apart.
+     */
+    private long decodedLength(String fileName, long storedSize, Long fileSize) throws IOException {
+        byte[] trailer;
+        try (InputStream inputStream = fileStorageService.openRange(fileName, storedSize - 4, 4)) {
+            trailer = inputStream.readNBytes(4);
+        }
+        if (trailer.length < 4) {
+            throw new IOException("Truncated gzip file " + fileName);
+        }
+        long sizeModulo = (trailer[0] & 0xFFL) | (trailer[1] & 0xFFL) << 8
+                | (trailer[2] & 0xFFL) << 16 | (trailer[3] & 0xFFL) << 24;
+        if (fileSize != null && (fileSize & 0xFFFFFFFFL) == sizeModulo) {
+            return fileSize;
+        }
+        return sizeModulo;
+    }
+
+    /**
+     * Whether the ranges neither overlap nor add up to more than the file, as Spring's
+     * HttpRange.toResourceRegions requires.
+     */
+    private static boolean disjointAndShorterThanFile(List<HttpRange> ranges, long length) {
+        long[][] regions = ranges.stream()
+                .map(range -> new long[]{range.getRangeStart(length), range.getRangeEnd(length)})
+                .sorted(Comparator.comparingLong(region -> region[0]))
+                .toArray(long[][]::new);
+        long total = 0;
+        for (int i = 0; i < regions.length; i++) {
+            if (i > 0 && regions[i][0] <= regions[i - 1][1]) {
+                return false;
+            }
+            total += regions[i][1] - regions[i][0] + 1;
+        }
+        return total < length;
+    }
+
+    /**
+     * A Range request with If-Range only gets partial content if the validator still matches.
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+        return ifRangeDate != -1 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+
+    private void sendRegion(String fileName, Path file, long start, long count,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(count);
+
+        if (file == null) {
+            try (InputStream inputStream = fileStorageService.openRange(fileName, start, count)) {
+                copy(inputStream, response.getOutputStream(), count);
+            }
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // Tomcat streams the region with sendfile after the handler returns
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, start, count, response.getOutputStream());
+        }
+    }
+
+    private void sendDecoded(Document document, StorageCodec codec, long start, long count,
+                             HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(count);
+
+        try (InputStream inputStream = fileStorageService.openStream(document.getFilePath(), codec)) {
+            inputStream.skipNBytes(start);
+            copy(inputStream, response.getOutputStream(), count);
+        }
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream, long count) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long remaining = count;
+        while (remaining > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            outputStream.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String value : headers.nextElement().split(",")) {
+                String[] parts = value.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase(encoding)
+                        && !(parts.length > 1 && parts[1].trim().replace(" ", "").equals("q=0"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void sendMultipleRegions(String fileName, Path file, long length, List<HttpRange> ranges,
+                                     String contentType, HttpServletResponse response) throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+
+        OutputStream outputStream = response.getOutputStream();
+        try (FileChannel channel = file != null ? FileChannel.open(file, StandardOpenOption.READ) : null) {
+            for (HttpRange range : ranges) {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+
+                String partHeader = "\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + length + "\r\n\r\n";
+                outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                if (channel != null) {
+                    transfer(channel, start, end - start + 1, outputStream);
+                } else {
+                    try (InputStream inputStream = fileStorageService.openRange(fileName, start, end - start + 1)) {
+                        copy(inputStream, outputStream, end - start + 1);
+                    }
+                }
+            }
+        }
+        outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        outputStream.flush();
+    }
+
+    private static void transfer(FileChannel channel, long position, long count, OutputStream outputStream)
+            throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        while (count > 0) {
+            long transferred = channel.transferTo(position, count, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static long lastModified(Document document) {
+        LocalDateTime timestamp = document.getUpdatedAt() != null ? document.getUpdatedAt() : document.getCreatedAt();
+        if (timestamp == null) {
+            return -1;
+        }
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,168 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.dto.DocumentDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.repository.DocumentExportRepository;
+import com.app.docmanager.repository.DocumentSpecifications;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports many documents as one ZIP archive that is written straight to the response while
+ * the files are read, so neither the archive nor a whole file is held in memory or on disk.
+ *
+ * <p>Types that are compressed already (PDF, JPEG, ...) are written as STORED entries.
+ * Those need their CRC and size before the data, so their file is read twice: once to
+ * checksum it, once to copy it. That costs I/O but no CPU spent deflating.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentExportService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final DocumentExportRepository documentExportRepository;
+    private final FileStorageService fileStorageService;
+
+    /**
+     * Resolve the documents to export with a single query that reads only the columns the
+     * archive needs. Non-admins only see their own documents; a requested id outside that
+     * set is reported as not found.
+     */
+    @Transactional(readOnly = true)
+    public List<DocumentExportRepository.Entry> findDocuments(DocumentDTO.ExportDocumentsRequest request,
+                                                              Long userId,
+                                                              boolean admin) {
+        boolean hasIds = request.getIds() != null && !request.getIds().isEmpty();
+        boolean hasTags = request.getTags() != null && !request.getTags().isEmpty();
+        if (!hasIds && !hasTags && isBlank(request.getCategory())
+                && request.getDocumentDateFrom() == null && request.getDocumentDateTo() == null) {
+            throw new InvalidRequestException("At least one export criterion is required");
+        }
+
+        Specification<Document> specification = Specification.allOf(
+                admin ? null : DocumentSpecifications.ownedBy(userId),
+                DocumentSpecifications.idIn(request.getIds()),
+                DocumentSpecifications.hasCategory(request.getCategory()),
+                DocumentSpecifications.hasAnyTag(request.getTags()),
+                DocumentSpecifications.documentDateBetween(request.getDocumentDateFrom(),
+                        request.getDocumentDateTo()));
+        List<DocumentExportRepository.Entry> documents = documentExportRepository.findEntries(specification);
+
+        if (hasIds) {
+            Set<Long> found = new HashSet<>();
+            documents.forEach(document -> found.add(document.id()));
+            for (Long id : request.getIds()) {
+                if (!found.contains(id)) {
+                    throw new ResourceNotFoundException("Document", "id", id);
+                }
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Write the archive. Documents whose file cannot be opened are skipped; a failure while
+     * copying aborts the archive, as the response is already committed by then.
+     */
+    public void writeZip(List<DocumentExportRepository.Entry> documents, OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        Set<String> entryNames = new HashSet<>();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        for (DocumentExportRepository.Entry document : documents) {
+            if (document.filePath() == null) {
+                continue;
+            }
+            StorageCodec codec = StorageCodec.orNone(document.storageCodec());
+            ZipEntry entry = new ZipEntry(entryName(document, entryNames));
+            if (document.createdAt() != null) {
+                entry.setLastModifiedTime(FileTime.from(
+                        document.createdAt().atZone(ZoneId.systemDefault()).toInstant()));
+            }
+
+            InputStream inputStream;
+            try {
+                if (!fileStorageService.isCompressible(document.fileType())) {
+                    checksum(document, codec, entry, buffer);
+                }
+                inputStream = fileStorageService.openStream(document.filePath(), codec);
+            } catch (IOException ex) {
+                log.warn("Skipping document {} in export, file unreadable: {}", document.id(), ex.getMessage());
+                continue;
+            }
+
+            try (inputStream) {
+                zip.putNextEntry(entry);
+                int read;
+                while ((read = inputStream.read(buffer)) >= 0) {
+                    zip.write(buffer, 0, read);
+                }
+                zip.closeEntry();
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private void checksum(DocumentExportRepository.Entry document, StorageCodec codec, ZipEntry entry,
+                          byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream inputStream = fileStorageService.openStream(document.filePath(), codec)) {
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+    }
+
+    /**
+     * The title, made safe as a path inside the archive and unique within it.
+     */
+    private static String entryName(DocumentExportRepository.Entry document, Set<String> usedNames) {
+        String title = isBlank(document.title()) ? "document-" + document.id() : document.title();
+        String baseName = title.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").strip();
+        if (baseName.isEmpty() || baseName.chars().allMatch(c -> c == '.')) {
+            baseName = "document-" + document.id();
+        }
+
+        String name = baseName;
+        for (int copy = 2; !usedNames.add(name.toLowerCase(Locale.ROOT)); copy++) {
+            int extension = baseName.lastIndexOf('.');
+            name = extension > 0
+                    ? baseName.substring(0, extension) + " (" + copy + ")" + baseName.substring(extension)
+                    : baseName + " (" + copy + ")";
+        }
+        return name;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
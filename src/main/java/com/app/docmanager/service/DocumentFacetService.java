@@ -0,0 +1,120 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.dto.FacetedSearchDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.DocumentFacetRepository;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.DocumentSpecifications;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A page of documents matching a filter together with counts per category, tag, file type,
+ * document year and month, and size bucket over all matching documents, for a sidebar that
+ * narrows the list. Counts come from grouped queries and no entities are loaded for them.
+ */
+@Service
+@Transactional(readOnly = true)
+public class DocumentFacetService {
+
+    // Upper bounds of the size buckets; the last bucket has none
+    static final long[] SIZE_BOUNDS = {100L * 1024, 1024L * 1024, 10L * 1024 * 1024, 100L * 1024 * 1024};
+    private static final int MAX_FACET_VALUES = 50;
+
+    public record Result(Page<Document> documents, FacetedSearchDTO.Facets facets) {
+    }
+
+    private final DocumentRepository documentRepository;
+    private final DocumentFacetRepository documentFacetRepository;
+    private final Timer facetTimer;
+
+    public DocumentFacetService(DocumentRepository documentRepository,
+                                DocumentFacetRepository documentFacetRepository,
+                                MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.documentFacetRepository = documentFacetRepository;
+        this.facetTimer = meterRegistry.timer("docmanager.facets");
+    }
+
+    /**
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public Result search(FacetedSearchDTO.Filter filter, Long userId, Pageable pageable) {
+        if (filter.getMinSize() != null && filter.getMaxSize() != null && filter.getMinSize() > filter.getMaxSize()) {
+            throw new InvalidRequestException("minSize must not be larger than maxSize");
+        }
+        Specification<Document> specification = Specification.allOf(
+                DocumentSpecifications.ownedBy(userId),
+                DocumentFilterParser.parse(filter.getQ()),
+                DocumentSpecifications.hasAnyCategory(filter.getCategory()),
+                DocumentSpecifications.hasAnyTag(filter.getTag()),
+                DocumentSpecifications.hasAnyFileType(filter.getFileType()),
+                DocumentSpecifications.documentDateBetween(filter.getDocumentDateFrom(), filter.getDocumentDateTo()),
+                DocumentSpecifications.fileSizeBetween(filter.getMinSize(), filter.getMaxSize()));
+
+        return facetTimer.record(() -> new Result(
+                documentRepository.findAll(specification, pageable),
+                facets(specification)));
+    }
+
+    private FacetedSearchDTO.Facets facets(Specification<Document> specification) {
+        List<DocumentFacetRepository.Count<LocalDate>> dates = documentFacetRepository.countByDocumentDate(specification);
+        List<DocumentFacetRepository.Count<Integer>> sizes = documentFacetRepository
+                .countByFileSize(specification, SIZE_BOUNDS).stream()
+                .sorted(Comparator.comparing(DocumentFacetRepository.Count::value))
+                .toList();
+        return FacetedSearchDTO.Facets.builder()
+                .categories(toFacetCounts(documentFacetRepository.countByAttribute(
+                        specification, "category", MAX_FACET_VALUES), Function.identity()))
+                .tags(toFacetCounts(documentFacetRepository.countByTag(specification, MAX_FACET_VALUES),
+                        Function.identity()))
+                .fileTypes(toFacetCounts(documentFacetRepository.countByAttribute(
+                        specification, "fileType", MAX_FACET_VALUES), Function.identity()))
+                .years(fold(dates, date -> String.valueOf(date.getYear())))
+                .months(fold(dates, date -> YearMonth.from(date).toString()))
+                .sizes(toFacetCounts(sizes, DocumentFacetService::sizeBucket))
+                .build();
+    }
+
+    private static <T> List<FacetedSearchDTO.FacetCount> toFacetCounts(List<DocumentFacetRepository.Count<T>> counts,
+                                                                   Function<T, String> value) {
+        return counts.stream()
+                .map(count -> new FacetedSearchDTO.FacetCount(value.apply(count.value()), count.count()))
+                .toList();
+    }
+
+    /**
+     * Sum the counts per date into coarser periods, newest first. Labels are ISO dates
+     * truncated to the period, so they sort in time order.
+     */
+    private static List<FacetedSearchDTO.FacetCount> fold(List<DocumentFacetRepository.Count<LocalDate>> dates,
+                                                          Function<LocalDate, String> period) {
+        Map<String, Long> counts = new TreeMap<>(Comparator.reverseOrder());
+        for (DocumentFacetRepository.Count<LocalDate> date : dates) {
+            counts.merge(period.apply(date.value()), date.count(), Long::sum);
+        }
+        return counts.entrySet().stream()
+                .map(entry -> new FacetedSearchDTO.FacetCount(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    private static String sizeBucket(int bucket) {
+        String min = bucket == 0 ? "0" : String.valueOf(SIZE_BOUNDS[bucket - 1]);
+        String max = bucket < SIZE_BOUNDS.length ? String.valueOf(SIZE_BOUNDS[bucket]) : "";
+        return min + "-" + max;
+    }
+}
@@ -0,0 +1,322 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.DocumentSpecifications;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles document filter expressions into a single {@link Specification}, so the whole
+ * filter runs as one SQL query. Examples:
+ *
+ * <pre>
+ * invoice 2024                         title contains both words
+ * title:"annual report" -category:old  phrase in the title, category other than old
+ * (tag:tax OR tag:finance) NOT tag:draft
+ * type:image/* size&gt;=1mb date:2024-03  type prefix, size with unit, whole month
+ * date&gt;=2024-01-01 date&lt;2025 owner:alice
+ * </pre>
+ *
+ * <p>Terms next to each other must all match; AND, OR and NOT are upper case, NOT binds
+ * tightest, then AND, then OR. A term on a missing value (no category, no date, ...) does
+ * not match, and its negation does.
+ */
+public final class DocumentFilterParser {
+
+    private static final Set<String> FIELDS = Set.of("title", "category", "tag", "type", "date", "size", "owner");
+    private static final Pattern SIZE = Pattern.compile("(\\d+)(b|kb|mb|gb)?");
+    private static final int MAX_TERMS = 50;
+    private static final int MAX_DEPTH = 10;
+
+    private enum Kind { OPEN, CLOSE, AND, OR, NOT, TERM }
+
+    /**
+     * A parenthesis, operator or term; terms without a field have a null field and match
+     * the title.
+     */
+    private record Token(Kind kind, String field, String operator, String value) {
+
+        static Token of(Kind kind) {
+            return new Token(kind, null, null, null);
+        }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case OPEN -> "(";
+                case CLOSE -> ")";
+                case TERM -> field != null ? field + operator + value : value;
+                default -> kind.name();
+            };
+        }
+    }
+
+    private final List<Token> tokens;
+    private int position;
+    private int terms;
+
+    private DocumentFilterParser(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * @return null for a blank expression, which matches every document
+     */
+    public static Specification<Document> parse(String expression) {
+        if (expression == null || expression.isBlank()) {
+            return null;
+        }
+        DocumentFilterParser parser = new DocumentFilterParser(tokenize(expression));
+        Specification<Document> specification = parser.parseOr(0);
+        if (parser.position < parser.tokens.size()) {
+            throw new InvalidRequestException("Unexpected '" + parser.tokens.get(parser.position) + "' in filter");
+        }
+        return specification;
+    }
+
+    private Specification<Document> parseOr(int depth) {
+        Specification<Document> specification = parseAnd(depth);
+        while (accept(Kind.OR)) {
+            specification = specification.or(parseAnd(depth));
+        }
+        return specification;
+    }
+
+    private Specification<Document> parseAnd(int depth) {
+        Specification<Document> specification = parseUnary(depth);
+        while (position < tokens.size() && !peek(Kind.OR) && !peek(Kind.CLOSE)) {
+            accept(Kind.AND);
+            specification = specification.and(parseUnary(depth));
+        }
+        return specification;
+    }
+
+    private Specification<Document> parseUnary(int depth) {
+        if (position >= tokens.size()) {
+            throw new InvalidRequestException("Filter ends unexpectedly");
+        }
+        int negations = 0;
+        while (accept(Kind.NOT)) {
+            negations++;
+        }
+        if (negations > 0) {
+            // Folded instead of recursing per NOT, so a long run of '-' cannot overflow the stack
+            Specification<Document> operand = parseUnary(depth);
+            return negations % 2 == 1 ? Specification.not(operand) : operand;
+        }
+        if (accept(Kind.OPEN)) {
+            if (depth >= MAX_DEPTH) {
+                throw new InvalidRequestException("Filter is nested too deeply");
+            }
+            Specification<Document> specification = parseOr(depth + 1);
+            if (!accept(Kind.CLOSE)) {
+                throw new InvalidRequestException("Missing ')' in filter");
+            }
+            return specification;
+        }
+        Token token = tokens.get(position);
+        if (token.kind() != Kind.TERM) {
+            throw new InvalidRequestException("Unexpected '" + token + "' in filter");
+        }
+        if (++terms > MAX_TERMS) {
+            throw new InvalidRequestException("Filter has more than " + MAX_TERMS + " terms");
+        }
+        position++;
+        return term(token);
+    }
+
+    private boolean peek(Kind kind) {
+        return position < tokens.size() && tokens.get(position).kind() == kind;
+    }
+
+    private boolean accept(Kind kind) {
+        if (peek(kind)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private static Specification<Document> term(Token token) {
+        String field = token.field();
+        String operator = token.operator();
+        String value = token.value();
+        if (field == null) {
+            return DocumentSpecifications.titleContains(value);
+        }
+        if (value.isEmpty()) {
+            throw new InvalidRequestException("Missing value for " + field);
+        }
+        boolean equality = operator.equals(":") || operator.equals("=");
+        if (!equality && !field.equals("date") && !field.equals("size")) {
+            throw new InvalidRequestException("Operator " + operator + " is not supported for " + field);
+        }
+
+        return switch (field) {
+            case "title" -> DocumentSpecifications.titleContains(value);
+            case "category" -> present("category", DocumentSpecifications.hasCategory(value));
+            case "tag" -> DocumentSpecifications.hasTag(value);
+            case "type" -> present("fileType", value.endsWith("*")
+                    ? DocumentSpecifications.fileTypeStartsWith(value.substring(0, value.length() - 1))
+                    : DocumentSpecifications.hasAnyFileType(List.of(value)));
+            case "owner" -> DocumentSpecifications.ownedByUsername(value);
+            case "date" -> present("documentDate", dateTerm(operator, value));
+            case "size" -> present("fileSize", sizeTerm(operator, value));
+            default -> throw new IllegalStateException("Unknown field " + field);
+        };
+    }
+
+    /**
+     * Dates may be a year, a month or a day; equality matches the whole period.
+     */
+    private static Specification<Document> dateTerm(String operator, String value) {
+        LocalDate start;
+        LocalDate end;
+        try {
+            if (value.matches("\\d{4}")) {
+                start = Year.parse(value).atDay(1);
+                end = start.plusYears(1).minusDays(1);
+            } else if (value.matches("\\d{4}-\\d{2}")) {
+                YearMonth month = YearMonth.parse(value);
+                start = month.atDay(1);
+                end = month.atEndOfMonth();
+            } else {
+                start = LocalDate.parse(value);
+                end = start;
+            }
+        } catch (DateTimeParseException ex) {
+            throw new InvalidRequestException("Invalid date in filter: " + value);
+        }
+        return switch (operator) {
+            case ">=" -> DocumentSpecifications.documentDateBetween(start, null);
+            case ">" -> DocumentSpecifications.documentDateBetween(end.plusDays(1), null);
+            case "<=" -> DocumentSpecifications.documentDateBetween(null, end);
+            case "<" -> DocumentSpecifications.documentDateBetween(null, start.minusDays(1));
+            default -> DocumentSpecifications.documentDateBetween(start, end);
+        };
+    }
+
+    private static Specification<Document> sizeTerm(String operator, String value) {
+        Matcher matcher = SIZE.matcher(value.toLowerCase(Locale.ROOT));
+        if (!matcher.matches()) {
+            throw new InvalidRequestException("Invalid size in filter: " + value);
+        }
+        long bytes;
+        try {
+            long unit = switch (matcher.group(2) == null ? "b" : matcher.group(2)) {
+                case "kb" -> 1024L;
+                case "mb" -> 1024L * 1024;
+                case "gb" -> 1024L * 1024 * 1024;
+                default -> 1L;
+            };
+            bytes = Math.multiplyExact(Long.parseLong(matcher.group(1)), unit);
+        } catch (ArithmeticException | NumberFormatException ex) {
+            throw new InvalidRequestException("Invalid size in filter: " + value);
+        }
+        return switch (operator) {
+            case ">=" -> DocumentSpecifications.fileSizeBetween(bytes, null);
+            case ">" -> DocumentSpecifications.fileSizeBetween(bytes + 1, null);
+            case "<=" -> DocumentSpecifications.fileSizeBetween(null, bytes + 1);
+            case "<" -> DocumentSpecifications.fileSizeBetween(null, bytes);
+            default -> DocumentSpecifications.fileSizeBetween(bytes, bytes + 1);
+        };
+    }
+
+    /**
+     * Restrict the term to documents that have the attribute, so that its negation matches
+     * documents without it instead of being unknown in SQL.
+     */
+    private static Specification<Document> present(String attribute, Specification<Document> specification) {
+        Specification<Document> notNull = (root, query, cb) -> cb.isNotNull(root.get(attribute));
+        return notNull.and(specification);
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(Token.of(c == '(' ? Kind.OPEN : Kind.CLOSE));
+                i++;
+            } else if (c == '-' && i + 1 < length && !Character.isWhitespace(expression.charAt(i + 1))) {
+                tokens.add(Token.of(Kind.NOT));
+                i++;
+            } else if (c == '"') {
+                int end = closingQuote(expression, i);
+                tokens.add(new Token(Kind.TERM, null, null, expression.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < length && Character.isLetter(expression.charAt(i))) {
+                    i++;
+                }
+                String field = expression.substring(start, i).toLowerCase(Locale.ROOT);
+                String operator = operatorAt(expression, i);
+                if (operator != null && FIELDS.contains(field)) {
+                    i += operator.length();
+                    String value;
+                    if (i < length && expression.charAt(i) == '"') {
+                        int end = closingQuote(expression, i);
+                        value = expression.substring(i + 1, end);
+                        i = end + 1;
+                    } else {
+                        int valueStart = i;
+                        i = wordEnd(expression, i);
+                        value = expression.substring(valueStart, i);
+                    }
+                    tokens.add(new Token(Kind.TERM, field, operator, value));
+                } else {
+                    i = wordEnd(expression, start);
+                    String word = expression.substring(start, i);
+                    tokens.add(switch (word) {
+                        case "AND" -> Token.of(Kind.AND);
+                        case "OR" -> Token.of(Kind.OR);
+                        case "NOT" -> Token.of(Kind.NOT);
+                        default -> new Token(Kind.TERM, null, null, word);
+                    });
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static String operatorAt(String expression, int i) {
+        for (String operator : List.of(">=", "<=", ":", "=", ">", "<")) {
+            if (expression.startsWith(operator, i)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    private static int wordEnd(String expression, int i) {
+        while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                && expression.charAt(i) != '(' && expression.charAt(i) != ')') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int closingQuote(String expression, int open) {
+        int end = expression.indexOf('"', open + 1);
+        if (end < 0) {
+            throw new InvalidRequestException("Missing closing quote in filter");
+        }
+        return end;
+    }
+}
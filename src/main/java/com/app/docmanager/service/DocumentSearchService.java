@@ -0,0 +1,46 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.SearchProperties;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.DocumentTextSearchRepository;
+import com.app.docmanager.repository.SearchHits;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Full-text search over the documents, answered by the embedded index or by the database
+ * depending on file.search.mode.
+ */
+@Service
+@RequiredArgsConstructor
+public class DocumentSearchService {
+
+    private final SearchProperties searchProperties;
+    private final SearchIndexService searchIndexService;
+    private final DocumentTextSearchRepository documentTextSearchRepository;
+
+    /**
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public SearchHits search(String query, Long userId, int page, int size) {
+        if (!searchProperties.isEnabled()) {
+            throw new InvalidRequestException("Full-text search is disabled");
+        }
+        if (!StringUtils.hasText(query)) {
+            throw new InvalidRequestException("Search query must not be empty");
+        }
+        long end = ((long) page + 1) * size;
+        if (page < 0 || size < 1 || end > searchProperties.getMaxResultWindow()) {
+            throw new InvalidRequestException("Search results are limited to the first "
+                    + searchProperties.getMaxResultWindow() + " hits");
+        }
+
+        // Within the result window, which is an int
+        int offset = (int) (end - size);
+        return switch (searchProperties.getMode()) {
+            case INDEX -> searchIndexService.search(query, userId, offset, size);
+            case DATABASE -> documentTextSearchRepository.search(query.trim(), userId, offset, size);
+        };
+    }
+}
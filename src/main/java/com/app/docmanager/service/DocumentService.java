@@ -2,20 +2,32 @@ package com.app.docmanager.service;
 
 import com.app.docmanager.dto.DocumentDTO;
 import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.ExtractionStatus;
 import com.app.docmanager.entity.Tag;
 import com.app.docmanager.entity.User;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
 import com.app.docmanager.exception.ResourceNotFoundException;
 import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.DocumentSpecifications;
+import com.app.docmanager.repository.SearchHits;
 import com.app.docmanager.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -25,6 +37,9 @@ public class DocumentService {
     private final DocumentRepository documentRepository;
     private final UserRepository userRepository;
     private final TagService tagService;
+    private final TextExtractionService textExtractionService;
+    private final TrigramSearchService trigramSearchService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public List<Document> getAllDocuments() {
         return documentRepository.findAll();
@@ -57,6 +72,7 @@ public class DocumentService {
 
         // Set the user on the document
         document.setUser(user);
+        document.setExtractionStatus(textExtractionService.initialStatus(document));
 
         // Handle tags if present
         if (tagNames != null && !tagNames.isEmpty()) {
@@ -64,7 +80,9 @@ public class DocumentService {
             document.setTags(managedTags);
         }
 
-        return documentRepository.save(document);
+        Document savedDocument = documentRepository.save(document);
+        eventPublisher.publishEvent(DocumentCreatedEvent.of(savedDocument));
+        return savedDocument;
     }
 
     /**
@@ -77,11 +95,14 @@ public class DocumentService {
                     // Update basic fields
                     existingDocument.setTitle(updatedDocument.getTitle());
                     existingDocument.setCategory(updatedDocument.getCategory());
-                    existingDocument.setFilePath(updatedDocument.getFilePath());
-                    existingDocument.setFileType(updatedDocument.getFileType());
-                    existingDocument.setFileSize(updatedDocument.getFileSize());
                     existingDocument.setExtractedText(updatedDocument.getExtractedText());
                     existingDocument.setDocumentDate(updatedDocument.getDocumentDate());
+                    if (existingDocument.getExtractionStatus() == ExtractionStatus.PENDING
+                            && existingDocument.getExtractedText() != null) {
+                        // Text sent by the client replaces the pending extraction, whose
+                        // result is only written while the document is still PENDING
+                        existingDocument.setExtractionStatus(null);
+                    }
 
                     // Handle tags update
                     if (tagNames != null) {
@@ -94,7 +115,9 @@ public class DocumentService {
                         }
                     }
 
-                    return documentRepository.save(existingDocument);
+                    Document savedDocument = documentRepository.save(existingDocument);
+                    eventPublisher.publishEvent(new DocumentChangedEvent(savedDocument.getId()));
+                    return savedDocument;
                 })
                 .orElseThrow(() -> new ResourceNotFoundException("Document", "id", id));
     }
@@ -105,17 +128,39 @@ public class DocumentService {
             throw new ResourceNotFoundException("Document", "id", id);
         }
         documentRepository.deleteById(id);
+        eventPublisher.publishEvent(new DocumentChangedEvent(id));
+    }
+
+    /**
+     * Load documents with their tags, in the order of the ids. Ids of documents that no
+     * longer exist are skipped.
+     */
+    public List<Document> getDocumentsByIdsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Document> documentsById = documentRepository.findWithTagsByIdIn(ids).stream()
+                .collect(Collectors.toMap(Document::getId, Function.identity()));
+        return ids.stream()
+                .map(documentsById::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     // Business logic methods
     public long countDocumentsByUser(Long userId) {
-        return documentRepository.findByUserIdOrderByCreatedAtDesc(userId).size();
+        return documentRepository.countByUserId(userId);
     }
 
-    public List<Document> searchDocumentsByTitle(String title) {
-        return documentRepository.findAll().stream()
-                .filter(doc -> doc.getTitle().toLowerCase().contains(title.toLowerCase()))
-                .toList();
+    /**
+     * Documents matching a filter expression, see {@link DocumentFilterParser}, in one query.
+     *
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public Page<Document> filterDocuments(String filter, Long userId, Pageable pageable) {
+        return documentRepository.findAll(Specification.allOf(
+                DocumentSpecifications.ownedBy(userId),
+                DocumentFilterParser.parse(filter)), pageable);
     }
 
     // NEW: Paginated methods
@@ -131,11 +176,15 @@ public class DocumentService {
         return documentRepository.findByUserIdAndCategory(userId, category, pageable);
     }
 
-    public Page<Document> searchDocumentsByTitlePaginated(String title, Pageable pageable) {
-        return documentRepository.searchByTitle(title, pageable);
-    }
-
-    public Page<Document> searchDocumentsByUserAndTitlePaginated(Long userId, String title, Pageable pageable) {
-        return documentRepository.searchByUserIdAndTitle(userId, title, pageable);
+    /**
+     * Documents whose titles contain the query or a word close to it, most similar first.
+     *
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public Page<Document> searchDocumentsByTitlePaginated(String title, Long userId, Pageable pageable) {
+        SearchHits hits = trigramSearchService.searchTitles(
+                title, userId, pageable.getOffset(), pageable.getPageSize());
+        List<Document> documents = getDocumentsByIdsInOrder(hits.hits().stream().map(SearchHits.Hit::id).toList());
+        return new PageImpl<>(documents, pageable, hits.totalHits());
     }
 }
\ No newline at end of file
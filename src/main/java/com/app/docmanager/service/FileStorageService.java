@@ -1,26 +1,80 @@
 package com.app.docmanager.service;
 
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.StoredFileRemovedEvent;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.storage.ContentTypeDetector;
+import com.app.docmanager.storage.StorageBackend;
+import com.app.docmanager.storage.StorageUpload;
+import com.app.docmanager.storage.StoredObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 @Slf4j
 public class FileStorageService {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int LOCK_STRIPES = 256;
+
+    private final BufferPool bufferPool = new BufferPool(32, COPY_BUFFER_SIZE);
+
+    // Serializes committing, deleting and quarantining the same stored name
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+    // Stored names committed or reused by uploads whose document is not saved yet
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+
     private final Path fileStorageLocation;
+    private final StorageProperties storageProperties;
+    private final StorageBackend storageBackend;
+    private final DocumentRepository documentRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public FileStorageService(@Value("${file.upload-dir}") String uploadDir) {
+    public FileStorageService(@Value("${file.upload-dir}") String uploadDir,
+                              StorageProperties storageProperties,
+                              StorageBackend storageBackend,
+                              DocumentRepository documentRepository,
+                              ApplicationEventPublisher eventPublisher) {
         this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.storageProperties = storageProperties;
+        this.storageBackend = storageBackend;
+        this.documentRepository = documentRepository;
+        this.eventPublisher = eventPublisher;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
 
         try {
             Files.createDirectories(this.fileStorageLocation);
@@ -29,61 +83,430 @@ public class FileStorageService {
         }
     }
 
-    public String storeFile(MultipartFile file) {
+    /**
+     * Store the uploaded file content-addressed: the stored name is the SHA-256 digest
+     * of the content, so identical uploads share a single file on disk.
+     */
+    public StoredFile storeFile(MultipartFile file) {
         // Normalize file name
         String fileName = StringUtils.cleanPath(file.getOriginalFilename());
 
+        // Check if the file's name contains invalid characters
+        if (fileName.contains("..")) {
+            throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
+        }
+
+        try (InputStream inputStream = file.getInputStream()) {
+            return store(inputStream, file.getContentType());
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + fileName + ". Please try again!", ex);
+        }
+    }
+
+    /**
+     * Store content read directly from a request body. The stream is read exactly once:
+     * the same pass writes the file, computes digest and size and sniffs the content type.
+     */
+    public StoredFile storeStream(InputStream inputStream, String declaredContentType) {
         try {
-            // Check if the file's name contains invalid characters
-            if (fileName.contains("..")) {
-                throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
+            return store(inputStream, declaredContentType);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store uploaded stream. Please try again!", ex);
+        }
+    }
+
+    /**
+     * Hash the content while streaming it into the storage backend, then commit it under
+     * its digest. If an object with that digest already exists the copy is discarded.
+     * Compressible types are gzip-encoded on the way; the digest is always taken over
+     * the original bytes.
+     */
+    private StoredFile store(InputStream inputStream, String declaredContentType) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = bufferPool.acquire();
+
+        try (StorageUpload upload = storageBackend.beginUpload()) {
+            long size = 0;
+            String detectedContentType = null;
+            String contentType = ContentTypeDetector.resolve(declaredContentType, null);
+            StorageCodec codec = StorageCodec.NONE;
+            CountingOutputStream storedStream = new CountingOutputStream(upload.outputStream());
+            OutputStream outputStream = storedStream;
+            int read;
+            while ((read = inputStream.readNBytes(buffer, 0, buffer.length)) > 0) {
+                if (size == 0) {
+                    // Type and codec are decided once the leading bytes are known
+                    detectedContentType = ContentTypeDetector.detect(buffer, read);
+                    contentType = ContentTypeDetector.resolve(declaredContentType, detectedContentType);
+                    codec = selectCodec(contentType);
+                    if (codec == StorageCodec.GZIP) {
+                        outputStream = new GZIPOutputStream(storedStream, COPY_BUFFER_SIZE);
+                    }
+                }
+                digest.update(buffer, 0, read);
+                outputStream.write(buffer, 0, read);
+                size += read;
             }
+            if (outputStream instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+            outputStream.flush();
+
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            String fileName = contentHash + codec.getFileSuffix();
+            boolean stored = commitClaimed(fileName, () -> upload.commit(fileName));
+            return storedFile(fileName, contentHash, size, storedStream.getCount(), codec,
+                    contentType, detectedContentType, !stored);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Take over a file that was assembled in the local working directory (e.g. from upload
+     * chunks). It is read once for hashing and then handed to the backend, which renames it
+     * in place when it lives on the same volume. Compressible content is re-encoded instead.
+     */
+    public StoredFile storeAssembledFile(Path assembledFile, String declaredContentType) {
+        MessageDigest digest = newDigest();
+        byte[] buffer = bufferPool.acquire();
 
-            // Generate unique filename to prevent conflicts
-            String fileExtension = "";
-            int dotIndex = fileName.lastIndexOf('.');
-            if (dotIndex > 0) {
-                fileExtension = fileName.substring(dotIndex);
+        try {
+            String detectedContentType;
+            try (InputStream inputStream = Files.newInputStream(assembledFile)) {
+                int read = inputStream.readNBytes(buffer, 0, ContentTypeDetector.SNIFF_LENGTH);
+                detectedContentType = ContentTypeDetector.detect(buffer, read);
             }
+            String contentType = ContentTypeDetector.resolve(declaredContentType, detectedContentType);
 
-            String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
+            StorageCodec codec = selectCodec(contentType);
+            if (codec != StorageCodec.NONE) {
+                try (InputStream inputStream = Files.newInputStream(assembledFile)) {
+                    return store(inputStream, declaredContentType);
+                } finally {
+                    Files.deleteIfExists(assembledFile);
+                }
+            }
 
-            // Copy file to the target location (Replacing existing file with the same name)
-            Path targetLocation = this.fileStorageLocation.resolve(uniqueFileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            long size = 0;
+            try (InputStream inputStream = Files.newInputStream(assembledFile)) {
+                int read;
+                while ((read = inputStream.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    digest.update(buffer, 0, read);
+                    size += read;
+                }
+            }
 
-            log.info("File stored successfully: {}", uniqueFileName);
-            return uniqueFileName;
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            boolean stored = commitClaimed(contentHash, () -> storageBackend.putFile(contentHash, assembledFile));
+            return storedFile(contentHash, contentHash, size, size, StorageCodec.NONE,
+                    contentType, detectedContentType, !stored);
         } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + fileName + ". Please try again!", ex);
+            throw new RuntimeException("Could not store assembled file " + assembledFile.getFileName(), ex);
+        } finally {
+            bufferPool.release(buffer);
         }
     }
 
+    /**
+     * Commit under the name's lock and claim it, so a concurrent delete of the last document
+     * with the same content cannot remove the file before the new document is saved. The
+     * claim is released when the document is created or the upload is discarded.
+     */
+    private boolean commitClaimed(String fileName, StorageCommit commit) throws IOException {
+        Lock lock = lockFor(fileName);
+        lock.lock();
+        try {
+            boolean stored = commit.commit();
+            claims.compute(fileName, (name, claim) -> claim == null ? new Claim(1, Instant.now())
+                    : new Claim(claim.uploads() + 1, Instant.now()));
+            return stored;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        if (event.filePath() != null) {
+            releaseClaim(event.filePath());
+        }
+    }
+
+    private void releaseClaim(String fileName) {
+        claims.computeIfPresent(fileName, (name, claim) ->
+                claim.uploads() > 1 ? new Claim(claim.uploads() - 1, claim.since()) : null);
+    }
+
+    /**
+     * Whether an upload claimed the name recently. Claims of uploads that neither saved nor
+     * discarded their document expire after the reconciler's grace period.
+     */
+    private boolean isClaimed(String fileName) {
+        Claim claim = claims.get(fileName);
+        if (claim == null) {
+            return false;
+        }
+        if (claim.since().isBefore(Instant.now().minus(storageProperties.getReconciler().getGracePeriod()))) {
+            claims.remove(fileName, claim);
+            return false;
+        }
+        return true;
+    }
+
+    private Lock lockFor(String fileName) {
+        return locks[Math.floorMod(fileName.hashCode(), locks.length)];
+    }
+
+    /**
+     * Open a stored file for reading, decoding it if it is stored compressed.
+     */
+    public InputStream openStream(String fileName, StorageCodec codec) throws IOException {
+        InputStream inputStream = storageBackend.get(fileName, 0, -1);
+        if (StorageCodec.orNone(codec) == StorageCodec.GZIP) {
+            return new GZIPInputStream(inputStream, COPY_BUFFER_SIZE);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Open a byte range of the stored bytes, as they are on the backend (not decoded).
+     */
+    public InputStream openRange(String fileName, long offset, long length) throws IOException {
+        return storageBackend.get(fileName, offset, length);
+    }
+
+    public Optional<StoredObject> stat(String fileName) throws IOException {
+        return storageBackend.stat(fileName);
+    }
+
+    /**
+     * The file behind a stored name when the backend keeps it on a local file system.
+     */
+    public Optional<Path> localPath(String fileName) {
+        return storageBackend.localPath(fileName);
+    }
+
+    private StoredFile storedFile(String fileName, String contentHash, long size, long storedSize,
+                                  StorageCodec codec, String contentType, String detectedContentType,
+                                  boolean deduplicated) {
+        if (deduplicated) {
+            log.info("File already stored, reusing: {}", fileName);
+        } else {
+            log.info("File stored successfully: {} ({} of {} bytes stored)", fileName, storedSize, size);
+        }
+
+        return StoredFile.builder()
+                .fileName(fileName)
+                .contentHash(contentHash)
+                .size(size)
+                .storedSize(storedSize)
+                .codec(codec)
+                .contentType(contentType)
+                .detectedContentType(detectedContentType)
+                .deduplicated(deduplicated)
+                .build();
+    }
+
+    private StorageCodec selectCodec(String contentType) {
+        return storageProperties.getCompression().isEnabled() && isCompressible(contentType)
+                ? StorageCodec.GZIP
+                : StorageCodec.NONE;
+    }
+
+    /**
+     * Whether the content type is one of the configured compressible types. Formats that are
+     * compressed already (PDF, JPEG, ...) are not.
+     */
+    public boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            for (String compressibleType : storageProperties.getCompression().getCompressibleTypes()) {
+                if (MediaType.parseMediaType(compressibleType).includes(mediaType)) {
+                    return true;
+                }
+            }
+        } catch (InvalidMediaTypeException ex) {
+            log.debug("Not compressing content with invalid type {}", contentType);
+        }
+        return false;
+    }
+
+    /**
+     * Local working directory for files still being assembled, whatever the storage backend.
+     */
     public Path getFileStorageLocation() {
         return fileStorageLocation;
     }
 
+    /**
+     * Delete a stored file once no document references it anymore, together with what
+     * listeners of {@link StoredFileRemovedEvent} keep alongside it.
+     * Call this after the referencing document row has been removed.
+     */
     public void deleteFile(String fileName) {
+        Lock lock = lockFor(fileName);
+        lock.lock();
         try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            Files.deleteIfExists(filePath);
+            if (isClaimed(fileName)) {
+                log.info("File {} was just uploaded again, keeping it", fileName);
+                return;
+            }
+            long references = documentRepository.countByFilePath(fileName);
+            if (references > 0) {
+                log.info("File {} is still referenced by {} document(s), keeping it", fileName, references);
+                return;
+            }
+
+            storageBackend.delete(fileName);
+            eventPublisher.publishEvent(removedEvent(fileName));
             log.info("File deleted: {}", fileName);
         } catch (IOException ex) {
             log.error("Could not delete file: {}", fileName, ex);
+        } finally {
+            lock.unlock();
         }
     }
 
-    public boolean fileExists(String fileName) {
-        Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-        return Files.exists(filePath);
+    /**
+     * Undo storing a file whose document could not be saved. Deduplicated files belong
+     * to earlier uploads and are left alone; deleteFile still checks for references.
+     */
+    public void discardUnsaved(StoredFile storedFile) {
+        releaseClaim(storedFile.getFileName());
+        if (!storedFile.isDeduplicated()) {
+            deleteFile(storedFile.getFileName());
+        }
+    }
+
+    /**
+     * All stored file names in ascending order. The caller must close the stream.
+     */
+    public Stream<String> listFiles() throws IOException {
+        return storageBackend.list();
     }
 
-    public String getContentType(String fileName) {
+    /**
+     * Quarantine a stored file unless a document or an upload in progress references it.
+     *
+     * @return whether the file was quarantined
+     */
+    public boolean quarantineIfUnreferenced(String fileName) throws IOException {
+        Lock lock = lockFor(fileName);
+        lock.lock();
         try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            return Files.probeContentType(filePath);
+            if (isClaimed(fileName) || documentRepository.countByFilePath(fileName) > 0) {
+                return false;
+            }
+            storageBackend.quarantine(fileName);
+            eventPublisher.publishEvent(removedEvent(fileName));
+            log.warn("File quarantined: {}", fileName);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static StoredFileRemovedEvent removedEvent(String fileName) {
+        String suffix = StorageCodec.GZIP.getFileSuffix();
+        String contentHash = fileName.endsWith(suffix)
+                ? fileName.substring(0, fileName.length() - suffix.length())
+                : fileName;
+        return new StoredFileRemovedEvent(fileName, contentHash);
+    }
+
+    public boolean fileExists(String fileName) {
+        try {
+            return storageBackend.stat(fileName).isPresent();
         } catch (IOException ex) {
-            return "application/octet-stream";
+            log.error("Could not check file: {}", fileName, ex);
+            return false;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    @lombok.Data
+    @lombok.Builder
+    public static class StoredFile {
+        private String fileName;
+        private String contentHash;
+        private long size;
+        private long storedSize;
+        private StorageCodec codec;
+        /**
+         * Type to persist: the detected type, or the declared one where detection can't tell.
+         */
+        private String contentType;
+        private String detectedContentType;
+        private boolean deduplicated;
+        /**
+         * Size as received when the file was pre-processed before storing, otherwise null.
+         */
+        private Long originalSize;
+    }
+
+    private record Claim(int uploads, Instant since) {
+    }
+
+    @FunctionalInterface
+    private interface StorageCommit {
+        boolean commit() throws IOException;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Small pool of copy buffers so concurrent large uploads don't churn the heap.
+     */
+    private static class BufferPool {
+        private final BlockingQueue<byte[]> buffers;
+        private final int bufferSize;
+
+        BufferPool(int capacity, int bufferSize) {
+            this.buffers = new ArrayBlockingQueue<>(capacity);
+            this.bufferSize = bufferSize;
+        }
+
+        byte[] acquire() {
+            byte[] buffer = buffers.poll();
+            return buffer != null ? buffer : new byte[bufferSize];
+        }
+
+        void release(byte[] buffer) {
+            buffers.offer(buffer);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,420 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.HotFolderProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.User;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Ingests files that scanners drop into configured folders. New files are noticed through
+ * a WatchService, with periodic rescans for file systems that don't deliver events (e.g.
+ * network shares). A file is ingested once its size and modification time have settled.
+ *
+ * <p>Each file is first moved into the folder's .processing directory under a unique
+ * name, which claims it, and after ingest into the processed or failed directory under its
+ * original name. Files still in .processing after a restart are ingested again unless the
+ * owner already has a document with the same title and content.
+ */
+@Component
+@Slf4j
+public class HotFolderWatcher {
+
+    private static final String PROCESSING_DIRECTORY = ".processing";
+    private static final int MAX_TITLE_LENGTH = 255;
+    // Claimed files are named <random UUID>-<original name>
+    private static final Pattern CLAIMED_NAME = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}-(.+)");
+
+    private final FileStorageService fileStorageService;
+    private final ScanPreprocessingService scanPreprocessingService;
+    private final DocumentService documentService;
+    private final DocumentRepository documentRepository;
+    private final UserRepository userRepository;
+    private final HotFolderProperties hotFolderProperties;
+    private final ThreadPoolTaskExecutor ingestExecutor;
+
+    // Files seen in a folder but not handed to the executor yet, with their last observed state
+    private final Map<Path, Candidate> candidates = new ConcurrentHashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<WatchKey, HotFolder> watchKeys = new HashMap<>();
+    private List<HotFolder> folders;
+    private WatchService watchService;
+
+    public HotFolderWatcher(FileStorageService fileStorageService,
+                            ScanPreprocessingService scanPreprocessingService,
+                            DocumentService documentService,
+                            DocumentRepository documentRepository,
+                            UserRepository userRepository,
+                            HotFolderProperties hotFolderProperties) {
+        this.fileStorageService = fileStorageService;
+        this.scanPreprocessingService = scanPreprocessingService;
+        this.documentService = documentService;
+        this.documentRepository = documentRepository;
+        this.userRepository = userRepository;
+        this.hotFolderProperties = hotFolderProperties;
+
+        // Stable files beyond the queue stay where they are and are offered again on the next poll
+        this.ingestExecutor = new ThreadPoolTaskExecutor();
+        this.ingestExecutor.setCorePoolSize(hotFolderProperties.getConcurrency());
+        this.ingestExecutor.setMaxPoolSize(hotFolderProperties.getConcurrency());
+        this.ingestExecutor.setQueueCapacity(hotFolderProperties.getQueueCapacity());
+        this.ingestExecutor.setThreadNamePrefix("hot-folder-");
+        this.ingestExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestExecutor.shutdown();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                log.debug("Could not close the hot folder watch service", ex);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.hot-folder.poll-interval:PT2S}")
+    public synchronized void poll() {
+        if (!hotFolderProperties.isEnabled()) {
+            return;
+        }
+        if (folders == null) {
+            start();
+        }
+        drainWatchEvents();
+        submitStableFiles();
+    }
+
+    @Scheduled(fixedDelayString = "${file.hot-folder.rescan-interval:PT1M}")
+    public synchronized void rescan() {
+        if (!hotFolderProperties.isEnabled() || folders == null) {
+            return;
+        }
+        folders.forEach(this::scan);
+    }
+
+    private void start() {
+        List<HotFolder> resolved = new ArrayList<>();
+        for (HotFolderProperties.FolderProperties folder : hotFolderProperties.getFolders()) {
+            if (!StringUtils.hasText(folder.getPath()) || !StringUtils.hasText(folder.getOwner())) {
+                log.warn("Ignoring hot folder without path or owner: {}", folder.getPath());
+                continue;
+            }
+            Path path = Paths.get(folder.getPath()).toAbsolutePath().normalize();
+            try {
+                Files.createDirectories(path.resolve(PROCESSING_DIRECTORY));
+                Files.createDirectories(path.resolve(hotFolderProperties.getProcessedDirectory()));
+                Files.createDirectories(path.resolve(hotFolderProperties.getFailedDirectory()));
+            } catch (IOException ex) {
+                log.error("Could not prepare hot folder {}", path, ex);
+                continue;
+            }
+            resolved.add(new HotFolder(path, folder.getOwner(), folder.getCategory(), Set.copyOf(folder.getTags())));
+        }
+        folders = resolved;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (HotFolder folder : folders) {
+                WatchKey key = folder.path().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchKeys.put(key, folder);
+            }
+        } catch (IOException ex) {
+            log.warn("File system events are not available, hot folders are only rescanned", ex);
+        }
+
+        for (HotFolder folder : folders) {
+            recoverClaimed(folder);
+            scan(folder);
+        }
+        log.info("Watching {} hot folder(s)", folders.size());
+    }
+
+    private void drainWatchEvents() {
+        if (watchService == null) {
+            return;
+        }
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            HotFolder folder = watchKeys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (folder == null) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    scan(folder);
+                } else if (event.context() instanceof Path name) {
+                    track(folder, folder.path().resolve(name));
+                }
+            }
+            if (!key.reset()) {
+                // Rescans pick the folder up again if it comes back
+                log.warn("Hot folder is no longer watched: {}", folder != null ? folder.path() : key.watchable());
+                watchKeys.remove(key);
+            }
+        }
+    }
+
+    private void scan(HotFolder folder) {
+        try (Stream<Path> files = Files.list(folder.path())) {
+            files.forEach(file -> track(folder, file));
+        } catch (IOException ex) {
+            log.warn("Could not scan hot folder {}", folder.path(), ex);
+        }
+    }
+
+    private void recoverClaimed(HotFolder folder) {
+        try (Stream<Path> files = Files.list(folder.path().resolve(PROCESSING_DIRECTORY))) {
+            files.filter(Files::isRegularFile)
+                    .forEach(file -> candidates.putIfAbsent(file, new Candidate(folder, true)));
+        } catch (IOException ex) {
+            log.warn("Could not recover claimed files of hot folder {}", folder.path(), ex);
+        }
+    }
+
+    private void track(HotFolder folder, Path file) {
+        String name = file.getFileName().toString();
+        // Our own subdirectories, dot files and files that scanners are still writing under a temporary name
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        if (name.startsWith(".") || name.endsWith("~") || lowerName.endsWith(".tmp") || lowerName.endsWith(".part")) {
+            return;
+        }
+        candidates.putIfAbsent(file, new Candidate(folder, false));
+    }
+
+    private void submitStableFiles() {
+        Instant now = Instant.now();
+        Iterator<Map.Entry<Path, Candidate>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Candidate> entry = iterator.next();
+            Path file = entry.getKey();
+            Candidate candidate = entry.getValue();
+            if (inFlight.contains(file)) {
+                continue;
+            }
+            if (!candidate.claimed) {
+                FileState state = observe(file, candidate, now);
+                if (state == FileState.GONE) {
+                    iterator.remove();
+                    continue;
+                }
+                if (state == FileState.CHANGING) {
+                    continue;
+                }
+            }
+
+            inFlight.add(file);
+            try {
+                ingestExecutor.execute(() -> {
+                    try {
+                        process(candidate.folder, file, candidate.claimed);
+                    } finally {
+                        inFlight.remove(file);
+                    }
+                });
+                iterator.remove();
+            } catch (TaskRejectedException ex) {
+                inFlight.remove(file);
+                log.debug("Hot folder ingest queue is full, {} waits for the next poll", file);
+                return;
+            }
+        }
+    }
+
+    private FileState observe(Path file, Candidate candidate, Instant now) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return FileState.GONE;
+        }
+        if (!attributes.isRegularFile()) {
+            return FileState.GONE;
+        }
+
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (size != candidate.size || modified != candidate.modified) {
+            candidate.size = size;
+            candidate.modified = modified;
+            candidate.unchangedSince = now;
+            return FileState.CHANGING;
+        }
+        return candidate.unchangedSince.plus(hotFolderProperties.getStabilityWindow()).isAfter(now)
+                ? FileState.CHANGING
+                : FileState.STABLE;
+    }
+
+    private void process(HotFolder folder, Path file, boolean claimed) {
+        Path claimedFile = file;
+        if (!claimed) {
+            claimedFile = folder.path().resolve(PROCESSING_DIRECTORY)
+                    .resolve(UUID.randomUUID() + "-" + file.getFileName());
+            try {
+                move(file, claimedFile);
+            } catch (NoSuchFileException ex) {
+                log.debug("Hot folder file was removed before ingest: {}", file);
+                return;
+            } catch (IOException ex) {
+                log.warn("Could not claim hot folder file {}", file, ex);
+                return;
+            }
+        }
+
+        try {
+            ingest(folder, claimedFile, claimed);
+        } catch (Exception ex) {
+            log.error("Could not ingest {} from hot folder {}", claimedFile.getFileName(), folder.path(), ex);
+            moveInto(claimedFile, folder.path().resolve(hotFolderProperties.getFailedDirectory()));
+            return;
+        }
+        // If this move fails the file stays claimed and the restart recovery recognizes it
+        moveInto(claimedFile, folder.path().resolve(hotFolderProperties.getProcessedDirectory()));
+    }
+
+    private void ingest(HotFolder folder, Path file, boolean recovered) throws IOException {
+        User owner = userRepository.findByUsername(folder.owner())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", folder.owner()));
+        String title = originalName(file);
+        if (title.length() > MAX_TITLE_LENGTH) {
+            title = title.substring(0, MAX_TITLE_LENGTH);
+        }
+
+        FileStorageService.StoredFile storedFile;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            storedFile = scanPreprocessingService.storeStream(inputStream, Files.probeContentType(file));
+        }
+        if (recovered && documentRepository.existsByUserIdAndContentHashAndTitle(
+                owner.getId(), storedFile.getContentHash(), title)) {
+            log.info("Hot folder file {} was already ingested before the restart", file.getFileName());
+            fileStorageService.discardUnsaved(storedFile);
+            return;
+        }
+
+        Document document = Document.builder()
+                .title(title)
+                .category(folder.category())
+                .filePath(storedFile.getFileName())
+                .fileType(storedFile.getContentType())
+                .fileSize(storedFile.getSize())
+                .contentHash(storedFile.getContentHash())
+                .storageCodec(storedFile.getCodec())
+                .storedSize(storedFile.getStoredSize())
+                .build();
+        Document savedDocument;
+        try {
+            savedDocument = documentService.createDocument(document, owner.getId(), folder.tags());
+        } catch (RuntimeException ex) {
+            fileStorageService.discardUnsaved(storedFile);
+            throw ex;
+        }
+        log.info("Hot folder file {} ingested as document {} for user: {}",
+                file.getFileName(), savedDocument.getId(), folder.owner());
+    }
+
+    /**
+     * Move into the directory under the original name, or a numbered one if that name is taken.
+     */
+    private void moveInto(Path file, Path directory) {
+        String name = originalName(file);
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        try {
+            Path target = directory.resolve(name);
+            for (int attempt = 1; Files.exists(target); attempt++) {
+                target = directory.resolve(baseName + "-" + attempt + extension);
+            }
+            move(file, target);
+        } catch (IOException ex) {
+            log.error("Could not move {} to {}", file, directory, ex);
+        }
+    }
+
+    /**
+     * Name of the file as it was dropped.
+     */
+    private static String originalName(Path file) {
+        String name = file.getFileName().toString();
+        Matcher matcher = CLAIMED_NAME.matcher(name);
+        return matcher.matches() ? matcher.group(1) : name;
+    }
+
+    /**
+     * Move without replacing an existing target. An atomic move may replace the target on
+     * some file systems, so the target is checked first; names are unique or numbered, so
+     * nothing else creates it in between.
+     */
+    private static void move(Path source, Path target) throws IOException {
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target);
+        }
+    }
+
+    private enum FileState {
+        GONE, CHANGING, STABLE
+    }
+
+    private record HotFolder(Path path, String owner, String category, Set<String> tags) {
+    }
+
+    private static class Candidate {
+        private final HotFolder folder;
+        // Already moved into .processing by an earlier run
+        private final boolean claimed;
+        private long size = -1;
+        private long modified = -1;
+        private Instant unchangedSince;
+
+        Candidate(HotFolder folder, boolean claimed) {
+            this.folder = folder;
+            this.claimed = claimed;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.OcrProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Recognizes text in scanned pages with a local Tesseract process per page. Pages are
+ * recognized in parallel on a pool sized to the cores; each process is limited to one
+ * thread, so the pool size is the CPU budget.
+ *
+ * <p>Metrics: docmanager.ocr.queue.depth (pages waiting), docmanager.ocr.pages (recognized
+ * pages, whose rate is pages/sec), docmanager.ocr.page (per-page latency) and
+ * docmanager.ocr.page.failures.
+ */
+@Service
+@Slf4j
+public class OcrService {
+
+    private static final Set<String> IMAGE_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/tiff", "image/bmp", "image/gif");
+
+    private final OcrProperties ocrProperties;
+    private final Path workDirectory;
+    private final ThreadPoolTaskExecutor ocrExecutor;
+    private final Counter recognizedPages;
+    private final Counter failedPages;
+    private final Timer pageTimer;
+
+    public OcrService(OcrProperties ocrProperties,
+                      FileStorageService fileStorageService,
+                      MeterRegistry meterRegistry) {
+        this.ocrProperties = ocrProperties;
+        this.workDirectory = fileStorageService.getFileStorageLocation().resolve(".ocr");
+
+        // A full queue makes the extraction thread recognize the page itself, which throttles
+        // rasterizing instead of piling page images up on disk
+        this.ocrExecutor = new ThreadPoolTaskExecutor();
+        this.ocrExecutor.setCorePoolSize(ocrProperties.getThreads());
+        this.ocrExecutor.setMaxPoolSize(ocrProperties.getThreads());
+        this.ocrExecutor.setQueueCapacity(ocrProperties.getQueueCapacity());
+        this.ocrExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        this.ocrExecutor.setThreadNamePrefix("ocr-");
+        this.ocrExecutor.initialize();
+
+        meterRegistry.gauge("docmanager.ocr.queue.depth", ocrExecutor,
+                executor -> executor.getThreadPoolExecutor().getQueue().size());
+        this.recognizedPages = meterRegistry.counter("docmanager.ocr.pages");
+        this.failedPages = meterRegistry.counter("docmanager.ocr.page.failures");
+        this.pageTimer = meterRegistry.timer("docmanager.ocr.page");
+
+        try {
+            Files.createDirectories(this.workDirectory);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the OCR work directory.", ex);
+        }
+        deleteLeftovers();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ocrExecutor.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return ocrProperties.isEnabled();
+    }
+
+    public boolean isImageSupported(String fileType) {
+        return fileType != null && IMAGE_TYPES.contains(fileType);
+    }
+
+    public int getDpi() {
+        return ocrProperties.getDpi();
+    }
+
+    /**
+     * Whether a page's text layer is missing or too short to be more than scanner noise.
+     */
+    public boolean needsOcr(String pageText) {
+        return pageText == null || pageText.strip().length() < ocrProperties.getMinPageTextLength();
+    }
+
+    /**
+     * Start recognizing a rasterized page. The image is written to the work directory
+     * before returning, so the caller can let go of the bitmap right away.
+     */
+    public CompletableFuture<String> recognizePage(BufferedImage page) throws IOException {
+        Path imageFile = Files.createTempFile(workDirectory, "page-", ".png");
+        try {
+            ImageIO.write(page, "png", imageFile.toFile());
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(imageFile);
+            throw ex;
+        }
+        return submit(imageFile, ocrProperties.getDpi());
+    }
+
+    /**
+     * Recognize a stored image, all frames of a multi-page TIFF included.
+     */
+    public String recognizeImage(InputStream content, Instant deadline) throws IOException {
+        Path imageFile = Files.createTempFile(workDirectory, "image-", ".img");
+        try {
+            Files.copy(content, imageFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(imageFile);
+            throw ex;
+        }
+        // The resolution of stored images is taken from their metadata
+        return await(submit(imageFile, 0), deadline);
+    }
+
+    /**
+     * Wait for a page until the document's deadline.
+     */
+    public String await(CompletableFuture<String> page, Instant deadline) throws IOException {
+        long remaining = Duration.between(Instant.now(), deadline).toMillis();
+        try {
+            return page.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for OCR");
+        } catch (TimeoutException ex) {
+            throw new IOException("OCR timed out");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : ex.getCause();
+            throw cause instanceof IOException io ? io : new IOException("OCR failed", cause);
+        }
+    }
+
+    /**
+     * The image is deleted once the page completes. A page cancelled while still queued
+     * never runs, so the deletion hangs off the future rather than the task.
+     */
+    private CompletableFuture<String> submit(Path imageFile, int dpi) {
+        CompletableFuture<String> page = CompletableFuture.supplyAsync(() -> {
+            try {
+                String text = pageTimer.recordCallable(() -> runTesseract(imageFile, dpi));
+                recognizedPages.increment();
+                return text;
+            } catch (Exception ex) {
+                failedPages.increment();
+                throw ex instanceof IOException io ? new UncheckedIOException(io)
+                        : new UncheckedIOException(new IOException("OCR failed", ex));
+            } finally {
+                deleteQuietly(imageFile);
+            }
+        }, ocrExecutor);
+        page.whenComplete((text, failure) -> deleteQuietly(imageFile));
+        return page;
+    }
+
+    private String runTesseract(Path imageFile, int dpi) throws IOException {
+        List<String> command = new ArrayList<>(List.of(ocrProperties.getTesseractPath(),
+                imageFile.toString(), "stdout", "-l", ocrProperties.getLanguages()));
+        if (dpi > 0) {
+            command.add("--dpi");
+            command.add(String.valueOf(dpi));
+        }
+
+        Path textFile = Files.createTempFile(workDirectory, "text-", ".txt");
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command)
+                    .redirectOutput(textFile.toFile())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD);
+            // Pages already run in parallel; more threads per process would oversubscribe the cores
+            builder.environment().put("OMP_THREAD_LIMIT", "1");
+            Process process = builder.start();
+            try {
+                if (!process.waitFor(ocrProperties.getPageTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException("Tesseract timed out on " + imageFile.getFileName());
+                }
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while running Tesseract");
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("Tesseract exited with status " + process.exitValue());
+            }
+            return Files.readString(textFile, StandardCharsets.UTF_8).strip();
+        } finally {
+            deleteQuietly(textFile);
+        }
+    }
+
+    /**
+     * Work files are only used by a running page, so any found at startup were left by a crash.
+     */
+    private void deleteLeftovers() {
+        try (Stream<Path> files = Files.list(workDirectory)) {
+            files.forEach(OcrService::deleteQuietly);
+        } catch (IOException ex) {
+            log.warn("Could not clean the OCR work directory {}", workDirectory, ex);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Could not delete OCR work file {}", file, ex);
+        }
+    }
+}
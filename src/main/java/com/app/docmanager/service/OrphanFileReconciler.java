@@ -0,0 +1,208 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.repository.DocumentJdbcRepository;
+import com.app.docmanager.storage.StoredObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Finds stored files without a document and documents without a stored file. Both sides
+ * are read in ascending order (storage listing, keyset-paged file_path queries) and
+ * merge-joined, so memory use does not grow with the number of files.
+ *
+ * <p>Unreferenced files older than the grace period are quarantined; younger ones may
+ * belong to an upload whose row is not committed yet. Documents whose file is missing
+ * are only counted and logged.
+ */
+@Component
+@Slf4j
+public class OrphanFileReconciler {
+
+    private static final int LOGGED_DANGLING_PATHS = 20;
+
+    private final FileStorageService fileStorageService;
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final StorageProperties storageProperties;
+
+    private final AtomicLong danglingPaths = new AtomicLong();
+    private final AtomicLong pendingOrphans = new AtomicLong();
+    private final Counter quarantinedFiles;
+    private final Timer runTimer;
+
+    public OrphanFileReconciler(FileStorageService fileStorageService,
+                                DocumentJdbcRepository documentJdbcRepository,
+                                StorageProperties storageProperties,
+                                MeterRegistry meterRegistry) {
+        this.fileStorageService = fileStorageService;
+        this.documentJdbcRepository = documentJdbcRepository;
+        this.storageProperties = storageProperties;
+
+        meterRegistry.gauge("docmanager.storage.dangling.paths", danglingPaths);
+        meterRegistry.gauge("docmanager.storage.orphans.pending", pendingOrphans);
+        this.quarantinedFiles = meterRegistry.counter("docmanager.storage.orphans.quarantined");
+        this.runTimer = meterRegistry.timer("docmanager.storage.reconcile");
+    }
+
+    @Scheduled(fixedDelayString = "${file.storage.reconciler.interval:PT6H}",
+            initialDelayString = "${file.storage.reconciler.initial-delay:PT10M}")
+    public void reconcileScheduled() {
+        if (!storageProperties.getReconciler().isEnabled()) {
+            return;
+        }
+        try {
+            ReconcileResult result = runTimer.recordCallable(this::reconcile);
+            log.info("Storage reconciled: {}", result);
+        } catch (Exception ex) {
+            log.error("Storage reconciliation aborted", ex);
+        }
+    }
+
+    public ReconcileResult reconcile() throws IOException {
+        StorageProperties.ReconcilerProperties reconciler = storageProperties.getReconciler();
+        Instant graceLimit = Instant.now().minus(reconciler.getGracePeriod());
+        long quarantined = 0;
+        long pending = 0;
+        long dangling = 0;
+
+        try (Stream<String> storedFiles = fileStorageService.listFiles()) {
+            SortedCursor files = new SortedCursor("storage", storedFiles.iterator());
+            SortedCursor paths = new SortedCursor("file_path", new FilePathIterator(reconciler));
+
+            String file = files.next();
+            String path = paths.next();
+            while (file != null || path != null) {
+                int order = file == null ? 1 : path == null ? -1 : file.compareTo(path);
+                if (order < 0) {
+                    if (quarantineIfExpired(file, graceLimit)) {
+                        quarantined++;
+                    } else {
+                        pending++;
+                    }
+                    file = files.next();
+                } else if (order > 0) {
+                    if (dangling++ < LOGGED_DANGLING_PATHS) {
+                        log.warn("Document file is missing from storage: {}", path);
+                    }
+                    path = paths.next();
+                } else {
+                    file = files.next();
+                    path = paths.next();
+                }
+            }
+        }
+
+        // Only a completed run updates the gauges
+        danglingPaths.set(dangling);
+        pendingOrphans.set(pending);
+        return new ReconcileResult(quarantined, pending, dangling);
+    }
+
+    private boolean quarantineIfExpired(String fileName, Instant graceLimit) throws IOException {
+        Optional<StoredObject> stored = fileStorageService.stat(fileName);
+        if (stored.isEmpty()) {
+            return false;
+        }
+        if (stored.get().lastModified() == null || stored.get().lastModified().isAfter(graceLimit)) {
+            return false;
+        }
+        // The listing is not a snapshot; a document may have been saved since the page was read,
+        // so references are counted again under the same lock as uploads of this name
+        if (!fileStorageService.quarantineIfUnreferenced(fileName)) {
+            return false;
+        }
+        quarantinedFiles.increment();
+        return true;
+    }
+
+    public record ReconcileResult(long quarantined, long pendingOrphans, long danglingPaths) {
+    }
+
+    /**
+     * Guards the merge-join: a source that is not in String order (e.g. a database collation
+     * that sorts differently) would make every later key look orphaned, so the run is aborted.
+     */
+    private static class SortedCursor {
+        private final String source;
+        private final Iterator<String> iterator;
+        private String previous;
+
+        SortedCursor(String source, Iterator<String> iterator) {
+            this.source = source;
+            this.iterator = iterator;
+        }
+
+        String next() {
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            String current = iterator.next();
+            if (previous != null && previous.compareTo(current) >= 0) {
+                throw new IllegalStateException("Keys from " + source + " are not in ascending order: "
+                        + previous + " before " + current);
+            }
+            previous = current;
+            return current;
+        }
+    }
+
+    /**
+     * Pages through the distinct file paths by key, pausing between pages to keep the load
+     * on the database low.
+     */
+    private class FilePathIterator implements Iterator<String> {
+        private final StorageProperties.ReconcilerProperties reconciler;
+        private Iterator<String> page = List.<String>of().iterator();
+        private String lastPath = "";
+        private boolean exhausted;
+
+        FilePathIterator(StorageProperties.ReconcilerProperties reconciler) {
+            this.reconciler = reconciler;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !exhausted) {
+                List<String> paths = documentJdbcRepository.findFilePathsAfter(
+                        lastPath, reconciler.getBatchSize());
+                exhausted = paths.size() < reconciler.getBatchSize();
+                page = paths.iterator();
+                if (!exhausted) {
+                    pause();
+                }
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastPath = page.next();
+            return lastPath;
+        }
+
+        private void pause() {
+            try {
+                Thread.sleep(reconciler.getBatchPause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Reconciliation interrupted", ex);
+            }
+        }
+    }
+}
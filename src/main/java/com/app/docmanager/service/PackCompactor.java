@@ -0,0 +1,34 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.storage.PackedStorageBackend;
+import com.app.docmanager.storage.StorageBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reclaims the space of deleted documents in pack segments by rewriting segments that
+ * are mostly dead.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PackCompactor {
+
+    private final StorageBackend storageBackend;
+    private final StorageProperties storageProperties;
+
+    @Scheduled(fixedDelayString = "${file.storage.pack.compaction-interval:PT10M}")
+    public void compact() {
+        if (!(storageBackend instanceof PackedStorageBackend packedBackend)) {
+            return;
+        }
+
+        long reclaimed = packedBackend.compact(storageProperties.getPack().getCompactionThreshold());
+        if (reclaimed > 0) {
+            log.info("Reclaimed {} bytes from pack segments", reclaimed);
+        }
+    }
+}
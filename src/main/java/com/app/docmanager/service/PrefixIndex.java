@@ -0,0 +1,283 @@
+package com.app.docmanager.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory completion of short texts such as titles, tag names and categories. A text is
+ * found by a prefix of any of its words, e.g. "Annual report 2024" by "ann", "rep" and
+ * "2024". Keys are kept in a radix tree whose nodes cache the heaviest texts below them,
+ * so a lookup only walks the prefix and copies that list.
+ */
+final class PrefixIndex {
+
+    // Longer keys add nodes without making completions more precise
+    static final int MAX_KEY_LENGTH = 48;
+    private static final int MAX_WORD_KEYS = 8;
+    private static final Suggestion[] NONE = new Suggestion[0];
+    private static final Node[] LEAF = new Node[0];
+    private static final Comparator<Suggestion> BY_WEIGHT = Comparator.comparingLong(Suggestion::weight).reversed()
+            .thenComparing(Suggestion::value);
+
+    record Suggestion(String value, long weight) {
+    }
+
+    private static final class Node {
+        String label;
+        Node[] children = LEAF;
+        // Texts whose key ends here
+        Set<String> values;
+        Suggestion[] top = NONE;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        int childIndex(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char label = children[middle].label.charAt(0);
+                if (label < c) {
+                    low = middle + 1;
+                } else if (label > c) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    private final int topSize;
+    private final Node root = new Node("");
+    private final Map<String, Long> weights = new HashMap<>();
+
+    PrefixIndex(int topSize) {
+        this.topSize = topSize;
+    }
+
+    /**
+     * Change the weight of the text; it is dropped when the weight falls to zero.
+     */
+    synchronized void add(String value, long delta) {
+        if (value == null || value.isBlank() || delta == 0) {
+            return;
+        }
+        long weight = weights.getOrDefault(value, 0L) + delta;
+        boolean present = weights.containsKey(value);
+        if (weight > 0) {
+            weights.put(value, weight);
+        } else {
+            weights.remove(value);
+        }
+        for (String key : keys(value)) {
+            if (weight <= 0) {
+                remove(key, value);
+            } else {
+                update(key, value, !present);
+            }
+        }
+    }
+
+    synchronized long weight(String value) {
+        return weights.getOrDefault(value, 0L);
+    }
+
+    synchronized int size() {
+        return weights.size();
+    }
+
+    /**
+     * The heaviest texts with a word starting with the prefix, at most as many as the index
+     * keeps per node.
+     */
+    synchronized List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            key = key.substring(0, MAX_KEY_LENGTH);
+        }
+        Node node = root;
+        int position = 0;
+        while (position < key.length()) {
+            int index = node.childIndex(key.charAt(position));
+            if (index < 0) {
+                return List.of();
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, key, position);
+            if (position + common == key.length()) {
+                // The prefix ends on this edge
+                node = child;
+                break;
+            }
+            if (common < child.label.length()) {
+                return List.of();
+            }
+            node = child;
+            position += common;
+        }
+        return List.of(Arrays.copyOf(node.top, Math.min(limit, node.top.length)));
+    }
+
+    private void update(String key, String value, boolean added) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+        while (position < key.length()) {
+            int index = node.childIndex(key.charAt(position));
+            if (index < 0) {
+                Node leaf = new Node(key.substring(position));
+                insertChild(node, -(index + 1), leaf);
+                node = leaf;
+                path.add(node);
+                break;
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, key, position);
+            if (common < child.label.length()) {
+                // Split the edge where the key leaves it
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.children = new Node[]{child};
+                middle.top = child.top;
+                node.children[index] = middle;
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            position += common;
+        }
+        if (added) {
+            if (node.values == null) {
+                node.values = new LinkedHashSet<>();
+            }
+            node.values.add(value);
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            recompute(path.get(i));
+        }
+    }
+
+    private void remove(String key, String value) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+        while (position < key.length()) {
+            int index = node.childIndex(key.charAt(position));
+            if (index < 0) {
+                return;
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, key, position);
+            if (common < child.label.length()) {
+                return;
+            }
+            node = child;
+            path.add(node);
+            position += common;
+        }
+        if (node.values == null || !node.values.remove(value)) {
+            return;
+        }
+        if (node.values.isEmpty()) {
+            node.values = null;
+        }
+
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node current = path.get(i);
+            Node parent = path.get(i - 1);
+            if (current.values == null && current.children.length == 0) {
+                removeChild(parent, current);
+                continue;
+            }
+            if (current.values == null && current.children.length == 1) {
+                // Merge the node into its only child to keep the tree compact
+                Node only = current.children[0];
+                only.label = current.label + only.label;
+                parent.children[parent.childIndex(current.label.charAt(0))] = only;
+                continue;
+            }
+            recompute(current);
+        }
+        recompute(root);
+    }
+
+    private void recompute(Node node) {
+        Map<String, Suggestion> candidates = new HashMap<>();
+        if (node.values != null) {
+            for (String value : node.values) {
+                candidates.put(value, new Suggestion(value, weights.getOrDefault(value, 0L)));
+            }
+        }
+        for (Node child : node.children) {
+            for (Suggestion suggestion : child.top) {
+                // A text reached through two of its words is listed once
+                candidates.putIfAbsent(suggestion.value(), suggestion);
+            }
+        }
+        node.top = candidates.values().stream()
+                .sorted(BY_WEIGHT)
+                .limit(topSize)
+                .toArray(Suggestion[]::new);
+    }
+
+    private static void insertChild(Node parent, int index, Node child) {
+        Node[] children = new Node[parent.children.length + 1];
+        System.arraycopy(parent.children, 0, children, 0, index);
+        children[index] = child;
+        System.arraycopy(parent.children, index, children, index + 1, parent.children.length - index);
+        parent.children = children;
+    }
+
+    private static void removeChild(Node parent, Node child) {
+        int index = parent.childIndex(child.label.charAt(0));
+        Node[] children = new Node[parent.children.length - 1];
+        System.arraycopy(parent.children, 0, children, 0, index);
+        System.arraycopy(parent.children, index + 1, children, index, children.length - index);
+        parent.children = children.length == 0 ? LEAF : children;
+    }
+
+    private static int commonPrefix(String label, String key, int position) {
+        int length = Math.min(label.length(), key.length() - position);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(position + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * The normalized text from the start of each of its first words.
+     */
+    static Set<String> keys(String value) {
+        String normalized = normalize(value);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < normalized.length() && keys.size() < MAX_WORD_KEYS; i++) {
+            boolean wordStart = i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1));
+            if (wordStart && Character.isLetterOrDigit(normalized.charAt(i))) {
+                String key = normalized.substring(i);
+                keys.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+            }
+        }
+        return keys;
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+}
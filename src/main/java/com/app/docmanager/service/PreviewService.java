@@ -0,0 +1,336 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.PreviewProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.StoredFileRemovedEvent;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Renders a first-page thumbnail and a larger preview for PDFs and images. Rendering starts
+ * after a document is committed and runs on a small bounded pool; results are cached on
+ * disk by content hash, so identical files share their previews, and are removed with the
+ * stored file. Files without a content hash get no preview.
+ */
+@Service
+@Slf4j
+public class PreviewService {
+
+    private static final Set<String> IMAGE_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/bmp", "image/tiff");
+    private static final String PDF_TYPE = "application/pdf";
+    private static final float MAX_PDF_DPI = 300f;
+
+    public enum PreviewSize {
+        THUMBNAIL, PREVIEW
+    }
+
+    private final FileStorageService fileStorageService;
+    private final PreviewProperties previewProperties;
+    private final Path cacheDirectory;
+    private final ThreadPoolTaskExecutor renderExecutor;
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public PreviewService(FileStorageService fileStorageService,
+                          PreviewProperties previewProperties,
+                          @Value("${file.upload-dir}") String uploadDir) {
+        this.fileStorageService = fileStorageService;
+        this.previewProperties = previewProperties;
+        this.cacheDirectory = (StringUtils.hasText(previewProperties.getCacheDir())
+                ? Paths.get(previewProperties.getCacheDir())
+                : Paths.get(uploadDir).resolve(".previews")).toAbsolutePath().normalize();
+
+        // Rendering is CPU and memory heavy: a fixed pool, and a bounded queue that rejects
+        // work when full rather than letting a bulk import pile up renders without limit
+        this.renderExecutor = new ThreadPoolTaskExecutor();
+        this.renderExecutor.setCorePoolSize(previewProperties.getThreads());
+        this.renderExecutor.setMaxPoolSize(previewProperties.getThreads());
+        this.renderExecutor.setQueueCapacity(previewProperties.getQueueCapacity());
+        this.renderExecutor.setThreadNamePrefix("preview-");
+        this.renderExecutor.initialize();
+
+        try {
+            Files.createDirectories(this.cacheDirectory);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the preview cache directory.", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdown();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        if (!previewProperties.isEnabled() || !isSupported(event.fileType()) || event.filePath() == null
+                || event.contentHash() == null) {
+            return;
+        }
+        PreviewSource source = new PreviewSource(event.contentHash(), event.filePath(), event.fileType(),
+                StorageCodec.orNone(event.storageCodec()));
+        // Failures are logged by the render task; a missed preview is rendered on first request
+        render(source);
+    }
+
+    @EventListener
+    public void onStoredFileRemoved(StoredFileRemovedEvent event) {
+        for (PreviewSize size : PreviewSize.values()) {
+            try {
+                Files.deleteIfExists(cachePath(event.contentHash(), size));
+            } catch (IOException ex) {
+                log.error("Could not delete the {} of {}", size.name().toLowerCase(Locale.ROOT),
+                        event.contentHash(), ex);
+            }
+        }
+    }
+
+    public boolean isSupported(String fileType) {
+        return fileType != null && (PDF_TYPE.equals(fileType) || IMAGE_TYPES.contains(fileType));
+    }
+
+    /**
+     * The cached image for a document, rendered now if it is not cached yet.
+     */
+    public Path getPreview(Document document, PreviewSize size) {
+        if (!previewProperties.isEnabled() || !isSupported(document.getFileType()) || document.getFilePath() == null
+                || document.getContentHash() == null) {
+            throw new ResourceNotFoundException("Preview", "documentId", document.getId());
+        }
+
+        String cacheKey = document.getContentHash();
+        Path cached = cachePath(cacheKey, size);
+        if (Files.exists(cached)) {
+            return cached;
+        }
+
+        PreviewSource source = new PreviewSource(cacheKey, document.getFilePath(), document.getFileType(),
+                StorageCodec.orNone(document.getStorageCodec()));
+        try {
+            render(source).get(previewProperties.getRenderTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering preview", ex);
+        } catch (ExecutionException | TimeoutException ex) {
+            log.warn("Could not render preview of document {}", document.getId(), ex);
+        }
+
+        if (!Files.exists(cached)) {
+            throw new ResourceNotFoundException("Preview", "documentId", document.getId());
+        }
+        return cached;
+    }
+
+    /**
+     * Start rendering unless the same content is already being rendered.
+     */
+    private CompletableFuture<Void> render(PreviewSource source) {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(source.cacheKey(), created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            renderExecutor.execute(() -> {
+                try {
+                    renderAll(source);
+                    created.complete(null);
+                } catch (Exception | OutOfMemoryError ex) {
+                    log.warn("Could not render preview of {}", source.filePath(), ex);
+                    created.completeExceptionally(ex);
+                } finally {
+                    inFlight.remove(source.cacheKey(), created);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            log.debug("Preview queue is full, skipping {}", source.filePath());
+            inFlight.remove(source.cacheKey(), created);
+            created.completeExceptionally(ex);
+        }
+        return created;
+    }
+
+    private void renderAll(PreviewSource source) throws IOException {
+        Path previewPath = cachePath(source.cacheKey(), PreviewSize.PREVIEW);
+        Path thumbnailPath = cachePath(source.cacheKey(), PreviewSize.THUMBNAIL);
+        if (Files.exists(previewPath) && Files.exists(thumbnailPath)) {
+            return;
+        }
+
+        // Render once at preview size and derive the thumbnail from it
+        BufferedImage page = PDF_TYPE.equals(source.fileType())
+                ? renderPdfPage(source, previewProperties.getPreviewWidth())
+                : readImage(source, previewProperties.getPreviewWidth());
+        if (page == null) {
+            throw new IOException("No image reader for " + source.fileType());
+        }
+
+        BufferedImage preview = scaleToWidth(page, previewProperties.getPreviewWidth());
+        writeJpeg(preview, previewPath);
+        writeJpeg(scaleToWidth(preview, previewProperties.getThumbnailWidth()), thumbnailPath);
+        log.debug("Rendered preview of {}", source.filePath());
+    }
+
+    private BufferedImage renderPdfPage(PreviewSource source, int targetWidth) throws IOException {
+        Optional<Path> localFile = source.codec() == StorageCodec.NONE
+                ? fileStorageService.localPath(source.filePath())
+                : Optional.empty();
+
+        // A local file is read on demand; otherwise the document is spooled to a temporary
+        // file first, as PDFBox needs random access and a large PDF must not sit in the heap
+        if (localFile.isPresent()) {
+            try (PDDocument pdf = Loader.loadPDF(localFile.get().toFile())) {
+                return renderFirstPage(pdf, targetWidth);
+            }
+        }
+        Path spooled = Files.createTempFile(cacheDirectory, ".source-", ".pdf");
+        try {
+            try (InputStream inputStream = fileStorageService.openStream(source.filePath(), source.codec())) {
+                Files.copy(inputStream, spooled, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (PDDocument pdf = Loader.loadPDF(spooled.toFile())) {
+                return renderFirstPage(pdf, targetWidth);
+            }
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+    private static BufferedImage renderFirstPage(PDDocument pdf, int targetWidth) throws IOException {
+        if (pdf.getNumberOfPages() == 0) {
+            throw new IOException("PDF has no pages");
+        }
+        PDPage page = pdf.getPage(0);
+        boolean rotated = page.getRotation() % 180 != 0;
+        float widthInPoints = rotated ? page.getCropBox().getHeight() : page.getCropBox().getWidth();
+        float dpi = Math.min(MAX_PDF_DPI, targetWidth * 72f / Math.max(1f, widthInPoints));
+        return new PDFRenderer(pdf).renderImageWithDPI(0, dpi, ImageType.RGB);
+    }
+
+    /**
+     * Decode the first image, subsampling large scans while reading so a full-resolution
+     * bitmap is never held in memory.
+     */
+    private BufferedImage readImage(PreviewSource source, int targetWidth) throws IOException {
+        try (InputStream inputStream = fileStorageService.openStream(source.filePath(), source.codec());
+             ImageInputStream imageInput = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Keep twice the target resolution so the final downscale stays smooth
+                int subsampling = Math.max(1, reader.getWidth(0) / (targetWidth * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scaleToWidth(BufferedImage source, int targetWidth) {
+        int width = Math.min(targetWidth, source.getWidth());
+        int height = Math.max(1, Math.round((float) source.getHeight() * width / source.getWidth()));
+        if (width == source.getWidth() && source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return source;
+        }
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha channel, so transparent areas become white
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), ".render-", ".tmp");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(tempFile.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(previewProperties.getJpegQuality());
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            try {
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private Path cachePath(String cacheKey, PreviewSize size) {
+        String prefix = cacheKey.length() >= 2 ? cacheKey.substring(0, 2) : "_";
+        return cacheDirectory.resolve(prefix)
+                .resolve(cacheKey + "-" + size.name().toLowerCase(Locale.ROOT) + ".jpg");
+    }
+
+    private record PreviewSource(String cacheKey, String filePath, String fileType, StorageCodec codec) {
+    }
+}
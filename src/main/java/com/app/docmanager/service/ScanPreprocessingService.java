@@ -0,0 +1,576 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.PreprocessProperties;
+import com.app.docmanager.event.StoredFileRemovedEvent;
+import com.app.docmanager.storage.ContentTypeDetector;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.w3c.dom.NodeList;
+
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional ingest stage for scans: downsamples to the target resolution, converts to grey
+ * or black and white and straightens skewed pages before the file is stored, so storage,
+ * previews and OCR all work on the smaller, cleaner image.
+ *
+ * <p>Pages are decoded one at a time, subsampled while reading when the scan has a higher
+ * resolution than needed, and processed in parallel within a small window; the result is
+ * written in page order. A multi-page TIFF is never held in memory as a whole.
+ *
+ * <p>Each document's size reduction and processing time are logged and recorded as
+ * docmanager.preprocess.size.ratio and docmanager.preprocess.
+ *
+ * <p>Kept originals are named by the content hash of the stored result and live as long as
+ * the stored file: they are removed when it is deleted or quarantined.
+ */
+@Service
+@Slf4j
+public class ScanPreprocessingService {
+
+    private static final Map<String, String> SCAN_FORMATS = Map.of(
+            "image/tiff", "tiff", "image/jpeg", "jpeg", "image/png", "png", "image/bmp", "bmp");
+    private static final double MM_PER_INCH = 25.4;
+    private static final String STANDARD_METADATA_FORMAT = "javax_imageio_1.0";
+    // Skew is estimated on a reduced copy; the angle does not depend on resolution
+    private static final int SKEW_SAMPLE_WIDTH = 800;
+    private static final double SKEW_STEP_DEGREES = 0.2;
+
+    private final FileStorageService fileStorageService;
+    private final PreprocessProperties preprocessProperties;
+    private final Path workDirectory;
+    private final Path originalsDirectory;
+    private final ThreadPoolTaskExecutor pageExecutor;
+    private final Timer documentTimer;
+    private final DistributionSummary sizeRatio;
+
+    public ScanPreprocessingService(FileStorageService fileStorageService,
+                                    PreprocessProperties preprocessProperties,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${file.upload-dir}") String uploadDir) {
+        this.fileStorageService = fileStorageService;
+        this.preprocessProperties = preprocessProperties;
+        this.workDirectory = fileStorageService.getFileStorageLocation().resolve(".preprocess");
+        this.originalsDirectory = (StringUtils.hasText(preprocessProperties.getOriginalsDir())
+                ? Paths.get(preprocessProperties.getOriginalsDir())
+                : Paths.get(uploadDir).resolve(".originals")).toAbsolutePath().normalize();
+
+        this.pageExecutor = new ThreadPoolTaskExecutor();
+        this.pageExecutor.setCorePoolSize(preprocessProperties.getThreads());
+        this.pageExecutor.setMaxPoolSize(preprocessProperties.getThreads());
+        this.pageExecutor.setThreadNamePrefix("preprocess-");
+        this.pageExecutor.initialize();
+
+        this.documentTimer = meterRegistry.timer("docmanager.preprocess");
+        this.sizeRatio = meterRegistry.summary("docmanager.preprocess.size.ratio");
+
+        try {
+            Files.createDirectories(this.workDirectory);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the pre-processing work directory.", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pageExecutor.shutdown();
+    }
+
+    /**
+     * Store an uploaded file, pre-processing it first when it is a scan.
+     */
+    public FileStorageService.StoredFile storeFile(MultipartFile file) {
+        if (!preprocessProperties.isEnabled()) {
+            return fileStorageService.storeFile(file);
+        }
+        try (BufferedInputStream inputStream = new BufferedInputStream(file.getInputStream(),
+                ContentTypeDetector.SNIFF_LENGTH)) {
+            String scanFormat = sniffScanFormat(inputStream, file.getContentType());
+            if (scanFormat == null) {
+                return fileStorageService.storeFile(file);
+            }
+            return storeScan(inputStream, scanFormat);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + file.getOriginalFilename() + ". Please try again!", ex);
+        }
+    }
+
+    /**
+     * Store content read from a stream, pre-processing it first when it is a scan.
+     */
+    public FileStorageService.StoredFile storeStream(InputStream inputStream, String declaredContentType) {
+        if (!preprocessProperties.isEnabled()) {
+            return fileStorageService.storeStream(inputStream, declaredContentType);
+        }
+        try {
+            BufferedInputStream bufferedStream = new BufferedInputStream(inputStream, ContentTypeDetector.SNIFF_LENGTH);
+            String scanFormat = sniffScanFormat(bufferedStream, declaredContentType);
+            if (scanFormat == null) {
+                return fileStorageService.storeStream(bufferedStream, declaredContentType);
+            }
+            return storeScan(bufferedStream, scanFormat);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store uploaded stream. Please try again!", ex);
+        }
+    }
+
+    private String sniffScanFormat(BufferedInputStream inputStream, String declaredContentType) throws IOException {
+        inputStream.mark(ContentTypeDetector.SNIFF_LENGTH);
+        byte[] head = inputStream.readNBytes(ContentTypeDetector.SNIFF_LENGTH);
+        inputStream.reset();
+        String contentType = ContentTypeDetector.resolve(declaredContentType,
+                ContentTypeDetector.detect(head, head.length));
+        return SCAN_FORMATS.get(contentType);
+    }
+
+    private FileStorageService.StoredFile storeScan(InputStream inputStream, String scanFormat) throws IOException {
+        Path received = Files.createTempFile(workDirectory, "scan-", ".in");
+        Path processed = Files.createTempFile(workDirectory, "scan-", ".out");
+        try {
+            Files.copy(inputStream, received, StandardCopyOption.REPLACE_EXISTING);
+
+            long started = System.nanoTime();
+            PreprocessResult result;
+            try {
+                result = process(received, processed, scanFormat);
+            } catch (IOException | RuntimeException ex) {
+                // An image we can't process is still a document; keep it as received
+                log.warn("Could not pre-process scan, storing it as received: {}", ex.toString());
+                return fileStorageService.storeAssembledFile(received, "image/" + scanFormat);
+            }
+            long elapsedNanos = System.nanoTime() - started;
+
+            FileStorageService.StoredFile storedFile =
+                    fileStorageService.storeAssembledFile(processed, result.contentType());
+            storedFile.setOriginalSize(result.originalSize());
+            keepOriginal(received, storedFile.getContentHash(), scanFormat);
+
+            documentTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            sizeRatio.record((double) result.processedSize() / Math.max(1, result.originalSize()));
+            log.info("Pre-processed scan {}: {} page(s), {} -> {} bytes ({}% smaller) in {} ms",
+                    storedFile.getFileName(), result.pages(), result.originalSize(), result.processedSize(),
+                    Math.round(100.0 * (result.originalSize() - result.processedSize()) / Math.max(1, result.originalSize())),
+                    elapsedNanos / 1_000_000);
+            return storedFile;
+        } finally {
+            Files.deleteIfExists(received);
+            Files.deleteIfExists(processed);
+        }
+    }
+
+    /**
+     * Runs while the upload still claims the stored name, so the stored file cannot be
+     * removed before the original is in place.
+     */
+    private void keepOriginal(Path received, String contentHash, String scanFormat) {
+        if (preprocessProperties.getOriginalPolicy() != PreprocessProperties.OriginalPolicy.KEEP) {
+            return;
+        }
+        Path target = originalPath(contentHash, scanFormat);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(received, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            log.error("Could not keep the original of scan {}", contentHash, ex);
+        }
+    }
+
+    /**
+     * The scan as received before pre-processing, if it was kept.
+     */
+    public Optional<Original> findOriginal(String contentHash) {
+        if (contentHash == null || contentHash.length() < 2) {
+            return Optional.empty();
+        }
+        for (Map.Entry<String, String> format : SCAN_FORMATS.entrySet()) {
+            Path original = originalPath(contentHash, format.getValue());
+            if (Files.isRegularFile(original)) {
+                return Optional.of(new Original(original, format.getKey()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @EventListener
+    public void onStoredFileRemoved(StoredFileRemovedEvent event) {
+        if (event.contentHash().length() < 2) {
+            return;
+        }
+        for (String format : SCAN_FORMATS.values()) {
+            Path original = originalPath(event.contentHash(), format);
+            try {
+                if (Files.deleteIfExists(original)) {
+                    log.info("Original of scan {} deleted", event.contentHash());
+                }
+            } catch (IOException ex) {
+                log.error("Could not delete the original of scan {}", event.contentHash(), ex);
+            }
+        }
+    }
+
+    private Path originalPath(String contentHash, String scanFormat) {
+        return originalsDirectory.resolve(contentHash.substring(0, 2)).resolve(contentHash + "." + scanFormat);
+    }
+
+    /**
+     * Process every page of the image in {@code input} and write the result to {@code output}.
+     */
+    PreprocessResult process(Path input, Path output, String scanFormat) throws IOException {
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(input.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for " + scanFormat);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, false, false);
+                int pages = reader.getNumImages(true);
+                String outputFormat = outputFormat(scanFormat, pages);
+                Files.deleteIfExists(output);
+                try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output.toFile())) {
+                    ImageWriter writer = ImageIO.getImageWritersByFormatName(outputFormat).next();
+                    try {
+                        writer.setOutput(imageOutput);
+                        writePages(reader, writer, pages);
+                    } finally {
+                        writer.dispose();
+                    }
+                }
+                return new PreprocessResult(pages, Files.size(input), Files.size(output), "image/" + outputFormat);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void writePages(ImageReader reader, ImageWriter writer, int pages) throws IOException {
+        boolean sequence = pages > 1;
+        if (sequence) {
+            writer.prepareWriteSequence(null);
+        }
+
+        // Pages are read in order on this thread (readers are not thread-safe) and processed
+        // on the pool; at most one page per thread plus one is decoded at a time
+        int window = preprocessProperties.getThreads() + 1;
+        Deque<Future<ProcessedPage>> inFlight = new ArrayDeque<>();
+        try {
+            for (int page = 0; page < pages; page++) {
+                double dpi = resolution(reader.getImageMetadata(page));
+                int subsampling = dpi > 0 ? Math.max(1, (int) (dpi / preprocessProperties.getTargetDpi())) : 1;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(page, param);
+                double readDpi = dpi > 0 ? dpi / subsampling : 0;
+
+                inFlight.add(pageExecutor.submit(() -> processPage(image, readDpi)));
+                if (inFlight.size() >= window) {
+                    writePage(writer, await(inFlight.poll()), sequence);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writePage(writer, await(inFlight.poll()), sequence);
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+
+        if (sequence) {
+            writer.endWriteSequence();
+        }
+    }
+
+    private ProcessedPage processPage(BufferedImage image, double dpi) {
+        int targetDpi = preprocessProperties.getTargetDpi();
+        double scale = dpi > targetDpi ? targetDpi / dpi : 1.0;
+        BufferedImage grey = toGrey(image, scale);
+
+        if (preprocessProperties.isDeskew()) {
+            double angle = estimateSkew(grey, preprocessProperties.getMaxSkewDegrees());
+            if (Math.abs(angle) >= SKEW_STEP_DEGREES / 2) {
+                grey = rotate(grey, angle);
+            }
+        }
+        BufferedImage result = preprocessProperties.getColorMode() == PreprocessProperties.ColorMode.BINARY
+                ? binarize(grey)
+                : grey;
+        return new ProcessedPage(result, dpi > 0 ? dpi * scale : 0);
+    }
+
+    private void writePage(ImageWriter writer, ProcessedPage page, boolean sequence) throws IOException {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        String format = writer.getOriginatingProvider().getFormatNames()[0].toLowerCase(Locale.ROOT);
+        if (format.contains("tif")) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(page.image().getType() == BufferedImage.TYPE_BYTE_BINARY ? "CCITT T.6" : "Deflate");
+        } else if (format.contains("jp")) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(preprocessProperties.getJpegQuality());
+        }
+
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(page.image()), param);
+        if (page.dpi() > 0 && metadata != null && metadata.isStandardMetadataFormatSupported()) {
+            // Keeps the resolution with the image, OCR reads it from there
+            IIOMetadataNode pixelSize = new IIOMetadataNode("HorizontalPixelSize");
+            pixelSize.setAttribute("value", Double.toString(MM_PER_INCH / page.dpi()));
+            IIOMetadataNode verticalPixelSize = new IIOMetadataNode("VerticalPixelSize");
+            verticalPixelSize.setAttribute("value", Double.toString(MM_PER_INCH / page.dpi()));
+            IIOMetadataNode dimension = new IIOMetadataNode("Dimension");
+            dimension.appendChild(pixelSize);
+            dimension.appendChild(verticalPixelSize);
+            IIOMetadataNode root = new IIOMetadataNode(STANDARD_METADATA_FORMAT);
+            root.appendChild(dimension);
+            try {
+                metadata.mergeTree(STANDARD_METADATA_FORMAT, root);
+            } catch (IIOInvalidTreeException | RuntimeException ex) {
+                log.debug("Could not set the resolution of a pre-processed page", ex);
+            }
+        }
+
+        IIOImage image = new IIOImage(page.image(), null, metadata);
+        if (sequence) {
+            writer.writeToSequence(image, param);
+        } else {
+            writer.write(null, image, param);
+        }
+    }
+
+    private String outputFormat(String scanFormat, int pages) {
+        if (pages > 1 || "tiff".equals(scanFormat)) {
+            return "tiff";
+        }
+        if (preprocessProperties.getColorMode() == PreprocessProperties.ColorMode.GREY && "jpeg".equals(scanFormat)) {
+            return "jpeg";
+        }
+        return "png";
+    }
+
+    private static ProcessedPage await(Future<ProcessedPage> page) throws IOException {
+        try {
+            return page.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while pre-processing a scan");
+        } catch (ExecutionException ex) {
+            throw new IOException("Could not pre-process page", ex.getCause());
+        }
+    }
+
+    /**
+     * Dots per inch from the standard metadata tree, or 0 when the image does not say.
+     */
+    private static double resolution(IIOMetadata metadata) {
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+            return 0;
+        }
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(STANDARD_METADATA_FORMAT);
+        NodeList pixelSizes = root.getElementsByTagName("HorizontalPixelSize");
+        if (pixelSizes.getLength() == 0) {
+            return 0;
+        }
+        try {
+            double millimetres = Double.parseDouble(((IIOMetadataNode) pixelSizes.item(0)).getAttribute("value"));
+            return millimetres > 0 ? MM_PER_INCH / millimetres : 0;
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static BufferedImage toGrey(BufferedImage source, double scale) {
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage grey = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = grey.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return grey;
+    }
+
+    /**
+     * Skew angle in degrees, positive when lines descend to the right. For each candidate
+     * angle the dark pixels are projected onto the rotated vertical axis; text lines give
+     * the sharpest profile (largest sum of squared row counts) when the angle matches.
+     */
+    static double estimateSkew(BufferedImage grey, double maxDegrees) {
+        int step = Math.max(1, grey.getWidth() / SKEW_SAMPLE_WIDTH);
+        Raster raster = grey.getRaster();
+        int sampledWidth = grey.getWidth() / step;
+        int sampledHeight = grey.getHeight() / step;
+        int[] xs = new int[sampledWidth * sampledHeight / 4 + 1];
+        int[] ys = new int[xs.length];
+        int count = 0;
+        for (int y = 0; y < sampledHeight && count < xs.length; y++) {
+            for (int x = 0; x < sampledWidth && count < xs.length; x++) {
+                if (raster.getSample(x * step, y * step, 0) < 128) {
+                    xs[count] = x;
+                    ys[count] = y;
+                    count++;
+                }
+            }
+        }
+        if (count < 50) {
+            return 0;
+        }
+
+        int offset = (int) Math.ceil(sampledWidth * Math.sin(Math.toRadians(maxDegrees))) + 1;
+        int[] bins = new int[sampledHeight + 2 * offset + 2];
+        double bestAngle = 0;
+        double bestScore = -1;
+        for (double angle = -maxDegrees; angle <= maxDegrees + 1e-9; angle += SKEW_STEP_DEGREES) {
+            double radians = Math.toRadians(angle);
+            double sin = Math.sin(radians);
+            double cos = Math.cos(radians);
+            Arrays.fill(bins, 0);
+            for (int i = 0; i < count; i++) {
+                int bin = (int) Math.round(ys[i] * cos - xs[i] * sin) + offset;
+                if (bin >= 0 && bin < bins.length) {
+                    bins[bin]++;
+                }
+            }
+            double score = 0;
+            for (int bin : bins) {
+                score += (double) bin * bin;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestAngle = angle;
+            }
+        }
+        return bestAngle;
+    }
+
+    private static BufferedImage rotate(BufferedImage grey, double degrees) {
+        BufferedImage rotated = new BufferedImage(grey.getWidth(), grey.getHeight(), grey.getType());
+        Graphics2D graphics = rotated.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, grey.getWidth(), grey.getHeight());
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.rotate(-Math.toRadians(degrees), grey.getWidth() / 2.0, grey.getHeight() / 2.0);
+            graphics.drawImage(grey, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rotated;
+    }
+
+    /**
+     * Black and white with a global Otsu threshold, which suits evenly lit flatbed scans.
+     */
+    private static BufferedImage binarize(BufferedImage grey) {
+        int width = grey.getWidth();
+        int height = grey.getHeight();
+        Raster source = grey.getRaster();
+        int[] histogram = new int[256];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            source.getSamples(0, y, width, 1, 0, row);
+            for (int value : row) {
+                histogram[value]++;
+            }
+        }
+        int threshold = otsuThreshold(histogram, (long) width * height);
+
+        BufferedImage binary = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster target = binary.getRaster();
+        for (int y = 0; y < height; y++) {
+            source.getSamples(0, y, width, 1, 0, row);
+            for (int x = 0; x < width; x++) {
+                row[x] = row[x] > threshold ? 1 : 0;
+            }
+            target.setSamples(0, y, width, 1, 0, row);
+        }
+        return binary;
+    }
+
+    private static int otsuThreshold(int[] histogram, long total) {
+        double sum = 0;
+        for (int value = 0; value < histogram.length; value++) {
+            sum += (double) value * histogram[value];
+        }
+        double backgroundSum = 0;
+        long backgroundWeight = 0;
+        double bestVariance = -1;
+        int threshold = 127;
+        for (int value = 0; value < histogram.length; value++) {
+            backgroundWeight += histogram[value];
+            if (backgroundWeight == 0) {
+                continue;
+            }
+            long foregroundWeight = total - backgroundWeight;
+            if (foregroundWeight == 0) {
+                break;
+            }
+            backgroundSum += (double) value * histogram[value];
+            double backgroundMean = backgroundSum / backgroundWeight;
+            double foregroundMean = (sum - backgroundSum) / foregroundWeight;
+            double variance = (double) backgroundWeight * foregroundWeight
+                    * (backgroundMean - foregroundMean) * (backgroundMean - foregroundMean);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = value;
+            }
+        }
+        return threshold;
+    }
+
+    public record Original(Path path, String contentType) {
+    }
+
+    record PreprocessResult(int pages, long originalSize, long processedSize, String contentType) {
+    }
+
+    private record ProcessedPage(BufferedImage image, double dpi) {
+    }
+}
@@ -0,0 +1,465 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.SearchProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.SearchHits;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-text index over title, category, tags and extracted text, kept in an embedded Lucene
+ * index on local disk and ranked with BM25. Searches of regular users are restricted to
+ * their own documents by a filter inside the index.
+ *
+ * <p>Created, updated and deleted documents, and documents whose tags were renamed or
+ * deleted, are queued and indexed in batches about once a second, after which new searches
+ * see them. The index is committed periodically; after a restart, changes since the last
+ * commit are found again by their updated_at, and deletions by comparing the indexed ids
+ * with the database. A new index, or one written with other fields, is built from the
+ * database in the background.
+ *
+ * <p>The text is stored with the offsets of its terms in the postings, so the passages
+ * shown with a hit are cut out around the matched terms without analyzing the text again.
+ */
+@Service
+@Slf4j
+public class SearchIndexService {
+
+    static final String ID = "id";
+    static final String USER = "user";
+    static final String TITLE = "title";
+    static final String CATEGORY = "category";
+    static final String TAGS = "tags";
+    static final String TEXT = "text";
+
+    // A match in the title says more about a document than one somewhere in its text
+    private static final Map<String, Float> FIELD_WEIGHTS = Map.of(TITLE, 3f, TAGS, 2f, CATEGORY, 2f, TEXT, 1f);
+
+    // Text with term offsets in the postings, stored for highlighting
+    private static final FieldType TEXT_TYPE = textWithOffsets();
+    private static final int HIGHLIGHT_PASSAGES = 3;
+
+    // Bump when the indexed fields change; the index is then rebuilt
+    private static final String INDEX_VERSION = "2";
+    private static final String VERSION_KEY = "version";
+    private static final String COMMITTED_AT_KEY = "committedAt";
+    private static final String REBUILD_AFTER_KEY = "rebuildAfter";
+    // Covers changes whose events were still queued when the last commit was taken
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
+    private static final long REBUILD_SLICE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final DocumentRepository documentRepository;
+    private final SearchProperties searchProperties;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final MeterRegistry meterRegistry;
+    private final Timer searchTimer;
+
+    private Directory directory;
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    // Last id indexed by the rebuild, -1 when there is none running
+    private volatile long rebuildAfter = -1;
+    private volatile LocalDateTime catchUpSince;
+
+    public SearchIndexService(DocumentRepository documentRepository,
+                              FileStorageService fileStorageService,
+                              SearchProperties searchProperties,
+                              MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.searchProperties = searchProperties;
+        this.meterRegistry = meterRegistry;
+        this.searchTimer = meterRegistry.timer("docmanager.search");
+        // Not isEnabled(): an overridable method must not see this instance half constructed
+        if (!searchProperties.isEnabled() || searchProperties.getMode() != SearchProperties.Mode.INDEX) {
+            return;
+        }
+
+        Path indexPath = StringUtils.hasText(searchProperties.getIndexDir())
+                ? Paths.get(searchProperties.getIndexDir()).toAbsolutePath().normalize()
+                : fileStorageService.getFileStorageLocation().resolve(".index");
+        try {
+            Files.createDirectories(indexPath);
+            this.directory = FSDirectory.open(indexPath);
+            Map<String, String> commitData = DirectoryReader.indexExists(directory)
+                    ? SegmentInfos.readLatestCommit(directory).getUserData()
+                    : Map.of();
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                    .setSimilarity(new BM25Similarity())
+                    .setRAMBufferSizeMB(searchProperties.getRamBufferMb());
+            this.indexWriter = new IndexWriter(directory, config);
+            this.searcherManager = new SearcherManager(indexWriter, null);
+            restore(commitData);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not open the search index.", ex);
+        }
+    }
+
+    @PostConstruct
+    public void registerGauges() {
+        if (!isEnabled()) {
+            return;
+        }
+        meterRegistry.gauge("docmanager.search.index.documents", indexWriter,
+                writer -> writer.getDocStats().numDocs);
+        meterRegistry.gauge("docmanager.search.index.pending", pending, Set::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            // Queued changes are found again by the catch-up after the restart
+            commit();
+            searcherManager.close();
+            indexWriter.close();
+            directory.close();
+        } catch (IOException | RuntimeException ex) {
+            log.error("Could not close the search index", ex);
+        }
+    }
+
+    public boolean isEnabled() {
+        return searchProperties.isEnabled() && searchProperties.getMode() == SearchProperties.Mode.INDEX;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        markChanged(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        markChanged(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTagsChanged(TagsChangedEvent event) {
+        event.documentIds().forEach(this::markChanged);
+    }
+
+    private void markChanged(Long documentId) {
+        if (isEnabled() && documentId != null) {
+            pending.add(documentId);
+        }
+    }
+
+    /**
+     * Ranked page of matching document ids, best first. The query uses the simple query
+     * syntax: all words must match, "quoted phrases", -excluded, prefix*, a | b.
+     *
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public SearchHits search(String queryText, Long userId, int offset, int limit) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("The search index is disabled");
+        }
+
+        Query query = buildQuery(queryText, userId);
+        long started = System.nanoTime();
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(query, offset + limit);
+                StoredFields storedFields = searcher.storedFields();
+                int[] docIds = new int[Math.max(0, topDocs.scoreDocs.length - offset)];
+                for (int i = 0; i < docIds.length; i++) {
+                    docIds[i] = topDocs.scoreDocs[offset + i].doc;
+                }
+                String[] highlights = highlight(searcher, query, docIds);
+                List<SearchHits.Hit> hits = new ArrayList<>(limit);
+                for (int i = 0; i < docIds.length; i++) {
+                    ScoreDoc scoreDoc = topDocs.scoreDocs[offset + i];
+                    String id = storedFields.document(scoreDoc.doc, Set.of(ID)).get(ID);
+                    hits.add(new SearchHits.Hit(Long.parseLong(id), scoreDoc.score, highlights[i]));
+                }
+                return new SearchHits(topDocs.totalHits.value,
+                        topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO, hits);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not search the index", ex);
+        } finally {
+            searchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Passages of the text around the matched terms of the page, null for hits that only
+     * matched in other fields.
+     */
+    private String[] highlight(IndexSearcher searcher, Query query, int[] docIds) throws IOException {
+        if (docIds.length == 0) {
+            return new String[0];
+        }
+        UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+                .withFormatter(new DefaultPassageFormatter("<mark>", "</mark>", "… ", true))
+                // Offsets come from the postings, so long texts cost no analysis
+                .withMaxLength(Integer.MAX_VALUE - 1)
+                .withMaxNoHighlightPassages(0)
+                .build();
+        int[] maxPassages = {HIGHLIGHT_PASSAGES};
+        return highlighter.highlightFields(new String[]{TEXT}, query, docIds, maxPassages).get(TEXT);
+    }
+
+    Query buildQuery(String queryText, Long userId) {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, FIELD_WEIGHTS);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query textQuery = parser.parse(queryText);
+        if (userId == null) {
+            return textQuery;
+        }
+        // A filter clause restricts the hits without contributing to the score
+        return new BooleanQuery.Builder()
+                .add(textQuery, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term(USER, userId.toString())), BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    /**
+     * Index the queued changes and make them visible to searches.
+     */
+    @Scheduled(fixedDelayString = "${file.search.refresh-interval:PT1S}")
+    public void refresh() {
+        if (!isEnabled()) {
+            return;
+        }
+        List<Long> batch = new ArrayList<>();
+        try {
+            if (catchUpSince != null) {
+                pending.addAll(documentRepository.findIdsUpdatedSince(catchUpSince));
+                pending.addAll(findDeletedIds());
+                catchUpSince = null;
+            }
+            Iterator<Long> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+                if (batch.size() >= searchProperties.getBatchSize()) {
+                    index(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                index(batch);
+                batch.clear();
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException | RuntimeException ex) {
+            // Tried again on the next run
+            pending.addAll(batch);
+            log.error("Could not update the search index", ex);
+        }
+    }
+
+    /**
+     * Continue building the index from the database, in id order, for a few seconds per run.
+     */
+    @Scheduled(fixedDelayString = "${file.search.rebuild-interval:PT1S}")
+    public void rebuildBatch() {
+        if (!isEnabled() || rebuildAfter < 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            while (System.nanoTime() - started < REBUILD_SLICE_NANOS) {
+                List<Long> ids = documentRepository.findIdsAfter(rebuildAfter,
+                        PageRequest.of(0, searchProperties.getBatchSize()));
+                if (!ids.isEmpty()) {
+                    index(ids);
+                    rebuildAfter = ids.get(ids.size() - 1);
+                }
+                if (ids.size() < searchProperties.getBatchSize()) {
+                    rebuildAfter = -1;
+                    log.info("Search index built, {} documents", indexWriter.getDocStats().numDocs);
+                    commit();
+                    break;
+                }
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException | RuntimeException ex) {
+            log.error("Could not build the search index after document {}", rebuildAfter, ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.search.commit-interval:PT30S}")
+    public void commit() {
+        if (!isEnabled() || !indexWriter.hasUncommittedChanges()) {
+            return;
+        }
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(VERSION_KEY, INDEX_VERSION);
+        commitData.put(COMMITTED_AT_KEY, LocalDateTime.now().toString());
+        if (rebuildAfter >= 0) {
+            commitData.put(REBUILD_AFTER_KEY, Long.toString(rebuildAfter));
+        }
+        try {
+            indexWriter.setLiveCommitData(commitData.entrySet());
+            indexWriter.commit();
+        } catch (IOException ex) {
+            log.error("Could not commit the search index", ex);
+        }
+    }
+
+    /**
+     * Indexed ids whose documents no longer exist. Deleted rows have no updated_at to be
+     * found by, so every indexed id is checked against the database, a batch at a time.
+     */
+    private List<Long> findDeletedIds() throws IOException {
+        List<Long> deleted = new ArrayList<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            List<Long> batch = new ArrayList<>();
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                LeafReader reader = leaf.reader();
+                Bits liveDocs = reader.getLiveDocs();
+                StoredFields storedFields = reader.storedFields();
+                for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    batch.add(Long.parseLong(storedFields.document(doc, Set.of(ID)).get(ID)));
+                    if (batch.size() >= searchProperties.getBatchSize()) {
+                        deleted.addAll(findMissing(batch));
+                        batch.clear();
+                    }
+                }
+            }
+            deleted.addAll(findMissing(batch));
+        } finally {
+            searcherManager.release(searcher);
+        }
+        if (!deleted.isEmpty()) {
+            log.info("Removing {} deleted documents from the search index", deleted.size());
+        }
+        return deleted;
+    }
+
+    private List<Long> findMissing(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> existing = new HashSet<>(documentRepository.findIdsByIdIn(ids));
+        return ids.stream().filter(id -> !existing.contains(id)).toList();
+    }
+
+    /**
+     * Re-index the documents, deleting those that no longer exist.
+     */
+    void index(Collection<Long> documentIds) throws IOException {
+        Set<Long> deleted = new HashSet<>(documentIds);
+        for (Document document : documentRepository.findWithTagsByIdIn(documentIds)) {
+            deleted.remove(document.getId());
+            indexWriter.updateDocument(new Term(ID, document.getId().toString()), toIndexDocument(document));
+        }
+        for (Long documentId : deleted) {
+            indexWriter.deleteDocuments(new Term(ID, documentId.toString()));
+        }
+    }
+
+    private static org.apache.lucene.document.Document toIndexDocument(Document document) {
+        org.apache.lucene.document.Document indexDocument = new org.apache.lucene.document.Document();
+        indexDocument.add(new StringField(ID, document.getId().toString(), Field.Store.YES));
+        indexDocument.add(new StringField(USER, document.getUser().getId().toString(), Field.Store.NO));
+        indexDocument.add(new TextField(TITLE, document.getTitle(), Field.Store.NO));
+        if (document.getCategory() != null) {
+            indexDocument.add(new TextField(CATEGORY, document.getCategory(), Field.Store.NO));
+        }
+        for (Tag tag : document.getTags()) {
+            indexDocument.add(new TextField(TAGS, tag.getName(), Field.Store.NO));
+        }
+        if (document.getExtractedText() != null) {
+            indexDocument.add(new Field(TEXT, document.getExtractedText(), TEXT_TYPE));
+        }
+        return indexDocument;
+    }
+
+    private static FieldType textWithOffsets() {
+        FieldType type = new FieldType(TextField.TYPE_STORED);
+        type.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        type.freeze();
+        return type;
+    }
+
+    private void restore(Map<String, String> commitData) throws IOException {
+        if (!INDEX_VERSION.equals(commitData.get(VERSION_KEY))) {
+            indexWriter.deleteAll();
+            rebuildAfter = 0;
+            log.info("Building the search index from the database");
+            return;
+        }
+        if (commitData.containsKey(REBUILD_AFTER_KEY)) {
+            rebuildAfter = Long.parseLong(commitData.get(REBUILD_AFTER_KEY));
+            log.info("Resuming the search index build after document {}", rebuildAfter);
+        }
+        if (commitData.containsKey(COMMITTED_AT_KEY)) {
+            catchUpSince = LocalDateTime.parse(commitData.get(COMMITTED_AT_KEY)).minus(CATCH_UP_MARGIN);
+        }
+    }
+}
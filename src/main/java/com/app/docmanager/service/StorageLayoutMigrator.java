@@ -0,0 +1,40 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.storage.LocalStorageBackend;
+import com.app.docmanager.storage.PackedStorageBackend;
+import com.app.docmanager.storage.StorageBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves files from the old flat upload directory into the fan-out layout in small
+ * batches, while the application keeps serving them.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StorageLayoutMigrator {
+
+    private final StorageBackend storageBackend;
+    private final StorageProperties storageProperties;
+
+    @Scheduled(fixedDelayString = "${file.storage.migration.interval:PT1M}")
+    public void migrateBatch() {
+        StorageProperties.MigrationProperties migration = storageProperties.getMigration();
+        StorageBackend backend = storageBackend instanceof PackedStorageBackend packed
+                ? packed.getDelegate()
+                : storageBackend;
+        // Object stores have no directory layout to migrate
+        if (!migration.isEnabled() || !(backend instanceof LocalStorageBackend localBackend)) {
+            return;
+        }
+
+        int moved = localBackend.migrateFlatFiles(migration.getBatchSize());
+        if (moved > 0) {
+            log.info("Moved {} files into the fan-out storage layout", moved);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.SuggestProperties;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.repository.TagIndexRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Search-as-you-type completions of titles, tag names and categories, answered from
+ * in-memory prefix indexes per user so that keystrokes never reach the database. Texts are
+ * weighted by how many of the user's documents use them.
+ *
+ * <p>The indexes are built from the database on the first refresh after startup, and
+ * created, updated and deleted documents are applied in batches about once a second. Tag
+ * suggestions are filled up with all tags by overall use, so tags of other users can be
+ * picked when tagging a document.
+ */
+@Service
+@Slf4j
+public class SuggestService {
+
+    public record Suggestions(List<String> titles, List<String> tags, List<String> categories) {
+
+        static final Suggestions NONE = new Suggestions(List.of(), List.of(), List.of());
+    }
+
+    private static final class Suggesters {
+        final PrefixIndex titles;
+        final PrefixIndex categories;
+        // Replaced as a whole when tags are renamed or deleted
+        volatile PrefixIndex tags;
+
+        Suggesters(int size) {
+            this.titles = new PrefixIndex(size);
+            this.categories = new PrefixIndex(size);
+            this.tags = new PrefixIndex(size);
+        }
+    }
+
+    private record Indexed(long userId, String title, String category, List<Long> tagIds) {
+
+        static Indexed of(TagIndexRepository.Entry entry) {
+            return new Indexed(entry.userId(), entry.title(), entry.category(), entry.tagIds());
+        }
+    }
+
+    private final TagIndexRepository tagIndexRepository;
+    private final SuggestProperties suggestProperties;
+    private final MeterRegistry meterRegistry;
+    private final Timer suggestTimer;
+    private final Map<Long, Suggesters> byUser = new ConcurrentHashMap<>();
+    // All documents, for admins; its tags hold every tag by overall use
+    private volatile Suggesters everyone;
+    // Only touched by the refresh run
+    private final Map<Long, Indexed> documents = new HashMap<>();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile Map<Long, String> tagNames = Map.of();
+    private volatile boolean tagsChanged;
+    private volatile boolean ready;
+
+    public SuggestService(TagIndexRepository tagIndexRepository,
+                          SuggestProperties suggestProperties,
+                          MeterRegistry meterRegistry) {
+        this.tagIndexRepository = tagIndexRepository;
+        this.suggestProperties = suggestProperties;
+        this.meterRegistry = meterRegistry;
+        this.suggestTimer = meterRegistry.timer("docmanager.suggest");
+        this.everyone = new Suggesters(suggestProperties.getMaxSuggestions());
+    }
+
+    // The gauge holds this instance, so it is registered once construction is done
+    @PostConstruct
+    public void registerGauge() {
+        meterRegistry.gauge("docmanager.suggest.titles", this, service -> service.everyone.titles.size());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        markChanged(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        markChanged(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTagsChanged(TagsChangedEvent event) {
+        tagsChanged = true;
+    }
+
+    private void markChanged(Long documentId) {
+        if (suggestProperties.isEnabled() && documentId != null) {
+            pending.add(documentId);
+        }
+    }
+
+    /**
+     * Completions of the prefix, most used first. Nothing is suggested until the indexes
+     * are built.
+     *
+     * @param userId owner whose documents are suggested, or null to suggest from all documents
+     */
+    public Suggestions suggest(String prefix, Long userId, int limit) {
+        if (!suggestProperties.isEnabled() || !ready || prefix == null || prefix.isBlank()) {
+            return Suggestions.NONE;
+        }
+        return suggestTimer.record(() -> {
+            Suggesters suggesters = userId == null ? everyone : byUser.get(userId);
+            if (suggesters == null) {
+                return new Suggestions(List.of(), values(everyone.tags.suggest(prefix, limit)), List.of());
+            }
+            Set<String> tags = new LinkedHashSet<>(values(suggesters.tags.suggest(prefix, limit)));
+            if (tags.size() < limit) {
+                tags.addAll(values(everyone.tags.suggest(prefix, limit)));
+            }
+            return new Suggestions(
+                    values(suggesters.titles.suggest(prefix, limit)),
+                    tags.stream().limit(limit).toList(),
+                    values(suggesters.categories.suggest(prefix, limit)));
+        });
+    }
+
+    private static List<String> values(List<PrefixIndex.Suggestion> suggestions) {
+        return suggestions.stream().map(PrefixIndex.Suggestion::value).toList();
+    }
+
+    /**
+     * Build the indexes on the first run, then apply the queued changes.
+     */
+    @Scheduled(fixedDelayString = "${file.suggest.refresh-interval:PT1S}")
+    public void refresh() {
+        if (!suggestProperties.isEnabled()) {
+            return;
+        }
+        try {
+            if (!ready) {
+                build();
+                ready = true;
+            }
+            if (tagsChanged) {
+                tagsChanged = false;
+                rebuildTags();
+            }
+        } catch (RuntimeException ex) {
+            tagsChanged = true;
+            log.error("Could not build the suggestion index", ex);
+            return;
+        }
+
+        List<Long> batch = new ArrayList<>();
+        try {
+            Iterator<Long> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+                if (batch.size() >= suggestProperties.getBatchSize()) {
+                    update(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                update(batch);
+                batch.clear();
+            }
+        } catch (RuntimeException ex) {
+            // Tried again on the next run
+            pending.addAll(batch);
+            log.error("Could not update the suggestion index", ex);
+        }
+    }
+
+    private void build() {
+        // Starts over after a failed attempt
+        documents.clear();
+        byUser.clear();
+        everyone = new Suggesters(suggestProperties.getMaxSuggestions());
+        long after = 0;
+        List<TagIndexRepository.Entry> entries;
+        do {
+            entries = tagIndexRepository.findAfter(after, suggestProperties.getBatchSize());
+            for (TagIndexRepository.Entry entry : entries) {
+                Indexed document = Indexed.of(entry);
+                documents.put(entry.id(), document);
+                apply(document, 1, false);
+            }
+            after = entries.isEmpty() ? after : entries.get(entries.size() - 1).id();
+        } while (entries.size() == suggestProperties.getBatchSize());
+        rebuildTags();
+        log.info("Suggestion index built, {} titles", everyone.titles.size());
+    }
+
+    /**
+     * Re-read the documents, dropping those that no longer exist.
+     */
+    void update(Collection<Long> documentIds) {
+        Map<Long, TagIndexRepository.Entry> entries = tagIndexRepository.findByIds(documentIds).stream()
+                .collect(Collectors.toMap(TagIndexRepository.Entry::id, Function.identity()));
+        for (Long documentId : documentIds) {
+            Indexed previous = documents.remove(documentId);
+            if (previous != null) {
+                apply(previous, -1, true);
+            }
+            TagIndexRepository.Entry entry = entries.get(documentId);
+            if (entry != null) {
+                Indexed document = Indexed.of(entry);
+                documents.put(documentId, document);
+                apply(document, 1, true);
+            }
+        }
+    }
+
+    private void apply(Indexed document, long delta, boolean withTags) {
+        Suggesters user = byUser.computeIfAbsent(document.userId(),
+                id -> new Suggesters(suggestProperties.getMaxSuggestions()));
+        for (Suggesters suggesters : List.of(user, everyone)) {
+            suggesters.titles.add(document.title(), delta);
+            suggesters.categories.add(document.category(), delta);
+            if (withTags) {
+                for (Long tagId : document.tagIds()) {
+                    suggesters.tags.add(tagNames.get(tagId), delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the tag uses again under the current names. Every tag is suggested to everyone,
+     * so all of them start at one.
+     */
+    private void rebuildTags() {
+        Map<Long, String> names = loadTagNames();
+        int size = suggestProperties.getMaxSuggestions();
+        PrefixIndex all = new PrefixIndex(size);
+        names.values().forEach(name -> all.add(name, 1));
+        Map<Long, PrefixIndex> perUser = new HashMap<>();
+        for (Indexed document : documents.values()) {
+            for (Long tagId : document.tagIds()) {
+                String name = names.get(tagId);
+                if (name != null) {
+                    perUser.computeIfAbsent(document.userId(), id -> new PrefixIndex(size)).add(name, 1);
+                    all.add(name, 1);
+                }
+            }
+        }
+        tagNames = names;
+        byUser.forEach((userId, suggesters) ->
+                suggesters.tags = perUser.getOrDefault(userId, new PrefixIndex(size)));
+        everyone.tags = all;
+    }
+
+    private Map<Long, String> loadTagNames() {
+        return tagIndexRepository.findTagIds().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+    }
+}
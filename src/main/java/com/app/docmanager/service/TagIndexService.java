@@ -0,0 +1,583 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.TagIndexProperties;
+import com.app.docmanager.dto.FacetedSearchDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.repository.DocumentFacetRepository;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.DocumentSpecifications;
+import com.app.docmanager.repository.TagIndexRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compressed bitmaps of document ids per tag, owner and category, kept in memory so that
+ * tag queries and tag counts are answered by intersecting bitmaps instead of joining
+ * document_tags. Only the requested page of documents is loaded from the database.
+ *
+ * <p>Created, updated and deleted documents are queued and applied in batches about once a
+ * second. The bitmaps are written to a snapshot on local disk; after a restart the snapshot
+ * is checked against the document ids in the database and documents updated since it was
+ * written are read again. Until the index is loaded, queries run against the database.
+ */
+@Service
+@Slf4j
+public class TagIndexService {
+
+    // Bump when the snapshot layout changes; the index is then built from the database
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "tags.bin";
+    // Covers changes whose events were still queued when the snapshot was written
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
+    private static final int MAX_FACET_VALUES = 50;
+
+    /**
+     * Documents carrying every tag of {@code allTags}, at least one of {@code anyTags} and
+     * none of {@code noneTags}, in one of {@code categories}. Empty or null sets do not
+     * restrict the result.
+     */
+    public record Query(Set<String> allTags, Set<String> anyTags, Set<String> noneTags, Set<String> categories) {
+
+        Query normalized() {
+            return new Query(normalize(allTags), normalize(anyTags), normalize(noneTags),
+                    categories == null ? Set.of() : Set.copyOf(categories));
+        }
+
+        private static Set<String> normalize(Set<String> tagNames) {
+            if (tagNames == null) {
+                return Set.of();
+            }
+            // Like TagService stores them
+            return tagNames.stream()
+                    .map(name -> name.toLowerCase(Locale.ROOT).trim())
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    /**
+     * A page of documents, newest first, with the tag and category counts over all matches.
+     */
+    public record Result(Page<Document> documents, FacetedSearchDTO.Facets facets) {
+    }
+
+    private final TagIndexRepository tagIndexRepository;
+    private final DocumentRepository documentRepository;
+    private final DocumentFacetRepository documentFacetRepository;
+    private final DocumentService documentService;
+    private final TagIndexProperties tagIndexProperties;
+    private final MeterRegistry meterRegistry;
+    private final Timer queryTimer;
+    private final Path snapshotPath;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<Long, RoaringBitmap> byTag = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byUser = new HashMap<>();
+    private final Map<String, RoaringBitmap> byCategory = new HashMap<>();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile Map<String, Long> tagIds = Map.of();
+    private volatile Map<Long, String> tagNames = Map.of();
+    private volatile boolean tagsChanged;
+    private volatile boolean ready;
+    private volatile boolean dirty;
+    private volatile long documentCount;
+
+    public TagIndexService(TagIndexRepository tagIndexRepository,
+                           DocumentRepository documentRepository,
+                           DocumentFacetRepository documentFacetRepository,
+                           DocumentService documentService,
+                           FileStorageService fileStorageService,
+                           TagIndexProperties tagIndexProperties,
+                           MeterRegistry meterRegistry) {
+        this.tagIndexRepository = tagIndexRepository;
+        this.documentRepository = documentRepository;
+        this.documentFacetRepository = documentFacetRepository;
+        this.documentService = documentService;
+        this.tagIndexProperties = tagIndexProperties;
+        this.meterRegistry = meterRegistry;
+        this.queryTimer = meterRegistry.timer("docmanager.tag-index.query");
+
+        Path indexPath = StringUtils.hasText(tagIndexProperties.getIndexDir())
+                ? Paths.get(tagIndexProperties.getIndexDir()).toAbsolutePath().normalize()
+                : fileStorageService.getFileStorageLocation().resolve(".tag-index");
+        this.snapshotPath = indexPath.resolve(SNAPSHOT_FILE);
+        if (tagIndexProperties.isEnabled()) {
+            try {
+                Files.createDirectories(indexPath);
+            } catch (IOException ex) {
+                throw new RuntimeException("Could not create the tag index directory.", ex);
+            }
+        }
+    }
+
+    // The documents gauge holds this instance, so it is registered once construction is done
+    @PostConstruct
+    public void registerGauges() {
+        meterRegistry.gauge("docmanager.tag-index.documents", this, service -> service.documentCount);
+        meterRegistry.gauge("docmanager.tag-index.pending", pending, Set::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Queued changes are found again by the catch-up after the restart
+        saveSnapshot();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        markChanged(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        markChanged(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTagsChanged(TagsChangedEvent event) {
+        tagsChanged = true;
+    }
+
+    private void markChanged(Long documentId) {
+        if (tagIndexProperties.isEnabled() && documentId != null) {
+            pending.add(documentId);
+        }
+    }
+
+    /**
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public Result search(Query query, Long userId, int page, int size) {
+        Query normalized = query.normalized();
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "id"));
+        return queryTimer.record(() -> ready
+                ? searchIndex(normalized, userId, pageable)
+                : searchDatabase(normalized, userId, pageable));
+    }
+
+    private Result searchIndex(Query query, Long userId, Pageable pageable) {
+        RoaringBitmap matches;
+        FacetedSearchDTO.Facets facets;
+        lock.readLock().lock();
+        try {
+            matches = match(query, userId);
+            Map<Long, String> names = tagNames;
+            facets = FacetedSearchDTO.Facets.builder()
+                    .categories(counts(byCategory, matches, Function.identity()))
+                    .tags(counts(byTag, matches, names::get))
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Newest first: walk the ranks down from the highest id
+        int total = matches.getCardinality();
+        List<Long> ids = new ArrayList<>(pageable.getPageSize());
+        for (long rank = total - 1 - pageable.getOffset();
+             rank >= 0 && ids.size() < pageable.getPageSize(); rank--) {
+            ids.add((long) matches.select((int) rank));
+        }
+        return new Result(new PageImpl<>(documentService.getDocumentsByIdsInOrder(ids), pageable, total), facets);
+    }
+
+    private RoaringBitmap match(Query query, Long userId) {
+        Map<String, Long> ids = tagIds;
+        RoaringBitmap matches = userId != null ? copy(byUser.get(userId)) : all.clone();
+        if (!query.categories().isEmpty()) {
+            matches.and(union(query.categories().stream().map(byCategory::get)));
+        }
+        for (String name : query.allTags()) {
+            matches.and(copy(tagBitmap(ids, name)));
+        }
+        if (!query.anyTags().isEmpty()) {
+            matches.and(union(query.anyTags().stream().map(name -> tagBitmap(ids, name))));
+        }
+        for (String name : query.noneTags()) {
+            RoaringBitmap excluded = tagBitmap(ids, name);
+            if (excluded != null) {
+                matches.andNot(excluded);
+            }
+        }
+        return matches;
+    }
+
+    private RoaringBitmap tagBitmap(Map<String, Long> ids, String name) {
+        Long tagId = ids.get(name);
+        return tagId != null ? byTag.get(tagId) : null;
+    }
+
+    private static RoaringBitmap union(Stream<RoaringBitmap> bitmaps) {
+        Iterator<RoaringBitmap> iterator = bitmaps.filter(Objects::nonNull).iterator();
+        return iterator.hasNext() ? RoaringBitmap.or(iterator) : new RoaringBitmap();
+    }
+
+    private static RoaringBitmap copy(RoaringBitmap bitmap) {
+        return bitmap != null ? bitmap.clone() : new RoaringBitmap();
+    }
+
+    /**
+     * Matches per key, most frequent first.
+     */
+    private static <K> List<FacetedSearchDTO.FacetCount> counts(Map<K, RoaringBitmap> bitmaps, RoaringBitmap matches,
+                                                                Function<K, String> label) {
+        return bitmaps.entrySet().stream()
+                .map(entry -> new FacetedSearchDTO.FacetCount(label.apply(entry.getKey()),
+                        RoaringBitmap.andCardinality(entry.getValue(), matches)))
+                .filter(count -> count.getCount() > 0 && count.getValue() != null)
+                .sorted(Comparator.comparingLong(FacetedSearchDTO.FacetCount::getCount).reversed()
+                        .thenComparing(FacetedSearchDTO.FacetCount::getValue))
+                .limit(MAX_FACET_VALUES)
+                .toList();
+    }
+
+    /**
+     * The same query as joins, while the index is disabled or still loading.
+     */
+    private Result searchDatabase(Query query, Long userId, Pageable pageable) {
+        List<Specification<Document>> specifications = new ArrayList<>();
+        specifications.add(DocumentSpecifications.ownedBy(userId));
+        specifications.add(DocumentSpecifications.hasAnyCategory(query.categories()));
+        query.allTags().forEach(name -> specifications.add(DocumentSpecifications.hasTag(name)));
+        specifications.add(DocumentSpecifications.hasAnyTag(query.anyTags()));
+        query.noneTags().forEach(name -> specifications.add(Specification.not(DocumentSpecifications.hasTag(name))));
+        Specification<Document> specification = Specification.allOf(specifications);
+
+        FacetedSearchDTO.Facets facets = FacetedSearchDTO.Facets.builder()
+                .categories(toFacetCounts(documentFacetRepository.countByAttribute(
+                        specification, "category", MAX_FACET_VALUES)))
+                .tags(toFacetCounts(documentFacetRepository.countByTag(specification, MAX_FACET_VALUES)))
+                .build();
+        return new Result(documentRepository.findAll(specification, pageable), facets);
+    }
+
+    private static List<FacetedSearchDTO.FacetCount> toFacetCounts(List<DocumentFacetRepository.Count<String>> counts) {
+        return counts.stream()
+                .map(count -> new FacetedSearchDTO.FacetCount(count.value(), count.count()))
+                .toList();
+    }
+
+    /**
+     * Load the index on the first run, then apply the queued changes.
+     */
+    @Scheduled(fixedDelayString = "${file.tag-index.refresh-interval:PT1S}")
+    public void refresh() {
+        if (!tagIndexProperties.isEnabled()) {
+            return;
+        }
+        try {
+            if (!ready) {
+                load();
+                ready = true;
+            }
+            if (tagsChanged) {
+                tagsChanged = false;
+                reloadTags();
+            }
+        } catch (RuntimeException ex) {
+            tagsChanged = true;
+            log.error("Could not load the tag index", ex);
+            return;
+        }
+
+        List<Long> batch = new ArrayList<>();
+        try {
+            Iterator<Long> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+                if (batch.size() >= tagIndexProperties.getBatchSize()) {
+                    update(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                update(batch);
+                batch.clear();
+            }
+        } catch (RuntimeException ex) {
+            // Tried again on the next run
+            pending.addAll(batch);
+            log.error("Could not update the tag index", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.tag-index.snapshot-interval:PT1M}")
+    public void saveSnapshot() {
+        if (!tagIndexProperties.isEnabled() || !ready || !dirty) {
+            return;
+        }
+        dirty = false;
+        LocalDateTime savedAt = LocalDateTime.now();
+        Path temporary = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeUTF(savedAt.toString());
+            all.serialize(out);
+            out.writeInt(byTag.size());
+            for (Map.Entry<Long, RoaringBitmap> entry : byTag.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().serialize(out);
+            }
+            out.writeInt(byUser.size());
+            for (Map.Entry<Long, RoaringBitmap> entry : byUser.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().serialize(out);
+            }
+            out.writeInt(byCategory.size());
+            for (Map.Entry<String, RoaringBitmap> entry : byCategory.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().serialize(out);
+            }
+        } catch (IOException ex) {
+            dirty = true;
+            log.error("Could not write the tag index snapshot", ex);
+            return;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            dirty = true;
+            log.error("Could not replace the tag index snapshot", ex);
+        }
+    }
+
+    private void load() {
+        LocalDateTime savedAt = readSnapshot();
+        if (savedAt != null) {
+            reconcile(savedAt);
+        } else {
+            build();
+        }
+        reloadTags();
+        log.info("Tag index loaded, {} documents in {} tags", documentCount, byTag.size());
+    }
+
+    /**
+     * @return when the snapshot was written, or null when there is no usable snapshot
+     */
+    private LocalDateTime readSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                log.info("Tag index snapshot has an older layout, building the index from the database");
+                return null;
+            }
+            LocalDateTime savedAt = LocalDateTime.parse(in.readUTF());
+            all.deserialize(in);
+            for (int i = in.readInt(); i > 0; i--) {
+                byTag.put(in.readLong(), readBitmap(in));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                byUser.put(in.readLong(), readBitmap(in));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                byCategory.put(in.readUTF(), readBitmap(in));
+            }
+            documentCount = all.getLongCardinality();
+            return savedAt;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not read the tag index snapshot, building the index from the database", ex);
+            clear();
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static RoaringBitmap readBitmap(DataInputStream in) throws IOException {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        bitmap.deserialize(in);
+        return bitmap;
+    }
+
+    /**
+     * Drop documents deleted since the snapshot and queue those created or updated since.
+     */
+    private void reconcile(LocalDateTime savedAt) {
+        RoaringBitmap existing = new RoaringBitmap();
+        long after = 0;
+        List<Long> ids;
+        do {
+            ids = tagIndexRepository.findIdsAfter(after, tagIndexProperties.getBatchSize());
+            ids.forEach(id -> existing.add(toIndex(id)));
+            after = ids.isEmpty() ? after : ids.get(ids.size() - 1);
+        } while (ids.size() == tagIndexProperties.getBatchSize());
+
+        RoaringBitmap deleted;
+        RoaringBitmap missing;
+        lock.writeLock().lock();
+        try {
+            deleted = RoaringBitmap.andNot(all, existing);
+            missing = RoaringBitmap.andNot(existing, all);
+            remove(deleted);
+            documentCount = all.getLongCardinality();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        missing.forEach((int id) -> pending.add((long) id));
+        pending.addAll(documentRepository.findIdsUpdatedSince(savedAt.minus(CATCH_UP_MARGIN)));
+        dirty = !deleted.isEmpty();
+    }
+
+    private void build() {
+        log.info("Building the tag index from the database");
+        long after = 0;
+        List<TagIndexRepository.Entry> entries;
+        do {
+            entries = tagIndexRepository.findAfter(after, tagIndexProperties.getBatchSize());
+            lock.writeLock().lock();
+            try {
+                entries.forEach(this::add);
+                documentCount = all.getLongCardinality();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            after = entries.isEmpty() ? after : entries.get(entries.size() - 1).id();
+        } while (entries.size() == tagIndexProperties.getBatchSize());
+
+        lock.writeLock().lock();
+        try {
+            all.runOptimize();
+            byTag.values().forEach(RoaringBitmap::runOptimize);
+            byUser.values().forEach(RoaringBitmap::runOptimize);
+            byCategory.values().forEach(RoaringBitmap::runOptimize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        dirty = true;
+    }
+
+    /**
+     * Re-read the documents, dropping those that no longer exist.
+     */
+    void update(Collection<Long> documentIds) {
+        List<TagIndexRepository.Entry> entries = tagIndexRepository.findByIds(documentIds);
+        RoaringBitmap changed = new RoaringBitmap();
+        documentIds.forEach(id -> changed.add(toIndex(id)));
+        lock.writeLock().lock();
+        try {
+            remove(changed);
+            entries.forEach(this::add);
+            documentCount = all.getLongCardinality();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        dirty = true;
+    }
+
+    /**
+     * Pick up renamed tags and drop the bitmaps of deleted ones.
+     */
+    private void reloadTags() {
+        Map<String, Long> ids = tagIndexRepository.findTagIds();
+        Map<Long, String> names = ids.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+        lock.writeLock().lock();
+        try {
+            if (byTag.keySet().retainAll(names.keySet())) {
+                dirty = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        tagNames = names;
+        tagIds = ids;
+    }
+
+    // Callers hold the write lock
+    private void add(TagIndexRepository.Entry entry) {
+        int id = toIndex(entry.id());
+        all.add(id);
+        byUser.computeIfAbsent(entry.userId(), key -> new RoaringBitmap()).add(id);
+        if (entry.category() != null) {
+            byCategory.computeIfAbsent(entry.category(), key -> new RoaringBitmap()).add(id);
+        }
+        for (Long tagId : entry.tagIds()) {
+            byTag.computeIfAbsent(tagId, key -> new RoaringBitmap()).add(id);
+        }
+    }
+
+    // Callers hold the write lock
+    private void remove(RoaringBitmap documents) {
+        all.andNot(documents);
+        byTag.values().removeIf(bitmap -> removeAll(bitmap, documents));
+        byUser.values().removeIf(bitmap -> removeAll(bitmap, documents));
+        byCategory.values().removeIf(bitmap -> removeAll(bitmap, documents));
+    }
+
+    private static boolean removeAll(RoaringBitmap bitmap, RoaringBitmap documents) {
+        bitmap.andNot(documents);
+        return bitmap.isEmpty();
+    }
+
+    // Callers hold the write lock
+    private void clear() {
+        all.clear();
+        byTag.clear();
+        byUser.clear();
+        byCategory.clear();
+        documentCount = 0;
+    }
+
+    /**
+     * Bitmaps hold 32-bit values; document ids are generated from 1 and stay far below.
+     */
+    private static int toIndex(long documentId) {
+        return Math.toIntExact(documentId);
+    }
+}
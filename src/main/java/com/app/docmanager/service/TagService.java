@@ -3,18 +3,25 @@ package com.app.docmanager.service;
 import com.app.docmanager.entity.Tag;
 import com.app.docmanager.exception.DuplicateResourceException;
 import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.repository.SearchHits;
 import com.app.docmanager.repository.TagRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +31,8 @@ import java.util.stream.Collectors;
 public class TagService {
 
     private final TagRepository tagRepository;
+    private final TrigramSearchService trigramSearchService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public List<Tag> getAllTags() {
         return tagRepository.findAll();
@@ -41,8 +50,11 @@ public class TagService {
         return tagRepository.findTagsByUserId(userId);
     }
 
+    /**
+     * Tags whose names contain the query or a word close to it, most similar first.
+     */
     public List<Tag> searchTags(String query) {
-        return tagRepository.findByNameContainingIgnoreCase(query.toLowerCase().trim());
+        return getTagsInOrder(trigramSearchService.searchTags(query, 0, Integer.MAX_VALUE));
     }
 
     // NEW: Paginated methods
@@ -55,7 +67,18 @@ public class TagService {
     }
 
     public Page<Tag> searchTagsPaginated(String query, Pageable pageable) {
-        return tagRepository.findByNameContainingIgnoreCase(query.toLowerCase().trim(), pageable);
+        SearchHits hits = trigramSearchService.searchTags(query, pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(getTagsInOrder(hits), pageable, hits.totalHits());
+    }
+
+    private List<Tag> getTagsInOrder(SearchHits hits) {
+        List<Long> ids = hits.hits().stream().map(SearchHits.Hit::id).toList();
+        Map<Long, Tag> tagsById = tagRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Tag::getId, Function.identity()));
+        return ids.stream()
+                .map(tagsById::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     public Page<Tag> getUnusedTagsPaginated(Pageable pageable) {
@@ -75,6 +98,7 @@ public class TagService {
                 .build();
 
         Tag savedTag = tagRepository.save(tag);
+        eventPublisher.publishEvent(new TagsChangedEvent());
         log.info("Created new tag: {}", savedTag.getName());
         return savedTag;
     }
@@ -88,7 +112,9 @@ public class TagService {
                     Tag newTag = Tag.builder()
                             .name(normalizedName)
                             .build();
-                    return tagRepository.save(newTag);
+                    Tag savedTag = tagRepository.save(newTag);
+                    eventPublisher.publishEvent(new TagsChangedEvent());
+                    return savedTag;
                 });
     }
 
@@ -125,6 +151,7 @@ public class TagService {
         if (!newTags.isEmpty()) {
             List<Tag> savedNewTags = tagRepository.saveAll(newTags);
             existingTags.addAll(savedNewTags);
+            eventPublisher.publishEvent(new TagsChangedEvent());
         }
 
         return new HashSet<>(existingTags);
@@ -145,6 +172,7 @@ public class TagService {
 
         existingTag.setName(normalizedName);
         Tag savedTag = tagRepository.save(existingTag);
+        eventPublisher.publishEvent(new TagsChangedEvent(Set.copyOf(tagRepository.findDocumentIdsByTagId(id))));
         log.info("Updated tag: {} to {}", existingTag.getName(), savedTag.getName());
         return savedTag;
     }
@@ -161,7 +189,9 @@ public class TagService {
                     tag.getName(), tag.getDocuments().size());
         }
 
+        List<Long> documentIds = tagRepository.findDocumentIdsByTagId(id);
         tagRepository.delete(tag);
+        eventPublisher.publishEvent(new TagsChangedEvent(Set.copyOf(documentIds)));
         log.info("Deleted tag: {}", tag.getName());
     }
 
@@ -170,6 +200,7 @@ public class TagService {
         List<Tag> unusedTags = tagRepository.findUnusedTags();
         if (!unusedTags.isEmpty()) {
             tagRepository.deleteAll(unusedTags);
+            eventPublisher.publishEvent(new TagsChangedEvent());
             log.info("Deleted {} unused tags", unusedTags.size());
         }
     }
@@ -0,0 +1,452 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.ExtractionProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.ExtractionStatus;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.repository.DocumentJdbcRepository;
+import com.app.docmanager.repository.DocumentRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.extractor.ExtractorFactory;
+import org.apache.poi.extractor.POITextExtractor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fills Document.extractedText from the stored file: PDFs through PDFBox, Office formats
+ * through POI, and plain text. With OCR enabled, PDF pages without a text layer and image
+ * scans are recognized by the OcrService. Extraction starts after a document is committed
+ * and runs on a bounded pool, so uploads return without waiting for it. Results are
+ * collected and written back in JDBC batches.
+ *
+ * <p>Documents stay PENDING until their result is written. Those whose extraction was lost
+ * (queue full, restart, failed write) are picked up again by a periodic sweep.
+ */
+@Service
+@Slf4j
+public class TextExtractionService {
+
+    private static final String PDF_TYPE = "application/pdf";
+    private static final Set<String> OFFICE_TYPES = Set.of(
+            "application/msword", "application/vnd.ms-excel", "application/vnd.ms-powerpoint",
+            "application/x-ole-storage");
+    private static final String OOXML_TYPE_PREFIX = "application/vnd.openxmlformats-officedocument.";
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final OcrService ocrService;
+    private final DocumentRepository documentRepository;
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final ExtractionProperties extractionProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor extractionExecutor;
+    private final Queue<DocumentJdbcRepository.ExtractionResult> results = new ConcurrentLinkedQueue<>();
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean snippetsFilled;
+
+    public TextExtractionService(FileStorageService fileStorageService,
+                                 OcrService ocrService,
+                                 DocumentRepository documentRepository,
+                                 DocumentJdbcRepository documentJdbcRepository,
+                                 ExtractionProperties extractionProperties,
+                                 ApplicationEventPublisher eventPublisher) {
+        this.fileStorageService = fileStorageService;
+        this.ocrService = ocrService;
+        this.documentRepository = documentRepository;
+        this.documentJdbcRepository = documentJdbcRepository;
+        this.extractionProperties = extractionProperties;
+        this.eventPublisher = eventPublisher;
+
+        this.extractionExecutor = new ThreadPoolTaskExecutor();
+        this.extractionExecutor.setCorePoolSize(extractionProperties.getThreads());
+        this.extractionExecutor.setMaxPoolSize(extractionProperties.getThreads());
+        this.extractionExecutor.setQueueCapacity(extractionProperties.getQueueCapacity());
+        this.extractionExecutor.setThreadNamePrefix("extract-");
+        this.extractionExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        extractionExecutor.shutdown();
+        // Whatever is still running stays pending and is extracted after the restart
+        flush();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        if (!extractionProperties.isEnabled() || event.extractionStatus() != ExtractionStatus.PENDING) {
+            return;
+        }
+        submit(new ExtractionTask(event.documentId(), event.filePath(), event.fileType(),
+                StorageCodec.orNone(event.storageCodec())));
+    }
+
+    public boolean isSupported(String fileType) {
+        String type = baseType(fileType);
+        return type != null && (PDF_TYPE.equals(type) || type.startsWith("text/")
+                || OFFICE_TYPES.contains(type) || type.startsWith(OOXML_TYPE_PREFIX)
+                || ocrService.isEnabled() && ocrService.isImageSupported(type));
+    }
+
+    /**
+     * Status for a new document: pending when there is a file to extract text from and the
+     * client did not send the text itself.
+     */
+    public ExtractionStatus initialStatus(Document document) {
+        return extractionProperties.isEnabled() && document.getExtractedText() == null
+                && document.getFilePath() != null && isSupported(document.getFileType())
+                ? ExtractionStatus.PENDING
+                : null;
+    }
+
+    @Scheduled(fixedDelayString = "${file.extraction.flush-interval:PT2S}")
+    public void flush() {
+        List<DocumentJdbcRepository.ExtractionResult> batch = new ArrayList<>();
+        DocumentJdbcRepository.ExtractionResult result;
+        while ((result = results.poll()) != null) {
+            batch.add(result);
+            if (batch.size() >= extractionProperties.getBatchSize()) {
+                write(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.extraction.requeue-interval:PT5M}",
+            initialDelayString = "${file.extraction.requeue-initial-delay:PT1M}")
+    public void requeuePending() {
+        if (!extractionProperties.isEnabled()) {
+            return;
+        }
+        long lastId = 0;
+        int requeued = 0;
+        while (true) {
+            List<Document> pending = documentRepository.findByExtractionStatusAndIdGreaterThanOrderByIdAsc(
+                    ExtractionStatus.PENDING, lastId, PageRequest.of(0, extractionProperties.getBatchSize()));
+            for (Document document : pending) {
+                lastId = document.getId();
+                if (inFlight.contains(document.getId())) {
+                    continue;
+                }
+                if (!submit(new ExtractionTask(document.getId(), document.getFilePath(), document.getFileType(),
+                        StorageCodec.orNone(document.getStorageCodec())))) {
+                    log.info("Requeued {} documents for text extraction, the queue is full", requeued);
+                    return;
+                }
+                requeued++;
+            }
+            if (pending.size() < extractionProperties.getBatchSize()) {
+                break;
+            }
+        }
+        if (requeued > 0) {
+            log.info("Requeued {} documents for text extraction", requeued);
+        }
+    }
+
+    /**
+     * Store the snippets of documents extracted before snippets were kept, once after startup.
+     */
+    @Scheduled(fixedDelayString = "${file.extraction.requeue-interval:PT5M}",
+            initialDelayString = "${file.extraction.requeue-initial-delay:PT1M}")
+    public void fillMissingSnippets() {
+        if (snippetsFilled) {
+            return;
+        }
+        long lastId = 0;
+        int batches = 0;
+        while ((lastId = documentJdbcRepository.fillMissingSnippets(lastId, extractionProperties.getBatchSize())) >= 0) {
+            batches++;
+        }
+        snippetsFilled = true;
+        if (batches > 0) {
+            log.info("Stored snippets of extracted documents in {} batches", batches);
+        }
+    }
+
+    /**
+     * Start extracting unless the document is already being extracted. Returns false when
+     * the queue is full; the document then stays pending.
+     */
+    private boolean submit(ExtractionTask task) {
+        if (!inFlight.add(task.documentId())) {
+            return true;
+        }
+
+        Instant deadline = Instant.now().plus(extractionProperties.getTimeout());
+        try {
+            CompletableFuture<String> extraction = new CompletableFuture<>();
+            Future<?> worker = extractionExecutor.submit(() -> {
+                try {
+                    extraction.complete(extract(task, deadline));
+                } catch (Throwable ex) {
+                    extraction.completeExceptionally(ex);
+                }
+            });
+            extraction
+                    .orTimeout(extractionProperties.getTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((text, ex) -> {
+                        if (ex instanceof TimeoutException) {
+                            // Extractors check the deadline while reading; a parser stuck after
+                            // reading is interrupted, and a task still queued never starts
+                            worker.cancel(true);
+                        }
+                        if (ex == null) {
+                            results.add(new DocumentJdbcRepository.ExtractionResult(
+                                    task.documentId(), ExtractionStatus.DONE, text));
+                        } else {
+                            Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+                                    ? ex.getCause() : ex;
+                            log.warn("Could not extract text of document {}: {}", task.documentId(), cause.toString());
+                            results.add(new DocumentJdbcRepository.ExtractionResult(
+                                    task.documentId(), ExtractionStatus.FAILED, null));
+                        }
+                        inFlight.remove(task.documentId());
+                    });
+            return true;
+        } catch (TaskRejectedException ex) {
+            inFlight.remove(task.documentId());
+            log.debug("Extraction queue is full, document {} stays pending", task.documentId());
+            return false;
+        }
+    }
+
+    private void write(List<DocumentJdbcRepository.ExtractionResult> batch) {
+        try {
+            documentJdbcRepository.updateExtractionResults(batch);
+            log.debug("Saved {} extraction results", batch.size());
+            // The text is searchable once the index has picked it up
+            batch.forEach(result -> eventPublisher.publishEvent(new DocumentChangedEvent(result.documentId())));
+        } catch (RuntimeException ex) {
+            log.error("Could not save {} extraction results, the documents stay pending", batch.size(), ex);
+        }
+    }
+
+    private String extract(ExtractionTask task, Instant deadline) {
+        String type = baseType(task.fileType());
+        try {
+            String text;
+            if (PDF_TYPE.equals(type)) {
+                text = extractPdf(task, deadline);
+            } else if (type != null && type.startsWith("text/")) {
+                text = extractPlainText(task, deadline);
+            } else if (ocrService.isImageSupported(type)) {
+                try (InputStream inputStream = new DeadlineInputStream(
+                        fileStorageService.openStream(task.filePath(), task.codec()), deadline)) {
+                    text = ocrService.recognizeImage(inputStream, deadline);
+                }
+            } else {
+                text = extractOffice(task, deadline);
+            }
+            return clean(text);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private String extractPdf(ExtractionTask task, Instant deadline) throws IOException {
+        Optional<Path> localFile = task.codec() == StorageCodec.NONE
+                ? fileStorageService.localPath(task.filePath())
+                : Optional.empty();
+
+        // A local file is read on demand; otherwise the document is buffered in memory
+        if (localFile.isPresent()) {
+            try (PDDocument pdf = Loader.loadPDF(localFile.get().toFile())) {
+                return extractPdfText(pdf, deadline);
+            }
+        }
+        try (InputStream inputStream = fileStorageService.openStream(task.filePath(), task.codec());
+             PDDocument pdf = Loader.loadPDF(new RandomAccessReadBuffer(inputStream))) {
+            return extractPdfText(pdf, deadline);
+        }
+    }
+
+    private String extractPdfText(PDDocument pdf, Instant deadline) throws IOException {
+        DeadlineTextStripper stripper = new DeadlineTextStripper(deadline);
+        if (!ocrService.isEnabled()) {
+            return stripper.getText(pdf);
+        }
+
+        // Page by page: pages without a text layer are rasterized here, one at a time since
+        // PDDocument is not thread-safe, and recognized in parallel on the OCR pool
+        List<CompletableFuture<String>> pages = new ArrayList<>(pdf.getNumberOfPages());
+        PDFRenderer renderer = null;
+        int scannedPages = 0;
+        try {
+            for (int page = 1; page <= pdf.getNumberOfPages(); page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String pageText = stripper.getText(pdf);
+                if (!ocrService.needsOcr(pageText)) {
+                    pages.add(CompletableFuture.completedFuture(pageText));
+                    continue;
+                }
+                if (renderer == null) {
+                    renderer = new PDFRenderer(pdf);
+                }
+                BufferedImage image = renderer.renderImageWithDPI(page - 1, ocrService.getDpi(), ImageType.GRAY);
+                pages.add(ocrService.recognizePage(image));
+                scannedPages++;
+            }
+
+            // Merged in page order, whichever page finished first
+            StringBuilder text = new StringBuilder();
+            for (CompletableFuture<String> page : pages) {
+                text.append(ocrService.await(page, deadline)).append('\n');
+            }
+            if (scannedPages > 0) {
+                log.debug("Recognized {} of {} PDF pages by OCR", scannedPages, pdf.getNumberOfPages());
+            }
+            return text.toString();
+        } finally {
+            // Pages still queued are skipped once the document has failed
+            pages.forEach(page -> page.cancel(false));
+        }
+    }
+
+    private String extractPlainText(ExtractionTask task, Instant deadline) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        try (Reader reader = new InputStreamReader(
+                fileStorageService.openStream(task.filePath(), task.codec()), charset(task.fileType()))) {
+            int read;
+            while (text.length() < extractionProperties.getMaxTextLength() && (read = reader.read(buffer)) > 0) {
+                text.append(buffer, 0, read);
+                checkDeadline(deadline);
+            }
+        }
+        return text.toString();
+    }
+
+    private String extractOffice(ExtractionTask task, Instant deadline) throws IOException {
+        try (InputStream inputStream = new DeadlineInputStream(
+                fileStorageService.openStream(task.filePath(), task.codec()), deadline);
+             POITextExtractor extractor = ExtractorFactory.createExtractor(inputStream)) {
+            return extractor.getText();
+        }
+    }
+
+    private String clean(String text) {
+        if (text == null) {
+            return null;
+        }
+        // PostgreSQL text columns reject NUL characters
+        String cleaned = text.replace("\u0000", "").strip();
+        return cleaned.length() > extractionProperties.getMaxTextLength()
+                ? cleaned.substring(0, extractionProperties.getMaxTextLength())
+                : cleaned;
+    }
+
+    private static void checkDeadline(Instant deadline) throws IOException {
+        if (Instant.now().isAfter(deadline) || Thread.currentThread().isInterrupted()) {
+            throw new IOException("Text extraction timed out");
+        }
+    }
+
+    private static String baseType(String fileType) {
+        if (fileType == null) {
+            return null;
+        }
+        int parameters = fileType.indexOf(';');
+        return (parameters >= 0 ? fileType.substring(0, parameters) : fileType).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Charset charset(String fileType) {
+        try {
+            Charset charset = MediaType.parseMediaType(fileType).getCharset();
+            return charset != null ? charset : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException ex) {
+            // Also covers InvalidMediaTypeException and unknown charset names
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private record ExtractionTask(Long documentId, String filePath, String fileType, StorageCodec codec) {
+    }
+
+    /**
+     * Checks the deadline on every read, for extractors that consume their input themselves.
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+        private final Instant deadline;
+
+        DeadlineInputStream(InputStream inputStream, Instant deadline) {
+            super(inputStream);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline(deadline);
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline(deadline);
+            return super.read(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Checks the deadline before each page, so a huge PDF gives its thread back in time.
+     */
+    private static class DeadlineTextStripper extends PDFTextStripper {
+        private final Instant deadline;
+
+        DeadlineTextStripper(Instant deadline) throws IOException {
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void startPage(PDPage page) throws IOException {
+            checkDeadline(deadline);
+            super.startPage(page);
+        }
+    }
+}
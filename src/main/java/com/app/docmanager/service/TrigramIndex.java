@@ -0,0 +1,186 @@
+package com.app.docmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * In-memory trigram index over short texts such as titles and tag names, with the same
+ * trigrams as PostgreSQL's pg_trgm: each word is lower-cased and padded with two spaces in
+ * front and one behind. Substring queries only verify the texts that contain all trigrams
+ * of the query, and fuzzy queries only score texts that share a trigram with it.
+ */
+final class TrigramIndex<K> {
+
+    record Match<K>(K key, float score) {
+    }
+
+    private final Map<K, String> texts = new HashMap<>();
+    private final Map<K, Integer> trigramCounts = new HashMap<>();
+    private final Map<String, Set<K>> postings = new HashMap<>();
+
+    synchronized void put(K key, String text) {
+        remove(key);
+        String normalized = normalize(text);
+        Set<String> trigrams = trigrams(normalized);
+        texts.put(key, normalized);
+        trigramCounts.put(key, trigrams.size());
+        for (String trigram : trigrams) {
+            postings.computeIfAbsent(trigram, t -> new HashSet<>()).add(key);
+        }
+    }
+
+    synchronized void remove(K key) {
+        String text = texts.remove(key);
+        if (text == null) {
+            return;
+        }
+        trigramCounts.remove(key);
+        for (String trigram : trigrams(text)) {
+            Set<K> keys = postings.get(trigram);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * The normalized text of the key, or null.
+     */
+    synchronized String get(K key) {
+        return texts.get(key);
+    }
+
+    synchronized int size() {
+        return texts.size();
+    }
+
+    synchronized void clear() {
+        texts.clear();
+        trigramCounts.clear();
+        postings.clear();
+    }
+
+    /**
+     * Texts that contain the query, or whose closest words contain most of its trigrams, best
+     * first. A substring match scores 1 plus its word similarity; a fuzzy match only its word
+     * similarity, the share of the query's trigrams found in the text.
+     */
+    synchronized List<Match<K>> search(String query, float threshold, Predicate<K> filter) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> queryTrigrams = trigrams(normalized);
+        Map<K, Integer> shared = countShared(queryTrigrams);
+        Map<K, Float> scores = new HashMap<>();
+        shared.forEach((key, count) -> {
+            float similarity = (float) count / queryTrigrams.size();
+            if (similarity >= threshold && filter.test(key)) {
+                scores.put(key, similarity);
+            }
+        });
+        for (K key : substringCandidates(normalized)) {
+            if (texts.get(key).contains(normalized) && filter.test(key)) {
+                float similarity = (float) shared.getOrDefault(key, 0) / queryTrigrams.size();
+                scores.put(key, 1 + similarity);
+            }
+        }
+        return sorted(scores);
+    }
+
+    /**
+     * Texts similar to the term as a whole, scored like pg_trgm's similarity(): shared
+     * trigrams over the trigrams of both.
+     */
+    synchronized List<Match<K>> similar(String term, float threshold, Predicate<K> filter) {
+        Set<String> termTrigrams = trigrams(normalize(term));
+        Map<K, Float> scores = new HashMap<>();
+        countShared(termTrigrams).forEach((key, count) -> {
+            float similarity = (float) count / (termTrigrams.size() + trigramCounts.get(key) - count);
+            if (similarity >= threshold && filter.test(key)) {
+                scores.put(key, similarity);
+            }
+        });
+        return sorted(scores);
+    }
+
+    private Map<K, Integer> countShared(Set<String> trigrams) {
+        Map<K, Integer> shared = new HashMap<>();
+        for (String trigram : trigrams) {
+            for (K key : postings.getOrDefault(trigram, Set.of())) {
+                shared.merge(key, 1, Integer::sum);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Keys whose texts contain every unpadded trigram of the query's words. The query may
+     * start or end inside a word, so padded trigrams do not have to match. Words shorter
+     * than three letters have none, and then every text is a candidate.
+     */
+    private Collection<K> substringCandidates(String normalized) {
+        List<Set<K>> lists = new ArrayList<>();
+        for (String word : normalized.split(" ")) {
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                Set<K> keys = postings.get(word.substring(i, i + 3));
+                if (keys == null) {
+                    return List.of();
+                }
+                lists.add(keys);
+            }
+        }
+        if (lists.isEmpty()) {
+            return texts.keySet();
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<K> candidates = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(lists.get(i));
+        }
+        return candidates;
+    }
+
+    private static <K> List<Match<K>> sorted(Map<K, Float> scores) {
+        return scores.entrySet().stream()
+                .map(entry -> new Match<>(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparing((Match<K> match) -> match.score()).reversed())
+                .toList();
+    }
+
+    /**
+     * Lower case, with every run of characters other than letters and digits turned into a
+     * single space.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    static Set<String> trigrams(String normalized) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if (normalized.isEmpty()) {
+            return trigrams;
+        }
+        for (String word : normalized.split(" ")) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+}
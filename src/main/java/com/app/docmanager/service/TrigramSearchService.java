@@ -0,0 +1,259 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.SearchHits;
+import com.app.docmanager.repository.TrigramSearchRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Substring and typo-tolerant search over document titles and tag names by trigrams, with
+ * "did you mean" suggestions from the words of the titles. On PostgreSQL the matching runs
+ * on pg_trgm indexes; elsewhere titles and tag names are kept in in-memory trigram indexes,
+ * loaded at startup and updated as documents and tags change.
+ */
+@Service
+@Slf4j
+public class TrigramSearchService {
+
+    // The defaults of pg_trgm.word_similarity_threshold and pg_trgm.similarity_threshold,
+    // so both paths match alike
+    static final float WORD_SIMILARITY_THRESHOLD = 0.6f;
+    static final float SIMILARITY_THRESHOLD = 0.3f;
+    private static final int MIN_WORD_LENGTH = 3;
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private record Word(Long userId, String word) {
+    }
+
+    private final TrigramSearchRepository trigramSearchRepository;
+    private final TrigramIndex<Long> titles = new TrigramIndex<>();
+    private final Map<Long, Long> owners = new ConcurrentHashMap<>();
+    private final TrigramIndex<Word> words = new TrigramIndex<>();
+    // Titles each word occurs in; guarded by this
+    private final Map<Word, Integer> wordCounts = new HashMap<>();
+    private final TrigramIndex<Long> tags = new TrigramIndex<>();
+
+    private volatile boolean initialized;
+    private volatile boolean inDatabase;
+    private volatile boolean tagsStale = true;
+
+    public TrigramSearchService(TrigramSearchRepository trigramSearchRepository) {
+        this.trigramSearchRepository = trigramSearchRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        inDatabase = trigramSearchRepository.checkIndexes();
+        initialized = true;
+        if (inDatabase) {
+            return;
+        }
+
+        long after = 0;
+        List<TrigramSearchRepository.Title> batch;
+        do {
+            batch = trigramSearchRepository.findTitlesAfter(after, LOAD_BATCH_SIZE);
+            batch.forEach(this::putTitle);
+            if (!batch.isEmpty()) {
+                after = batch.get(batch.size() - 1).id();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+        log.info("Loaded {} titles into the trigram index", titles.size());
+    }
+
+    /**
+     * Pick up new and removed title words for suggestions on PostgreSQL.
+     */
+    @Scheduled(fixedDelayString = "${file.search.vocabulary-refresh-interval:PT10M}",
+            initialDelayString = "${file.search.vocabulary-refresh-interval:PT10M}")
+    public void refreshVocabulary() {
+        if (inDatabase) {
+            trigramSearchRepository.refreshWords();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentCreated(DocumentCreatedEvent event) {
+        reloadTitle(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        reloadTitle(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTagsChanged(TagsChangedEvent event) {
+        tagsStale = true;
+    }
+
+    /**
+     * Titles containing the query first, then titles with words similar to it, best first.
+     *
+     * @param userId owner whose documents are searched, or null to search all documents
+     */
+    public SearchHits searchTitles(String query, Long userId, long offset, int limit) {
+        int start = checkOffset(offset, limit);
+        if (TrigramIndex.normalize(query).isEmpty()) {
+            return new SearchHits(0, true, List.of());
+        }
+        if (inDatabase) {
+            return trigramSearchRepository.searchTitles(query.toLowerCase(Locale.ROOT).trim(), userId, start, limit);
+        }
+        return page(titles.search(query, WORD_SIMILARITY_THRESHOLD,
+                id -> userId == null || userId.equals(owners.get(id))), start, limit);
+    }
+
+    /**
+     * Tag names containing the query first, then names with words similar to it.
+     */
+    public SearchHits searchTags(String query, long offset, int limit) {
+        int start = checkOffset(offset, limit);
+        if (TrigramIndex.normalize(query).isEmpty()) {
+            return new SearchHits(0, true, List.of());
+        }
+        if (inDatabase) {
+            return trigramSearchRepository.searchTags(query.toLowerCase(Locale.ROOT).trim(), start, limit);
+        }
+        if (tagsStale) {
+            reloadTags();
+        }
+        return page(tags.search(query, WORD_SIMILARITY_THRESHOLD, id -> true), start, limit);
+    }
+
+    /**
+     * The query with each word that occurs in no title replaced by the most similar title
+     * word, or null when every word is known or has no similar word.
+     *
+     * @param userId owner whose titles are considered, or null for all titles
+     */
+    public String didYouMean(String query, Long userId) {
+        String normalized = TrigramIndex.normalize(query);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+
+        List<String> corrected = new ArrayList<>();
+        boolean changed = false;
+        for (String word : normalized.split(" ")) {
+            String closest = word.length() < MIN_WORD_LENGTH
+                    ? word
+                    : closestWord(word, userId).orElse(word);
+            changed |= !closest.equals(word);
+            corrected.add(closest);
+        }
+        return changed ? String.join(" ", corrected) : null;
+    }
+
+    private Optional<String> closestWord(String word, Long userId) {
+        if (inDatabase) {
+            return trigramSearchRepository.findClosestWord(word, userId);
+        }
+        synchronized (this) {
+            return words.similar(word, SIMILARITY_THRESHOLD,
+                            candidate -> userId == null || userId.equals(candidate.userId())).stream()
+                    .max(Comparator.comparing((TrigramIndex.Match<Word> match) -> match.score())
+                            .thenComparing(match -> wordCounts.getOrDefault(match.key(), 0)))
+                    .map(match -> match.key().word());
+        }
+    }
+
+    private void reloadTitle(Long documentId) {
+        if (!initialized || inDatabase || documentId == null) {
+            return;
+        }
+        List<TrigramSearchRepository.Title> found = trigramSearchRepository.findTitles(List.of(documentId));
+        if (found.isEmpty()) {
+            removeTitle(documentId);
+        } else {
+            putTitle(found.get(0));
+        }
+    }
+
+    private synchronized void putTitle(TrigramSearchRepository.Title title) {
+        removeTitle(title.id());
+        titles.put(title.id(), title.title());
+        owners.put(title.id(), title.userId());
+        forEachWord(titles.get(title.id()), title.userId(), word -> {
+            if (wordCounts.merge(word, 1, Integer::sum) == 1) {
+                words.put(word, word.word());
+            }
+        });
+    }
+
+    private synchronized void removeTitle(long documentId) {
+        String text = titles.get(documentId);
+        if (text == null) {
+            return;
+        }
+        Long userId = owners.remove(documentId);
+        titles.remove(documentId);
+        forEachWord(text, userId, word -> {
+            if (wordCounts.merge(word, -1, Integer::sum) == 0) {
+                wordCounts.remove(word);
+                words.remove(word);
+            }
+        });
+    }
+
+    private static void forEachWord(String normalized, Long userId, Consumer<Word> action) {
+        for (String word : new LinkedHashSet<>(List.of(normalized.split(" ")))) {
+            if (word.length() >= MIN_WORD_LENGTH) {
+                action.accept(new Word(userId, word));
+            }
+        }
+    }
+
+    private synchronized void reloadTags() {
+        if (!tagsStale) {
+            return;
+        }
+        // Cleared before reading, so a change committed meanwhile marks the tags stale again
+        tagsStale = false;
+        tags.clear();
+        trigramSearchRepository.findTagNames().forEach(tag -> tags.put(tag.id(), tag.name()));
+    }
+
+    /**
+     * Offsets are computed in long from page and size; pages past the int range cannot hold
+     * hits and would overflow the SQL OFFSET.
+     */
+    private static int checkOffset(long offset, int limit) {
+        if (offset < 0 || limit < 1 || offset > Integer.MAX_VALUE - (long) limit) {
+            throw new InvalidRequestException("Page is out of range");
+        }
+        return (int) offset;
+    }
+
+    private static SearchHits page(List<TrigramIndex.Match<Long>> matches, int offset, int limit) {
+        List<SearchHits.Hit> hits = matches.stream()
+                .sorted(Comparator.comparing((TrigramIndex.Match<Long> match) -> match.score())
+                        .thenComparing(match -> match.key())
+                        .reversed())
+                .skip(offset)
+                .limit(limit)
+                .map(match -> new SearchHits.Hit(match.key(), match.score()))
+                .toList();
+        return new SearchHits(matches.size(), true, hits);
+    }
+}
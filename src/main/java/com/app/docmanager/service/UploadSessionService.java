@@ -0,0 +1,431 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.dto.UploadSessionDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads: a session owns a sparse part file in the upload directory.
+ * Chunks are written at their offset with positional writes, so they may arrive in any
+ * order and in parallel, and the file is never held in memory.
+ *
+ * <p>Next to the part file, a small state file records the session and the ranges that
+ * reached the disk, so sessions survive a restart. Part files without a state file are
+ * removed at startup. No file handle is kept open between chunks.
+ */
+@Service
+@Slf4j
+public class UploadSessionService {
+
+    private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".json";
+
+    /**
+     * What is kept of a session across restarts.
+     */
+    record SessionState(String id, Long userId, String title, String category, String contentType,
+                        Set<String> tags, long totalSize, List<UploadSessionDTO.ByteRange> ranges,
+                        LocalDateTime lastActivity) {
+    }
+
+    private final FileStorageService fileStorageService;
+    private final DocumentService documentService;
+    private final Duration sessionTtl;
+    private final int maxSessionsPerUser;
+    private final Path sessionDirectory;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    // Held while counting a user's sessions and adding one, so parallel creates respect the limit
+    private final Object createLock = new Object();
+    private final ObjectMapper objectMapper = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+
+    public UploadSessionService(FileStorageService fileStorageService,
+                                DocumentService documentService,
+                                @Value("${file.upload-session-ttl:PT24H}") Duration sessionTtl,
+                                @Value("${file.upload-session-max-per-user:10}") int maxSessionsPerUser) {
+        this.fileStorageService = fileStorageService;
+        this.documentService = documentService;
+        this.sessionTtl = sessionTtl;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        // Same file system as the store, so finalizing is a rename and not a copy
+        this.sessionDirectory = fileStorageService.getFileStorageLocation().resolve(".sessions");
+
+        try {
+            Files.createDirectories(this.sessionDirectory);
+            restoreSessions();
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not prepare the directory for upload sessions.", ex);
+        }
+    }
+
+    /**
+     * Pick up the sessions of the previous run and remove part files nobody can complete.
+     */
+    private void restoreSessions() throws IOException {
+        try (Stream<Path> files = Files.list(sessionDirectory)) {
+            for (Path stateFile : files.filter(file -> file.getFileName().toString().endsWith(STATE_SUFFIX)).toList()) {
+                try {
+                    SessionState state = objectMapper.readValue(stateFile.toFile(), SessionState.class);
+                    Path partFile = sessionDirectory.resolve(state.id() + PART_SUFFIX);
+                    if (Files.exists(partFile)) {
+                        sessions.put(state.id(), new UploadSession(state, partFile));
+                    }
+                } catch (IOException ex) {
+                    log.warn("Could not read upload session state {}", stateFile.getFileName(), ex);
+                }
+            }
+        }
+        try (Stream<Path> files = Files.list(sessionDirectory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                String id = dot < 0 ? name : name.substring(0, dot);
+                if (!sessions.containsKey(id) || !(name.endsWith(PART_SUFFIX) || name.endsWith(STATE_SUFFIX))) {
+                    Files.deleteIfExists(file);
+                    log.info("Removed leftover upload session file {}", name);
+                }
+            }
+        }
+        if (!sessions.isEmpty()) {
+            log.info("Restored {} upload session(s)", sessions.size());
+        }
+    }
+
+    public UploadSessionDTO createSession(Long userId, UploadSessionDTO.CreateUploadSessionRequest request) {
+        String id = UUID.randomUUID().toString();
+        Path partFile = sessionDirectory.resolve(id + PART_SUFFIX);
+
+        try {
+            UploadSession session = new UploadSession(id, userId, request, partFile);
+            synchronized (createLock) {
+                long open = sessions.values().stream().filter(other -> other.userId.equals(userId)).count();
+                if (open >= maxSessionsPerUser) {
+                    throw new InvalidRequestException("Too many open upload sessions, complete or abort one of the "
+                            + open + " first");
+                }
+                Files.createFile(partFile);
+                saveState(session);
+                sessions.put(id, session);
+            }
+            log.info("Upload session {} created for {} bytes", id, request.getTotalSize());
+            return toDto(session);
+        } catch (IOException ex) {
+            Path stateFile = sessionDirectory.resolve(id + STATE_SUFFIX);
+            try {
+                Files.deleteIfExists(stateFile);
+                Files.deleteIfExists(partFile);
+            } catch (IOException cleanupEx) {
+                ex.addSuppressed(cleanupEx);
+            }
+            throw new RuntimeException("Could not create upload session", ex);
+        }
+    }
+
+    public UploadSessionDTO getSession(String sessionId, Long userId) {
+        return toDto(findSession(sessionId, userId));
+    }
+
+    /**
+     * Write one chunk at the given offset. Chunks may overlap; the received ranges are merged.
+     * The writer is registered with the session while its channel is open, so the session
+     * cannot be completed underneath it.
+     */
+    public UploadSessionDTO writeChunk(String sessionId, Long userId, long offset, InputStream content) {
+        UploadSession session = findSession(sessionId, userId);
+        if (offset < 0 || offset >= session.totalSize) {
+            throw new InvalidRequestException("Chunk offset " + offset + " is outside the upload of "
+                    + session.totalSize + " bytes");
+        }
+
+        synchronized (session) {
+            if (session.completing) {
+                throw new InvalidRequestException("Upload session " + sessionId + " is being completed");
+            }
+            session.writers++;
+        }
+        try {
+            writeAt(session, offset, content);
+        } finally {
+            synchronized (session) {
+                session.writers--;
+            }
+        }
+
+        return toDto(session);
+    }
+
+    private void writeAt(UploadSession session, long offset, InputStream content) {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BUFFER_SIZE);
+        long position = offset;
+        try (FileChannel channel = FileChannel.open(session.partFile, StandardOpenOption.WRITE)) {
+            try {
+                int read;
+                while ((read = content.readNBytes(buffer.array(), 0, buffer.capacity())) > 0) {
+                    if (position + read > session.totalSize) {
+                        throw new InvalidRequestException("Chunk exceeds the declared total size of "
+                                + session.totalSize + " bytes");
+                    }
+                    buffer.position(0).limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    session.touch();
+                }
+            } finally {
+                // Whatever reached the disk counts, so a broken connection only loses the tail
+                if (position > offset) {
+                    channel.force(false);
+                    session.addRange(offset, position);
+                    saveState(session);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not write chunk for upload session " + session.id, ex);
+        }
+    }
+
+    /**
+     * Turn a fully received upload into a stored file and a document. If the file cannot be
+     * stored and the part file is still there, the session stays open for another attempt.
+     */
+    public Document completeSession(String sessionId, Long userId) {
+        UploadSession session = findSession(sessionId, userId);
+
+        synchronized (session) {
+            if (session.completing) {
+                throw new InvalidRequestException("Upload session " + sessionId + " is already being completed");
+            }
+            if (session.writers > 0) {
+                // A retried chunk could still change the file while it is hashed and stored
+                throw new InvalidRequestException("Upload session " + sessionId + " still has "
+                        + session.writers + " chunk(s) being written");
+            }
+            if (!session.isComplete()) {
+                throw new InvalidRequestException("Upload session " + sessionId + " is missing "
+                        + (session.totalSize - session.receivedBytes()) + " bytes");
+            }
+            session.completing = true;
+        }
+
+        FileStorageService.StoredFile storedFile = null;
+        try {
+            storedFile = fileStorageService.storeAssembledFile(session.partFile, session.contentType);
+        } finally {
+            if (storedFile != null || !Files.exists(session.partFile)) {
+                sessions.remove(sessionId);
+                discard(session);
+            } else {
+                session.completing = false;
+            }
+        }
+
+        Document document = Document.builder()
+                .title(session.title)
+                .category(session.category)
+                .filePath(storedFile.getFileName())
+                .fileType(storedFile.getContentType())
+                .fileSize(storedFile.getSize())
+                .contentHash(storedFile.getContentHash())
+                .storageCodec(storedFile.getCodec())
+                .storedSize(storedFile.getStoredSize())
+                .build();
+
+        Document savedDocument;
+        try {
+            savedDocument = documentService.createDocument(document, userId, session.tags);
+        } catch (RuntimeException ex) {
+            fileStorageService.discardUnsaved(storedFile);
+            throw ex;
+        }
+        log.info("Upload session {} completed as document {}", sessionId, savedDocument.getId());
+        return savedDocument;
+    }
+
+    public void abortSession(String sessionId, Long userId) {
+        UploadSession session = findSession(sessionId, userId);
+        synchronized (session) {
+            if (session.completing) {
+                throw new InvalidRequestException("Upload session " + sessionId + " is being completed");
+            }
+            // Writers still in flight fail or write into the removed file, neither is kept
+            session.completing = true;
+        }
+        sessions.remove(sessionId);
+        discard(session);
+        log.info("Upload session {} aborted", sessionId);
+    }
+
+    @Scheduled(fixedDelayString = "${file.upload-session-cleanup-interval:PT15M}")
+    public void removeExpiredSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        sessions.values().removeIf(session -> {
+            if (session.completing || session.writers > 0 || session.expiresAt().isAfter(now)) {
+                return false;
+            }
+            discard(session);
+            log.info("Upload session {} expired", session.id);
+            return true;
+        });
+    }
+
+    private UploadSession findSession(String sessionId, Long userId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null || !session.userId.equals(userId)) {
+            throw new ResourceNotFoundException("UploadSession", "id", sessionId);
+        }
+        return session;
+    }
+
+    private void discard(UploadSession session) {
+        try {
+            Files.deleteIfExists(stateFile(session));
+            Files.deleteIfExists(session.partFile);
+        } catch (IOException ex) {
+            log.error("Could not remove part file of upload session {}", session.id, ex);
+        }
+    }
+
+    /**
+     * Replace the state file; it is only written after the part file was forced to disk, so
+     * the recorded ranges are never ahead of the data.
+     */
+    private void saveState(UploadSession session) throws IOException {
+        Path stateFile = stateFile(session);
+        Path temporary = sessionDirectory.resolve(session.id + STATE_SUFFIX + ".tmp");
+        synchronized (session) {
+            objectMapper.writeValue(temporary.toFile(), new SessionState(session.id, session.userId,
+                    session.title, session.category, session.contentType, session.tags, session.totalSize,
+                    session.rangesSnapshot(), session.lastActivity));
+            Files.move(temporary, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private Path stateFile(UploadSession session) {
+        return sessionDirectory.resolve(session.id + STATE_SUFFIX);
+    }
+
+    private UploadSessionDTO toDto(UploadSession session) {
+        List<UploadSessionDTO.ByteRange> ranges = session.rangesSnapshot();
+        long receivedBytes = ranges.stream().mapToLong(range -> range.getEnd() - range.getStart()).sum();
+
+        return UploadSessionDTO.builder()
+                .id(session.id)
+                .title(session.title)
+                .category(session.category)
+                .contentType(session.contentType)
+                .tags(session.tags)
+                .totalSize(session.totalSize)
+                .receivedBytes(receivedBytes)
+                .receivedRanges(ranges)
+                .complete(receivedBytes == session.totalSize)
+                .expiresAt(session.expiresAt())
+                .build();
+    }
+
+    private class UploadSession {
+        private final String id;
+        private final Long userId;
+        private final String title;
+        private final String category;
+        private final String contentType;
+        private final Set<String> tags;
+        private final long totalSize;
+        private final Path partFile;
+        // Received ranges keyed by start, value is the exclusive end; kept merged
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+        private volatile LocalDateTime lastActivity = LocalDateTime.now();
+        private volatile boolean completing;
+        // Chunks being written; guarded by the session's monitor
+        private int writers;
+
+        UploadSession(String id, Long userId, UploadSessionDTO.CreateUploadSessionRequest request, Path partFile) {
+            this.id = id;
+            this.userId = userId;
+            this.title = request.getTitle();
+            this.category = request.getCategory();
+            this.contentType = request.getContentType();
+            this.tags = request.getTags();
+            this.totalSize = request.getTotalSize();
+            this.partFile = partFile;
+        }
+
+        UploadSession(SessionState state, Path partFile) {
+            this.id = state.id();
+            this.userId = state.userId();
+            this.title = state.title();
+            this.category = state.category();
+            this.contentType = state.contentType();
+            this.tags = state.tags();
+            this.totalSize = state.totalSize();
+            this.partFile = partFile;
+            this.lastActivity = state.lastActivity();
+            if (state.ranges() != null) {
+                state.ranges().forEach(range -> ranges.put(range.getStart(), range.getEnd()));
+            }
+        }
+
+        synchronized void addRange(long start, long end) {
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+            while (next != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                ranges.remove(next.getKey());
+                next = ranges.ceilingEntry(start);
+            }
+            ranges.put(start, end);
+        }
+
+        synchronized long receivedBytes() {
+            return ranges.entrySet().stream().mapToLong(range -> range.getValue() - range.getKey()).sum();
+        }
+
+        synchronized boolean isComplete() {
+            return ranges.size() == 1 && ranges.firstKey() == 0 && ranges.firstEntry().getValue() == totalSize;
+        }
+
+        synchronized List<UploadSessionDTO.ByteRange> rangesSnapshot() {
+            List<UploadSessionDTO.ByteRange> snapshot = new ArrayList<>(ranges.size());
+            ranges.forEach((start, end) -> snapshot.add(new UploadSessionDTO.ByteRange(start, end)));
+            return snapshot;
+        }
+
+        void touch() {
+            lastActivity = LocalDateTime.now();
+        }
+
+        LocalDateTime expiresAt() {
+            return lastActivity.plus(sessionTtl);
+        }
+    }
+}
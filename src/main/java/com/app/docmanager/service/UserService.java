@@ -1,10 +1,13 @@
 package com.app.docmanager.service;
 
 import com.app.docmanager.entity.User;
+import com.app.docmanager.event.DocumentChangedEvent;
 import com.app.docmanager.exception.DuplicateResourceException;
 import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.repository.DocumentRepository;
 import com.app.docmanager.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -19,6 +22,8 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final DocumentRepository documentRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public List<User> getAllUsers() {
         return userRepository.findAll();
@@ -83,7 +88,10 @@ public class UserService {
         if (!userRepository.existsById(id)) {
             throw new ResourceNotFoundException("User", "id", id);
         }
+        // The user's documents are deleted with it
+        List<Long> documentIds = documentRepository.findIdsByUserId(id);
         userRepository.deleteById(id);
+        documentIds.forEach(documentId -> eventPublisher.publishEvent(new DocumentChangedEvent(documentId)));
     }
 
     public boolean existsByUsername(String username) {
@@ -0,0 +1,204 @@
+package com.app.docmanager.storage;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Recognizes the content type from the leading bytes of a file, so the type stored with a
+ * document does not depend on what the client declared.
+ */
+public final class ContentTypeDetector {
+
+    /**
+     * Bytes of the head that detection looks at.
+     */
+    public static final int SNIFF_LENGTH = 8 * 1024;
+
+    private static final String OCTET_STREAM = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+    private ContentTypeDetector() {
+    }
+
+    /**
+     * Returns null when the content is not recognized.
+     */
+    public static String detect(byte[] head, int length) {
+        length = Math.min(length, Math.min(head.length, SNIFF_LENGTH));
+        if (length == 0) {
+            return null;
+        }
+        if (startsWith(head, length, 0x25, 0x50, 0x44, 0x46, 0x2D)) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0x49, 0x49, 0x2A, 0x00) || startsWith(head, length, 0x4D, 0x4D, 0x00, 0x2A)) {
+            return "image/tiff";
+        }
+        if (startsWith(head, length, 0x47, 0x49, 0x46, 0x38)) {
+            return "image/gif";
+        }
+        // BM followed by the file size and four reserved zero bytes
+        if (startsWith(head, length, 0x42, 0x4D) && length >= 14
+                && head[6] == 0 && head[7] == 0 && head[8] == 0 && head[9] == 0) {
+            return "image/bmp";
+        }
+        if (startsWith(head, length, 0x52, 0x49, 0x46, 0x46) && length >= 12
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0x50, 0x4B, 0x03, 0x04)) {
+            return detectZip(head, length);
+        }
+        if (startsWith(head, length, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1)) {
+            return "application/x-ole-storage";
+        }
+        if (startsWith(head, length, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (startsWith(head, length, '{', '\\', 'r', 't', 'f')) {
+            return "application/rtf";
+        }
+        return detectText(head, length);
+    }
+
+    /**
+     * Choose the type to persist. The detected type wins, except when it is only the
+     * container format (zip, OLE2, plain text) of a more specific type the client declared.
+     */
+    public static String resolve(String declaredContentType, String detectedContentType) {
+        MediaType declared = parse(declaredContentType);
+        if (detectedContentType == null) {
+            return declared != null ? declaredContentType : OCTET_STREAM;
+        }
+        if (declared == null || declared.equalsTypeAndSubtype(MediaType.APPLICATION_OCTET_STREAM)) {
+            return detectedContentType;
+        }
+
+        String declaredType = (declared.getType() + "/" + declared.getSubtype()).toLowerCase(Locale.ROOT);
+        return switch (detectedContentType) {
+            case "application/zip" -> declaredType.startsWith("application/vnd.openxmlformats-")
+                    || declaredType.startsWith("application/vnd.oasis.opendocument.")
+                    || declaredType.equals("application/epub+zip") ? declaredContentType : detectedContentType;
+            case "application/x-ole-storage" -> declaredType.equals("application/msword")
+                    || declaredType.startsWith("application/vnd.ms-") ? declaredContentType : detectedContentType;
+            case "text/plain" -> declared.getType().equals("text")
+                    || declaredType.equals("application/json")
+                    || declaredType.endsWith("+json") ? declaredContentType : detectedContentType;
+            case "application/xml" -> declaredType.endsWith("+xml")
+                    || declaredType.equals("text/xml") ? declaredContentType : detectedContentType;
+            default -> detectedContentType;
+        };
+    }
+
+    private static String detectZip(byte[] head, int length) {
+        // The first local file header names the first entry; OOXML and ODF put a marker there
+        if (length >= 30) {
+            int nameLength = (head[26] & 0xFF) | (head[27] & 0xFF) << 8;
+            if (30 + nameLength <= length) {
+                String firstEntry = new String(head, 30, nameLength, StandardCharsets.US_ASCII);
+                if (firstEntry.equals("mimetype")) {
+                    int extraLength = (head[28] & 0xFF) | (head[29] & 0xFF) << 8;
+                    int start = 30 + nameLength + extraLength;
+                    String declared = new String(head, start, Math.max(0, Math.min(length - start, 80)),
+                            StandardCharsets.US_ASCII);
+                    if (declared.startsWith("application/vnd.oasis.opendocument.text")) {
+                        return "application/vnd.oasis.opendocument.text";
+                    }
+                    if (declared.startsWith("application/vnd.oasis.opendocument.spreadsheet")) {
+                        return "application/vnd.oasis.opendocument.spreadsheet";
+                    }
+                    if (declared.startsWith("application/epub+zip")) {
+                        return "application/epub+zip";
+                    }
+                }
+            }
+        }
+        return "application/zip";
+    }
+
+    private static String detectText(byte[] head, int length) {
+        int start = 0;
+        if (startsWith(head, length, 0xEF, 0xBB, 0xBF)) {
+            start = 3;
+        }
+
+        for (int i = start; i < length; i++) {
+            byte value = head[i];
+            // Control characters other than whitespace mean binary content
+            if (value == 0 || (value > 0 && value < 0x09) || (value > 0x0D && value < 0x20 && value != 0x1B)) {
+                return null;
+            }
+        }
+        if (!isUtf8(head, start, length)) {
+            return null;
+        }
+
+        String text = new String(head, start, Math.min(length - start, 256), StandardCharsets.UTF_8)
+                .stripLeading().toLowerCase(Locale.ROOT);
+        if (text.startsWith("<?xml")) {
+            return "application/xml";
+        }
+        if (text.startsWith("<!doctype html") || text.startsWith("<html")) {
+            return "text/html";
+        }
+        return "text/plain";
+    }
+
+    private static boolean isUtf8(byte[] head, int start, int length) {
+        // A multi-byte sequence cut off at the end of the head is still valid text
+        int end = length;
+        for (int back = 1; back <= 3 && end - back >= start; back++) {
+            int value = head[end - back] & 0xFF;
+            if (value >= 0xC0) {
+                end -= back;
+                break;
+            }
+            if (value < 0x80) {
+                break;
+            }
+        }
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(head, start, end - start));
+            return true;
+        } catch (CharacterCodingException ex) {
+            return false;
+        }
+    }
+
+    private static MediaType parse(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return null;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
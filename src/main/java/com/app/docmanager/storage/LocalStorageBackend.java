@@ -0,0 +1,333 @@
+package com.app.docmanager.storage;
+
+import com.app.docmanager.config.StorageProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Files on local (or locally mounted) volumes, laid out in a directory fan-out
+ * such as ab/cd/abcd... New files are spread over the volumes by weight.
+ */
+@Slf4j
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final String TEMP_FILE_PREFIX = ".upload-";
+    private static final String QUARANTINE_DIRECTORY = ".quarantine";
+
+    private final List<StorageVolume> volumes;
+    private final int fanOutLevels;
+    private final int fanOutWidth;
+
+    public LocalStorageBackend(Path defaultRoot, StorageProperties storageProperties) {
+        this.fanOutLevels = storageProperties.getFanOutLevels();
+        this.fanOutWidth = storageProperties.getFanOutWidth();
+
+        List<StorageVolume> configuredVolumes = new ArrayList<>();
+        if (storageProperties.getVolumes().isEmpty()) {
+            configuredVolumes.add(new StorageVolume(defaultRoot.toAbsolutePath().normalize(), 1, 0));
+        } else {
+            for (StorageProperties.VolumeProperties volume : storageProperties.getVolumes()) {
+                configuredVolumes.add(new StorageVolume(Paths.get(volume.getPath()).toAbsolutePath().normalize(),
+                        volume.getWeight(), volume.getMinFreeSpace().toBytes()));
+            }
+        }
+        this.volumes = List.copyOf(configuredVolumes);
+
+        try {
+            for (StorageVolume volume : this.volumes) {
+                Files.createDirectories(volume.root());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
+        }
+    }
+
+    @Override
+    public StorageUpload beginUpload() throws IOException {
+        // Write on the volume the file will live on, so committing is a rename
+        StorageVolume volume = selectVolume();
+        Path tempFile = Files.createTempFile(volume.root(), TEMP_FILE_PREFIX, ".tmp");
+        return new LocalUpload(volume, tempFile, Files.newOutputStream(tempFile));
+    }
+
+    @Override
+    public boolean putFile(String key, Path source) throws IOException {
+        if (findExisting(key) != null) {
+            Files.deleteIfExists(source);
+            return false;
+        }
+        moveInto(volumeContaining(source), key, source);
+        return true;
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        Path file = existingOrThrow(key);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(offset);
+        InputStream inputStream = Channels.newInputStream(channel);
+        if (length < 0) {
+            return inputStream;
+        }
+        return new BoundedInputStream(inputStream, length);
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        Path file = findExisting(key);
+        if (file == null) {
+            return Optional.empty();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return Optional.of(new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant()));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        Path file = findExisting(key);
+        return file != null && Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void quarantine(String key) throws IOException {
+        Path file = existingOrThrow(key);
+        StorageVolume volume = volumeContaining(file);
+        Path target = volume.root().resolve(QUARANTINE_DIRECTORY).resolve(key);
+        Files.createDirectories(target.getParent());
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Directory names in the fan-out are key prefixes of equal width, so walking each level
+     * in name order yields sorted keys while only one directory is listed at a time. Files
+     * still lying flat in a volume root and the volumes themselves are merged in.
+     */
+    @Override
+    public Stream<String> list() throws IOException {
+        List<Stream<String>> sources = new ArrayList<>();
+        for (StorageVolume volume : volumes) {
+            sources.add(sortedKeys(volume.root(), 0));
+            if (fanOutLevels > 0) {
+                sources.add(sortedEntries(volume.root()).stream()
+                        .filter(Files::isRegularFile)
+                        .map(file -> file.getFileName().toString()));
+            }
+        }
+        return SortedMerge.merge(sources);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.ofNullable(findExisting(key));
+    }
+
+    /**
+     * Move files still lying flat in a volume root into the fan-out layout. Each move is a
+     * rename within the volume and keys don't change, so files stay readable throughout.
+     * Returns the number of files moved.
+     */
+    public int migrateFlatFiles(int limit) {
+        int moved = 0;
+        for (StorageVolume volume : volumes) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(volume.root(),
+                    entry -> Files.isRegularFile(entry) && !entry.getFileName().toString().startsWith("."))) {
+                for (Path flatFile : entries) {
+                    if (moved >= limit) {
+                        return moved;
+                    }
+                    String key = flatFile.getFileName().toString();
+                    Path target = volume.root().resolve(fanOutPath(key));
+                    if (target.equals(flatFile)) {
+                        continue;
+                    }
+                    Files.createDirectories(target.getParent());
+                    if (Files.exists(target)) {
+                        // Same key means same content in a content-addressed store
+                        Files.delete(flatFile);
+                    } else {
+                        Files.move(flatFile, target, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    moved++;
+                }
+            } catch (IOException ex) {
+                log.error("Could not migrate files in {}", volume.root(), ex);
+            }
+        }
+        return moved;
+    }
+
+    private Stream<String> sortedKeys(Path directory, int level) throws IOException {
+        if (level == fanOutLevels) {
+            return sortedEntries(directory).stream()
+                    .filter(Files::isRegularFile)
+                    .map(file -> file.getFileName().toString());
+        }
+        return sortedEntries(directory).stream()
+                .filter(Files::isDirectory)
+                .flatMap(child -> {
+                    try {
+                        return sortedKeys(child, level + 1);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    // Temp files, upload sessions, quarantine and other bookkeeping start with a dot
+    private static List<Path> sortedEntries(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries
+                    .filter(entry -> !entry.getFileName().toString().startsWith("."))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void moveInto(StorageVolume volume, String key, Path source) throws IOException {
+        Path target = volume.root().resolve(fanOutPath(key));
+        Files.createDirectories(target.getParent());
+        // Same key means same bytes, so losing a race against a parallel upload is harmless
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            // Source lies on another file system than the chosen volume
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path fanOutPath(String key) {
+        Path relative = Paths.get("");
+        for (int level = 0; level < fanOutLevels; level++) {
+            int end = (level + 1) * fanOutWidth;
+            if (end > key.length()) {
+                break;
+            }
+            relative = relative.resolve(key.substring(level * fanOutWidth, end));
+        }
+        return relative.resolve(key);
+    }
+
+    /**
+     * Files live in the fan-out layout on one of the volumes; files not yet migrated
+     * are still found flat in a volume root.
+     */
+    private Path findExisting(String key) {
+        Path fanOut = fanOutPath(key);
+        for (StorageVolume volume : volumes) {
+            Path candidate = volume.root().resolve(fanOut).normalize();
+            if (candidate.startsWith(volume.root()) && Files.exists(candidate)) {
+                return candidate;
+            }
+        }
+        for (StorageVolume volume : volumes) {
+            Path legacy = volume.root().resolve(key).normalize();
+            if (legacy.startsWith(volume.root()) && Files.isRegularFile(legacy)) {
+                return legacy;
+            }
+        }
+        return null;
+    }
+
+    private Path existingOrThrow(String key) throws IOException {
+        Path file = findExisting(key);
+        if (file == null) {
+            throw new NoSuchFileException(key);
+        }
+        return file;
+    }
+
+    /**
+     * Weighted random placement over the volumes that still have their reserved free space.
+     */
+    private StorageVolume selectVolume() throws IOException {
+        List<StorageVolume> candidates = new ArrayList<>(volumes.size());
+        long totalWeight = 0;
+        for (StorageVolume volume : volumes) {
+            if (volume.weight() > 0 && Files.getFileStore(volume.root()).getUsableSpace() >= volume.minFreeSpace()) {
+                candidates.add(volume);
+                totalWeight += volume.weight();
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IOException("No storage volume has enough free space");
+        }
+
+        long pick = ThreadLocalRandom.current().nextLong(totalWeight);
+        for (StorageVolume volume : candidates) {
+            pick -= volume.weight();
+            if (pick < 0) {
+                return volume;
+            }
+        }
+        return candidates.get(candidates.size() - 1);
+    }
+
+    private StorageVolume volumeContaining(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        return volumes.stream()
+                .filter(volume -> absolute.startsWith(volume.root()))
+                .findFirst()
+                .orElse(volumes.get(0));
+    }
+
+    private record StorageVolume(Path root, int weight, long minFreeSpace) {
+    }
+
+    private class LocalUpload implements StorageUpload {
+        private final StorageVolume volume;
+        private final Path tempFile;
+        private final OutputStream outputStream;
+        private boolean committed;
+
+        LocalUpload(StorageVolume volume, Path tempFile, OutputStream outputStream) {
+            this.volume = volume;
+            this.tempFile = tempFile;
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public OutputStream outputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public boolean commit(String key) throws IOException {
+            outputStream.close();
+            committed = true;
+            if (findExisting(key) != null) {
+                Files.deleteIfExists(tempFile);
+                return false;
+            }
+            moveInto(volume, key, tempFile);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                outputStream.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package com.app.docmanager.storage;
+
+import com.app.docmanager.config.StorageProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps small objects appended to large segment files instead of one file each, which
+ * saves inodes and lets backups copy a few big files. Larger objects go to the delegate.
+ *
+ * <p>Each record is a fixed header (magic, flags, key length, data length, CRC32, append
+ * time) followed by the key and the data. The key to location index lives in memory and is
+ * rebuilt by scanning the segments on startup; a torn record at the end of the last segment
+ * is cut off. Unreadable records anywhere else are logged and skipped, so the records after
+ * them stay available. Deleting flips the flag byte in place; {@link #compact(double)}
+ * rewrites the live records of sealed segments with much dead space and removes them.
+ */
+@Slf4j
+public class PackedStorageBackend implements StorageBackend, Closeable {
+
+    private static final int MAGIC = 0x444D504B;
+    private static final int HEADER_SIZE = 4 + 1 + 2 + 4 + 4 + 8;
+    private static final int FLAGS_OFFSET = 4;
+    private static final byte FLAG_LIVE = 0;
+    private static final byte FLAG_DELETED = 1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final String QUARANTINE_DIRECTORY = "quarantine";
+    private static final int RESYNC_WINDOW = 64 * 1024;
+
+    private final StorageBackend delegate;
+    private final Path directory;
+    private final int maxBlobSize;
+    private final long segmentSize;
+    private final boolean fsync;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Readers share the lock; removing a compacted segment takes it exclusively
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private volatile Segment activeSegment;
+
+    public PackedStorageBackend(StorageBackend delegate, Path directory, StorageProperties.PackProperties properties) {
+        this.delegate = delegate;
+        this.directory = directory.toAbsolutePath().normalize();
+        this.maxBlobSize = (int) properties.getMaxBlobSize().toBytes();
+        this.segmentSize = properties.getSegmentSize().toBytes();
+        this.fsync = properties.isFsync();
+
+        try {
+            Files.createDirectories(this.directory);
+            openSegments();
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not open pack segments in " + this.directory, ex);
+        }
+    }
+
+    @Override
+    public StorageUpload beginUpload() {
+        return new PackedUpload();
+    }
+
+    @Override
+    public boolean putFile(String key, Path source) throws IOException {
+        if (Files.size(source) > maxBlobSize) {
+            return delegate.putFile(key, source);
+        }
+        try {
+            return appendIfAbsent(key, Files.readAllBytes(source));
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        while (true) {
+            Location location = index.get(key);
+            if (location == null) {
+                return delegate.get(key, offset, length);
+            }
+            long start = Math.min(offset, location.length());
+            long count = length < 0 ? location.length() - start : Math.min(length, location.length() - start);
+            byte[] data = read(location, start, (int) count);
+            if (data != null) {
+                return new ByteArrayInputStream(data);
+            }
+            // The segment was compacted away in the meantime; the index points to the copy
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        Location location = index.get(key);
+        if (location == null) {
+            return delegate.stat(key);
+        }
+        return Optional.of(new StoredObject(key, location.length(), Instant.ofEpochMilli(location.appendedAt())));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        Location location = index.remove(key);
+        if (location == null) {
+            return delegate.delete(key);
+        }
+        markDeleted(location);
+        return true;
+    }
+
+    @Override
+    public void quarantine(String key) throws IOException {
+        Location location = index.get(key);
+        if (location == null) {
+            delegate.quarantine(key);
+            return;
+        }
+        byte[] data = read(location, 0, location.length());
+        if (data != null) {
+            Path target = directory.resolve(QUARANTINE_DIRECTORY).resolve(key);
+            Files.createDirectories(target.getParent());
+            Files.write(target, data);
+        }
+        if (index.remove(key, location)) {
+            markDeleted(location);
+        }
+    }
+
+    @Override
+    public Stream<String> list() throws IOException {
+        List<String> packedKeys = new ArrayList<>(index.keySet());
+        packedKeys.sort(null);
+        return SortedMerge.merge(List.of(packedKeys.stream(), delegate.list()));
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        // Packed objects share a segment file, so they are streamed rather than sent by path
+        return index.containsKey(key) ? Optional.empty() : delegate.localPath(key);
+    }
+
+    public StorageBackend getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Rewrite the live records of every sealed segment whose share of deleted bytes is at
+     * least {@code deadRatio} into the active segment, then remove the old segment.
+     * Returns the number of bytes reclaimed.
+     */
+    public long compact(double deadRatio) {
+        long reclaimed = 0;
+        for (Segment segment : List.copyOf(segments.values())) {
+            if (segment == activeSegment || segment.size() == 0
+                    || (double) segment.deadBytes.get() / segment.size() < deadRatio) {
+                continue;
+            }
+            try {
+                reclaimed += compactSegment(segment);
+            } catch (IOException ex) {
+                log.error("Could not compact pack segment {}", segment.file, ex);
+            }
+        }
+        return reclaimed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ex) {
+                log.warn("Could not close storage backend", ex);
+            }
+        }
+    }
+
+    private long compactSegment(Segment segment) throws IOException {
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segmentId() != segment.id) {
+                continue;
+            }
+            byte[] data = read(location, 0, location.length());
+            if (data == null) {
+                continue;
+            }
+            Location moved = append(entry.getKey(), data, location.appendedAt());
+            // A delete that happened while copying wins; drop the copy again
+            if (!index.replace(entry.getKey(), location, moved)) {
+                markDeleted(moved);
+            }
+        }
+
+        segmentLock.writeLock().lock();
+        try {
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        log.info("Compacted pack segment {}, reclaimed {} bytes", segment.file.getFileName(),
+                segment.deadBytes.get());
+        return segment.deadBytes.get();
+    }
+
+    private boolean appendIfAbsent(String key, byte[] data) throws IOException {
+        // Outside the lock: on a remote delegate this is a network round trip
+        if (index.containsKey(key) || delegate.stat(key).isPresent()) {
+            return false;
+        }
+        synchronized (appendLock) {
+            if (index.containsKey(key)) {
+                return false;
+            }
+            index.put(key, append(key, data, System.currentTimeMillis()));
+            return true;
+        }
+    }
+
+    private Location append(String key, byte[] data, long appendedAt) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(data);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + data.length);
+        record.putInt(MAGIC)
+                .put(FLAG_LIVE)
+                .putShort((short) keyBytes.length)
+                .putInt(data.length)
+                .putInt((int) crc.getValue())
+                .putLong(appendedAt)
+                .put(keyBytes)
+                .put(data)
+                .flip();
+
+        synchronized (appendLock) {
+            if (activeSegment == null || activeSegment.size() + record.remaining() > segmentSize) {
+                activeSegment = createSegment(activeSegment == null ? 0 : activeSegment.id + 1);
+            }
+            Segment segment = activeSegment;
+            long position = segment.size();
+            while (record.hasRemaining()) {
+                segment.channel.write(record, position + record.position());
+            }
+            if (fsync) {
+                segment.channel.force(false);
+            }
+            segment.end.set(position + record.limit());
+            return new Location(segment.id, position, HEADER_SIZE + keyBytes.length, data.length, appendedAt);
+        }
+    }
+
+    /**
+     * Positional read of part of a record's data; null if its segment no longer exists.
+     */
+    private byte[] read(Location location, long offset, int count) throws IOException {
+        segmentLock.readLock().lock();
+        try {
+            Segment segment = segments.get(location.segmentId());
+            if (segment == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(count);
+            long position = location.recordOffset() + location.dataOffset() + offset;
+            while (buffer.hasRemaining()) {
+                if (segment.channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Pack segment " + segment.file + " ends inside a record");
+                }
+            }
+            return buffer.array();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    private void markDeleted(Location location) throws IOException {
+        segmentLock.readLock().lock();
+        try {
+            Segment segment = segments.get(location.segmentId());
+            if (segment == null) {
+                return;
+            }
+            segment.channel.write(ByteBuffer.wrap(new byte[]{FLAG_DELETED}), location.recordOffset() + FLAGS_OFFSET);
+            segment.deadBytes.addAndGet(location.dataOffset() + location.length());
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            entries.forEach(files::add);
+        }
+        files.sort(null);
+
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(id, file, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(id, segment);
+            scan(segment, i == files.size() - 1);
+            activeSegment = segment;
+        }
+        log.info("Opened {} pack segments with {} objects", segments.size(), index.size());
+    }
+
+    /**
+     * Rebuild the index from one segment. Later segments are scanned later, so a record
+     * rewritten by compaction replaces its original. Only the last segment is appended to,
+     * so only its tail may be cut off.
+     */
+    private void scan(Segment segment, boolean last) throws IOException {
+        FileChannel channel = segment.channel;
+        long fileSize = channel.size();
+        long position = 0;
+
+        while (position + HEADER_SIZE <= fileSize) {
+            Record record = readRecord(channel, position, fileSize);
+            if (record == null) {
+                long next = findNextRecord(channel, position + 1, fileSize);
+                if (next < 0) {
+                    break;
+                }
+                log.error("Skipping {} unreadable bytes at offset {} of pack segment {}",
+                        next - position, position, segment.file);
+                position = next;
+                continue;
+            }
+
+            if (record.flags() == FLAG_LIVE) {
+                Location previous = index.put(record.key(), new Location(segment.id, position,
+                        HEADER_SIZE + record.keyLength(), record.dataLength(), record.appendedAt()));
+                if (previous != null) {
+                    segments.get(previous.segmentId()).deadBytes.addAndGet(previous.dataOffset() + previous.length());
+                }
+            } else {
+                segment.deadBytes.addAndGet(record.length());
+            }
+            position += record.length();
+        }
+
+        if (position < fileSize && last) {
+            // A record cut short by a crash; everything after it was never acknowledged
+            log.warn("Truncating pack segment {} from {} to {} bytes", segment.file, fileSize, position);
+            channel.truncate(position);
+            fileSize = position;
+        } else if (position < fileSize) {
+            log.error("Pack segment {} ends with {} unreadable bytes, leaving them in place",
+                    segment.file, fileSize - position);
+        }
+        segment.end.set(fileSize);
+    }
+
+    /**
+     * The record starting at the position, or null if there is none or it fails its checksum.
+     */
+    private static Record readRecord(FileChannel channel, long position, long fileSize) throws IOException {
+        if (position + HEADER_SIZE > fileSize) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, position);
+        header.flip();
+        int magic = header.getInt();
+        byte flags = header.get();
+        int keyLength = header.getShort() & 0xFFFF;
+        int dataLength = header.getInt();
+        int checksum = header.getInt();
+        long appendedAt = header.getLong();
+        long recordLength = HEADER_SIZE + (long) keyLength + dataLength;
+        if (magic != MAGIC || (flags != FLAG_LIVE && flags != FLAG_DELETED)
+                || dataLength < 0 || position + recordLength > fileSize) {
+            return null;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(keyLength + dataLength);
+        readFully(channel, body, position + HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+        return new Record(flags, key, keyLength, dataLength, appendedAt, recordLength);
+    }
+
+    /**
+     * Position of the next intact record after damaged bytes, or -1 if none follows.
+     */
+    private static long findNextRecord(FileChannel channel, long from, long fileSize) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(RESYNC_WINDOW);
+        long start = from;
+        while (start + HEADER_SIZE <= fileSize) {
+            window.clear();
+            if (channel.read(window, start) <= 0) {
+                return -1;
+            }
+            window.flip();
+            for (int i = 0; i + Integer.BYTES <= window.limit(); i++) {
+                if (window.getInt(i) == MAGIC && readRecord(channel, start + i, fileSize) != null) {
+                    return start + i;
+                }
+            }
+            // Overlap so that a magic number across the window edge is seen
+            start += Math.max(1, window.limit() - Integer.BYTES + 1);
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of pack segment");
+            }
+        }
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = new Segment(id, file, FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private record Location(long segmentId, long recordOffset, int dataOffset, int length, long appendedAt) {
+    }
+
+    private record Record(byte flags, String key, int keyLength, int dataLength, long appendedAt, long length) {
+    }
+
+    private static class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final AtomicLong end = new AtomicLong();
+        private final AtomicLong deadBytes = new AtomicLong();
+
+        Segment(long id, Path file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        long size() {
+            return end.get();
+        }
+    }
+
+    /**
+     * Buffers up to the packing limit in memory; once the content outgrows it, the buffered
+     * bytes and the rest of the stream go to an upload on the delegate.
+     */
+    private class PackedUpload implements StorageUpload {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final OutputStream outputStream = new SpillingOutputStream();
+        private StorageUpload spilled;
+
+        @Override
+        public OutputStream outputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public boolean commit(String key) throws IOException {
+            if (spilled != null) {
+                return spilled.commit(key);
+            }
+            return appendIfAbsent(key, buffer.toByteArray());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spilled != null) {
+                spilled.close();
+            }
+        }
+
+        private class SpillingOutputStream extends OutputStream {
+            @Override
+            public void write(int value) throws IOException {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                if (spilled == null && buffer.size() + length > maxBlobSize) {
+                    spilled = delegate.beginUpload();
+                    buffer.writeTo(spilled.outputStream());
+                    buffer.reset();
+                }
+                if (spilled != null) {
+                    spilled.outputStream().write(data, offset, length);
+                } else {
+                    buffer.write(data, offset, length);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (spilled != null) {
+                    spilled.outputStream().flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.app.docmanager.storage;
+
+import com.app.docmanager.config.StorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Objects in an S3-compatible store (AWS S3, MinIO, ...). Large objects are written as
+ * multipart uploads whose parts are sent in parallel; at most {@code upload-concurrency}
+ * parts per upload are in flight, which also bounds the buffered memory.
+ *
+ * <p>Objects live under {@code <prefix>objects/<key>}. Streamed uploads go to a staging key
+ * first because their key is only known at the end, and are copied server-side on commit.
+ */
+@Slf4j
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String objectPrefix;
+    private final String stagingPrefix;
+    private final String quarantinePrefix;
+    private final int partSize;
+    private final int uploadConcurrency;
+    private final ExecutorService uploadExecutor;
+
+    public S3StorageBackend(S3Client s3Client, StorageProperties.S3Properties properties) {
+        this.s3Client = s3Client;
+        this.bucket = properties.getBucket();
+        this.objectPrefix = properties.getPrefix() + "objects/";
+        this.stagingPrefix = properties.getPrefix() + "staging/";
+        this.quarantinePrefix = properties.getPrefix() + "quarantine/";
+        this.partSize = (int) properties.getPartSize().toBytes();
+        this.uploadConcurrency = properties.getUploadConcurrency();
+        this.uploadExecutor = Executors.newFixedThreadPool(properties.getUploadThreads());
+    }
+
+    @Override
+    public StorageUpload beginUpload() {
+        return new S3Upload();
+    }
+
+    @Override
+    public boolean putFile(String key, Path source) throws IOException {
+        try {
+            if (exists(key)) {
+                return false;
+            }
+
+            long size = Files.size(source);
+            if (size <= partSize) {
+                s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey(key)).build(),
+                        RequestBody.fromFile(source));
+                return true;
+            }
+
+            // Parts are read with positional reads, so they can be uploaded in parallel
+            String uploadId = createMultipartUpload(objectKey(key));
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                Semaphore inFlight = new Semaphore(uploadConcurrency);
+                List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+                for (long offset = 0; offset < size; offset += partSize) {
+                    int partNumber = parts.size() + 1;
+                    int length = (int) Math.min(partSize, size - offset);
+                    long position = offset;
+                    acquire(inFlight);
+                    parts.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            ByteBuffer buffer = ByteBuffer.allocate(length);
+                            while (buffer.hasRemaining()) {
+                                if (channel.read(buffer, position + buffer.position()) < 0) {
+                                    throw new IOException("Unexpected end of " + source);
+                                }
+                            }
+                            return uploadPart(objectKey(key), uploadId, partNumber, buffer.array(), length);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }, uploadExecutor));
+                }
+                completeMultipartUpload(objectKey(key), uploadId, parts);
+            } catch (RuntimeException | IOException ex) {
+                abortMultipartUpload(objectKey(key), uploadId);
+                throw ex;
+            }
+            return true;
+        } catch (S3Exception | CompletionException ex) {
+            throw new IOException("Could not upload " + key + " to S3", ex);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(objectKey(key));
+        if (offset > 0 || length >= 0) {
+            request.range("bytes=" + offset + "-" + (length >= 0 ? String.valueOf(offset + length - 1) : ""));
+        }
+        try {
+            return s3Client.getObject(request.build());
+        } catch (S3Exception ex) {
+            throw new IOException("Could not read " + key + " from S3", ex);
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3Client.headObject(
+                    HeadObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+            return Optional.of(new StoredObject(key, head.contentLength(), head.lastModified()));
+        } catch (S3Exception ex) {
+            if (ex.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Could not stat " + key + " in S3", ex);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+            return true;
+        } catch (S3Exception ex) {
+            throw new IOException("Could not delete " + key + " from S3", ex);
+        }
+    }
+
+    @Override
+    public void quarantine(String key) throws IOException {
+        try {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(objectKey(key))
+                    .destinationBucket(bucket).destinationKey(quarantinePrefix + key)
+                    .build());
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+        } catch (S3Exception ex) {
+            throw new IOException("Could not quarantine " + key + " in S3", ex);
+        }
+    }
+
+    /**
+     * S3 lists keys in ascending UTF-8 binary order, which matches String order for
+     * the ASCII keys used here.
+     */
+    @Override
+    public Stream<String> list() {
+        ListObjectsV2Request request = ListObjectsV2Request.builder().bucket(bucket).prefix(objectPrefix).build();
+        return s3Client.listObjectsV2Paginator(request).contents().stream()
+                .map(object -> object.key().substring(objectPrefix.length()));
+    }
+
+    @Override
+    public void close() {
+        uploadExecutor.shutdown();
+        s3Client.close();
+    }
+
+    private boolean exists(String key) throws IOException {
+        return stat(key).isPresent();
+    }
+
+    private String objectKey(String key) {
+        return objectPrefix + key;
+    }
+
+    private String createMultipartUpload(String objectKey) {
+        return s3Client.createMultipartUpload(
+                CreateMultipartUploadRequest.builder().bucket(bucket).key(objectKey).build()).uploadId();
+    }
+
+    private CompletedPart uploadPart(String objectKey, String uploadId, int partNumber, byte[] data, int length) {
+        String etag = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(objectKey)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) length)
+                        .build(),
+                RequestBody.fromByteBuffer(ByteBuffer.wrap(data, 0, length))).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+    }
+
+    private void completeMultipartUpload(String objectKey, String uploadId,
+                                         List<CompletableFuture<CompletedPart>> parts) {
+        List<CompletedPart> completedParts = parts.stream().map(CompletableFuture::join).toList();
+        s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build());
+    }
+
+    private void abortMultipartUpload(String objectKey, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket).key(objectKey).uploadId(uploadId).build());
+        } catch (S3Exception ex) {
+            log.warn("Could not abort multipart upload {} of {}", uploadId, objectKey, ex);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload slot", ex);
+        }
+    }
+
+    /**
+     * Buffers one part at a time; full parts are handed to the upload pool while the caller
+     * keeps writing. Content smaller than one part is written with a single PUT on commit.
+     */
+    private class S3Upload implements StorageUpload {
+        private final String stagingKey = stagingPrefix + UUID.randomUUID();
+        private final Semaphore inFlight = new Semaphore(uploadConcurrency);
+        private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        private final OutputStream outputStream = new PartOutputStream();
+        private byte[] buffer = new byte[partSize];
+        private int position;
+        private String uploadId;
+        private boolean committed;
+
+        @Override
+        public OutputStream outputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public boolean commit(String key) throws IOException {
+            committed = true;
+            try {
+                if (exists(key)) {
+                    discard();
+                    return false;
+                }
+
+                if (uploadId == null) {
+                    s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey(key)).build(),
+                            RequestBody.fromBytes(Arrays.copyOf(buffer, position)));
+                    return true;
+                }
+
+                if (position > 0) {
+                    flushPart();
+                }
+                completeMultipartUpload(stagingKey, uploadId, parts);
+                s3Client.copyObject(CopyObjectRequest.builder()
+                        .sourceBucket(bucket).sourceKey(stagingKey)
+                        .destinationBucket(bucket).destinationKey(objectKey(key))
+                        .build());
+                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(stagingKey).build());
+                return true;
+            } catch (S3Exception | CompletionException ex) {
+                discard();
+                throw new IOException("Could not upload " + key + " to S3", ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!committed) {
+                discard();
+            }
+        }
+
+        private void flushPart() throws IOException {
+            if (uploadId == null) {
+                uploadId = createMultipartUpload(stagingKey);
+            }
+            int partNumber = parts.size() + 1;
+            byte[] data = buffer;
+            int length = position;
+            buffer = new byte[partSize];
+            position = 0;
+
+            acquire(inFlight);
+            String currentUploadId = uploadId;
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return uploadPart(stagingKey, currentUploadId, partNumber, data, length);
+                } finally {
+                    inFlight.release();
+                }
+            }, uploadExecutor));
+        }
+
+        private void discard() {
+            parts.forEach(part -> part.cancel(false));
+            if (uploadId != null) {
+                abortMultipartUpload(stagingKey, uploadId);
+            }
+        }
+
+        private class PartOutputStream extends OutputStream {
+            @Override
+            public void write(int value) throws IOException {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                while (length > 0) {
+                    int count = Math.min(length, buffer.length - position);
+                    System.arraycopy(data, offset, buffer, position, count);
+                    position += count;
+                    offset += count;
+                    length -= count;
+                    if (position == buffer.length) {
+                        flushPart();
+                    }
+                }
+            }
+        }
+    }
+}
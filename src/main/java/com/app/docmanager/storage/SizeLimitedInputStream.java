@@ -0,0 +1,59 @@
+package com.app.docmanager.storage;
+
+import com.app.docmanager.exception.PayloadTooLargeException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with PayloadTooLargeException once more than a fixed number of bytes were read,
+ * for request bodies that no servlet limit covers.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long read;
+
+    public SizeLimitedInputStream(InputStream inputStream, long limit) {
+        super(inputStream);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            count(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int count = super.read(buffer, offset, length);
+        if (count > 0) {
+            count(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = super.skip(count);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long count) {
+        read += count;
+        if (read > limit) {
+            throw new PayloadTooLargeException(limit);
+        }
+    }
+}
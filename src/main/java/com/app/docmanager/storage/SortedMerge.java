@@ -0,0 +1,63 @@
+package com.app.docmanager.storage;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Merges sorted key streams into one sorted stream, reading each source lazily.
+ */
+final class SortedMerge {
+
+    private SortedMerge() {
+    }
+
+    static Stream<String> merge(List<Stream<String>> sources) {
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+
+        PriorityQueue<Head> heads = new PriorityQueue<>();
+        for (Stream<String> source : sources) {
+            Iterator<String> iterator = source.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), iterator));
+            }
+        }
+
+        Iterator<String> merged = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                Head head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                if (head.rest().hasNext()) {
+                    heads.add(new Head(head.rest().next(), head.rest()));
+                }
+                return head.key();
+            }
+        };
+
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> sources.forEach(Stream::close));
+    }
+
+    private record Head(String key, Iterator<String> rest) implements Comparable<Head> {
+        @Override
+        public int compareTo(Head other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
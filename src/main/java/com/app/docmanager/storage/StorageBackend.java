@@ -0,0 +1,55 @@
+package com.app.docmanager.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Where stored file bytes live. Implementations only move bytes by key; hashing,
+ * compression, deduplication and reference counting stay in FileStorageService.
+ */
+public interface StorageBackend {
+
+    /**
+     * Start writing a new object. The key is only known once the content has been
+     * hashed, so it is assigned when the upload is committed.
+     */
+    StorageUpload beginUpload() throws IOException;
+
+    /**
+     * Store a complete local file under the given key, taking ownership of it: the source
+     * is moved or removed afterwards. Returns false if the key already existed.
+     */
+    boolean putFile(String key, Path source) throws IOException;
+
+    /**
+     * Read {@code length} bytes starting at {@code offset}; a negative length reads to the end.
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    Optional<StoredObject> stat(String key) throws IOException;
+
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Move an object out of the store to a place where it is kept but no longer listed,
+     * so it can be restored by hand if it turns out to be needed.
+     */
+    void quarantine(String key) throws IOException;
+
+    /**
+     * All stored keys in ascending {@link String#compareTo} order, so they can be
+     * merge-joined against a sorted key list. The caller must close the stream.
+     */
+    Stream<String> list() throws IOException;
+
+    /**
+     * The file behind a key, if it lives on a local file system. Lets callers use
+     * zero-copy transfers instead of streaming.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,19 @@
+package com.app.docmanager.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An object being written. Closing an upload that was not committed discards it.
+ */
+public interface StorageUpload extends Closeable {
+
+    OutputStream outputStream();
+
+    /**
+     * Publish the written bytes under the key. Returns false and discards the bytes if
+     * the key already exists.
+     */
+    boolean commit(String key) throws IOException;
+}
@@ -0,0 +1,6 @@
+package com.app.docmanager.storage;
+
+import java.time.Instant;
+
+public record StoredObject(String key, long size, Instant lastModified) {
+}
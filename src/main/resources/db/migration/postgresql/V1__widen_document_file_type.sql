@@ -0,0 +1,4 @@
+-- Office Open XML content types are longer than the 50 characters file_type used to
+-- allow. Hibernate creates new schemas with the wider column but does not alter existing
+-- ones. Widening a varchar is a catalog change on PostgreSQL and does not rewrite the table.
+ALTER TABLE dm_documents ALTER COLUMN file_type TYPE varchar(255);
@@ -0,0 +1,12 @@
+-- Weighted full-text search column for file.search.mode=DATABASE: title (A), category (B)
+-- and the first 100,000 characters of the extracted text (C), as tsvector values are
+-- limited to 1 MB. The configuration must match file.search.text-search-config; the
+-- application refuses to start in DATABASE mode otherwise.
+-- Adding a stored generated column rewrites the table under an exclusive lock; run this
+-- in a maintenance window when the table is large.
+ALTER TABLE dm_documents ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('english'::regconfig, coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('english'::regconfig, coalesce(category, '')), 'B') ||
+        setweight(to_tsvector('english'::regconfig, left(coalesce(extracted_text, ''), 100000)), 'C')
+    ) STORED;
@@ -0,0 +1,5 @@
+-- Built without blocking writes to dm_documents. CREATE INDEX CONCURRENTLY cannot run
+-- inside a transaction block, so run this script on its own in autocommit mode. A failed
+-- build leaves an INVALID index behind; drop it and run the script again.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_documents_search_vector
+    ON dm_documents USING GIN (search_vector);
@@ -0,0 +1,15 @@
+-- Trigram matching of titles and tag names, and the title words behind spelling
+-- suggestions. Creating the extension needs a role allowed to do so. The view is filled
+-- from dm_documents without blocking writes to it; its indexes are on the new view only.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS dm_title_words AS
+    SELECT d.user_id, w.word, count(*) AS ndoc
+    FROM dm_documents d
+    CROSS JOIN LATERAL regexp_split_to_table(lower(d.title), '[^[:alnum:]]+') AS w(word)
+    WHERE length(w.word) >= 3
+    GROUP BY d.user_id, w.word;
+
+-- Unique so the view can be refreshed concurrently with searches
+CREATE UNIQUE INDEX IF NOT EXISTS idx_title_words_key ON dm_title_words (user_id, word);
+CREATE INDEX IF NOT EXISTS idx_title_words_trgm ON dm_title_words USING GIN (word gin_trgm_ops);
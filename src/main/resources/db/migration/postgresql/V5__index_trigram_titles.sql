@@ -0,0 +1,7 @@
+-- Built without blocking writes to dm_documents and dm_tags. CREATE INDEX CONCURRENTLY
+-- cannot run inside a transaction block, so run this script on its own in autocommit
+-- mode. A failed build leaves an INVALID index behind; drop it and run the script again.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_documents_title_trgm
+    ON dm_documents USING GIN (lower(title) gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_tags_name_trgm
+    ON dm_tags USING GIN (name gin_trgm_ops);
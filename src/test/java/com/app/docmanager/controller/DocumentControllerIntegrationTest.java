@@ -21,9 +21,17 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -94,8 +102,6 @@ class DocumentControllerIntegrationTest {
         DocumentDTO.CreateDocumentRequest request = new DocumentDTO.CreateDocumentRequest();
         request.setTitle("Test Document");
         request.setCategory("Test Category");
-        request.setFileType("application/pdf");
-        request.setFileSize(1024L);
         request.setDocumentDate(LocalDate.now());
         request.setTags(Set.of("test", "document"));
         request.setUserId(testUser.getId());
@@ -148,6 +154,143 @@ class DocumentControllerIntegrationTest {
                 .andExpect(jsonPath("$.fileSize").value(12L));
     }
 
+    @Test
+    void uploadDocumentStream_RawBody_ShouldCreateDocumentWithFile() throws Exception {
+        byte[] content = "%PDF-1.4 streamed".getBytes();
+
+        mockMvc.perform(post("/api/documents/upload/stream")
+                        .param("title", "Streamed Document")
+                        .param("tags", "scan, stream")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(content)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.title").value("Streamed Document"))
+                .andExpect(jsonPath("$.fileType").value("application/pdf"))
+                .andExpect(jsonPath("$.fileSize").value((long) content.length));
+    }
+
+    @Test
+    void downloadDocument_WithRangeAndEtag_ShouldServePartialAndNotModified() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "range.txt", "text/plain", "0123456789".getBytes());
+
+        MvcResult uploadResult = mockMvc.perform(multipart("/api/documents/upload")
+                        .file(file)
+                        .param("title", "Range Document")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isCreated())
+                .andReturn();
+        DocumentDTO uploaded = objectMapper.readValue(
+                uploadResult.getResponse().getContentAsString(), DocumentDTO.class);
+
+        mockMvc.perform(get("/api/documents/" + uploaded.getId() + "/download")
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(content().string("2345"));
+
+        mockMvc.perform(get("/api/documents/" + uploaded.getId() + "/download")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + uploaded.getContentHash() + "\"")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void uploadDocumentsBulk_PartsAndArchive_ShouldCreateDocumentPerFile() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("batch/page-1.pdf"));
+            zip.write("%PDF-1.4 page one".getBytes());
+            zip.putNextEntry(new ZipEntry("batch/page-2.txt"));
+            zip.write("page two".getBytes());
+            zip.putNextEntry(new ZipEntry("__MACOSX/batch/._page-1.pdf"));
+            zip.write(new byte[]{0, 5, 22, 7});
+        }
+        MockMultipartFile text = new MockMultipartFile(
+                "files", "cover.txt", "text/plain", "cover sheet".getBytes());
+        MockMultipartFile zipPart = new MockMultipartFile(
+                "files", "scans.zip", "application/zip", archive.toByteArray());
+
+        mockMvc.perform(multipart("/api/documents/upload/bulk")
+                        .file(text)
+                        .file(zipPart)
+                        .param("category", "Scans")
+                        .param("tags", "nightly, scanner")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(3))
+                .andExpect(jsonPath("$.failed").value(0))
+                .andExpect(jsonPath("$.items[1].name").value("scans.zip/batch/page-1.pdf"))
+                .andExpect(jsonPath("$.items[1].fileType").value("application/pdf"))
+                .andExpect(jsonPath("$.items[1].documentId").isNumber());
+
+        mockMvc.perform(get("/api/documents")
+                        .param("category", "Scans")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].tags.length()").value(2));
+    }
+
+    @Test
+    void exportDocuments_ByIds_ShouldStreamZipWithStoredPdf() throws Exception {
+        MockMultipartFile text = new MockMultipartFile(
+                "file", "notes.txt", "text/plain", "plain notes".getBytes());
+        MvcResult textResult = mockMvc.perform(multipart("/api/documents/upload")
+                        .file(text)
+                        .param("title", "notes.txt")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isCreated())
+                .andReturn();
+        MvcResult pdfResult = mockMvc.perform(post("/api/documents/upload/stream")
+                        .content("%PDF-1.4 export".getBytes())
+                        .contentType(MediaType.APPLICATION_PDF)
+                        .param("title", "scan.pdf")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isCreated())
+                .andReturn();
+        Long textId = objectMapper.readValue(textResult.getResponse().getContentAsString(), DocumentDTO.class).getId();
+        Long pdfId = objectMapper.readValue(pdfResult.getResponse().getContentAsString(), DocumentDTO.class).getId();
+
+        DocumentDTO.ExportDocumentsRequest exportRequest = new DocumentDTO.ExportDocumentsRequest();
+        exportRequest.setIds(Set.of(textId, pdfId));
+
+        MvcResult started = mockMvc.perform(post("/api/documents/export")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(exportRequest))
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult exported = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andReturn();
+
+        Map<String, Integer> methods = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(exported.getResponse().getContentAsByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                methods.put(entry.getName(), entry.getMethod());
+            }
+        }
+        assertThat(methods).containsEntry("notes.txt", ZipEntry.DEFLATED)
+                .containsEntry("scan.pdf", ZipEntry.STORED);
+    }
+
+    @Test
+    void exportDocuments_UnknownId_ShouldReturn404() throws Exception {
+        DocumentDTO.ExportDocumentsRequest exportRequest = new DocumentDTO.ExportDocumentsRequest();
+        exportRequest.setIds(Set.of(999L));
+
+        mockMvc.perform(post("/api/documents/export")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(exportRequest))
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void getDocument_NonExistentId_ShouldReturn404() throws Exception {
         mockMvc.perform(get("/api/documents/999")
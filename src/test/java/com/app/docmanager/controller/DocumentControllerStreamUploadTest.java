@@ -0,0 +1,114 @@
+package com.app.docmanager.controller;
+
+import com.app.docmanager.config.IngestProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.exception.PayloadTooLargeException;
+import com.app.docmanager.mapper.DocumentMapper;
+import com.app.docmanager.security.CustomUserDetails;
+import com.app.docmanager.service.DocumentService;
+import com.app.docmanager.service.FileStorageService;
+import com.app.docmanager.service.ScanPreprocessingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentControllerStreamUploadTest {
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private DocumentMapper documentMapper;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private ScanPreprocessingService scanPreprocessingService;
+
+    @Spy
+    private IngestProperties ingestProperties = new IngestProperties();
+
+    @InjectMocks
+    private DocumentController documentController;
+
+    private final CustomUserDetails currentUser = CustomUserDetails.builder().id(7L).username("owner").build();
+
+    @BeforeEach
+    void setUp() {
+        ingestProperties.setMaxStreamSize(DataSize.ofBytes(10));
+    }
+
+    @Test
+    void uploadDocumentStream_WhenDeclaredLengthExceedsTheLimit_ShouldRejectWithoutReading() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/documents/upload/stream");
+        request.setContent(new byte[11]);
+
+        // When / Then
+        assertThatThrownBy(() -> documentController.uploadDocumentStream(request, "Scan", null, null, currentUser))
+                .isInstanceOf(PayloadTooLargeException.class);
+        verifyNoInteractions(scanPreprocessingService);
+    }
+
+    @Test
+    void uploadDocumentStream_WhenChunkedBodyExceedsTheLimit_ShouldRejectWhileReading() {
+        // Given: no Content-Length, as with chunked transfer encoding
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/documents/upload/stream") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        request.setContent(new byte[11]);
+        when(scanPreprocessingService.storeStream(any(), any())).thenAnswer(invocation -> {
+            InputStream inputStream = invocation.getArgument(0);
+            inputStream.readAllBytes();
+            return null;
+        });
+
+        // When / Then
+        assertThatThrownBy(() -> documentController.uploadDocumentStream(request, "Scan", null, null, currentUser))
+                .isInstanceOf(PayloadTooLargeException.class);
+        verify(documentService, never()).createDocument(any(), anyLong(), any());
+    }
+
+    @Test
+    void uploadDocumentStream_WithinTheLimit_ShouldCreateTheDocument() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/documents/upload/stream");
+        request.setContent("%PDF-1.4".getBytes());
+        request.setContentType("application/pdf");
+        when(scanPreprocessingService.storeStream(any(), eq("application/pdf"))).thenReturn(
+                FileStorageService.StoredFile.builder()
+                        .fileName("abc").contentHash("abc").size(8).storedSize(8)
+                        .codec(StorageCodec.NONE).contentType("application/pdf").build());
+        when(documentMapper.toEntityWithoutUser(any())).thenReturn(new Document());
+        when(documentService.createDocument(any(), eq(7L), any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When / Then
+        assertThat(documentController.uploadDocumentStream(request, "Scan", null, null, currentUser).getStatusCode())
+                .isEqualTo(HttpStatus.CREATED);
+    }
+}
@@ -0,0 +1,74 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.entity.Tag;
+import com.app.docmanager.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(DocumentExportRepository.class)
+class DocumentExportRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DocumentExportRepository documentExportRepository;
+
+    @Test
+    void findEntries_ShouldReturnEachMatchingDocumentOnceInIdOrder() {
+        // Given
+        User owner = entityManager.persist(User.builder()
+                .username("owner").email("owner@example.com").password("secret").build());
+        User other = entityManager.persist(User.builder()
+                .username("other").email("other@example.com").password("secret").build());
+        Tag finance = entityManager.persist(new Tag("finance"));
+        Tag travel = entityManager.persist(new Tag("travel"));
+        Document invoice = persist(owner, "Invoice.pdf", "a.pdf", StorageCodec.NONE, finance, travel);
+        Document receipt = persist(owner, "Receipt.txt", "b.txt.gz", StorageCodec.GZIP, finance);
+        persist(owner, "Notes.txt", "c.txt", StorageCodec.NONE);
+        persist(other, "Foreign.pdf", "d.pdf", StorageCodec.NONE, finance);
+        entityManager.flush();
+        entityManager.clear();
+        Specification<Document> specification = Specification.allOf(
+                DocumentSpecifications.ownedBy(owner.getId()),
+                DocumentSpecifications.hasAnyTag(Set.of("finance", "travel")));
+
+        // When
+        List<DocumentExportRepository.Entry> entries = documentExportRepository.findEntries(specification);
+
+        // Then
+        assertThat(entries).extracting(DocumentExportRepository.Entry::id)
+                .containsExactly(invoice.getId(), receipt.getId());
+        DocumentExportRepository.Entry entry = entries.get(1);
+        assertThat(entry.title()).isEqualTo("Receipt.txt");
+        assertThat(entry.filePath()).isEqualTo("b.txt.gz");
+        assertThat(entry.fileType()).isEqualTo("text/plain");
+        assertThat(entry.storageCodec()).isEqualTo(StorageCodec.GZIP);
+        assertThat(entry.createdAt()).isNotNull();
+    }
+
+    private Document persist(User user, String title, String filePath, StorageCodec codec, Tag... tags) {
+        return entityManager.persist(Document.builder()
+                .title(title)
+                .filePath(filePath)
+                .fileType(title.endsWith(".pdf") ? "application/pdf" : "text/plain")
+                .storageCodec(codec)
+                .extractedText("text of " + title)
+                .user(user)
+                .tags(new HashSet<>(List.of(tags)))
+                .build());
+    }
+}
@@ -0,0 +1,108 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import com.app.docmanager.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(DocumentFacetRepository.class)
+class DocumentFacetRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DocumentFacetRepository documentFacetRepository;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = entityManager.persist(User.builder()
+                .username("owner").email("owner@example.com").password("secret").build());
+        User other = entityManager.persist(User.builder()
+                .username("other").email("other@example.com").password("secret").build());
+        Tag finance = entityManager.persist(new Tag("finance"));
+        Tag travel = entityManager.persist(new Tag("travel"));
+
+        persist(owner, "Invoice", "bills", "application/pdf", 50_000L, LocalDate.of(2024, 3, 1), finance, travel);
+        persist(owner, "Receipt", "bills", "image/jpeg", 2_000_000L, LocalDate.of(2024, 3, 15), finance);
+        persist(owner, "Ticket", "travel", "application/pdf", null, LocalDate.of(2023, 7, 2), travel);
+        persist(other, "Foreign", "bills", "application/pdf", 10L, LocalDate.of(2024, 3, 1), finance);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void countBy_ShouldCountDistinctMatchingDocumentsPerValue() {
+        // Given
+        Specification<Document> specification = Specification.allOf(
+                DocumentSpecifications.ownedBy(owner.getId()),
+                DocumentSpecifications.hasAnyTag(Set.of("finance", "travel")));
+
+        // When / Then
+        assertThat(documentFacetRepository.countByAttribute(specification, "category", 10))
+                .containsExactly(new DocumentFacetRepository.Count<>("bills", 2),
+                        new DocumentFacetRepository.Count<>("travel", 1));
+        assertThat(documentFacetRepository.countByTag(specification, 10))
+                .containsExactlyInAnyOrder(new DocumentFacetRepository.Count<>("finance", 2),
+                        new DocumentFacetRepository.Count<>("travel", 2));
+        assertThat(documentFacetRepository.countByDocumentDate(specification)).hasSize(3);
+        assertThat(documentFacetRepository.countByFileSize(specification, new long[]{100_000, 1_000_000}))
+                .containsExactlyInAnyOrder(new DocumentFacetRepository.Count<>(0, 1),
+                        new DocumentFacetRepository.Count<>(2, 1));
+    }
+
+    @Test
+    void countBy_ShouldApplyTheFilterToTheCounts() {
+        // Given
+        Specification<Document> specification = Specification.allOf(
+                DocumentSpecifications.ownedBy(owner.getId()),
+                DocumentSpecifications.hasAnyFileType(List.of("application/pdf")));
+
+        // When / Then
+        assertThat(documentFacetRepository.countByTag(specification, 1))
+                .containsExactly(new DocumentFacetRepository.Count<>("travel", 2));
+    }
+
+    @Test
+    void countByAttribute_OfficeOpenXmlType_ShouldStoreAndCountTheFullType() {
+        // Given
+        String docx = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        persist(owner, "Letter", "letters", docx, 20_000L, LocalDate.of(2024, 4, 1));
+        entityManager.flush();
+
+        // When / Then
+        assertThat(documentFacetRepository.countByAttribute(
+                DocumentSpecifications.ownedBy(owner.getId()), "fileType", 10))
+                .contains(new DocumentFacetRepository.Count<>(docx, 1));
+    }
+
+    private void persist(User user, String title, String category, String fileType, Long fileSize,
+                         LocalDate documentDate, Tag... tags) {
+        Document document = Document.builder()
+                .title(title)
+                .category(category)
+                .fileType(fileType)
+                .fileSize(fileSize)
+                .documentDate(documentDate)
+                .user(user)
+                .tags(new HashSet<>(List.of(tags)))
+                .build();
+        entityManager.persist(document);
+    }
+}
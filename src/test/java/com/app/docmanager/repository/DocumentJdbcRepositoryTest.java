@@ -0,0 +1,48 @@
+package com.app.docmanager.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentJdbcRepositoryTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private DocumentJdbcRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE dm_documents (id BIGINT PRIMARY KEY, file_path VARCHAR(500))");
+        repository = new DocumentJdbcRepository(jdbcTemplate);
+    }
+
+    @Test
+    void findFilePathsAfter_ShouldPageDistinctPathsInStringOrder() {
+        // Given: case and punctuation, which a linguistic collation sorts differently
+        List<String> paths = List.of("b.pdf", "B.pdf", "_x.pdf", "a-1.pdf", "a.pdf", "a.pdf", "Z.pdf");
+        for (int i = 0; i < paths.size(); i++) {
+            jdbcTemplate.update("INSERT INTO dm_documents (id, file_path) VALUES (?, ?)", i, paths.get(i));
+        }
+        jdbcTemplate.update("INSERT INTO dm_documents (id, file_path) VALUES (?, NULL)", paths.size());
+
+        // When
+        List<String> read = new ArrayList<>();
+        List<String> page = repository.findFilePathsAfter("", 2);
+        while (!page.isEmpty()) {
+            read.addAll(page);
+            page = repository.findFilePathsAfter(page.get(page.size() - 1), 2);
+        }
+
+        // Then
+        assertThat(read).containsExactly("B.pdf", "Z.pdf", "_x.pdf", "a-1.pdf", "a.pdf", "b.pdf");
+        assertThat(read).isSorted();
+    }
+}
@@ -0,0 +1,78 @@
+package com.app.docmanager.repository;
+
+import com.app.docmanager.config.SearchProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentTextSearchRepositoryTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private DocumentTextSearchRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE dm_documents (id BIGINT PRIMARY KEY, title VARCHAR(255), "
+                + "category VARCHAR(255), extracted_text CLOB, user_id BIGINT)");
+        repository = new DocumentTextSearchRepository(jdbcTemplate, new SearchProperties());
+    }
+
+    @Test
+    void search_OnH2_ShouldMatchEveryWordAndRankTitleMatchesFirst() {
+        // Given
+        insert(1L, 7L, "Notes", "Meeting notes, the invoice follows next week");
+        insert(2L, 7L, "Invoice 4711", "Amount due 120 EUR");
+        insert(3L, 8L, "Invoice 4712", "Someone else's invoice");
+        insert(4L, 7L, "Invoice draft", null);
+
+        // When
+        SearchHits own = repository.search("Invoice", 7L, 0, 10);
+        SearchHits all = repository.search("invoice", null, 0, 10);
+        SearchHits bothWords = repository.search("invoice amount", 7L, 0, 10);
+
+        // Then
+        assertThat(own.totalHits()).isEqualTo(3);
+        assertThat(own.hits()).extracting(SearchHits.Hit::id).containsExactly(4L, 2L, 1L);
+        assertThat(all.totalHits()).isEqualTo(4);
+        assertThat(bothWords.hits()).extracting(SearchHits.Hit::id).containsExactly(2L);
+    }
+
+    @Test
+    void search_OnH2_ShouldTreatWildcardsLiterally() {
+        // Given
+        insert(1L, 7L, "100% done", null);
+        insert(2L, 7L, "1000 items", null);
+
+        // When
+        SearchHits hits = repository.search("100%", 7L, 0, 10);
+
+        // Then
+        assertThat(hits.hits()).extracting(SearchHits.Hit::id).containsExactly(1L);
+    }
+
+    @Test
+    void usesTextSearchConfig_ShouldRequireTheConfiguredLanguageThroughout() {
+        String english = "((setweight(to_tsvector('english'::regconfig, "
+                + "(COALESCE(title, ''::character varying))::text), 'A'::\"char\") || "
+                + "setweight(to_tsvector('english'::regconfig, "
+                + "left(COALESCE(extracted_text, ''::text), 100000)), 'C'::\"char\")))";
+
+        assertThat(DocumentTextSearchRepository.usesTextSearchConfig(english, "english")).isTrue();
+        assertThat(DocumentTextSearchRepository.usesTextSearchConfig(english, "german")).isFalse();
+        assertThat(DocumentTextSearchRepository.usesTextSearchConfig(
+                english.replaceFirst("'english'", "'simple'"), "english")).isFalse();
+        assertThat(DocumentTextSearchRepository.usesTextSearchConfig(null, "english")).isFalse();
+    }
+
+    private void insert(Long id, Long userId, String title, String text) {
+        jdbcTemplate.update("INSERT INTO dm_documents (id, title, extracted_text, user_id) VALUES (?, ?, ?, ?)",
+                id, title, text, userId);
+    }
+}
@@ -0,0 +1,177 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.IngestProperties;
+import com.app.docmanager.dto.BulkUploadDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.repository.DocumentJdbcRepository;
+import com.app.docmanager.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkUploadServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private ScanPreprocessingService scanPreprocessingService;
+
+    @Mock
+    private TagService tagService;
+
+    @Mock
+    private TextExtractionService textExtractionService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final IngestProperties ingestProperties = new IngestProperties();
+
+    private BulkUploadService bulkUploadService;
+
+    @BeforeEach
+    void setUp() {
+        when(fileStorageService.getFileStorageLocation()).thenReturn(uploadDir);
+        when(userRepository.existsById(7L)).thenReturn(true);
+        when(scanPreprocessingService.storeStream(any(), any())).thenAnswer(invocation -> {
+            InputStream inputStream = invocation.getArgument(0);
+            byte[] content = inputStream.readAllBytes();
+            return FileStorageService.StoredFile.builder()
+                    .fileName("hash-" + content.length)
+                    .contentHash("hash-" + content.length)
+                    .size(content.length)
+                    .storedSize(content.length)
+                    .codec(StorageCodec.NONE)
+                    .contentType("text/plain")
+                    .build();
+        });
+
+        ingestProperties.setMaxEntrySize(DataSize.ofBytes(100));
+        bulkUploadService = new BulkUploadService(fileStorageService, scanPreprocessingService, tagService,
+                textExtractionService, userRepository, documentJdbcRepository, eventPublisher, ingestProperties,
+                transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkUploadService.shutdown();
+    }
+
+    @Test
+    void ingest_WhenAnArchiveEntryInflatesBeyondTheLimit_ShouldFailOnlyThatEntry() throws Exception {
+        // Given
+        MockMultipartFile archive = zip("scans.zip", "small.txt", "a".repeat(10), "bomb.txt", "0".repeat(10_000));
+        doAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            documents.forEach(document -> document.setId(1L));
+            return null;
+        }).when(documentJdbcRepository).insertAll(anyList(), eq(7L), any(), anyInt());
+
+        // When
+        BulkUploadDTO report = bulkUploadService.ingest(List.of(archive), "Scans", Set.of(), 7L);
+
+        // Then
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getItems()).extracting(BulkUploadDTO.Item::getName, BulkUploadDTO.Item::getStatus)
+                .containsExactly(
+                        tuple("scans.zip/small.txt", BulkUploadDTO.Status.CREATED),
+                        tuple("scans.zip/bomb.txt", BulkUploadDTO.Status.FAILED));
+        assertThat(report.getItems().get(1).getError()).contains("exceeds the limit of 100 bytes");
+    }
+
+    @Test
+    void ingest_WhenArchiveEntriesTogetherInflateBeyondTheLimit_ShouldFailTheRest() throws Exception {
+        // Given: each entry is within its own limit, the second one exceeds the request's
+        ingestProperties.setMaxTotalSize(DataSize.ofBytes(120));
+        MockMultipartFile archive = zip("scans.zip", "a.txt", "a".repeat(80), "b.txt", "b".repeat(80));
+        doAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            documents.forEach(document -> document.setId(1L));
+            return null;
+        }).when(documentJdbcRepository).insertAll(anyList(), eq(7L), any(), anyInt());
+
+        // When
+        BulkUploadDTO report = bulkUploadService.ingest(List.of(archive), null, Set.of(), 7L);
+
+        // Then
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(report.getItems()).filteredOn(item -> item.getStatus() == BulkUploadDTO.Status.FAILED)
+                .singleElement()
+                .extracting(BulkUploadDTO.Item::getError).asString()
+                .contains("exceed the limit of 120 bytes");
+    }
+
+    @Test
+    void ingest_WhenTheInsertFails_ShouldDiscardTheStoredFiles() throws Exception {
+        // Given
+        MockMultipartFile first = new MockMultipartFile("files", "a.txt", "text/plain", "first".getBytes());
+        MockMultipartFile second = new MockMultipartFile("files", "b.txt", "text/plain", "second".getBytes());
+        doThrow(new IllegalStateException("constraint violated"))
+                .when(documentJdbcRepository).insertAll(anyList(), eq(7L), any(), anyInt());
+
+        // When / Then
+        assertThatThrownBy(() -> bulkUploadService.ingest(List.of(first, second), null, Set.of(), 7L))
+                .hasMessage("constraint violated");
+        verify(fileStorageService).discardUnsaved(argThat(
+                storedFile -> storedFile.getFileName().equals("hash-5")));
+        verify(fileStorageService).discardUnsaved(argThat(
+                storedFile -> storedFile.getFileName().equals("hash-6")));
+    }
+
+    private static MockMultipartFile zip(String name, String... entries) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                zip.write(entries[i + 1].getBytes());
+                zip.closeEntry();
+            }
+        }
+        return new MockMultipartFile("files", name, "application/zip", bytes.toByteArray());
+    }
+}
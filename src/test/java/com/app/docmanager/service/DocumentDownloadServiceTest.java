@@ -0,0 +1,184 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.storage.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentDownloadServiceTest {
+
+    private static final String TEXT = "Line of a plain text document\n".repeat(200);
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private FileStorageService fileStorageService;
+
+    private DocumentDownloadService documentDownloadService;
+
+    private Document document;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties storageProperties = new StorageProperties();
+        fileStorageService = new FileStorageService(uploadDir.toString(), storageProperties,
+                new LocalStorageBackend(uploadDir, storageProperties), documentRepository, eventPublisher);
+        documentDownloadService = new DocumentDownloadService(fileStorageService);
+
+        FileStorageService.StoredFile storedFile = fileStorageService.storeFile(
+                new MockMultipartFile("file", "a.txt", "text/plain", TEXT.getBytes()));
+        document = Document.builder()
+                .title("a.txt")
+                .filePath(storedFile.getFileName())
+                .fileType(storedFile.getContentType())
+                .fileSize(storedFile.getSize())
+                .contentHash(storedFile.getContentHash())
+                .storageCodec(storedFile.getCodec())
+                .storedSize(storedFile.getStoredSize())
+                .build();
+    }
+
+    @Test
+    void download_WhenClientAcceptsGzip_ShouldPassTheStoredBytesThrough() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        documentDownloadService.download(document, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"" + document.getContentHash() + "-gzip\"");
+        assertThat(response.getContentLengthLong()).isEqualTo(document.getStoredSize());
+        byte[] body = response.getContentAsByteArray();
+        assertThat(new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes())).isEqualTo(TEXT);
+    }
+
+    @Test
+    void download_WhenClientDoesNotAcceptGzip_ShouldDecodeWhileStreaming() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        documentDownloadService.download(document, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"" + document.getContentHash() + "\"");
+        assertThat(response.getContentLengthLong()).isEqualTo(TEXT.length());
+        assertThat(response.getContentAsString()).isEqualTo(TEXT);
+    }
+
+    @Test
+    void download_RangeOfCompressedFile_ShouldDecodeOnlyTheRequestedBytes() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        request.addHeader(HttpHeaders.RANGE, "bytes=30-39");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        documentDownloadService.download(document, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 30-39/" + TEXT.length());
+        assertThat(response.getContentAsString()).isEqualTo(TEXT.substring(30, 40));
+    }
+
+    @Test
+    void download_WhenRecordedSizeIsWrong_ShouldTakeTheLengthFromTheGzipTrailer() throws Exception {
+        // Given
+        document.setFileSize(5L);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        documentDownloadService.download(document, request, response);
+
+        // Then
+        assertThat(response.getContentLengthLong()).isEqualTo(TEXT.length());
+        assertThat(response.getContentAsString()).isEqualTo(TEXT);
+    }
+
+    @Test
+    void download_OverlappingRanges_ShouldSendTheWholeFileOnce() throws Exception {
+        // Given
+        byte[] content = ("%PDF-1.4\n" + "x".repeat(1000)).getBytes();
+        Document pdf = storePdf(content);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.RANGE, "bytes=" + String.join(",", Collections.nCopies(100, "0-")));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        documentDownloadService.download(pdf, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void download_DisjointRanges_ShouldSendMultipartByteranges() throws Exception {
+        // Given
+        byte[] content = ("%PDF-1.4\n" + "x".repeat(1000)).getBytes();
+        Document pdf = storePdf(content);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-3,10-19");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        documentDownloadService.download(pdf, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentType()).startsWith("multipart/byteranges");
+        assertThat(response.getContentAsString()).contains("%PDF").contains("Content-Range: bytes 10-19/1009");
+    }
+
+    private Document storePdf(byte[] content) {
+        FileStorageService.StoredFile storedFile = fileStorageService.storeFile(
+                new MockMultipartFile("file", "a.pdf", "application/pdf", content));
+        return Document.builder()
+                .title("a.pdf")
+                .filePath(storedFile.getFileName())
+                .fileType(storedFile.getContentType())
+                .fileSize(storedFile.getSize())
+                .contentHash(storedFile.getContentHash())
+                .storageCodec(storedFile.getCodec())
+                .build();
+    }
+}
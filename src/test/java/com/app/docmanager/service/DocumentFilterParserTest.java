@@ -0,0 +1,110 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import com.app.docmanager.entity.User;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.DocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+class DocumentFilterParserTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @BeforeEach
+    void setUp() {
+        User alice = entityManager.persist(User.builder()
+                .username("alice").email("alice@example.com").password("secret").build());
+        User bob = entityManager.persist(User.builder()
+                .username("bob").email("bob@example.com").password("secret").build());
+        Tag tax = entityManager.persist(new Tag("tax"));
+        Tag finance = entityManager.persist(new Tag("finance"));
+        Tag draft = entityManager.persist(new Tag("draft"));
+
+        persist(alice, "Invoice 2024-001", "bills", "application/pdf", 50_000L, LocalDate.of(2024, 3, 1), tax, finance);
+        persist(alice, "Invoice draft", null, "application/pdf", 6_000_000L, LocalDate.of(2023, 12, 31), tax, draft);
+        persist(alice, "Holiday photo", "private", "image/jpeg", 2_000_000L, null, finance);
+        persist(bob, "Annual report 100%", "reports", "image/png", null, LocalDate.of(2024, 6, 1));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void parse_ShouldCombineTermsWithAndOrNot() {
+        assertThat(titles("invoice")).containsExactlyInAnyOrder("Invoice 2024-001", "Invoice draft");
+        assertThat(titles("tag:tax tag:finance")).containsExactly("Invoice 2024-001");
+        assertThat(titles("(tag:draft OR tag:finance) AND NOT tag:tax")).containsExactly("Holiday photo");
+        assertThat(titles("invoice -tag:draft")).containsExactly("Invoice 2024-001");
+        assertThat(titles("owner:bob OR title:\"holiday photo\""))
+                .containsExactlyInAnyOrder("Annual report 100%", "Holiday photo");
+    }
+
+    @Test
+    void parse_ShouldFilterByDateSizeAndType() {
+        assertThat(titles("date:2024")).containsExactlyInAnyOrder("Invoice 2024-001", "Annual report 100%");
+        assertThat(titles("date<2024-03")).containsExactly("Invoice draft");
+        assertThat(titles("date>=2024-03-01 date<=2024-03")).containsExactly("Invoice 2024-001");
+        assertThat(titles("size>=1mb size<5mb")).containsExactly("Holiday photo");
+        assertThat(titles("type:image/*")).containsExactlyInAnyOrder("Holiday photo", "Annual report 100%");
+        assertThat(titles("100%")).containsExactly("Annual report 100%");
+    }
+
+    @Test
+    void parse_NegatedTerm_ShouldMatchDocumentsWithoutTheValue() {
+        assertThat(titles("-category:bills")).containsExactlyInAnyOrder(
+                "Invoice draft", "Holiday photo", "Annual report 100%");
+        assertThat(titles("NOT date:2024")).containsExactlyInAnyOrder("Invoice draft", "Holiday photo");
+    }
+
+    @Test
+    void parse_RepeatedNegations_ShouldBeFolded() {
+        assertThat(titles("--category:bills")).containsExactlyInAnyOrderElementsOf(titles("category:bills"));
+        assertThat(titles("NOT NOT NOT category:bills")).containsExactlyInAnyOrderElementsOf(titles("-category:bills"));
+        assertThat(DocumentFilterParser.parse("-".repeat(6000) + "x")).isNotNull();
+    }
+
+    @Test
+    void parse_InvalidExpression_ShouldBeRejected() {
+        assertThatThrownBy(() -> DocumentFilterParser.parse("(tag:tax")).isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> DocumentFilterParser.parse("tag>tax")).isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> DocumentFilterParser.parse("size:lots")).isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> DocumentFilterParser.parse("date:2024-13")).isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> DocumentFilterParser.parse("invoice OR")).isInstanceOf(InvalidRequestException.class);
+        assertThat(DocumentFilterParser.parse("  ")).isNull();
+    }
+
+    private List<String> titles(String filter) {
+        return documentRepository.findAll(DocumentFilterParser.parse(filter)).stream()
+                .map(Document::getTitle)
+                .toList();
+    }
+
+    private void persist(User user, String title, String category, String fileType, Long fileSize,
+                         LocalDate documentDate, Tag... tags) {
+        entityManager.persist(Document.builder()
+                .title(title)
+                .category(category)
+                .fileType(fileType)
+                .fileSize(fileSize)
+                .documentDate(documentDate)
+                .user(user)
+                .tags(new HashSet<>(List.of(tags)))
+                .build());
+    }
+}
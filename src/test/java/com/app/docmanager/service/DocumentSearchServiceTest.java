@@ -0,0 +1,60 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.SearchProperties;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.DocumentTextSearchRepository;
+import com.app.docmanager.repository.SearchHits;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentSearchServiceTest {
+
+    @Mock
+    private SearchIndexService searchIndexService;
+
+    @Mock
+    private DocumentTextSearchRepository documentTextSearchRepository;
+
+    private DocumentSearchService documentSearchService;
+
+    @BeforeEach
+    void setUp() {
+        documentSearchService = new DocumentSearchService(new SearchProperties(), searchIndexService,
+                documentTextSearchRepository);
+    }
+
+    @Test
+    void search_ShouldPassTheOffsetOfThePage() {
+        // Given
+        when(searchIndexService.search("invoice", 7L, 9_980, 20)).thenReturn(new SearchHits(0, true, List.of()));
+
+        // When
+        SearchHits hits = documentSearchService.search("invoice", 7L, 499, 20);
+
+        // Then
+        assertThat(hits.totalHits()).isZero();
+        verify(searchIndexService).search("invoice", 7L, 9_980, 20);
+    }
+
+    @Test
+    void search_WhenPageIsHuge_ShouldRejectItInsteadOfOverflowing() {
+        // When / Then
+        assertThatThrownBy(() -> documentSearchService.search("invoice", 7L, Integer.MAX_VALUE, 20))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> documentSearchService.search("invoice", 7L, 1 << 30, 4))
+                .isInstanceOf(InvalidRequestException.class);
+        verifyNoInteractions(searchIndexService);
+    }
+}
@@ -0,0 +1,227 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.StoredFileRemovedEvent;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.storage.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileStorageServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private LocalStorageBackend storageBackend;
+
+    private FileStorageService fileStorageService;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties storageProperties = new StorageProperties();
+        storageBackend = new LocalStorageBackend(uploadDir, storageProperties);
+        fileStorageService = new FileStorageService(uploadDir.toString(), storageProperties, storageBackend,
+                documentRepository, eventPublisher);
+    }
+
+    @Test
+    void storeFile_SameContentTwice_ShouldStoreSingleCopy() throws Exception {
+        // Given
+        MockMultipartFile first = new MockMultipartFile("file", "a.txt", "text/plain", "Same content".getBytes());
+        MockMultipartFile second = new MockMultipartFile("file", "b.txt", "text/plain", "Same content".getBytes());
+
+        // When
+        FileStorageService.StoredFile storedFirst = fileStorageService.storeFile(first);
+        FileStorageService.StoredFile storedSecond = fileStorageService.storeFile(second);
+
+        // Then
+        assertThat(storedFirst.getFileName()).isEqualTo(storedSecond.getFileName());
+        assertThat(storedFirst.getContentHash()).hasSize(64);
+        assertThat(storedFirst.isDeduplicated()).isFalse();
+        assertThat(storedSecond.isDeduplicated()).isTrue();
+        assertThat(storedSecond.getSize()).isEqualTo(12L);
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void storeFile_ShouldUseFanOutLayout() {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "Fan out".getBytes());
+
+        // When
+        String fileName = fileStorageService.storeFile(file).getFileName();
+
+        // Then
+        Path expected = uploadDir.resolve(fileName.substring(0, 2)).resolve(fileName.substring(2, 4)).resolve(fileName);
+        assertThat(fileStorageService.localPath(fileName)).contains(expected);
+        assertThat(Files.exists(expected)).isTrue();
+    }
+
+    @Test
+    void storeFile_CompressibleType_ShouldStoreGzipAndDecodeOnRead() throws Exception {
+        // Given
+        String text = "Line of a plain text document\n".repeat(200);
+        MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", text.getBytes());
+
+        // When
+        FileStorageService.StoredFile storedFile = fileStorageService.storeFile(file);
+
+        // Then
+        assertThat(storedFile.getCodec()).isEqualTo(StorageCodec.GZIP);
+        assertThat(storedFile.getFileName()).isEqualTo(storedFile.getContentHash() + ".gz");
+        assertThat(storedFile.getSize()).isEqualTo(text.length());
+        assertThat(storedFile.getStoredSize()).isLessThan(storedFile.getSize());
+        try (InputStream stored = fileStorageService.openRange(storedFile.getFileName(), 0, -1)) {
+            assertThat(new String(new GZIPInputStream(stored).readAllBytes())).isEqualTo(text);
+        }
+        try (InputStream decoded = fileStorageService.openStream(storedFile.getFileName(), storedFile.getCodec())) {
+            assertThat(new String(decoded.readAllBytes())).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void storeFile_AlreadyCompressedType_ShouldStoreRawBytes() throws Exception {
+        // Given
+        byte[] pdf = ("%PDF-1.7\n" + "stream of already compressed data\n".repeat(100)).getBytes();
+        MockMultipartFile file = new MockMultipartFile("file", "a.pdf", "application/pdf", pdf);
+
+        // When
+        FileStorageService.StoredFile storedFile = fileStorageService.storeFile(file);
+
+        // Then
+        assertThat(storedFile.getCodec()).isEqualTo(StorageCodec.NONE);
+        assertThat(storedFile.getFileName()).isEqualTo(storedFile.getContentHash());
+        assertThat(storedFile.getStoredSize()).isEqualTo(pdf.length);
+        try (InputStream stored = fileStorageService.openRange(storedFile.getFileName(), 0, -1)) {
+            assertThat(stored.readAllBytes()).isEqualTo(pdf);
+        }
+    }
+
+    @Test
+    void migrateFlatFiles_ShouldMoveLegacyFilesAndKeepThemResolvable() throws Exception {
+        // Given
+        Path legacy = Files.writeString(uploadDir.resolve("11a60e2b-legacy.txt"), "legacy");
+
+        // When
+        int moved = storageBackend.migrateFlatFiles(10);
+
+        // Then
+        assertThat(moved).isEqualTo(1);
+        assertThat(Files.exists(legacy)).isFalse();
+        assertThat(fileStorageService.localPath("11a60e2b-legacy.txt"))
+                .contains(uploadDir.resolve("11").resolve("a6").resolve("11a60e2b-legacy.txt"));
+        assertThat(fileStorageService.fileExists("11a60e2b-legacy.txt")).isTrue();
+    }
+
+    @Test
+    void openRange_ShouldReadOnlyRequestedBytes() throws Exception {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "a.pdf", "application/pdf", "%PDF-0123456789".getBytes());
+        String fileName = fileStorageService.storeFile(file).getFileName();
+
+        // When
+        byte[] range;
+        try (InputStream inputStream = fileStorageService.openRange(fileName, 5, 4)) {
+            range = inputStream.readAllBytes();
+        }
+
+        // Then
+        assertThat(new String(range)).isEqualTo("0123");
+    }
+
+    @Test
+    void deleteFile_WhenStillReferenced_ShouldKeepFile() {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "Shared".getBytes());
+        String fileName = fileStorageService.storeFile(file).getFileName();
+        saved(fileName);
+        when(documentRepository.countByFilePath(fileName)).thenReturn(1L);
+
+        // When
+        fileStorageService.deleteFile(fileName);
+
+        // Then
+        assertThat(fileStorageService.fileExists(fileName)).isTrue();
+        verify(eventPublisher, never()).publishEvent(any(StoredFileRemovedEvent.class));
+    }
+
+    @Test
+    void deleteFile_WhenLastReferenceGone_ShouldDeleteFile() {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "Unshared".getBytes());
+        String fileName = fileStorageService.storeFile(file).getFileName();
+        saved(fileName);
+        when(documentRepository.countByFilePath(fileName)).thenReturn(0L);
+
+        // When
+        fileStorageService.deleteFile(fileName);
+
+        // Then
+        assertThat(fileStorageService.fileExists(fileName)).isFalse();
+        verify(eventPublisher).publishEvent(new StoredFileRemovedEvent(fileName, fileName.replace(".gz", "")));
+    }
+
+    @Test
+    void deleteFile_WhenSameContentIsUploadedAgain_ShouldKeepFileUntilTheDocumentIsSaved() {
+        // Given: the last document is deleted while a new upload of the same content reused the file
+        MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "Reused".getBytes());
+        String fileName = fileStorageService.storeFile(file).getFileName();
+        saved(fileName);
+        FileStorageService.StoredFile again = fileStorageService.storeFile(file);
+
+        // When
+        fileStorageService.deleteFile(fileName);
+
+        // Then
+        assertThat(again.isDeduplicated()).isTrue();
+        assertThat(fileStorageService.fileExists(fileName)).isTrue();
+        verify(documentRepository, never()).countByFilePath(fileName);
+    }
+
+    @Test
+    void discardUnsaved_ShouldReleaseTheClaimAndDeleteTheFile() {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "Discarded".getBytes());
+        FileStorageService.StoredFile storedFile = fileStorageService.storeFile(file);
+        when(documentRepository.countByFilePath(storedFile.getFileName())).thenReturn(0L);
+
+        // When
+        fileStorageService.discardUnsaved(storedFile);
+
+        // Then
+        assertThat(fileStorageService.fileExists(storedFile.getFileName())).isFalse();
+    }
+
+    private void saved(String fileName) {
+        fileStorageService.onDocumentCreated(new DocumentCreatedEvent(1L, 1L, fileName, null, null, null, null));
+    }
+}
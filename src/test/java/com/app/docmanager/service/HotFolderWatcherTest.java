@@ -0,0 +1,172 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.HotFolderProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.entity.User;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HotFolderWatcherTest {
+
+    @TempDir
+    Path folder;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private ScanPreprocessingService scanPreprocessingService;
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private HotFolderWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        HotFolderProperties.FolderProperties scans = new HotFolderProperties.FolderProperties();
+        scans.setPath(folder.toString());
+        scans.setOwner("scanner");
+        scans.setCategory("Scans");
+        scans.setTags(List.of("inbox"));
+
+        HotFolderProperties properties = new HotFolderProperties();
+        properties.setEnabled(true);
+        properties.setStabilityWindow(Duration.ZERO);
+        properties.getFolders().add(scans);
+
+        User owner = User.builder().username("scanner").build();
+        owner.setId(7L);
+        when(userRepository.findByUsername("scanner")).thenReturn(Optional.of(owner));
+        when(scanPreprocessingService.storeStream(any(), any())).thenReturn(FileStorageService.StoredFile.builder()
+                .fileName("abc")
+                .contentHash("abc")
+                .size(4)
+                .storedSize(4)
+                .codec(StorageCodec.NONE)
+                .contentType("application/pdf")
+                .build());
+
+        watcher = new HotFolderWatcher(fileStorageService, scanPreprocessingService, documentService,
+                documentRepository, userRepository, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.shutdown();
+    }
+
+    @Test
+    void poll_WhenFileIsStable_ShouldIngestAndMoveToProcessed() throws Exception {
+        // Given
+        Files.writeString(folder.resolve("scan-001.pdf"), "%PDF");
+        when(documentService.createDocument(any(), eq(7L), anySet())).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            document.setId(1L);
+            return document;
+        });
+
+        // When: the first poll records size and time, the second finds them unchanged
+        watcher.poll();
+        watcher.poll();
+        awaitFile(folder.resolve(".processed").resolve("scan-001.pdf"));
+
+        // Then
+        ArgumentCaptor<Document> document = ArgumentCaptor.forClass(Document.class);
+        verify(documentService).createDocument(document.capture(), eq(7L), eq(Set.of("inbox")));
+        assertThat(document.getValue().getTitle()).isEqualTo("scan-001.pdf");
+        assertThat(document.getValue().getCategory()).isEqualTo("Scans");
+        assertThat(document.getValue().getFilePath()).isEqualTo("abc");
+        assertThat(folder.resolve("scan-001.pdf")).doesNotExist();
+    }
+
+    @Test
+    void poll_WhenClaimedFileWasIngestedBeforeRestart_ShouldOnlyMoveIt() throws Exception {
+        // Given
+        Files.createDirectories(folder.resolve(".processing"));
+        Files.writeString(folder.resolve(".processing").resolve("scan-002.pdf"), "%PDF");
+        when(documentRepository.existsByUserIdAndContentHashAndTitle(7L, "abc", "scan-002.pdf")).thenReturn(true);
+
+        // When
+        watcher.poll();
+        awaitFile(folder.resolve(".processed").resolve("scan-002.pdf"));
+
+        // Then
+        verify(documentService, never()).createDocument(any(), anyLong(), any());
+        verify(fileStorageService).discardUnsaved(any());
+    }
+
+    @Test
+    void poll_WhenFileWithTheSameNameIsStillBeingIngested_ShouldClaimTheNewFileSeparately() throws Exception {
+        // Given: a recovered claim whose ingest is held up, and a new drop under the same name
+        Files.createDirectories(folder.resolve(".processing"));
+        Files.writeString(folder.resolve(".processing").resolve("scan-003.pdf"), "old");
+        Files.writeString(folder.resolve("scan-003.pdf"), "new");
+        CountDownLatch release = new CountDownLatch(1);
+        when(scanPreprocessingService.storeStream(any(), any())).thenAnswer(invocation -> {
+            InputStream inputStream = invocation.getArgument(0);
+            if (new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).equals("old")) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return FileStorageService.StoredFile.builder()
+                    .fileName("abc").contentHash("abc").size(3).storedSize(3)
+                    .codec(StorageCodec.NONE).contentType("application/pdf").build();
+        });
+        when(documentRepository.existsByUserIdAndContentHashAndTitle(7L, "abc", "scan-003.pdf")).thenReturn(true);
+        when(documentService.createDocument(any(), eq(7L), anySet())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        watcher.poll();
+        watcher.poll();
+        awaitFile(folder.resolve(".processed").resolve("scan-003.pdf"));
+        release.countDown();
+        awaitFile(folder.resolve(".processed").resolve("scan-003-1.pdf"));
+
+        // Then
+        assertThat(folder.resolve(".processed").resolve("scan-003.pdf")).hasContent("new");
+        assertThat(folder.resolve(".processed").resolve("scan-003-1.pdf")).hasContent("old");
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && !Files.exists(file); attempt++) {
+            Thread.sleep(50);
+        }
+        assertThat(file).exists();
+    }
+}
@@ -0,0 +1,136 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.OcrProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+// A shell script stands in for the tesseract binary
+@EnabledOnOs({OS.LINUX, OS.MAC})
+@ExtendWith(MockitoExtension.class)
+class OcrServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OcrService ocrService;
+
+    @AfterEach
+    void tearDown() {
+        if (ocrService != null) {
+            ocrService.shutdown();
+        }
+    }
+
+    @Test
+    void recognizePage_ShouldReturnTesseractOutputAndRecordMetrics() throws Exception {
+        // Given
+        ocrService = createService("echo \"recognized $(basename \"$1\") with $6 dpi\"");
+
+        // When
+        String text = ocrService.await(ocrService.recognizePage(new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY)),
+                Instant.now().plusSeconds(10));
+
+        // Then
+        assertThat(text).startsWith("recognized page-").endsWith("with 300 dpi");
+        assertThat(meterRegistry.counter("docmanager.ocr.pages").count()).isEqualTo(1);
+        assertThat(meterRegistry.timer("docmanager.ocr.page").count()).isEqualTo(1);
+        try (Stream<Path> workFiles = Files.list(uploadDir.resolve(".ocr"))) {
+            assertThat(workFiles).isEmpty();
+        }
+    }
+
+    @Test
+    void recognizePage_WhenTesseractFails_ShouldThrowAndCountFailure() throws Exception {
+        // Given
+        ocrService = createService("exit 3");
+
+        // When / Then
+        assertThatThrownBy(() -> ocrService.await(
+                ocrService.recognizePage(new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY)),
+                Instant.now().plusSeconds(10)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("status 3");
+        assertThat(meterRegistry.counter("docmanager.ocr.page.failures").count()).isEqualTo(1);
+    }
+
+    @Test
+    void recognizePage_WhenCancelledBeforeItRuns_ShouldDeleteThePageImage() throws Exception {
+        // Given: both threads are busy, so the third page waits in the queue
+        ocrService = createService("sleep 1; echo text");
+        BufferedImage image = new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY);
+        CompletableFuture<String> first = ocrService.recognizePage(image);
+        CompletableFuture<String> second = ocrService.recognizePage(image);
+        CompletableFuture<String> queued = ocrService.recognizePage(image);
+
+        // When
+        queued.cancel(false);
+        ocrService.await(first, Instant.now().plusSeconds(10));
+        ocrService.await(second, Instant.now().plusSeconds(10));
+
+        // Then
+        try (Stream<Path> workFiles = Files.list(uploadDir.resolve(".ocr"))) {
+            assertThat(workFiles).isEmpty();
+        }
+    }
+
+    @Test
+    void constructor_ShouldDeleteWorkFilesLeftByAnEarlierRun() throws Exception {
+        // Given
+        Files.createDirectories(uploadDir.resolve(".ocr"));
+        Files.writeString(uploadDir.resolve(".ocr").resolve("page-1.png"), "image");
+
+        // When
+        ocrService = createService("exit 0");
+
+        // Then
+        assertThat(uploadDir.resolve(".ocr").resolve("page-1.png")).doesNotExist();
+    }
+
+    @Test
+    void needsOcr_ShouldTreatShortTextLayersAsScans() throws Exception {
+        ocrService = createService("exit 0");
+
+        assertThat(ocrService.needsOcr(null)).isTrue();
+        assertThat(ocrService.needsOcr("  \n 12 \n")).isTrue();
+        assertThat(ocrService.needsOcr("Invoice 4711, due 2024-05-31")).isFalse();
+    }
+
+    private OcrService createService(String script) throws IOException {
+        Path tesseract = uploadDir.resolve("tesseract.sh");
+        Files.writeString(tesseract, "#!/bin/sh\n" + script + "\n");
+        assertThat(tesseract.toFile().setExecutable(true)).isTrue();
+
+        OcrProperties properties = new OcrProperties();
+        properties.setEnabled(true);
+        properties.setTesseractPath(tesseract.toString());
+        properties.setThreads(2);
+        properties.setPageTimeout(Duration.ofSeconds(10));
+        when(fileStorageService.getFileStorageLocation()).thenReturn(uploadDir);
+        return new OcrService(properties, fileStorageService, meterRegistry);
+    }
+}
@@ -0,0 +1,78 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.StorageProperties;
+import com.app.docmanager.repository.DocumentJdbcRepository;
+import com.app.docmanager.storage.StoredObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrphanFileReconcilerTest {
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    private OrphanFileReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.getReconciler().setBatchPause(Duration.ZERO);
+        reconciler = new OrphanFileReconciler(fileStorageService, documentJdbcRepository, storageProperties,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void reconcile_ShouldQuarantineExpiredOrphansAndCountDanglingPaths() throws Exception {
+        // Given
+        when(fileStorageService.listFiles()).thenReturn(Stream.of("a", "b", "c"));
+        when(documentJdbcRepository.findFilePathsAfter(eq(""), anyInt())).thenReturn(List.of("b", "d"));
+        when(fileStorageService.stat("a")).thenReturn(Optional.of(
+                new StoredObject("a", 1, Instant.now().minus(Duration.ofDays(2)))));
+        when(fileStorageService.stat("c")).thenReturn(Optional.of(new StoredObject("c", 1, Instant.now())));
+        when(fileStorageService.quarantineIfUnreferenced("a")).thenReturn(true);
+
+        // When
+        OrphanFileReconciler.ReconcileResult result = reconciler.reconcile();
+
+        // Then
+        assertThat(result.quarantined()).isEqualTo(1);
+        assertThat(result.pendingOrphans()).isEqualTo(1);
+        assertThat(result.danglingPaths()).isEqualTo(1);
+        verify(fileStorageService).quarantineIfUnreferenced("a");
+        verify(fileStorageService, never()).quarantineIfUnreferenced("c");
+    }
+
+    @Test
+    void reconcile_WhenDatabaseOrderDiffers_ShouldAbortWithoutQuarantining() throws Exception {
+        // Given
+        when(fileStorageService.listFiles()).thenReturn(Stream.of("x"));
+        when(documentJdbcRepository.findFilePathsAfter(eq(""), anyInt())).thenReturn(List.of("b", "a"));
+
+        // When / Then
+        assertThatThrownBy(() -> reconciler.reconcile()).isInstanceOf(IllegalStateException.class);
+        verify(fileStorageService, never()).quarantineIfUnreferenced(anyString());
+    }
+}
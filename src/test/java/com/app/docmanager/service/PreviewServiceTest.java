@@ -0,0 +1,151 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.PreviewProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.StoredFileRemovedEvent;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PreviewServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    private PreviewService previewService;
+
+    @BeforeEach
+    void setUp() {
+        previewService = new PreviewService(fileStorageService, new PreviewProperties(), uploadDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        previewService.shutdown();
+    }
+
+    @Test
+    void getPreview_ShouldRenderScaledJpegAndCacheIt() throws Exception {
+        // Given
+        BufferedImage scan = new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(scan, "png", png);
+        when(fileStorageService.openStream("abc", StorageCodec.NONE))
+                .thenAnswer(invocation -> new ByteArrayInputStream(png.toByteArray()));
+        Document document = Document.builder()
+                .filePath("abc")
+                .contentHash("abc")
+                .fileType("image/png")
+                .build();
+
+        // When
+        Path thumbnail = previewService.getPreview(document, PreviewService.PreviewSize.THUMBNAIL);
+        Path cachedAgain = previewService.getPreview(document, PreviewService.PreviewSize.THUMBNAIL);
+        Path preview = previewService.getPreview(document, PreviewService.PreviewSize.PREVIEW);
+
+        // Then
+        assertThat(ImageIO.read(thumbnail.toFile()).getWidth()).isEqualTo(256);
+        assertThat(ImageIO.read(preview.toFile()).getWidth()).isEqualTo(1024);
+        assertThat(cachedAgain).isEqualTo(thumbnail);
+        verify(fileStorageService, times(1)).openStream("abc", StorageCodec.NONE);
+    }
+
+    @Test
+    void getPreview_OfCompressedPdf_ShouldRenderFromASpooledCopy() throws Exception {
+        // Given
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            document.save(pdf);
+        }
+        when(fileStorageService.openStream("abc.gz", StorageCodec.GZIP))
+                .thenReturn(new ByteArrayInputStream(pdf.toByteArray()));
+        Document document = Document.builder()
+                .filePath("abc.gz")
+                .contentHash("abc")
+                .fileType("application/pdf")
+                .storageCodec(StorageCodec.GZIP)
+                .build();
+
+        // When
+        Path preview = previewService.getPreview(document, PreviewService.PreviewSize.PREVIEW);
+
+        // Then
+        assertThat(ImageIO.read(preview.toFile()).getWidth()).isEqualTo(1024);
+        try (Stream<Path> files = Files.list(uploadDir.resolve(".previews"))) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .noneMatch(name -> name.startsWith(".source-"));
+        }
+    }
+
+    @Test
+    void onStoredFileRemoved_ShouldEvictThePreviews() throws Exception {
+        // Given
+        BufferedImage scan = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(scan, "png", png);
+        when(fileStorageService.openStream("abc", StorageCodec.NONE))
+                .thenReturn(new ByteArrayInputStream(png.toByteArray()));
+        Document document = Document.builder()
+                .filePath("abc")
+                .contentHash("abc")
+                .fileType("image/png")
+                .build();
+        Path thumbnail = previewService.getPreview(document, PreviewService.PreviewSize.THUMBNAIL);
+
+        // When
+        previewService.onStoredFileRemoved(new StoredFileRemovedEvent("abc", "abc"));
+
+        // Then
+        assertThat(thumbnail).doesNotExist();
+        assertThat(thumbnail.resolveSibling("abc-preview.jpg")).doesNotExist();
+    }
+
+    @Test
+    void getPreview_WithoutContentHash_ShouldThrowNotFound() {
+        Document document = Document.builder()
+                .filePath("../abc")
+                .fileType("image/png")
+                .build();
+
+        assertThatThrownBy(() -> previewService.getPreview(document, PreviewService.PreviewSize.THUMBNAIL))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void getPreview_ForUnsupportedType_ShouldThrowNotFound() {
+        Document document = Document.builder()
+                .filePath("abc")
+                .fileType("text/plain")
+                .build();
+
+        assertThatThrownBy(() -> previewService.getPreview(document, PreviewService.PreviewSize.THUMBNAIL))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+}
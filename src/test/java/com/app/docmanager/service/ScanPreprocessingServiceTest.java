@@ -0,0 +1,193 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.PreprocessProperties;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.StoredFileRemovedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ScanPreprocessingServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PreprocessProperties properties;
+
+    private ScanPreprocessingService scanPreprocessingService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new PreprocessProperties();
+        properties.setEnabled(true);
+        properties.setThreads(2);
+        properties.setOriginalsDir(uploadDir.resolve("originals").toString());
+        when(fileStorageService.getFileStorageLocation()).thenReturn(uploadDir);
+        scanPreprocessingService = new ScanPreprocessingService(fileStorageService, properties, meterRegistry,
+                uploadDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        scanPreprocessingService.shutdown();
+    }
+
+    @Test
+    void storeStream_MultiPageTiff_ShouldDownsampleBinarizeAndKeepOriginal() throws Exception {
+        // Given: two grey pages scanned at 600 dpi
+        Path scan = uploadDir.resolve("scan.tif");
+        writeTiff(scan, 600, textPage(1200, 1600, 0), textPage(1200, 1600, 0));
+        Path result = uploadDir.resolve("result.tif");
+        when(fileStorageService.storeAssembledFile(any(), eq("image/tiff"))).thenAnswer(invocation -> {
+            Files.copy((Path) invocation.getArgument(0), result);
+            return FileStorageService.StoredFile.builder()
+                    .fileName("ab12")
+                    .contentHash("ab12")
+                    .size(Files.size(result))
+                    .storedSize(Files.size(result))
+                    .codec(StorageCodec.NONE)
+                    .contentType("image/tiff")
+                    .build();
+        });
+
+        // When
+        FileStorageService.StoredFile storedFile;
+        try (InputStream inputStream = Files.newInputStream(scan)) {
+            storedFile = scanPreprocessingService.storeStream(inputStream, "image/tiff");
+        }
+
+        // Then
+        assertThat(storedFile.getOriginalSize()).isEqualTo(Files.size(scan));
+        assertThat(Files.size(result)).isLessThan(Files.size(scan));
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(result.toFile())) {
+            ImageReader reader = ImageIO.getImageReaders(imageInput).next();
+            reader.setInput(imageInput);
+            assertThat(reader.getNumImages(true)).isEqualTo(2);
+            BufferedImage page = reader.read(1);
+            assertThat(page.getWidth()).isEqualTo(600);
+            assertThat(page.getColorModel().getPixelSize()).isEqualTo(1);
+            reader.dispose();
+        }
+        assertThat(uploadDir.resolve("originals").resolve("ab").resolve("ab12.tiff")).exists();
+        assertThat(meterRegistry.timer("docmanager.preprocess").count()).isEqualTo(1);
+    }
+
+    @Test
+    void onStoredFileRemoved_ShouldDeleteTheKeptOriginal() throws Exception {
+        // Given
+        Path original = uploadDir.resolve("originals").resolve("ab").resolve("ab12.png");
+        Files.createDirectories(original.getParent());
+        Files.writeString(original, "scan");
+        assertThat(scanPreprocessingService.findOriginal("ab12"))
+                .contains(new ScanPreprocessingService.Original(original, "image/png"));
+
+        // When
+        scanPreprocessingService.onStoredFileRemoved(new StoredFileRemovedEvent("ab12", "ab12"));
+
+        // Then
+        assertThat(original).doesNotExist();
+        assertThat(scanPreprocessingService.findOriginal("ab12")).isEmpty();
+    }
+
+    @Test
+    void storeStream_WhenNotAScan_ShouldStoreAsReceived() {
+        // Given
+        InputStream pdf = new ByteArrayInputStream("%PDF-1.7".getBytes());
+
+        // When
+        scanPreprocessingService.storeStream(pdf, "application/pdf");
+
+        // Then
+        verify(fileStorageService).storeStream(any(), eq("application/pdf"));
+        verify(fileStorageService, never()).storeAssembledFile(any(), any());
+    }
+
+    @Test
+    void estimateSkew_ShouldFindTheAngleOfTextLines() {
+        BufferedImage skewed = textPage(1000, 800, 2.0);
+
+        assertThat(ScanPreprocessingService.estimateSkew(skewed, 5.0)).isCloseTo(2.0, within(0.5));
+        assertThat(ScanPreprocessingService.estimateSkew(textPage(1000, 800, 0), 5.0)).isCloseTo(0.0, within(0.5));
+    }
+
+    // Lines of "text" as dark bars, rotated clockwise by the given angle
+    private static BufferedImage textPage(int width, int height, double skewDegrees) {
+        BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = page.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.rotate(Math.toRadians(skewDegrees), width / 2.0, height / 2.0);
+            graphics.setColor(Color.BLACK);
+            for (int y = height / 8; y < height * 7 / 8; y += height / 20) {
+                graphics.fillRect(width / 8, y, width * 3 / 4, Math.max(2, height / 100));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return page;
+    }
+
+    private static void writeTiff(Path target, int dpi, BufferedImage... pages) throws Exception {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            for (BufferedImage page : pages) {
+                IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(page), param);
+                IIOMetadataNode horizontal = new IIOMetadataNode("HorizontalPixelSize");
+                horizontal.setAttribute("value", Double.toString(25.4 / dpi));
+                IIOMetadataNode vertical = new IIOMetadataNode("VerticalPixelSize");
+                vertical.setAttribute("value", Double.toString(25.4 / dpi));
+                IIOMetadataNode dimension = new IIOMetadataNode("Dimension");
+                dimension.appendChild(horizontal);
+                dimension.appendChild(vertical);
+                IIOMetadataNode root = new IIOMetadataNode("javax_imageio_1.0");
+                root.appendChild(dimension);
+                metadata.mergeTree("javax_imageio_1.0", root);
+                writer.writeToSequence(new IIOImage(page, null, metadata), param);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.SearchProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.Tag;
+import com.app.docmanager.entity.User;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.SearchHits;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SearchIndexServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    private final Map<Long, Document> database = new HashMap<>();
+
+    private SearchIndexService searchIndexService;
+
+    @BeforeEach
+    void setUp() {
+        when(fileStorageService.getFileStorageLocation()).thenReturn(uploadDir);
+        lenient().when(documentRepository.findWithTagsByIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(database::get).filter(Objects::nonNull).toList();
+        });
+        lenient().when(documentRepository.findIdsByIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(database::containsKey).toList();
+        });
+        searchIndexService = createService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchIndexService.shutdown();
+    }
+
+    @Test
+    void search_ShouldRankTitleMatchesFirstAndOnlyReturnOwnDocuments() {
+        // Given
+        save(1L, 7L, "Notes", "Meeting notes, invoice follows next week", Set.of());
+        save(2L, 7L, "Invoice 4711", "Amount due 120 EUR", Set.of("tax"));
+        save(3L, 8L, "Invoice 4712", "Someone else's invoice", Set.of());
+        save(4L, 7L, "Holiday photos", null, Set.of());
+
+        // When
+        SearchHits own = searchIndexService.search("invoice", 7L, 0, 10);
+        SearchHits all = searchIndexService.search("invoice", null, 0, 10);
+
+        // Then
+        assertThat(own.hits()).extracting(SearchHits.Hit::id).containsExactly(2L, 1L);
+        assertThat(own.totalHits()).isEqualTo(2);
+        assertThat(own.totalHitsExact()).isTrue();
+        assertThat(all.hits()).extracting(SearchHits.Hit::id).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(searchIndexService.search("tax amount", 7L, 0, 10).hits())
+                .extracting(SearchHits.Hit::id).containsExactly(2L);
+    }
+
+    @Test
+    void search_ShouldHighlightMatchedWordsInTheText() {
+        // Given
+        String filler = "Lorem ipsum dolor sit amet. ".repeat(500);
+        save(1L, 7L, "Scan", filler + "The <b>invoice</b> is due in March. " + filler, Set.of());
+        save(2L, 7L, "Invoice 4712", "Amount due 120 EUR", Set.of());
+
+        // When
+        SearchHits result = searchIndexService.search("invoice", 7L, 0, 10);
+
+        // Then
+        assertThat(result.hits()).extracting(SearchHits.Hit::id).containsExactly(2L, 1L);
+        assertThat(result.hits().get(0).highlight()).isNull();
+        assertThat(result.hits().get(1).highlight())
+                .contains("The &lt;b&gt;<mark>invoice</mark>&lt;&#x2F;b&gt; is due in March.")
+                .hasSizeLessThan(500);
+    }
+
+    @Test
+    void refresh_WhenDocumentIsDeleted_ShouldRemoveItFromTheIndex() {
+        // Given
+        save(1L, 7L, "Invoice 4711", null, Set.of());
+        assertThat(searchIndexService.search("invoice", 7L, 0, 10).hits()).hasSize(1);
+
+        // When
+        database.remove(1L);
+        searchIndexService.onDocumentChanged(new DocumentChangedEvent(1L));
+        searchIndexService.refresh();
+
+        // Then
+        assertThat(searchIndexService.search("invoice", 7L, 0, 10).hits()).isEmpty();
+    }
+
+    @Test
+    void refresh_WhenTagIsRenamed_ShouldReindexItsDocuments() {
+        // Given
+        save(1L, 7L, "Invoice 4711", null, Set.of("tax"));
+
+        // When
+        database.put(1L, document(1L, 7L, "Invoice 4711", null, Set.of("vat")));
+        searchIndexService.onTagsChanged(new TagsChangedEvent(Set.of(1L)));
+        searchIndexService.refresh();
+
+        // Then
+        assertThat(searchIndexService.search("vat", 7L, 0, 10).hits()).extracting(SearchHits.Hit::id).containsExactly(1L);
+        assertThat(searchIndexService.search("tax", 7L, 0, 10).hits()).isEmpty();
+    }
+
+    @Test
+    void refresh_AfterRestart_ShouldRemoveDocumentsDeletedSinceTheLastCommit() {
+        // Given: a document is deleted while its change is not indexed yet
+        save(1L, 7L, "Invoice 4711", null, Set.of());
+        save(2L, 7L, "Invoice 4712", null, Set.of());
+        searchIndexService.commit();
+        database.remove(2L);
+        searchIndexService.shutdown();
+
+        // When
+        searchIndexService = createService();
+        searchIndexService.refresh();
+
+        // Then
+        assertThat(searchIndexService.search("invoice", 7L, 0, 10).hits())
+                .extracting(SearchHits.Hit::id).containsExactly(1L);
+    }
+
+    @Test
+    void search_ShouldPageThroughRankedHits() {
+        // Given
+        for (long id = 1; id <= 5; id++) {
+            save(id, 7L, "Contract " + id, null, Set.of());
+        }
+
+        // When
+        SearchHits secondPage = searchIndexService.search("contract", 7L, 2, 2);
+
+        // Then
+        assertThat(secondPage.totalHits()).isEqualTo(5);
+        assertThat(secondPage.hits()).hasSize(2);
+        assertThat(searchIndexService.search("contract", 7L, 4, 2).hits()).hasSize(1);
+    }
+
+    @Test
+    void rebuildBatch_ShouldIndexExistingDocumentsOnlyOnce() {
+        // Given: documents saved before the index existed
+        database.put(1L, document(1L, 7L, "Invoice 4711", null, Set.of()));
+        database.put(2L, document(2L, 7L, "Invoice 4712", null, Set.of()));
+        when(documentRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(1L, 2L));
+
+        // When
+        searchIndexService.rebuildBatch();
+        searchIndexService.shutdown();
+        searchIndexService = createService();
+        searchIndexService.rebuildBatch();
+        searchIndexService.refresh();
+
+        // Then: the restarted service finds the built index and only catches up on recent changes
+        verify(documentRepository, times(1)).findIdsAfter(any(), any());
+        verify(documentRepository).findIdsUpdatedSince(any());
+        assertThat(searchIndexService.search("invoice", 7L, 0, 10).hits()).hasSize(2);
+    }
+
+    private SearchIndexService createService() {
+        return new SearchIndexService(documentRepository, fileStorageService, new SearchProperties(),
+                new SimpleMeterRegistry());
+    }
+
+    private void save(Long id, Long userId, String title, String text, Set<String> tagNames) {
+        database.put(id, document(id, userId, title, text, tagNames));
+        searchIndexService.onDocumentCreated(new DocumentCreatedEvent(id, userId, null, null, null, null, null));
+        searchIndexService.refresh();
+    }
+
+    private static Document document(Long id, Long userId, String title, String text, Set<String> tagNames) {
+        User user = User.builder().username("user" + userId).build();
+        user.setId(userId);
+        Document document = Document.builder()
+                .title(title)
+                .extractedText(text)
+                .user(user)
+                .tags(new HashSet<>(tagNames.stream().map(Tag::new).toList()))
+                .build();
+        document.setId(id);
+        return document;
+    }
+}
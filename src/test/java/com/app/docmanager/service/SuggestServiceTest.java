@@ -0,0 +1,109 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.SuggestProperties;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.repository.TagIndexRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class SuggestServiceTest {
+
+    @Mock
+    private TagIndexRepository tagIndexRepository;
+
+    private final Map<Long, TagIndexRepository.Entry> database = new TreeMap<>();
+    private final Map<String, Long> tags = new HashMap<>(Map.of("invoices", 1L, "insurance", 2L, "travel", 3L));
+
+    private SuggestService suggestService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(tagIndexRepository.findTagIds()).thenAnswer(invocation -> Map.copyOf(tags));
+        lenient().when(tagIndexRepository.findAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            return database.values().stream().filter(entry -> entry.id() > after).toList();
+        });
+        lenient().when(tagIndexRepository.findByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(database::get).filter(Objects::nonNull).toList();
+        });
+
+        save(1L, 7L, "Invoice 4711", "bills", 1L);
+        save(2L, 7L, "Invoice 4712", "bills", 1L, 2L);
+        save(3L, 7L, "Insurance policy", "insurance", 2L);
+        save(4L, 7L, "Invoice 4712", "bills", 2L);
+        save(5L, 8L, "Inventory", "inventory");
+        suggestService = new SuggestService(tagIndexRepository, new SuggestProperties(), new SimpleMeterRegistry());
+        suggestService.refresh();
+    }
+
+    @Test
+    void suggest_ShouldCompleteWordsOfOwnTextsMostUsedFirst() {
+        // When
+        SuggestService.Suggestions suggestions = suggestService.suggest("In", 7L, 5);
+
+        // Then
+        assertThat(suggestions.titles()).containsExactly("Invoice 4712", "Insurance policy", "Invoice 4711");
+        assertThat(suggestions.tags()).containsExactly("insurance", "invoices");
+        assertThat(suggestions.categories()).containsExactly("insurance");
+        assertThat(suggestService.suggest("poli", 7L, 5).titles()).containsExactly("Insurance policy");
+        assertThat(suggestService.suggest("4711", 7L, 5).titles()).containsExactly("Invoice 4711");
+        assertThat(suggestService.suggest("inve", 8L, 5).titles()).containsExactly("Inventory");
+        assertThat(suggestService.suggest("inve", 7L, 5).titles()).isEmpty();
+    }
+
+    @Test
+    void suggest_ShouldFillTagsWithTagsOfOtherUsers() {
+        // When / Then
+        assertThat(suggestService.suggest("in", 8L, 5).tags()).containsExactly("insurance", "invoices");
+        assertThat(suggestService.suggest("tr", 7L, 5).tags()).containsExactly("travel");
+    }
+
+    @Test
+    void refresh_ShouldApplyChangesWithoutQueryingPerKeystroke() {
+        // Given
+        save(1L, 7L, "Receipt 4711", "bills", 3L);
+        database.remove(2L);
+        tags.remove("insurance");
+        tags.put("insurances", 2L);
+        suggestService.onDocumentChanged(new DocumentChangedEvent(1L));
+        suggestService.onDocumentChanged(new DocumentChangedEvent(2L));
+        suggestService.onTagsChanged(new TagsChangedEvent());
+
+        // When
+        suggestService.refresh();
+        clearInvocations(tagIndexRepository);
+
+        // Then
+        assertThat(suggestService.suggest("inv", 7L, 5).titles()).containsExactly("Invoice 4712");
+        assertThat(suggestService.suggest("rec", 7L, 5).titles()).containsExactly("Receipt 4711");
+        assertThat(suggestService.suggest("in", 7L, 5).tags()).containsExactly("insurances", "invoices");
+        assertThat(suggestService.suggest("tr", 7L, 5).tags()).containsExactly("travel");
+        verifyNoInteractions(tagIndexRepository);
+    }
+
+    private void save(long id, long userId, String title, String category, Long... tagIds) {
+        database.put(id, new TagIndexRepository.Entry(id, userId, title, category, List.of(tagIds)));
+    }
+}
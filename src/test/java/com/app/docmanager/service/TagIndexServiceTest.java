@@ -0,0 +1,175 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.TagIndexProperties;
+import com.app.docmanager.dto.FacetedSearchDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.repository.DocumentFacetRepository;
+import com.app.docmanager.repository.DocumentRepository;
+import com.app.docmanager.repository.TagIndexRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TagIndexServiceTest {
+
+    private static final long TAX = 1L;
+    private static final long FINANCE = 2L;
+    private static final long DRAFT = 3L;
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private TagIndexRepository tagIndexRepository;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private DocumentFacetRepository documentFacetRepository;
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    private final Map<Long, TagIndexRepository.Entry> database = new TreeMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(fileStorageService.getFileStorageLocation()).thenReturn(uploadDir);
+        lenient().when(tagIndexRepository.findTagIds()).thenReturn(Map.of("tax", TAX, "finance", FINANCE, "draft", DRAFT));
+        lenient().when(tagIndexRepository.findAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            return database.values().stream().filter(entry -> entry.id() > after).toList();
+        });
+        lenient().when(tagIndexRepository.findByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(database::get).filter(Objects::nonNull).toList();
+        });
+        lenient().when(tagIndexRepository.findIdsAfter(anyLong(), anyInt()))
+                .thenAnswer(invocation -> List.copyOf(database.keySet()));
+        lenient().when(documentService.getDocumentsByIdsInOrder(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> Document.builder().id(id).build()).toList();
+        });
+
+        save(1L, 7L, "bills", TAX, FINANCE);
+        save(2L, 7L, null, TAX, DRAFT);
+        save(3L, 7L, "private", FINANCE);
+        save(4L, 8L, "bills", TAX, FINANCE);
+    }
+
+    @Test
+    void search_ShouldCombineTagBitmapsAndCountTagsOfTheMatches() {
+        // Given
+        TagIndexService tagIndexService = createService();
+        tagIndexService.refresh();
+
+        // When
+        TagIndexService.Result own = tagIndexService.search(
+                new TagIndexService.Query(Set.of("Tax"), null, Set.of("draft"), null), 7L, 0, 10);
+        TagIndexService.Result any = tagIndexService.search(
+                new TagIndexService.Query(null, Set.of("draft", "finance"), null, Set.of("bills", "private")),
+                null, 0, 10);
+
+        // Then
+        assertThat(ids(own)).containsExactly(1L);
+        assertThat(own.facets().getTags()).containsExactly(
+                new FacetedSearchDTO.FacetCount("finance", 1), new FacetedSearchDTO.FacetCount("tax", 1));
+        assertThat(own.facets().getCategories()).containsExactly(new FacetedSearchDTO.FacetCount("bills", 1));
+        assertThat(ids(any)).containsExactly(4L, 3L, 1L);
+        assertThat(any.documents().getTotalElements()).isEqualTo(3);
+        verify(documentFacetRepository, never()).countByTag(any(), anyInt());
+    }
+
+    @Test
+    void search_ShouldPageNewestFirst() {
+        // Given
+        TagIndexService tagIndexService = createService();
+        tagIndexService.refresh();
+        TagIndexService.Query everything = new TagIndexService.Query(null, null, null, null);
+
+        // When / Then
+        assertThat(ids(tagIndexService.search(everything, null, 0, 3))).containsExactly(4L, 3L, 2L);
+        assertThat(ids(tagIndexService.search(everything, null, 1, 3))).containsExactly(1L);
+        assertThat(ids(tagIndexService.search(everything, null, 2, 3))).isEmpty();
+    }
+
+    @Test
+    void refresh_ShouldApplyChangedAndDeletedDocuments() {
+        // Given
+        TagIndexService tagIndexService = createService();
+        tagIndexService.refresh();
+        save(3L, 7L, "private", FINANCE, DRAFT);
+        database.remove(2L);
+
+        // When
+        tagIndexService.onDocumentChanged(new DocumentChangedEvent(3L));
+        tagIndexService.onDocumentChanged(new DocumentChangedEvent(2L));
+        tagIndexService.refresh();
+
+        // Then
+        assertThat(ids(tagIndexService.search(
+                new TagIndexService.Query(Set.of("draft"), null, null, null), null, 0, 10))).containsExactly(3L);
+    }
+
+    @Test
+    void snapshot_ShouldRestoreTheIndexAndDropDocumentsDeletedSince() {
+        // Given
+        TagIndexService first = createService();
+        first.refresh();
+        first.shutdown();
+        database.remove(4L);
+        clearInvocations(tagIndexRepository);
+
+        // When
+        TagIndexService second = createService();
+        second.refresh();
+
+        // Then
+        verify(tagIndexRepository, never()).findAfter(anyLong(), anyInt());
+        assertThat(ids(second.search(
+                new TagIndexService.Query(Set.of("tax"), null, null, null), null, 0, 10))).containsExactly(2L, 1L);
+    }
+
+    private TagIndexService createService() {
+        return new TagIndexService(tagIndexRepository, documentRepository, documentFacetRepository,
+                documentService, fileStorageService, new TagIndexProperties(), new SimpleMeterRegistry());
+    }
+
+    private void save(long id, long userId, String category, Long... tagIds) {
+        database.put(id, new TagIndexRepository.Entry(id, userId, "Document " + id, category, List.of(tagIds)));
+    }
+
+    private static List<Long> ids(TagIndexService.Result result) {
+        return result.documents().getContent().stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,196 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.config.ExtractionProperties;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.entity.ExtractionStatus;
+import com.app.docmanager.entity.StorageCodec;
+import com.app.docmanager.event.DocumentCreatedEvent;
+import com.app.docmanager.repository.DocumentJdbcRepository;
+import com.app.docmanager.repository.DocumentRepository;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TextExtractionServiceTest {
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private OcrService ocrService;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final List<DocumentJdbcRepository.ExtractionResult> written = new CopyOnWriteArrayList<>();
+
+    private TextExtractionService textExtractionService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().doAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return null;
+        }).when(documentJdbcRepository).updateExtractionResults(anyList());
+        textExtractionService = new TextExtractionService(fileStorageService, ocrService, documentRepository,
+                documentJdbcRepository, new ExtractionProperties(), eventPublisher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        textExtractionService.shutdown();
+    }
+
+    @Test
+    void onDocumentCreated_PlainText_ShouldWriteTextInBatch() throws Exception {
+        // Given
+        when(fileStorageService.openStream("abc.gz", StorageCodec.GZIP))
+                .thenReturn(new ByteArrayInputStream("  Meeting notes\u0000 2024 \n".getBytes()));
+
+        // When
+        textExtractionService.onDocumentCreated(event(1L, "abc.gz", "text/plain", StorageCodec.GZIP));
+
+        // Then
+        DocumentJdbcRepository.ExtractionResult result = awaitResult();
+        assertThat(result.documentId()).isEqualTo(1L);
+        assertThat(result.status()).isEqualTo(ExtractionStatus.DONE);
+        assertThat(result.text()).isEqualTo("Meeting notes 2024");
+    }
+
+    @Test
+    void onDocumentCreated_Pdf_ShouldExtractTextLayer() throws Exception {
+        // Given
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                content.newLineAtOffset(72, 700);
+                content.showText("Invoice 4711");
+                content.endText();
+            }
+            document.save(pdf);
+        }
+        when(fileStorageService.openStream("def", StorageCodec.NONE))
+                .thenReturn(new ByteArrayInputStream(pdf.toByteArray()));
+
+        // When
+        textExtractionService.onDocumentCreated(event(2L, "def", "application/pdf", StorageCodec.NONE));
+
+        // Then
+        DocumentJdbcRepository.ExtractionResult result = awaitResult();
+        assertThat(result.status()).isEqualTo(ExtractionStatus.DONE);
+        assertThat(result.text()).contains("Invoice 4711");
+    }
+
+    @Test
+    void onDocumentCreated_BrokenPdf_ShouldMarkFailed() throws Exception {
+        // Given
+        when(fileStorageService.openStream("bad", StorageCodec.NONE))
+                .thenReturn(new ByteArrayInputStream("not a pdf".getBytes()));
+
+        // When
+        textExtractionService.onDocumentCreated(event(3L, "bad", "application/pdf", StorageCodec.NONE));
+
+        // Then
+        DocumentJdbcRepository.ExtractionResult result = awaitResult();
+        assertThat(result.status()).isEqualTo(ExtractionStatus.FAILED);
+        assertThat(result.text()).isNull();
+    }
+
+    @Test
+    void onDocumentCreated_WhenOfficeExtractionHangs_ShouldInterruptTheWorkerAtTheDeadline() throws Exception {
+        // Given
+        ExtractionProperties properties = new ExtractionProperties();
+        properties.setTimeout(Duration.ofMillis(200));
+        TextExtractionService timed = new TextExtractionService(fileStorageService, ocrService, documentRepository,
+                documentJdbcRepository, properties, eventPublisher);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(fileStorageService.openStream("doc", StorageCodec.NONE)).thenReturn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        });
+
+        try {
+            // When
+            timed.onDocumentCreated(event(4L, "doc", "application/msword", StorageCodec.NONE));
+
+            // Then
+            for (int attempt = 0; attempt < 100 && written.isEmpty(); attempt++) {
+                Thread.sleep(50);
+                timed.flush();
+            }
+            assertThat(written).singleElement()
+                    .extracting(DocumentJdbcRepository.ExtractionResult::status).isEqualTo(ExtractionStatus.FAILED);
+            assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            timed.shutdown();
+        }
+    }
+
+    @Test
+    void initialStatus_ShouldOnlyMarkExtractableFilesWithoutText() {
+        Document scan = Document.builder().filePath("abc").fileType("application/pdf").build();
+        Document withText = Document.builder().filePath("abc").fileType("application/pdf").extractedText("x").build();
+        Document image = Document.builder().filePath("abc").fileType("image/png").build();
+
+        assertThat(textExtractionService.initialStatus(scan)).isEqualTo(ExtractionStatus.PENDING);
+        assertThat(textExtractionService.initialStatus(withText)).isNull();
+        assertThat(textExtractionService.initialStatus(image)).isNull();
+    }
+
+    private DocumentJdbcRepository.ExtractionResult awaitResult() throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && written.isEmpty(); attempt++) {
+            Thread.sleep(50);
+            textExtractionService.flush();
+        }
+        assertThat(written).hasSize(1);
+        return written.get(0);
+    }
+
+    private static DocumentCreatedEvent event(Long id, String filePath, String fileType, StorageCodec codec) {
+        return new DocumentCreatedEvent(id, 1L, filePath, filePath, fileType, codec, ExtractionStatus.PENDING);
+    }
+}
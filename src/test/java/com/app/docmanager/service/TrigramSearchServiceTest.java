@@ -0,0 +1,113 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.event.DocumentChangedEvent;
+import com.app.docmanager.event.TagsChangedEvent;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.repository.SearchHits;
+import com.app.docmanager.repository.TrigramSearchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TrigramSearchServiceTest {
+
+    @Mock
+    private TrigramSearchRepository trigramSearchRepository;
+
+    private TrigramSearchService trigramSearchService;
+
+    @BeforeEach
+    void setUp() {
+        // Given: H2, so titles are matched in memory
+        when(trigramSearchRepository.checkIndexes()).thenReturn(false);
+        lenient().when(trigramSearchRepository.findTitlesAfter(anyLong(), anyInt())).thenReturn(List.of());
+        lenient().when(trigramSearchRepository.findTitlesAfter(eq(0L), anyInt())).thenReturn(List.of(
+                new TrigramSearchRepository.Title(1L, 7L, "Invoice 4711 March"),
+                new TrigramSearchRepository.Title(2L, 7L, "Tax return 2023"),
+                new TrigramSearchRepository.Title(3L, 7L, "Holiday invoices"),
+                new TrigramSearchRepository.Title(4L, 8L, "Invoice 4712")));
+        trigramSearchService = new TrigramSearchService(trigramSearchRepository);
+        trigramSearchService.initialize();
+    }
+
+    @Test
+    void searchTitles_WhenPageIsBeyondTheIntRange_ShouldRejectInsteadOfOverflowing() {
+        // When / Then
+        assertThatThrownBy(() -> trigramSearchService.searchTitles("invoice", 7L, 100_000L * 100_000, 10))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> trigramSearchService.searchTags("tax", Integer.MAX_VALUE, 10))
+                .isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void searchTitles_ShouldMatchFragmentsAndTyposOfOwnTitles() {
+        // When
+        SearchHits fragment = trigramSearchService.searchTitles("voic", 7L, 0, 10);
+        SearchHits typo = trigramSearchService.searchTitles("Invoce", 7L, 0, 10);
+        SearchHits all = trigramSearchService.searchTitles("invoice", null, 0, 10);
+
+        // Then
+        assertThat(fragment.hits()).extracting(SearchHits.Hit::id).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(typo.hits()).extracting(SearchHits.Hit::id).containsExactly(1L);
+        assertThat(all.totalHits()).isEqualTo(3);
+        // An exact word ranks above a longer word that merely contains the query
+        assertThat(all.hits().get(all.hits().size() - 1).id()).isEqualTo(3L);
+    }
+
+    @Test
+    void didYouMean_ShouldCorrectUnknownWordsFromOwnTitles() {
+        // When / Then
+        assertThat(trigramSearchService.didYouMean("invoce marhc", 7L)).isEqualTo("invoice march");
+        assertThat(trigramSearchService.didYouMean("invoice", 7L)).isNull();
+        assertThat(trigramSearchService.didYouMean("retrun", 8L)).isNull();
+    }
+
+    @Test
+    void onDocumentChanged_ShouldReplaceTheTitleAndItsWords() {
+        // Given
+        when(trigramSearchRepository.findTitles(List.of(2L)))
+                .thenReturn(List.of(new TrigramSearchRepository.Title(2L, 7L, "Payslip May")));
+
+        // When
+        trigramSearchService.onDocumentChanged(new DocumentChangedEvent(2L));
+
+        // Then
+        assertThat(trigramSearchService.searchTitles("tax", 7L, 0, 10).hits()).isEmpty();
+        assertThat(trigramSearchService.searchTitles("payslip", 7L, 0, 10).hits())
+                .extracting(SearchHits.Hit::id).containsExactly(2L);
+        assertThat(trigramSearchService.didYouMean("retrun", 7L)).isNull();
+    }
+
+    @Test
+    void searchTags_ShouldReloadTagNamesOnlyAfterTheyChanged() {
+        // Given
+        when(trigramSearchRepository.findTagNames()).thenReturn(List.of(
+                new TrigramSearchRepository.TagName(1L, "finance"),
+                new TrigramSearchRepository.TagName(2L, "travel")));
+
+        // When
+        SearchHits first = trigramSearchService.searchTags("finanse", 0, 10);
+        trigramSearchService.searchTags("travel", 0, 10);
+        trigramSearchService.onTagsChanged(new TagsChangedEvent());
+        trigramSearchService.searchTags("travel", 0, 10);
+
+        // Then
+        assertThat(first.hits()).extracting(SearchHits.Hit::id).containsExactly(1L);
+        verify(trigramSearchRepository, times(2)).findTagNames();
+    }
+}
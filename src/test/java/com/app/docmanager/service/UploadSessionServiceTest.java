@@ -0,0 +1,207 @@
+package com.app.docmanager.service;
+
+import com.app.docmanager.dto.UploadSessionDTO;
+import com.app.docmanager.entity.Document;
+import com.app.docmanager.exception.InvalidRequestException;
+import com.app.docmanager.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private DocumentService documentService;
+
+    private UploadSessionService uploadSessionService;
+
+    @BeforeEach
+    void setUp() {
+        when(fileStorageService.getFileStorageLocation()).thenReturn(uploadDir);
+        uploadSessionService = createService(Duration.ofHours(1));
+    }
+
+    @Test
+    void completeSession_ShouldAssembleChunksReceivedInAnyOrder() throws Exception {
+        // Given
+        UploadSessionDTO session = uploadSessionService.createSession(7L, request(10));
+        uploadSessionService.writeChunk(session.getId(), 7L, 6, stream("6789"));
+        UploadSessionDTO written = uploadSessionService.writeChunk(session.getId(), 7L, 0, stream("012345"));
+        AtomicReference<String> assembled = new AtomicReference<>();
+        when(fileStorageService.storeAssembledFile(any(), eq("text/plain"))).thenAnswer(invocation -> {
+            Path partFile = invocation.getArgument(0);
+            assembled.set(Files.readString(partFile));
+            Files.delete(partFile);
+            return storedFile();
+        });
+        when(documentService.createDocument(any(), eq(7L), eq(Set.of("scan"))))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        Document document = uploadSessionService.completeSession(session.getId(), 7L);
+
+        // Then
+        assertThat(written.isComplete()).isTrue();
+        assertThat(assembled.get()).isEqualTo("0123456789");
+        assertThat(document.getFilePath()).isEqualTo("abc");
+        assertThat(sessionFiles()).isEmpty();
+        assertThatThrownBy(() -> uploadSessionService.getSession(session.getId(), 7L))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void createService_ShouldResumeSessionsAndRemoveLeftoverPartFiles() throws Exception {
+        // Given
+        UploadSessionDTO session = uploadSessionService.createSession(7L, request(10));
+        uploadSessionService.writeChunk(session.getId(), 7L, 0, stream("0123"));
+        Files.writeString(uploadDir.resolve(".sessions").resolve("lost.part"), "left over");
+
+        // When: restarted
+        UploadSessionService restarted = createService(Duration.ofHours(1));
+        restarted.writeChunk(session.getId(), 7L, 4, stream("456789"));
+
+        // Then
+        UploadSessionDTO resumed = restarted.getSession(session.getId(), 7L);
+        assertThat(resumed.getReceivedRanges()).containsExactly(new UploadSessionDTO.ByteRange(0, 10));
+        assertThat(resumed.isComplete()).isTrue();
+        assertThat(resumed.getTags()).containsExactly("scan");
+        assertThat(sessionFiles()).containsExactlyInAnyOrder(session.getId() + ".part", session.getId() + ".json");
+    }
+
+    @Test
+    void completeSession_WhenStoringFails_ShouldKeepTheSessionForAnotherAttempt() throws Exception {
+        // Given
+        UploadSessionDTO session = uploadSessionService.createSession(7L, request(4));
+        uploadSessionService.writeChunk(session.getId(), 7L, 0, stream("0123"));
+        when(fileStorageService.storeAssembledFile(any(), any())).thenThrow(new RuntimeException("volume full"));
+
+        // When / Then
+        assertThatThrownBy(() -> uploadSessionService.completeSession(session.getId(), 7L))
+                .hasMessage("volume full");
+        assertThat(uploadSessionService.getSession(session.getId(), 7L).isComplete()).isTrue();
+        assertThat(sessionFiles()).contains(session.getId() + ".part");
+    }
+
+    @Test
+    void completeSession_WhileAChunkIsBeingWritten_ShouldReject() throws Exception {
+        // Given: all bytes arrived, and a retried chunk is still streaming
+        UploadSessionDTO session = uploadSessionService.createSession(7L, request(4));
+        uploadSessionService.writeChunk(session.getId(), 7L, 0, stream("0123"));
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream retried = new SequenceInputStream(stream("01"), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        });
+        Thread writer = new Thread(() -> uploadSessionService.writeChunk(session.getId(), 7L, 0, retried));
+        writer.start();
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When / Then
+        assertThatThrownBy(() -> uploadSessionService.completeSession(session.getId(), 7L))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("being written");
+        release.countDown();
+        writer.join();
+        when(fileStorageService.storeAssembledFile(any(), any())).thenReturn(storedFile());
+        when(documentService.createDocument(any(), eq(7L), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        assertThat(uploadSessionService.completeSession(session.getId(), 7L).getFilePath()).isEqualTo("abc");
+    }
+
+    @Test
+    void removeExpiredSessions_ShouldDeletePartAndStateFiles() throws Exception {
+        // Given
+        UploadSessionService expiring = createService(Duration.ZERO);
+        UploadSessionDTO session = expiring.createSession(7L, request(10));
+        expiring.writeChunk(session.getId(), 7L, 0, stream("01"));
+
+        // When
+        expiring.removeExpiredSessions();
+
+        // Then
+        assertThat(sessionFiles()).isEmpty();
+        assertThatThrownBy(() -> expiring.getSession(session.getId(), 7L))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void createSession_WhenUserHasTooManyOpenSessions_ShouldReject() {
+        // Given
+        UploadSessionService limited = new UploadSessionService(fileStorageService, documentService,
+                Duration.ofHours(1), 2);
+        limited.createSession(7L, request(10));
+        limited.createSession(7L, request(10));
+
+        // When / Then
+        assertThatThrownBy(() -> limited.createSession(7L, request(10)))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThat(limited.createSession(8L, request(10)).getId()).isNotBlank();
+    }
+
+    private UploadSessionService createService(Duration ttl) {
+        return new UploadSessionService(fileStorageService, documentService, ttl, 10);
+    }
+
+    private static UploadSessionDTO.CreateUploadSessionRequest request(long totalSize) {
+        return new UploadSessionDTO.CreateUploadSessionRequest("Scan", null, totalSize, "text/plain", Set.of("scan"));
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes());
+    }
+
+    private static FileStorageService.StoredFile storedFile() {
+        return FileStorageService.StoredFile.builder()
+                .fileName("abc")
+                .contentHash("abc")
+                .size(10)
+                .storedSize(10)
+                .contentType("text/plain")
+                .build();
+    }
+
+    private List<String> sessionFiles() throws Exception {
+        try (Stream<Path> files = Files.list(uploadDir.resolve(".sessions"))) {
+            return files.map(file -> file.getFileName().toString()).toList();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.app.docmanager.service;
 
 import com.app.docmanager.entity.User;
+import com.app.docmanager.event.DocumentChangedEvent;
 import com.app.docmanager.exception.DuplicateResourceException;
 import com.app.docmanager.exception.ResourceNotFoundException;
+import com.app.docmanager.repository.DocumentRepository;
 import com.app.docmanager.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,6 +12,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.Arrays;
 import java.util.List;
@@ -26,6 +29,12 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private UserService userService;
 
@@ -150,6 +159,7 @@ class UserServiceTest {
     void deleteUser_WhenUserExists_ShouldDeleteUser() {
         // Given
         when(userRepository.existsById(1L)).thenReturn(true);
+        when(documentRepository.findIdsByUserId(1L)).thenReturn(List.of(10L, 11L));
 
         // When
         userService.deleteUser(1L);
@@ -157,6 +167,8 @@ class UserServiceTest {
         // Then
         verify(userRepository).existsById(1L);
         verify(userRepository).deleteById(1L);
+        verify(eventPublisher).publishEvent(new DocumentChangedEvent(10L));
+        verify(eventPublisher).publishEvent(new DocumentChangedEvent(11L));
     }
 
     @Test
@@ -0,0 +1,48 @@
+package com.app.docmanager.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentTypeDetectorTest {
+
+    @Test
+    void detect_ShouldRecognizeMagicBytes() {
+        assertThat(detect("%PDF-1.7\n")).isEqualTo("application/pdf");
+        assertThat(detect(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0})).isEqualTo("image/jpeg");
+        assertThat(detect(new byte[]{0x49, 0x49, 0x2A, 0x00, 0x08})).isEqualTo("image/tiff");
+        assertThat(detect(new byte[]{0x50, 0x4B, 0x03, 0x04, 0x14})).isEqualTo("application/zip");
+    }
+
+    @Test
+    void detect_ShouldTellTextFromBinary() {
+        assertThat(detect("Grüße aus Wien\n")).isEqualTo("text/plain");
+        assertThat(detect("<?xml version=\"1.0\"?><a/>")).isEqualTo("application/xml");
+        assertThat(detect(new byte[]{0x01, 0x02, 0x03, 0x00})).isNull();
+    }
+
+    @Test
+    void resolve_ShouldPreferDetectedTypeOverDeclared() {
+        assertThat(ContentTypeDetector.resolve("application/octet-stream", "application/pdf"))
+                .isEqualTo("application/pdf");
+        assertThat(ContentTypeDetector.resolve("image/png", "application/pdf")).isEqualTo("application/pdf");
+        assertThat(ContentTypeDetector.resolve(null, null)).isEqualTo("application/octet-stream");
+    }
+
+    @Test
+    void resolve_ShouldKeepDeclaredTypeRefiningAContainer() {
+        String docx = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        assertThat(ContentTypeDetector.resolve(docx, "application/zip")).isEqualTo(docx);
+        assertThat(ContentTypeDetector.resolve("text/csv", "text/plain")).isEqualTo("text/csv");
+    }
+
+    private static String detect(String content) {
+        return detect(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String detect(byte[] content) {
+        return ContentTypeDetector.detect(content, content.length);
+    }
+}
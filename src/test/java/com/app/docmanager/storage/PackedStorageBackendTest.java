@@ -0,0 +1,181 @@
+package com.app.docmanager.storage;
+
+import com.app.docmanager.config.StorageProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PackedStorageBackendTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private StorageProperties storageProperties;
+    private PackedStorageBackend storageBackend;
+
+    @BeforeEach
+    void setUp() {
+        storageProperties = new StorageProperties();
+        storageProperties.getPack().setFsync(false);
+        storageBackend = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storageBackend.close();
+    }
+
+    @Test
+    void smallObjects_ShouldBePackedIntoOneSegment() throws Exception {
+        // When
+        put("aaaa", "first");
+        put("bbbb", "second");
+
+        // Then
+        assertThat(read("bbbb", 1, 3)).isEqualTo("eco");
+        assertThat(storageBackend.localPath("aaaa")).isEmpty();
+        assertThat(segmentFiles()).isEqualTo(1);
+    }
+
+    @Test
+    void largeObjects_ShouldGoToDelegate() throws Exception {
+        // When
+        put("cccc", "x".repeat(40 * 1024));
+
+        // Then
+        assertThat(storageBackend.localPath("cccc")).isPresent();
+        assertThat(storageBackend.stat("cccc")).get().extracting(StoredObject::size).isEqualTo(40L * 1024);
+    }
+
+    @Test
+    void reopen_ShouldRebuildIndexAndSkipDeletedRecords() throws Exception {
+        // Given
+        put("aaaa", "kept");
+        put("bbbb", "deleted");
+        storageBackend.delete("bbbb");
+
+        // When
+        storageBackend.close();
+        storageBackend = open();
+
+        // Then
+        assertThat(read("aaaa", 0, -1)).isEqualTo("kept");
+        assertThat(storageBackend.stat("bbbb")).isEmpty();
+    }
+
+    @Test
+    void compact_ShouldRewriteLiveRecordsAndRemoveSegment() throws Exception {
+        // Given
+        storageProperties.getPack().setSegmentSize(DataSize.ofBytes(64));
+        storageBackend.close();
+        storageBackend = open();
+        put("aaaa", "kept");
+        put("bbbb", "deleted");
+        put("cccc", "rolls");
+        storageBackend.delete("bbbb");
+
+        // When
+        long reclaimed = storageBackend.compact(0.3);
+
+        // Then
+        assertThat(reclaimed).isPositive();
+        assertThat(read("aaaa", 0, -1)).isEqualTo("kept");
+        assertThat(read("cccc", 0, -1)).isEqualTo("rolls");
+        assertThat(storageBackend.stat("bbbb")).isEmpty();
+    }
+
+    @Test
+    void reopen_WhenSealedSegmentHasACorruptRecord_ShouldSkipItAndKeepTheRest() throws Exception {
+        // Given: two records in a sealed segment, a third one rolled over to the next segment
+        storageProperties.getPack().setSegmentSize(DataSize.ofBytes(80));
+        storageBackend.close();
+        storageBackend = open();
+        put("aaaa", "first");
+        put("bbbb", "second");
+        put("cccc", "third");
+        storageBackend.close();
+        Path sealed = uploadDir.resolve(".packs").resolve("segment-00000000.pack");
+        long size = Files.size(sealed);
+        corrupt(sealed, 30);
+
+        // When
+        storageBackend = open();
+
+        // Then
+        assertThat(storageBackend.stat("aaaa")).isEmpty();
+        assertThat(read("bbbb", 0, -1)).isEqualTo("second");
+        assertThat(read("cccc", 0, -1)).isEqualTo("third");
+        assertThat(Files.size(sealed)).isEqualTo(size);
+    }
+
+    @Test
+    void reopen_WhenLastSegmentEndsWithATornRecord_ShouldCutItOff() throws Exception {
+        // Given
+        put("aaaa", "first");
+        put("bbbb", "second");
+        storageBackend.close();
+        Path last = uploadDir.resolve(".packs").resolve("segment-00000000.pack");
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // When
+        storageBackend = open();
+        put("cccc", "third");
+
+        // Then
+        assertThat(read("aaaa", 0, -1)).isEqualTo("first");
+        assertThat(storageBackend.stat("bbbb")).isEmpty();
+        assertThat(read("cccc", 0, -1)).isEqualTo("third");
+    }
+
+    private static void corrupt(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) ~value.get(0)).rewind();
+            channel.write(value, position);
+        }
+    }
+
+    private PackedStorageBackend open() {
+        LocalStorageBackend delegate = new LocalStorageBackend(uploadDir, storageProperties);
+        return new PackedStorageBackend(delegate, uploadDir.resolve(".packs"), storageProperties.getPack());
+    }
+
+    private void put(String key, String content) throws IOException {
+        try (StorageUpload upload = storageBackend.beginUpload()) {
+            OutputStream outputStream = upload.outputStream();
+            outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            assertThat(upload.commit(key)).isTrue();
+        }
+    }
+
+    private String read(String key, long offset, long length) throws IOException {
+        try (InputStream inputStream = storageBackend.get(key, offset, length)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(uploadDir.resolve(".packs"))) {
+            return files.count();
+        }
+    }
+}
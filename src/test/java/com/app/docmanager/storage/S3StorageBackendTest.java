@@ -0,0 +1,286 @@
+package com.app.docmanager.storage;
+
+import com.app.docmanager.config.StorageProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3StorageBackendTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private InMemoryS3Client s3Client;
+    private S3StorageBackend storageBackend;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties.S3Properties properties = new StorageProperties.S3Properties();
+        properties.setBucket("documents");
+        properties.setPrefix("dm/");
+        // Small parts so that a few bytes already make a multipart upload
+        properties.setPartSize(DataSize.ofBytes(8));
+        properties.setUploadConcurrency(2);
+        properties.setUploadThreads(2);
+        s3Client = new InMemoryS3Client();
+        storageBackend = new S3StorageBackend(s3Client, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storageBackend.close();
+    }
+
+    @Test
+    void smallUpload_ShouldBeStoredWithOnePutAndReadByRange() throws Exception {
+        // When
+        boolean stored = put("aaaa", "hello");
+        boolean storedAgain = put("aaaa", "hello");
+
+        // Then
+        assertThat(stored).isTrue();
+        assertThat(storedAgain).isFalse();
+        assertThat(s3Client.objects).containsOnlyKeys("dm/objects/aaaa");
+        assertThat(storageBackend.stat("aaaa")).get().extracting(StoredObject::size).isEqualTo(5L);
+        assertThat(read("aaaa", 1, 3)).isEqualTo("ell");
+        assertThat(read("aaaa", 2, -1)).isEqualTo("llo");
+    }
+
+    @Test
+    void largeUpload_ShouldBeSentInPartsAndCopiedFromStaging() throws Exception {
+        // Given
+        String content = "0123456789".repeat(5);
+
+        // When
+        boolean stored = put("bbbb", content);
+
+        // Then
+        assertThat(stored).isTrue();
+        assertThat(s3Client.objects).containsOnlyKeys("dm/objects/bbbb");
+        assertThat(s3Client.uploads).isEmpty();
+        assertThat(read("bbbb", 0, -1)).isEqualTo(content);
+    }
+
+    @Test
+    void uncommittedUpload_ShouldAbortItsMultipartUpload() throws Exception {
+        // When
+        try (StorageUpload upload = storageBackend.beginUpload()) {
+            upload.outputStream().write("0123456789abcdef0123".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Then
+        assertThat(s3Client.objects).isEmpty();
+        assertThat(s3Client.uploads).isEmpty();
+    }
+
+    @Test
+    void putFile_ShouldUploadPartsInParallelAndRemoveTheSource() throws Exception {
+        // Given
+        String content = "abcdefghij".repeat(10);
+        Path source = Files.writeString(uploadDir.resolve("assembled"), content);
+
+        // When
+        boolean stored = storageBackend.putFile("cccc", source);
+
+        // Then
+        assertThat(stored).isTrue();
+        assertThat(Files.exists(source)).isFalse();
+        assertThat(s3Client.uploads).isEmpty();
+        assertThat(read("cccc", 0, -1)).isEqualTo(content);
+    }
+
+    @Test
+    void deleteAndQuarantine_ShouldRemoveObjectsFromTheListing() throws Exception {
+        // Given
+        put("cccc", "third");
+        put("aaaa", "first");
+        put("bbbb", "second");
+
+        // When
+        storageBackend.delete("bbbb");
+        storageBackend.quarantine("cccc");
+
+        // Then
+        assertThat(storageBackend.stat("bbbb")).isEmpty();
+        assertThat(s3Client.objects).containsOnlyKeys("dm/objects/aaaa", "dm/quarantine/cccc");
+        try (Stream<String> keys = storageBackend.list()) {
+            assertThat(keys).containsExactly("aaaa");
+        }
+    }
+
+    private boolean put(String key, String content) throws IOException {
+        try (StorageUpload upload = storageBackend.beginUpload()) {
+            try (OutputStream outputStream = upload.outputStream()) {
+                outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            return upload.commit(key);
+        }
+    }
+
+    private String read(String key, long offset, long length) throws IOException {
+        try (InputStream inputStream = storageBackend.get(key, offset, length)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Keeps objects and multipart uploads of a single bucket in memory.
+     */
+    private static class InMemoryS3Client implements S3Client {
+        final NavigableMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+            objects.put(request.key(), bytes(requestBody));
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+            byte[] data = objects.get(request.key());
+            if (data == null) {
+                throw NoSuchKeyException.builder().statusCode(404).message("Not Found").build();
+            }
+            int start = 0;
+            int end = data.length;
+            if (request.range() != null) {
+                String[] range = request.range().substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(range[0]);
+                end = range[1].isEmpty() ? data.length : Math.min(data.length, Integer.parseInt(range[1]) + 1);
+            }
+            byte[] content = Arrays.copyOfRange(data, start, end);
+            return new ResponseInputStream<>(GetObjectResponse.builder().contentLength((long) content.length).build(),
+                    AbortableInputStream.create(new ByteArrayInputStream(content)));
+        }
+
+        @Override
+        public HeadObjectResponse headObject(HeadObjectRequest request) {
+            byte[] data = objects.get(request.key());
+            if (data == null) {
+                throw S3Exception.builder().statusCode(404).message("Not Found").build();
+            }
+            return HeadObjectResponse.builder().contentLength((long) data.length).lastModified(Instant.now()).build();
+        }
+
+        @Override
+        public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+            objects.remove(request.key());
+            return DeleteObjectResponse.builder().build();
+        }
+
+        @Override
+        public CopyObjectResponse copyObject(CopyObjectRequest request) {
+            objects.put(request.destinationKey(), objects.get(request.sourceKey()));
+            return CopyObjectResponse.builder().build();
+        }
+
+        @Override
+        public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+            return ListObjectsV2Response.builder()
+                    .contents(objects.keySet().stream()
+                            .filter(key -> key.startsWith(request.prefix()))
+                            .map(key -> S3Object.builder().key(key).size((long) objects.get(key).length).build())
+                            .toList())
+                    .isTruncated(false)
+                    .build();
+        }
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            String uploadId = UUID.randomUUID().toString();
+            uploads.put(uploadId, new ConcurrentHashMap<>());
+            return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+            uploads.get(request.uploadId()).put(request.partNumber(), bytes(requestBody));
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            Map<Integer, byte[]> parts = uploads.remove(request.uploadId());
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (CompletedPart part : request.multipartUpload().parts()) {
+                content.writeBytes(parts.get(part.partNumber()));
+            }
+            objects.put(request.key(), content.toByteArray());
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            uploads.remove(request.uploadId());
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static byte[] bytes(RequestBody requestBody) {
+            try (InputStream inputStream = requestBody.contentStreamProvider().newStream()) {
+                return inputStream.readAllBytes();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}